@@ -0,0 +1,98 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.http.HttpHeaderNames;
+import esa.commons.http.HttpHeaders;
+import esa.commons.http.HttpVersion;
+import esa.commons.netty.http.Http1HeadersImpl;
+import esa.httpclient.core.HttpResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of serving a cache hit from {@link HttpCache} by a retained slice of the stored body and by a
+ * heap copy of it(see {@link HttpCache.HttpCacheBuilder#copyOnRead(boolean)}). Every operation serves the stored
+ * response and releases it just like a user who has consumed the body, and the throughput is reported in operations
+ * per millisecond.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HttpCacheBenchmark {
+
+    private static final String KEY = "http://127.0.0.1:8080/abc";
+
+    @Param({"false", "true"})
+    private boolean copyOnRead;
+
+    @Param({"1024", "65536", "1048576"})
+    private int bodySize;
+
+    private HttpCache cache;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        cache = new HttpCache(64L * 1024L * 1024L, 1024 * 1024, false, copyOnRead, System::currentTimeMillis);
+        final ByteBuf body = PooledByteBufAllocator.DEFAULT.directBuffer(bodySize, bodySize);
+        body.writeZero(bodySize);
+        final HttpHeaders headers = new Http1HeadersImpl();
+        headers.set(HttpHeaderNames.CACHE_CONTROL, "max-age=3600");
+        final long now = System.currentTimeMillis();
+        cache.put(KEY, new CacheEntry(200, HttpVersion.HTTP_1_1, headers, new String[0], body, now, now, false));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        cache.clear();
+    }
+
+    @Benchmark
+    public int serve() {
+        final HttpResponse response = cache.serve(cache.get(KEY), 0L);
+        final int readable = response.body().readableBytes();
+        ReferenceCountUtil.release(response);
+        return readable;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(HttpCacheBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
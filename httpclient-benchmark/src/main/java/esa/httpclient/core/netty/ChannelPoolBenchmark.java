@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.ChannelPool;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.channel.pool.FixedChannelPool;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of {@link FixedChannelPool} and {@link LockFreeChannelPool} by acquiring and releasing
+ * pooled connections concurrently. Run {@link #main(String[])} to benchmark with 16, 64 and 256 concurrent callers,
+ * or run the shaded jar with {@code -t <threads>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ChannelPoolBenchmark {
+
+    private static final int[] CONCURRENCY = {16, 64, 256};
+
+    @Param({"fixed", "lockFree"})
+    private String type;
+
+    @Param({"64"})
+    private int poolSize;
+
+    private EventLoopGroup group;
+    private Channel server;
+    private ChannelPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        final LocalAddress address = new LocalAddress("ChannelPoolBenchmark-" + type);
+        group = new DefaultEventLoopGroup(Runtime.getRuntime().availableProcessors());
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(LocalServerChannel.class)
+                .childHandler(new io.netty.channel.ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+                    }
+                })
+                .bind(address)
+                .syncUninterruptibly()
+                .channel();
+
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .remoteAddress(address);
+        final ChannelPoolHandler handler = new AbstractChannelPoolHandler() {
+            @Override
+            public void channelCreated(Channel ch) {
+            }
+        };
+
+        final int maxPendingAcquires = 1024;
+        final long acquireTimeoutMillis = 10_000L;
+        if ("fixed".equals(type)) {
+            pool = new FixedChannelPool(bootstrap, handler, ChannelHealthChecker.ACTIVE,
+                    FixedChannelPool.AcquireTimeoutAction.FAIL, acquireTimeoutMillis, poolSize, maxPendingAcquires);
+        } else {
+            pool = new LockFreeChannelPool(bootstrap, handler, null, acquireTimeoutMillis, poolSize,
+                    maxPendingAcquires);
+        }
+
+        // Establish all the connections in advance.
+        final List<Channel> channels = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            channels.add(pool.acquire().syncUninterruptibly().getNow());
+        }
+        for (Channel channel : channels) {
+            pool.release(channel).syncUninterruptibly();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.close();
+        server.close().syncUninterruptibly();
+        group.shutdownGracefully().syncUninterruptibly();
+    }
+
+    @Benchmark
+    public Channel acquireAndRelease() {
+        final Channel channel = pool.acquire().syncUninterruptibly().getNow();
+        pool.release(channel);
+        return channel;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        for (int threads : CONCURRENCY) {
+            new Runner(new OptionsBuilder()
+                    .include(ChannelPoolBenchmark.class.getSimpleName())
+                    .threads(threads)
+                    .build()).run();
+        }
+    }
+}
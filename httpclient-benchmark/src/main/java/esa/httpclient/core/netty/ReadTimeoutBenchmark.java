@@ -0,0 +1,135 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.ScheduledFuture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the cost of scheduling and cancelling read timeouts by the global {@link HashedWheelTimer} and by the
+ * event loop of the connection. Every operation schedules a timeout and cancels the oldest one of {@code inFlight}
+ * outstanding timeouts, both in the event loop just like a request which is written and then responded. The
+ * throughput is reported in operations per millisecond, eg: 200 ops/ms means 200k requests/s.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReadTimeoutBenchmark {
+
+    private static final int BATCH = 1000;
+    private static final long READ_TIMEOUT_MILLIS = 6000L;
+    private static final Runnable NOOP = () -> {
+    };
+
+    @Param({"hashedWheelTimer", "eventLoop"})
+    private String type;
+
+    @Param({"1024"})
+    private int inFlight;
+
+    private EventLoopGroup group;
+    private EventLoop eventLoop;
+    private Timer timer;
+    private Timeout[] timeouts;
+    private ScheduledFuture<?>[] futures;
+    private int index;
+    private Runnable batch;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        group = new NioEventLoopGroup(1);
+        eventLoop = group.next();
+        if ("hashedWheelTimer".equals(type)) {
+            // The same as the timer which was shared by all the read timeouts.
+            timer = new HashedWheelTimer(r -> new Thread(r, "ReadTimeoutBenchmark-Timer"),
+                    30L, TimeUnit.MILLISECONDS, 512);
+            timeouts = new Timeout[inFlight];
+            batch = () -> {
+                for (int i = 0; i < BATCH; i++) {
+                    final int slot = nextSlot();
+                    if (timeouts[slot] != null) {
+                        timeouts[slot].cancel();
+                    }
+                    timeouts[slot] = timer.newTimeout(t -> NOOP.run(), READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            };
+        } else {
+            futures = new ScheduledFuture<?>[inFlight];
+            batch = () -> {
+                for (int i = 0; i < BATCH; i++) {
+                    final int slot = nextSlot();
+                    if (futures[slot] != null) {
+                        futures[slot].cancel(false);
+                    }
+                    futures[slot] = eventLoop.schedule(NOOP, READ_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+                }
+            };
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        if (timer != null) {
+            timer.stop();
+        }
+        group.shutdownGracefully().syncUninterruptibly();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void scheduleAndCancel() {
+        eventLoop.submit(batch).syncUninterruptibly();
+    }
+
+    private int nextSlot() {
+        final int slot = index;
+        index = slot + 1 == inFlight ? 0 : slot + 1;
+        return slot;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReadTimeoutBenchmark.class.getSimpleName())
+                .build()).run();
+    }
+}
@@ -94,6 +94,7 @@ public class CompositeRequest extends HttpRequestBaseImpl implements PlainReques
     public CompletableFuture<HttpResponse> execute() {
         final byte newStatus = status >= 0 ? (byte) (status + (byte) 4) : STATE_PLAIN_EXECUTED;
         checkNotStartedAndUpdateStatus(newStatus);
+        startDeadline();
         return client.execute(this, ctx, handle, handler);
     }
 
@@ -254,6 +255,27 @@ public class CompositeRequest extends HttpRequestBaseImpl implements PlainReques
         return self();
     }
 
+    @Override
+    public CompositeRequest priority(int priority) {
+        checkStarted();
+        super.priority(priority);
+        return self();
+    }
+
+    @Override
+    public CompositeRequest totalTimeout(int totalTimeout) {
+        checkStarted();
+        super.totalTimeout(totalTimeout);
+        return self();
+    }
+
+    @Override
+    public CompositeRequest deadline(long deadline) {
+        checkStarted();
+        super.deadline(deadline);
+        return self();
+    }
+
     @Override
     public CompositeRequest addHeaders(Map<? extends CharSequence, ? extends CharSequence> headers) {
         super.addHeaders(headers);
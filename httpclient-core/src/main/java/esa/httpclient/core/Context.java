@@ -15,11 +15,13 @@
  */
 package esa.httpclient.core;
 
-public class Context extends AttributeMap {
+public class Context extends AttributeMap implements Reusable<Context> {
 
     protected volatile int maxRedirects;
     protected volatile int maxRetries;
     protected volatile boolean useExpectContinue;
+    protected volatile int priority;
+    protected volatile long deadline;
 
     public int maxRedirects() {
         return maxRedirects;
@@ -33,6 +35,60 @@ public class Context extends AttributeMap {
         return useExpectContinue;
     }
 
+    /**
+     * Obtains the priority of current request, the pending acquisitions of connections with higher priority will
+     * be served first when the connection pool is saturated.
+     *
+     * @return priority, defaults to 0
+     */
+    public int priority() {
+        return priority;
+    }
+
+    /**
+     * Obtains the absolute deadline of current request in milliseconds since the epoch.
+     *
+     * @return deadline, or 0 if there is no deadline
+     */
+    public long deadline() {
+        return deadline;
+    }
+
+    /**
+     * Obtains a copy of current context, which is used by the requests sent concurrently on behalf of the same
+     * request, eg: hedged requests, so that their state is isolated from each other.
+     *
+     * @return copied context
+     */
+    @Override
+    public Context copy() {
+        return copyTo(new Context());
+    }
+
+    /**
+     * Obtains a copy of current context without the deadline, which is used by the exchange shared by several
+     * requests, eg: coalesced requests, whose own deadlines are enforced by every request itself.
+     *
+     * @return copied context
+     */
+    public Context copyWithoutDeadline() {
+        final Context copied = copy();
+        copied.deadline(0L);
+        return copied;
+    }
+
+    protected <C extends Context> C copyTo(C dest) {
+        for (String name : attrNames()) {
+            dest.setAttr(name, getAttr(name));
+        }
+        dest.maxRedirects(maxRedirects);
+        dest.maxRetries(maxRetries);
+        dest.useExpectContinue(useExpectContinue);
+        dest.priority(priority);
+        dest.deadline(deadline);
+        return dest;
+    }
+
     protected void maxRedirects(int maxRedirects) {
         this.maxRedirects = maxRedirects;
     }
@@ -44,4 +100,12 @@ public class Context extends AttributeMap {
     protected void useExpectContinue(boolean useExpectContinue) {
         this.useExpectContinue = useExpectContinue;
     }
+
+    protected void priority(int priority) {
+        this.priority = priority;
+    }
+
+    protected void deadline(long deadline) {
+        this.deadline = deadline;
+    }
 }
@@ -19,6 +19,12 @@ public final class ContextNames {
 
     public static final String FILTER_CONTEXT = "$filterContext";
 
+    /**
+     * The I/O threads of the client which is executing the request, the delayed attempts(eg: retries and hedges)
+     * are sent from them.
+     */
+    public static final String IO_THREADS = "$ioThreads";
+
     private ContextNames() {
     }
 }
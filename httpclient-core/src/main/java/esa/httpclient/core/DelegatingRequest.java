@@ -109,6 +109,11 @@ public class DelegatingRequest implements HttpRequest {
         return underlying.readTimeout();
     }
 
+    @Override
+    public int totalTimeout() {
+        return underlying.totalTimeout();
+    }
+
     @Override
     public boolean isSegmented() {
         return underlying.isSegmented();
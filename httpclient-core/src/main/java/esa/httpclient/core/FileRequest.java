@@ -35,6 +35,15 @@ public interface FileRequest extends ExecutableRequest {
     @Override
     FileRequest readTimeout(int readTimeout);
 
+    @Override
+    FileRequest priority(int priority);
+
+    @Override
+    FileRequest totalTimeout(int totalTimeout);
+
+    @Override
+    FileRequest deadline(long deadline);
+
     @Override
     FileRequest addHeaders(Map<? extends CharSequence, ? extends CharSequence> headers);
 
@@ -19,6 +19,7 @@ import esa.commons.http.HttpMethod;
 import esa.httpclient.core.metrics.MetricPoint;
 
 import java.io.Closeable;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * The facade class for preparing a {@link SegmentRequest} or executing a common {@link HttpRequest}.
@@ -97,6 +98,17 @@ public interface HttpClient extends Closeable, Identifiable, MetricPoint {
      */
     HttpRequestFacade patch(String uri);
 
+    /**
+     * Opens and initializes the connections to the given uris in the background, so that the first requests to
+     * them will not suffer from the latency of establishing connections. At least one connection or
+     * {@link esa.httpclient.core.config.ChannelPoolOptions#minIdle()} connections will be opened for every
+     * address. Note that it's unnecessary if keepAlive is disabled.
+     *
+     * @param uris  uris, eg: https://www.example.com
+     * @return future which will be completed once the connections are established
+     */
+    CompletableFuture<Void> warmUp(String... uris);
+
     ////////*********************** BUILDER TEMPLATE ********************************////////
 
     /**
@@ -20,13 +20,24 @@ import esa.commons.http.HttpVersion;
 import esa.httpclient.core.config.CacheOptions;
 import esa.httpclient.core.config.ChannelPoolOptions;
 import esa.httpclient.core.config.Decompression;
+import esa.httpclient.core.config.HedgingOptions;
 import esa.httpclient.core.config.Http1Options;
 import esa.httpclient.core.config.Http2Options;
 import esa.httpclient.core.config.NetOptions;
 import esa.httpclient.core.config.RetryOptions;
 import esa.httpclient.core.config.SslOptions;
+import esa.httpclient.core.exec.CacheInterceptor;
+import esa.httpclient.core.exec.CircuitBreaker;
+import esa.httpclient.core.exec.CircuitBreakerInterceptor;
+import esa.httpclient.core.exec.ConcurrencyLimitInterceptor;
+import esa.httpclient.core.exec.ConcurrencyLimiter;
+import esa.httpclient.core.exec.DeadlineInterceptor;
+import esa.httpclient.core.exec.DiskCache;
+import esa.httpclient.core.exec.DiskCacheInterceptor;
 import esa.httpclient.core.exec.ExpectContinueInterceptor;
 import esa.httpclient.core.exec.FilteringExec;
+import esa.httpclient.core.exec.HedgingInterceptor;
+import esa.httpclient.core.exec.HttpCache;
 import esa.httpclient.core.exec.Interceptor;
 import esa.httpclient.core.exec.RedirectInterceptor;
 import esa.httpclient.core.exec.RetryInterceptor;
@@ -35,6 +46,7 @@ import esa.httpclient.core.filter.RequestFilter;
 import esa.httpclient.core.filter.ResponseFilter;
 import esa.httpclient.core.netty.ChannelPools;
 import esa.httpclient.core.netty.NettyHttpClient;
+import esa.httpclient.core.resolver.AddressBalancer;
 import esa.httpclient.core.resolver.HostResolver;
 import esa.httpclient.core.resolver.SystemDefaultResolver;
 import esa.httpclient.core.spi.ChannelPoolOptionsProvider;
@@ -63,7 +75,9 @@ import java.util.List;
  * <p>
  * 3. All {@link InetAddress}s resolved from the same host name will share a common connection pool whose size is
  * configured by {@link #connectionPoolSize} and waiting queue length is configured by
- * {@link #connectionPoolWaitingQueueLength}.
+ * {@link #connectionPoolWaitingQueueLength}, unless an {@link AddressBalancer} is configured by
+ * {@link #addressBalancer(AddressBalancer)}, in which case every resolved {@link InetAddress} has its own
+ * connection pool of that size.
  */
 public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
 
@@ -76,6 +90,12 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
 
     private HostResolver resolver = DEFAULT_RESOLVER;
 
+    /**
+     * Balances the requests across the connection pools of the resolved addresses of a host, default null which
+     * means that all the resolved addresses of a host share a common connection pool.
+     */
+    private AddressBalancer addressBalancer;
+
     private HttpVersion version = HttpVersion.HTTP_1_1;
 
     /**
@@ -87,6 +107,13 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
 
     private int readTimeout = 6000;
 
+    /**
+     * Total timeout of a request in milliseconds, which covers the filters, the waiting for a connection, the
+     * connecting, the writing and the reading of all the retries and redirections. Default 0, which means not
+     * limited.
+     */
+    private int totalTimeout;
+
     /**
      * Whether to use h2c only when current {@link #version} equals {@link HttpVersion#HTTP_2} and scheme
      * equals {@link Scheme#HTTP}. If {@code true}, we try to use application-layer protocol negotiation
@@ -111,14 +138,78 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
      */
     private int connectionPoolWaitingQueueLength = 256;
 
+    /**
+     * The count of idle connections which should be kept in the connection pool of every address, default 0
+     * which means that connections will be opened lazily.
+     */
+    private int connectionPoolMinIdle;
+
+    /**
+     * The min size of a connection pool, default 0 which means that the size of connection pool is fixed to
+     * {@link #connectionPoolSize}. Otherwise, the connection pool will be sized adaptively between this and
+     * {@link #connectionPoolSize} according to the queued acquisitions and idle connections.
+     */
+    private int connectionPoolMinSize;
+
+    /**
+     * The max lifetime(in milliseconds) of a pooled connection, default 0 which means unlimited.
+     */
+    private int connectionMaxLifetime;
+
+    /**
+     * The max count of requests of a pooled connection, default 0 which means unlimited.
+     */
+    private int maxRequestsPerConnection;
+
+    /**
+     * The interval(in milliseconds) of checking the idle pooled connections in the background, default 0 which
+     * means disabled. Idle HTTP/1.1 connections which are closed or stale are evicted, and idle HTTP/2 connections
+     * are checked by PING.
+     */
+    private int connectionHealthCheckInterval;
+
     private int maxRedirects = 5;
 
+    /**
+     * Whether to stripe the connection pool of a single address by the {@link io.netty.channel.EventLoop}s of
+     * I/O threads. If {@code true}, every {@link io.netty.channel.EventLoop} owns a sub-pool whose size is
+     * {@link #connectionPoolSize} divided by the count of I/O threads, and the request executed in an I/O
+     * thread will acquire the connection from the sub-pool of current thread, so that the whole request
+     * can be handled in current thread without any thread switching.
+     */
+    private boolean stripedConnectionPool = false;
+
     private SslOptions sslOptions;
     private NetOptions netOptions;
     private Http1Options http1Options;
     private Http2Options http2Options;
 
     private RetryOptions retryOptions = RetryOptions.ofDefault();
+
+    /**
+     * Options of hedged requests, which is disabled if it's null.
+     */
+    private HedgingOptions hedgingOptions;
+
+    /**
+     * Circuit breaker of every address, which is disabled if it's null.
+     */
+    private CircuitBreaker circuitBreaker;
+
+    /**
+     * Adaptive concurrency limiter of every address, which is disabled if it's null.
+     */
+    private ConcurrencyLimiter concurrencyLimiter;
+
+    /**
+     * In-memory cache of responses, which is disabled if it's null.
+     */
+    private HttpCache httpCache;
+
+    /**
+     * Cache of responses on disk, which is shared by copies and is disabled if it's null.
+     */
+    private DiskCache diskCache;
     private boolean useExpectContinue = false;
 
     /**
@@ -137,6 +228,20 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
         return self();
     }
 
+    /**
+     * Maintains a connection pool per resolved address of a host, which are refreshed as the DNS records change,
+     * and balances the requests across them by the given {@link AddressBalancer}. The connection pool of an
+     * address which has been removed from the DNS records will be closed after its in-flight requests are
+     * completed.
+     *
+     * @param addressBalancer balancer, null to disable
+     * @return this
+     */
+    public HttpClientBuilder addressBalancer(AddressBalancer addressBalancer) {
+        this.addressBalancer = addressBalancer;
+        return self();
+    }
+
     public HttpClientBuilder h2ClearTextUpgrade(boolean h2ClearTextUpgrade) {
         this.h2ClearTextUpgrade = h2ClearTextUpgrade;
         return self();
@@ -159,6 +264,12 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
         return self();
     }
 
+    public HttpClientBuilder totalTimeout(int timeout) {
+        Checks.checkArg(timeout >= 0, "totalTimeout must not be negative");
+        this.totalTimeout = timeout;
+        return self();
+    }
+
     public HttpClientBuilder maxContentLength(long maxContentLength) {
         this.maxContentLength = maxContentLength;
         return self();
@@ -189,6 +300,46 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
         return self();
     }
 
+    public HttpClientBuilder connectionPoolMinIdle(int minIdle) {
+        Checks.checkArg(minIdle >= 0, "minIdle is " + minIdle +
+                " (expected >= 0)");
+        this.connectionPoolMinIdle = minIdle;
+        return self();
+    }
+
+    public HttpClientBuilder connectionPoolMinSize(int minSize) {
+        Checks.checkArg(minSize >= 0, "minPoolSize is " + minSize +
+                " (expected >= 0)");
+        this.connectionPoolMinSize = minSize;
+        return self();
+    }
+
+    public HttpClientBuilder connectionMaxLifetime(int maxLifetime) {
+        Checks.checkArg(maxLifetime >= 0, "maxLifetime is " + maxLifetime +
+                " (expected >= 0)");
+        this.connectionMaxLifetime = maxLifetime;
+        return self();
+    }
+
+    public HttpClientBuilder maxRequestsPerConnection(int maxRequests) {
+        Checks.checkArg(maxRequests >= 0, "maxRequestsPerConnection is " + maxRequests +
+                " (expected >= 0)");
+        this.maxRequestsPerConnection = maxRequests;
+        return self();
+    }
+
+    public HttpClientBuilder connectionHealthCheckInterval(int interval) {
+        Checks.checkArg(interval >= 0, "healthCheckInterval is " + interval +
+                " (expected >= 0)");
+        this.connectionHealthCheckInterval = interval;
+        return self();
+    }
+
+    public HttpClientBuilder stripedConnectionPool(boolean stripedConnectionPool) {
+        this.stripedConnectionPool = stripedConnectionPool;
+        return self();
+    }
+
     public HttpClientBuilder useDecompress(boolean useDecompress) {
         this.useDecompress = useDecompress;
         return self();
@@ -298,11 +449,45 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
         return self();
     }
 
+    public HttpClientBuilder hedgingOptions(HedgingOptions hedgingOptions) {
+        this.hedgingOptions = hedgingOptions;
+        this.unmodifiableInterceptors = buildUnmodifiableInterceptors();
+        return self();
+    }
+
+    public HttpClientBuilder circuitBreaker(CircuitBreaker circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+        this.unmodifiableInterceptors = buildUnmodifiableInterceptors();
+        return self();
+    }
+
+    public HttpClientBuilder concurrencyLimiter(ConcurrencyLimiter concurrencyLimiter) {
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.unmodifiableInterceptors = buildUnmodifiableInterceptors();
+        return self();
+    }
+
+    public HttpClientBuilder httpCache(HttpCache httpCache) {
+        this.httpCache = httpCache;
+        this.unmodifiableInterceptors = buildUnmodifiableInterceptors();
+        return self();
+    }
+
+    public HttpClientBuilder diskCache(DiskCache diskCache) {
+        this.diskCache = diskCache;
+        this.unmodifiableInterceptors = buildUnmodifiableInterceptors();
+        return self();
+    }
+
     public HttpClientBuilder maxRedirects(int maxRedirects) {
         this.maxRedirects = maxRedirects;
         return self();
     }
 
+    public AddressBalancer addressBalancer() {
+        return addressBalancer;
+    }
+
     public HostResolver resolver() {
         return resolver == null ? DEFAULT_RESOLVER : resolver;
     }
@@ -335,22 +520,35 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
                 .useDecompress(useDecompress)
                 .decompression(decompression)
                 .resolver(resolver)
+                .addressBalancer(addressBalancer)
                 .h2ClearTextUpgrade(h2ClearTextUpgrade)
                 .useExpectContinue(useExpectContinue)
                 .connectTimeout(connectTimeout)
                 .idleTimeoutSeconds(idleTimeoutSeconds)
                 .readTimeout(readTimeout)
+                .totalTimeout(totalTimeout)
                 .maxContentLength(maxContentLength)
                 .keepAlive(keepAlive)
                 .version(version)
                 .maxRedirects(maxRedirects)
                 .connectionPoolSize(connectionPoolSize)
                 .connectionPoolWaitingQueueLength(connectionPoolWaitingQueueLength)
+                .connectionPoolMinIdle(connectionPoolMinIdle)
+                .connectionPoolMinSize(connectionPoolMinSize)
+                .connectionMaxLifetime(connectionMaxLifetime)
+                .maxRequestsPerConnection(maxRequestsPerConnection)
+                .connectionHealthCheckInterval(connectionHealthCheckInterval)
+                .stripedConnectionPool(stripedConnectionPool)
                 .sslOptions(Reusable.copyOf(sslOptions))
                 .netOptions(Reusable.copyOf(netOptions))
                 .http1Options(Reusable.copyOf(http1Options))
                 .http2Options(Reusable.copyOf(http2Options))
                 .retryOptions(Reusable.copyOf(retryOptions))
+                .hedgingOptions(Reusable.copyOf(hedgingOptions))
+                .circuitBreaker(Reusable.copyOf(circuitBreaker))
+                .concurrencyLimiter(Reusable.copyOf(concurrencyLimiter))
+                .httpCache(Reusable.copyOf(httpCache))
+                .diskCache(diskCache)
                 .channelPoolOptionsProvider(channelPoolOptionsProvider)
                 .addInterceptors(interceptors)
                 .addRequestFilters(requestFilters)
@@ -367,6 +565,10 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
         return readTimeout;
     }
 
+    public int totalTimeout() {
+        return totalTimeout;
+    }
+
     public long maxContentLength() {
         return maxContentLength;
     }
@@ -391,6 +593,30 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
         return connectionPoolWaitingQueueLength;
     }
 
+    public int connectionPoolMinIdle() {
+        return connectionPoolMinIdle;
+    }
+
+    public int connectionPoolMinSize() {
+        return connectionPoolMinSize;
+    }
+
+    public int connectionMaxLifetime() {
+        return connectionMaxLifetime;
+    }
+
+    public int maxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    public int connectionHealthCheckInterval() {
+        return connectionHealthCheckInterval;
+    }
+
+    public boolean isStripedConnectionPool() {
+        return stripedConnectionPool;
+    }
+
     public boolean isUseDecompress() {
         return this.useDecompress;
     }
@@ -435,6 +661,26 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
         return retryOptions;
     }
 
+    public HedgingOptions hedgingOptions() {
+        return hedgingOptions;
+    }
+
+    public CircuitBreaker circuitBreaker() {
+        return circuitBreaker;
+    }
+
+    public ConcurrencyLimiter concurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    public HttpCache httpCache() {
+        return httpCache;
+    }
+
+    public DiskCache diskCache() {
+        return diskCache;
+    }
+
     public int maxRedirects() {
         return maxRedirects;
     }
@@ -464,9 +710,41 @@ public class HttpClientBuilder implements Reusable<HttpClientBuilder> {
         final List<Interceptor> interceptors0 = new LinkedList<>(interceptors);
         interceptors0.addAll(InterceptorFactory.DEFAULT.interceptors());
 
+        // Add CacheInterceptor only when configured and absent
+        if (httpCache != null && absent(interceptors0, CacheInterceptor.class)) {
+            interceptors0.add(new CacheInterceptor(httpCache));
+        }
+
+        // Add DiskCacheInterceptor only when configured and absent
+        if (diskCache != null && absent(interceptors0, DiskCacheInterceptor.class)) {
+            interceptors0.add(new DiskCacheInterceptor(diskCache));
+        }
+
         // Add RetryInterceptor only when configured and absent
         if (retryOptions != null && absent(interceptors0, RetryInterceptor.class)) {
-            interceptors0.add(new RetryInterceptor(retryOptions.predicate(), retryOptions.intervalMillis()));
+            interceptors0.add(new RetryInterceptor(retryOptions.predicate(),
+                    retryOptions.intervalMillis(),
+                    retryOptions.budget()));
+        }
+
+        // Add HedgingInterceptor only when configured and absent
+        if (hedgingOptions != null && absent(interceptors0, HedgingInterceptor.class)) {
+            interceptors0.add(new HedgingInterceptor(hedgingOptions));
+        }
+
+        // Add CircuitBreakerInterceptor only when configured and absent
+        if (circuitBreaker != null && absent(interceptors0, CircuitBreakerInterceptor.class)) {
+            interceptors0.add(new CircuitBreakerInterceptor(circuitBreaker));
+        }
+
+        // Add ConcurrencyLimitInterceptor only when configured and absent
+        if (concurrencyLimiter != null && absent(interceptors0, ConcurrencyLimitInterceptor.class)) {
+            interceptors0.add(new ConcurrencyLimitInterceptor(concurrencyLimiter));
+        }
+
+        // Add DeadlineInterceptor only when absent
+        if (absent(interceptors0, DeadlineInterceptor.class)) {
+            interceptors0.add(new DeadlineInterceptor());
         }
 
         // Add RedirectInterceptor only when configured and absent
@@ -77,6 +77,16 @@ public interface HttpRequest extends Reusable<HttpRequest> {
      */
     int readTimeout();
 
+    /**
+     * The total timeout of current request in milliseconds, which covers all the retries and redirections and
+     * starts once the request is executed.
+     *
+     * @return totalTimeout, 0 means no limit
+     */
+    default int totalTimeout() {
+        return 0;
+    }
+
     /**
      * Whether use multipart encode for {@link MultipartRequest}.
      *
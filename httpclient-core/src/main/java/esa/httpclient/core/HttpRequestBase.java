@@ -33,6 +33,34 @@ public interface HttpRequestBase extends HttpRequest {
 
     HttpRequestBase readTimeout(int readTimeout);
 
+    /**
+     * Sets the priority of current request, the higher the value is, the earlier the request will be served while
+     * waiting for a connection.
+     *
+     * @param priority priority, defaults to 0
+     * @return this
+     */
+    HttpRequestBase priority(int priority);
+
+    /**
+     * Sets the total timeout of current request in milliseconds, the deadline of which is fixed once the request
+     * is executed and then works as same as {@link #deadline(long)}.
+     *
+     * @param totalTimeout total timeout, 0 means no limit
+     * @return this
+     */
+    HttpRequestBase totalTimeout(int totalTimeout);
+
+    /**
+     * Sets the absolute deadline of current request in milliseconds since the epoch. The request which is still
+     * waiting for a connection when the deadline passes will fail with
+     * {@link esa.httpclient.core.exception.DeadlineExceededException}.
+     *
+     * @param deadline deadline, 0 means no deadline
+     * @return this
+     */
+    HttpRequestBase deadline(long deadline);
+
     HttpRequestBase addHeaders(Map<? extends CharSequence, ? extends CharSequence> headers);
 
     HttpRequestBase addParams(Map<String, String> params);
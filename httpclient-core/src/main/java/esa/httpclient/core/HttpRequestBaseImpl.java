@@ -38,6 +38,7 @@ public class HttpRequestBaseImpl implements HttpRequestBase {
     protected Consumer<Handle> handle;
     protected Handler handler;
     private int readTimeout;
+    private int totalTimeout;
     private boolean useUriEncode;
 
     protected HttpRequestBaseImpl(HttpClientBuilder builder,
@@ -51,6 +52,7 @@ public class HttpRequestBaseImpl implements HttpRequestBase {
         this.uri = new HttpUri(uri);
         this.ctx = new NettyContext();
         this.readTimeout = builder.readTimeout();
+        this.totalTimeout = builder.totalTimeout();
         if (builder.retryOptions() != null) {
             this.ctx.maxRetries(builder.retryOptions().maxRetries());
         }
@@ -88,6 +90,26 @@ public class HttpRequestBaseImpl implements HttpRequestBase {
         return self();
     }
 
+    @Override
+    public HttpRequestBase priority(int priority) {
+        ctx.priority(priority);
+        return self();
+    }
+
+    @Override
+    public HttpRequestBase totalTimeout(int totalTimeout) {
+        Checks.checkArg(totalTimeout >= 0, "totalTimeout is " + totalTimeout + " (expected >= 0)");
+        this.totalTimeout = totalTimeout;
+        return self();
+    }
+
+    @Override
+    public HttpRequestBase deadline(long deadline) {
+        Checks.checkArg(deadline >= 0L, "deadline is " + deadline + " (expected >= 0)");
+        ctx.deadline(deadline);
+        return self();
+    }
+
     @Override
     public HttpRequestBase addHeaders(Map<? extends CharSequence, ? extends CharSequence> headers) {
         if (headers == null) {
@@ -211,6 +233,11 @@ public class HttpRequestBaseImpl implements HttpRequestBase {
         return readTimeout;
     }
 
+    @Override
+    public int totalTimeout() {
+        return totalTimeout;
+    }
+
     @Override
     public boolean uriEncode() {
         return useUriEncode;
@@ -236,16 +263,33 @@ public class HttpRequestBaseImpl implements HttpRequestBase {
         dest.ctx.useExpectContinue(source.ctx.isUseExpectContinue());
         dest.ctx.maxRedirects(source.ctx.maxRedirects());
         dest.ctx.maxRetries(source.ctx.maxRetries());
+        dest.ctx.priority(source.ctx.priority());
+        dest.ctx.deadline(source.ctx.deadline());
 
         dest.headers.add(source.headers);
         dest.handle(source.handle);
         dest.handler(source.handler);
         dest.readTimeout(source.readTimeout);
+        dest.totalTimeout(source.totalTimeout);
         if (source.useUriEncode) {
             dest.enableUriEncode();
         }
     }
 
+    /**
+     * Fixes the deadline of current request by {@link #totalTimeout()}, which must be called once the request
+     * starts to execute. The earlier one is used if the deadline has been set explicitly.
+     */
+    protected void startDeadline() {
+        if (totalTimeout <= 0) {
+            return;
+        }
+        final long deadline = System.currentTimeMillis() + totalTimeout;
+        if (ctx.deadline() <= 0L || deadline < ctx.deadline()) {
+            ctx.deadline(deadline);
+        }
+    }
+
     private HttpRequestBaseImpl self() {
         return this;
     }
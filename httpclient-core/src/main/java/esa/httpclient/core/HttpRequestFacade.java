@@ -93,6 +93,15 @@ public interface HttpRequestFacade extends ExecutableRequest {
     @Override
     HttpRequestFacade readTimeout(int readTimeout);
 
+    @Override
+    HttpRequestFacade priority(int priority);
+
+    @Override
+    HttpRequestFacade totalTimeout(int totalTimeout);
+
+    @Override
+    HttpRequestFacade deadline(long deadline);
+
     @Override
     HttpRequestFacade addHeaders(Map<? extends CharSequence, ? extends CharSequence> headers);
 
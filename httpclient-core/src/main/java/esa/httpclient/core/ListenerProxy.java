@@ -47,7 +47,7 @@ public class ListenerProxy implements Listener {
         this.listenersAbsent = (delegate == null);
     }
 
-    ListenerProxy(List<Listener> delegate) {
+    public ListenerProxy(List<Listener> delegate) {
         this.listeners = delegate == null
                 ? Collections.emptyList() : Collections.unmodifiableList(delegate);
         this.listenersAbsent = (delegate == null || delegate.isEmpty());
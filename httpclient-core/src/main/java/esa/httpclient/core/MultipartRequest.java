@@ -48,6 +48,15 @@ public interface MultipartRequest extends ExecutableRequest {
     @Override
     MultipartRequest readTimeout(int readTimeout);
 
+    @Override
+    MultipartRequest priority(int priority);
+
+    @Override
+    MultipartRequest totalTimeout(int totalTimeout);
+
+    @Override
+    MultipartRequest deadline(long deadline);
+
     @Override
     MultipartRequest addHeaders(Map<? extends CharSequence, ? extends CharSequence> headers);
 
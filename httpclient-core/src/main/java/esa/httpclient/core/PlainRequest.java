@@ -35,6 +35,15 @@ public interface PlainRequest extends ExecutableRequest {
     @Override
     PlainRequest readTimeout(int readTimeout);
 
+    @Override
+    PlainRequest priority(int priority);
+
+    @Override
+    PlainRequest totalTimeout(int totalTimeout);
+
+    @Override
+    PlainRequest deadline(long deadline);
+
     @Override
     PlainRequest addHeaders(Map<? extends CharSequence, ? extends CharSequence> headers);
 
@@ -266,6 +266,15 @@ public interface SegmentRequest extends HttpRequestBase {
     @Override
     SegmentRequest readTimeout(int readTimeout);
 
+    @Override
+    SegmentRequest priority(int priority);
+
+    @Override
+    SegmentRequest totalTimeout(int totalTimeout);
+
+    @Override
+    SegmentRequest deadline(long deadline);
+
     @Override
     SegmentRequest addHeaders(Map<? extends CharSequence, ? extends CharSequence> headers);
 
@@ -31,7 +31,52 @@ public class ChannelPoolOptions implements Reusable<ChannelPoolOptions>, Seriali
     private final int poolSize;
     private final int waitingQueueLength;
 
-    private ChannelPoolOptions(int readTimeout, int connectTimeout, int poolSize, int waitingQueueLength) {
+    /**
+     * The count of idle connections which should be kept in the pool. The connections will be opened in the
+     * background as soon as the pool is created, and be replenished once they are closed(eg: closed by idle
+     * timeout or by the server). Note that the total count of connections is still limited by
+     * {@link #poolSize}.
+     */
+    private final int minIdle;
+
+    /**
+     * The max lifetime(in milliseconds) of a connection, 0 means unlimited. A connection which has exceeded its
+     * lifetime will be retired once it's released: GOAWAY will be sent on HTTP/2, and the connection will be closed
+     * after the in-flight response on HTTP/1.1. The lifetime of every connection is jittered, so that the
+     * connections will not be re-established at the same moment.
+     */
+    private final int maxLifetime;
+
+    /**
+     * The max count of requests of a connection, 0 means unlimited. A connection which has served so many requests
+     * will be retired as {@link #maxLifetime}.
+     */
+    private final int maxRequestsPerConnection;
+
+    /**
+     * The min size of the pool, 0 means that the size of the pool is fixed to {@link #poolSize}. Otherwise, the
+     * pool will be sized adaptively in {@code [minPoolSize, poolSize]}: it grows when the acquisitions are queued
+     * or wait too long, and shrinks when the connections sit idle.
+     */
+    private final int minPoolSize;
+
+    /**
+     * The interval(in milliseconds) of checking the idle connections in the background, 0 means disabled. The idle
+     * HTTP/1.1 connections which have been closed by remote peer or have received unexpected bytes are evicted, and
+     * a PING frame is sent on every idle HTTP/2 connection, the connection whose PING has not been acknowledged
+     * until next check is evicted.
+     */
+    private final int healthCheckInterval;
+
+    private ChannelPoolOptions(int readTimeout,
+                               int connectTimeout,
+                               int poolSize,
+                               int waitingQueueLength,
+                               int minIdle,
+                               int maxLifetime,
+                               int maxRequestsPerConnection,
+                               int minPoolSize,
+                               int healthCheckInterval) {
         Checks.checkArg(readTimeout >= 1, "readTimeout is " + readTimeout +
                 " (expected >= 1)");
         Checks.checkArg(connectTimeout >= 1, "connectTimeout is " + connectTimeout +
@@ -40,15 +85,31 @@ public class ChannelPoolOptions implements Reusable<ChannelPoolOptions>, Seriali
                 " (expected >= 1)");
         Checks.checkArg(waitingQueueLength >= 1, "waitingQueueLength is " + waitingQueueLength +
                 " (expected >= 1)");
+        Checks.checkArg(minIdle >= 0, "minIdle is " + minIdle +
+                " (expected >= 0)");
+        Checks.checkArg(maxLifetime >= 0, "maxLifetime is " + maxLifetime +
+                " (expected >= 0)");
+        Checks.checkArg(maxRequestsPerConnection >= 0, "maxRequestsPerConnection is " + maxRequestsPerConnection +
+                " (expected >= 0)");
+        Checks.checkArg(minPoolSize >= 0 && minPoolSize <= poolSize, "minPoolSize is " + minPoolSize +
+                " (expected >= 0 && <= poolSize)");
+        Checks.checkArg(healthCheckInterval >= 0, "healthCheckInterval is " + healthCheckInterval +
+                " (expected >= 0)");
         this.readTimeout = readTimeout;
         this.connectTimeout = connectTimeout;
         this.poolSize = poolSize;
         this.waitingQueueLength = waitingQueueLength;
+        this.minIdle = minIdle;
+        this.maxLifetime = maxLifetime;
+        this.maxRequestsPerConnection = maxRequestsPerConnection;
+        this.minPoolSize = minPoolSize;
+        this.healthCheckInterval = healthCheckInterval;
     }
 
     @Override
     public ChannelPoolOptions copy() {
-        return new ChannelPoolOptions(readTimeout, connectTimeout, poolSize, waitingQueueLength);
+        return new ChannelPoolOptions(readTimeout, connectTimeout, poolSize, waitingQueueLength, minIdle,
+                maxLifetime, maxRequestsPerConnection, minPoolSize, healthCheckInterval);
     }
 
     public static ChannelPoolOptions ofDefault() {
@@ -75,6 +136,30 @@ public class ChannelPoolOptions implements Reusable<ChannelPoolOptions>, Seriali
         return waitingQueueLength;
     }
 
+    public int minIdle() {
+        return minIdle;
+    }
+
+    public int maxLifetime() {
+        return maxLifetime;
+    }
+
+    public int maxRequestsPerConnection() {
+        return maxRequestsPerConnection;
+    }
+
+    public int minPoolSize() {
+        return minPoolSize;
+    }
+
+    public int healthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    public boolean isAdaptive() {
+        return minPoolSize > 0;
+    }
+
     @Override
     public String toString() {
         return new StringJoiner(", ", ChannelPoolOptions.class.getSimpleName() + "[", "]")
@@ -82,6 +167,11 @@ public class ChannelPoolOptions implements Reusable<ChannelPoolOptions>, Seriali
                 .add("connectTimeout=" + connectTimeout)
                 .add("poolSize=" + poolSize)
                 .add("waitingQueueLength=" + waitingQueueLength)
+                .add("minIdle=" + minIdle)
+                .add("maxLifetime=" + maxLifetime)
+                .add("maxRequestsPerConnection=" + maxRequestsPerConnection)
+                .add("minPoolSize=" + minPoolSize)
+                .add("healthCheckInterval=" + healthCheckInterval)
                 .toString();
     }
 
@@ -97,12 +187,18 @@ public class ChannelPoolOptions implements Reusable<ChannelPoolOptions>, Seriali
         return readTimeout == options.readTimeout &&
                 connectTimeout == options.connectTimeout &&
                 poolSize == options.poolSize &&
-                waitingQueueLength == options.waitingQueueLength;
+                waitingQueueLength == options.waitingQueueLength &&
+                minIdle == options.minIdle &&
+                maxLifetime == options.maxLifetime &&
+                maxRequestsPerConnection == options.maxRequestsPerConnection &&
+                minPoolSize == options.minPoolSize &&
+                healthCheckInterval == options.healthCheckInterval;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(readTimeout, connectTimeout, poolSize, waitingQueueLength);
+        return Objects.hash(readTimeout, connectTimeout, poolSize, waitingQueueLength, minIdle,
+                maxLifetime, maxRequestsPerConnection, minPoolSize, healthCheckInterval);
     }
 
     public static class ChannelPoolOptionsBuilder {
@@ -111,6 +207,11 @@ public class ChannelPoolOptions implements Reusable<ChannelPoolOptions>, Seriali
         private int connectTimeout = 3000;
         private int poolSize = 512;
         private int waitingQueueLength = 256;
+        private int minIdle;
+        private int maxLifetime;
+        private int maxRequestsPerConnection;
+        private int minPoolSize;
+        private int healthCheckInterval;
 
         ChannelPoolOptionsBuilder() {
         }
@@ -135,8 +236,34 @@ public class ChannelPoolOptions implements Reusable<ChannelPoolOptions>, Seriali
             return this;
         }
 
+        public ChannelPoolOptionsBuilder minIdle(int minIdle) {
+            this.minIdle = minIdle;
+            return this;
+        }
+
+        public ChannelPoolOptionsBuilder maxLifetime(int maxLifetime) {
+            this.maxLifetime = maxLifetime;
+            return this;
+        }
+
+        public ChannelPoolOptionsBuilder maxRequestsPerConnection(int maxRequestsPerConnection) {
+            this.maxRequestsPerConnection = maxRequestsPerConnection;
+            return this;
+        }
+
+        public ChannelPoolOptionsBuilder minPoolSize(int minPoolSize) {
+            this.minPoolSize = minPoolSize;
+            return this;
+        }
+
+        public ChannelPoolOptionsBuilder healthCheckInterval(int healthCheckInterval) {
+            this.healthCheckInterval = healthCheckInterval;
+            return this;
+        }
+
         public ChannelPoolOptions build() {
-            return new ChannelPoolOptions(readTimeout, connectTimeout, poolSize, waitingQueueLength);
+            return new ChannelPoolOptions(readTimeout, connectTimeout, poolSize, waitingQueueLength, minIdle,
+                    maxLifetime, maxRequestsPerConnection, minPoolSize, healthCheckInterval);
         }
 
     }
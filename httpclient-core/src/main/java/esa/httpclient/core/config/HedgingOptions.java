@@ -0,0 +1,149 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.config;
+
+import esa.commons.Checks;
+import esa.httpclient.core.Reusable;
+import esa.httpclient.core.exec.RetryBudget;
+
+import java.io.Serializable;
+import java.util.StringJoiner;
+
+/**
+ * Options of hedged requests. If no response of an idempotent request has arrived within {@link #delayMillis()}
+ * (or the observed {@link #percentile()} latency of the host), another copy of the request will be sent and the
+ * first response wins.
+ */
+public class HedgingOptions implements Reusable<HedgingOptions>, Serializable {
+
+    private static final long serialVersionUID = 2837562165381097617L;
+
+    private final long delayMillis;
+    private final double percentile;
+    private final int maxHedges;
+    private final transient RetryBudget budget;
+
+    private HedgingOptions(long delayMillis,
+                           double percentile,
+                           int maxHedges,
+                           RetryBudget budget) {
+        Checks.checkArg(delayMillis > 0L, "delayMillis is " + delayMillis + " (expected > 0)");
+        Checks.checkArg(percentile >= 0.0d && percentile < 1.0d, "percentile is " + percentile
+                + " (expected >= 0 and < 1)");
+        Checks.checkArg(maxHedges >= 1, "maxHedges is " + maxHedges + " (expected >= 1)");
+        this.delayMillis = delayMillis;
+        this.percentile = percentile;
+        this.maxHedges = maxHedges;
+        this.budget = budget;
+    }
+
+    public static HedgingOptions ofDefault() {
+        return new HedgingOptionsBuilder().build();
+    }
+
+    public static HedgingOptionsBuilder options() {
+        return new HedgingOptionsBuilder();
+    }
+
+    @Override
+    public HedgingOptions copy() {
+        return new HedgingOptions(delayMillis, percentile, maxHedges, Reusable.copyOf(budget));
+    }
+
+    public long delayMillis() {
+        return delayMillis;
+    }
+
+    public double percentile() {
+        return percentile;
+    }
+
+    public int maxHedges() {
+        return maxHedges;
+    }
+
+    public RetryBudget budget() {
+        return budget;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", HedgingOptions.class.getSimpleName() + "[", "]")
+                .add("delayMillis=" + delayMillis)
+                .add("percentile=" + percentile)
+                .add("maxHedges=" + maxHedges)
+                .add("budget=" + budget)
+                .toString();
+    }
+
+    public static class HedgingOptionsBuilder {
+
+        private long delayMillis = 100L;
+        private double percentile;
+        private int maxHedges = 1;
+        private RetryBudget budget = RetryBudget.of(0.1d, 10);
+
+        HedgingOptionsBuilder() {
+        }
+
+        /**
+         * Sets the fixed delay before sending a hedged request, which is also used before enough latencies of the
+         * host have been observed if {@link #percentile(double)} is configured.
+         *
+         * @param delayMillis delay in milliseconds
+         * @return this builder
+         */
+        public HedgingOptionsBuilder delayMillis(long delayMillis) {
+            this.delayMillis = delayMillis;
+            return this;
+        }
+
+        /**
+         * Uses the observed latency of the host at given percentile as the delay, eg: 0.95 means p95, and 0 means
+         * that the fixed {@link #delayMillis(long)} is always used.
+         *
+         * @param percentile percentile
+         * @return this builder
+         */
+        public HedgingOptionsBuilder percentile(double percentile) {
+            this.percentile = percentile;
+            return this;
+        }
+
+        public HedgingOptionsBuilder maxHedges(int maxHedges) {
+            this.maxHedges = maxHedges;
+            return this;
+        }
+
+        /**
+         * Limits the hedged requests of every host by given {@link RetryBudget}, there is no limit if it's null.
+         * Defaults to 10% of requests plus 10 per second.
+         *
+         * @param budget budget
+         * @return this builder
+         */
+        public HedgingOptionsBuilder budget(RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
+        public HedgingOptions build() {
+            return new HedgingOptions(delayMillis, percentile, maxHedges, budget);
+        }
+
+    }
+
+}
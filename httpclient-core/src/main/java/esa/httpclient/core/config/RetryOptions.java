@@ -17,6 +17,7 @@ package esa.httpclient.core.config;
 
 import esa.commons.Checks;
 import esa.httpclient.core.Reusable;
+import esa.httpclient.core.exec.RetryBudget;
 import esa.httpclient.core.exec.RetryPredicate;
 import esa.httpclient.core.exec.RetryPredicateImpl;
 
@@ -31,16 +32,19 @@ public class RetryOptions implements Reusable<RetryOptions>, Serializable {
     private final int maxRetries;
     private final transient RetryPredicate predicate;
     private final transient IntToLongFunction intervalMillis;
+    private final transient RetryBudget budget;
 
     private RetryOptions(int maxRetries,
                          RetryPredicate predicate,
-                         IntToLongFunction intervalMillis) {
+                         IntToLongFunction intervalMillis,
+                         RetryBudget budget) {
         Checks.checkNotNull(predicate, "RetryPredicate must not be null");
         Checks.checkArg(maxRetries >= 1, "maxRetries is " + maxRetries +
                 " (expected >= 1)");
         this.maxRetries = maxRetries;
         this.predicate = predicate;
         this.intervalMillis = intervalMillis;
+        this.budget = budget;
     }
 
     public static RetryOptions ofDefault() {
@@ -53,7 +57,7 @@ public class RetryOptions implements Reusable<RetryOptions>, Serializable {
 
     @Override
     public RetryOptions copy() {
-        return new RetryOptions(maxRetries, predicate, intervalMillis);
+        return new RetryOptions(maxRetries, predicate, intervalMillis, Reusable.copyOf(budget));
     }
 
     public int maxRetries() {
@@ -68,12 +72,17 @@ public class RetryOptions implements Reusable<RetryOptions>, Serializable {
         return this.intervalMillis;
     }
 
+    public RetryBudget budget() {
+        return budget;
+    }
+
     @Override
     public String toString() {
         return new StringJoiner(", ", RetryOptions.class.getSimpleName() + "[", "]")
                 .add("maxRetries=" + maxRetries)
                 .add("predicate=" + predicate)
                 .add("intervalMillis=" + intervalMillis)
+                .add("budget=" + budget)
                 .toString();
     }
 
@@ -82,6 +91,7 @@ public class RetryOptions implements Reusable<RetryOptions>, Serializable {
         private int maxRetries = 3;
         private RetryPredicate predicate = RetryPredicateImpl.DEFAULT;
         private IntToLongFunction intervalMillis;
+        private RetryBudget budget;
 
         RetryOptionsBuilder() {
         }
@@ -101,8 +111,19 @@ public class RetryOptions implements Reusable<RetryOptions>, Serializable {
             return this;
         }
 
+        /**
+         * Limits the retries of every host by given {@link RetryBudget}, there is no limit if it's null.
+         *
+         * @param budget budget
+         * @return this builder
+         */
+        public RetryOptionsBuilder budget(RetryBudget budget) {
+            this.budget = budget;
+            return this;
+        }
+
         public RetryOptions build() {
-            return new RetryOptions(maxRetries, predicate, intervalMillis);
+            return new RetryOptions(maxRetries, predicate, intervalMillis, budget);
         }
 
     }
@@ -0,0 +1,30 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exception;
+
+/**
+ * The exception which is thrown when the count of in-flight requests to target address has reached the adaptive
+ * concurrency limit, and it doesn't fill the stack trace so that the request can fail fast.
+ */
+public class ConcurrencyLimitExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = -3386128957823462187L;
+
+    public ConcurrencyLimitExceededException(String msg) {
+        super(msg, null, false, false);
+    }
+
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exception;
+
+/**
+ * The exception which is thrown when the deadline of a request has passed before it could be completed, eg: the
+ * deadline can no longer be met while waiting for a connection. It doesn't fill the stack trace so that the
+ * request can fail fast.
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 4817398451623076102L;
+
+    public DeadlineExceededException(String msg) {
+        super(msg, null, false, false);
+    }
+
+}
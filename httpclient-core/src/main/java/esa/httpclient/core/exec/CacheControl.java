@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.StringUtils;
+import esa.commons.http.HttpHeaderNames;
+import esa.commons.http.HttpHeaders;
+
+import java.util.List;
+
+/**
+ * The directives of {@code Cache-Control} header(RFC 9111), which are used by {@link CacheInterceptor}.
+ */
+final class CacheControl {
+
+    private static final CacheControl EMPTY = new CacheControl();
+
+    boolean noStore;
+    boolean noCache;
+    boolean isPrivate;
+    boolean isPublic;
+    boolean mustRevalidate;
+    long maxAge = -1L;
+    long sMaxAge = -1L;
+    long staleWhileRevalidate = -1L;
+
+    private CacheControl() {
+    }
+
+    /**
+     * Parses the {@code Cache-Control} of given headers, and {@code Pragma: no-cache} is regarded as
+     * {@code no-cache} if the {@code Cache-Control} is absent.
+     *
+     * @param headers headers
+     * @return directives
+     */
+    static CacheControl parse(HttpHeaders headers) {
+        final List<String> values = headers.getAll(HttpHeaderNames.CACHE_CONTROL);
+        if (values == null || values.isEmpty()) {
+            final String pragma = headers.get(HttpHeaderNames.PRAGMA);
+            if (pragma != null && pragma.toLowerCase().contains("no-cache")) {
+                final CacheControl cc = new CacheControl();
+                cc.noCache = true;
+                return cc;
+            }
+            return EMPTY;
+        }
+
+        final CacheControl cc = new CacheControl();
+        for (String value : values) {
+            for (String directive : value.split(",")) {
+                cc.apply(directive.trim());
+            }
+        }
+        return cc;
+    }
+
+    private void apply(String directive) {
+        if (directive.isEmpty()) {
+            return;
+        }
+
+        final int index = directive.indexOf('=');
+        final String name = (index < 0 ? directive : directive.substring(0, index)).trim().toLowerCase();
+        final String value = index < 0 ? null : directive.substring(index + 1).trim();
+        switch (name) {
+            case "no-store":
+                noStore = true;
+                break;
+            case "no-cache":
+                // The qualified form(no-cache="field") is regarded as the unqualified one, which is more strict.
+                noCache = true;
+                break;
+            case "private":
+                isPrivate = true;
+                break;
+            case "public":
+                isPublic = true;
+                break;
+            case "must-revalidate":
+            case "proxy-revalidate":
+                mustRevalidate = true;
+                break;
+            case "max-age":
+                maxAge = seconds(value);
+                break;
+            case "s-maxage":
+                sMaxAge = seconds(value);
+                break;
+            case "stale-while-revalidate":
+                staleWhileRevalidate = seconds(value);
+                break;
+            default:
+                // Ignore unknown directives.
+                break;
+        }
+    }
+
+    /**
+     * Parses delta-seconds, and an invalid value is regarded as 0(which means stale) according to RFC 9111.
+     */
+    private static long seconds(String value) {
+        if (StringUtils.isEmpty(value)) {
+            return 0L;
+        }
+
+        String value0 = value;
+        if (value0.length() >= 2 && value0.charAt(0) == '"' && value0.charAt(value0.length() - 1) == '"') {
+            value0 = value0.substring(1, value0.length() - 1);
+        }
+        try {
+            return Math.max(0L, Long.parseLong(value0));
+        } catch (NumberFormatException ex) {
+            // Overflow is regarded as the greatest positive integer.
+            return value0.chars().allMatch(Character::isDigit) && !value0.isEmpty() ? Integer.MAX_VALUE : 0L;
+        }
+    }
+}
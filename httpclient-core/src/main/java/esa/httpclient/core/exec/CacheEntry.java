@@ -0,0 +1,397 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.Checks;
+import esa.commons.http.HttpHeaderNames;
+import esa.commons.http.HttpHeaders;
+import esa.commons.http.HttpVersion;
+import esa.commons.netty.core.Buffer;
+import esa.commons.netty.core.BufferImpl;
+import esa.commons.netty.http.Http1HeadersImpl;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import io.netty.buffer.ByteBuf;
+import io.netty.handler.codec.DateFormatter;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * A response which is stored in {@link HttpCache}, whose body is held in a pooled direct {@link ByteBuf}. The
+ * reference of the body which is held by the entry is released once the entry is removed from the cache.
+ */
+final class CacheEntry {
+
+    /**
+     * Estimated overhead of an entry and every header in bytes.
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int HEADER_OVERHEAD = 64;
+
+    final int status;
+    final HttpVersion version;
+    final HttpHeaders headers;
+    final ByteBuf body;
+    final CacheControl cc;
+    final String[] varyValues;
+    final long requestTime;
+    final long responseTime;
+    final AtomicBoolean revalidating = new AtomicBoolean();
+
+    private final long initialAgeMillis;
+    private final long freshnessLifetimeMillis;
+    private final String[] varyNames;
+    private final int weight;
+
+    /**
+     * Creates a {@link CacheEntry}.
+     *
+     * @param status        status
+     * @param version       version
+     * @param headers       headers, which are owned by the entry
+     * @param varyValues    values of the request headers nominated by {@code Vary}, in the order of the names
+     *                      which are sorted in lower case
+     * @param body          body, whose reference is owned by the entry
+     * @param requestTime   the time when the request was sent
+     * @param responseTime  the time when the response was received
+     * @param shared        whether the entry is stored by a shared cache
+     */
+    CacheEntry(int status,
+               HttpVersion version,
+               HttpHeaders headers,
+               String[] varyValues,
+               ByteBuf body,
+               long requestTime,
+               long responseTime,
+               boolean shared) {
+        this.status = status;
+        this.version = version;
+        this.headers = headers;
+        this.body = body;
+        this.cc = CacheControl.parse(headers);
+        this.requestTime = requestTime;
+        this.responseTime = responseTime;
+        this.varyNames = varyNamesOf(headers);
+        Checks.checkArg(varyValues.length == varyNames.length, "varyValues doesn't match Vary");
+        this.varyValues = varyValues;
+
+        // Calculate age and freshness lifetime according to RFC 9111 4.2
+        final long date = dateOf(headers, HttpHeaderNames.DATE, responseTime);
+        final long apparentAge = Math.max(0L, responseTime - date);
+        final long correctedAgeValue = TimeUnit.SECONDS.toMillis(ageOf(headers)) + (responseTime - requestTime);
+        this.initialAgeMillis = Math.max(apparentAge, correctedAgeValue);
+        if (shared && cc.sMaxAge >= 0L) {
+            this.freshnessLifetimeMillis = TimeUnit.SECONDS.toMillis(cc.sMaxAge);
+        } else if (cc.maxAge >= 0L) {
+            this.freshnessLifetimeMillis = TimeUnit.SECONDS.toMillis(cc.maxAge);
+        } else if (headers.contains(HttpHeaderNames.EXPIRES)) {
+            // An invalid Expires means that the response is already expired.
+            this.freshnessLifetimeMillis = Math.max(0L, dateOf(headers, HttpHeaderNames.EXPIRES, 0L) - date);
+        } else {
+            // Heuristic freshness is not used, the response must be revalidated before reusing.
+            this.freshnessLifetimeMillis = 0L;
+        }
+
+        long weight = ENTRY_OVERHEAD + (long) body.readableBytes();
+        for (Iterator<Map.Entry<CharSequence, CharSequence>> it = headers.iteratorCharSequence(); it.hasNext(); ) {
+            final Map.Entry<CharSequence, CharSequence> header = it.next();
+            weight += HEADER_OVERHEAD + header.getKey().length() + header.getValue().length();
+        }
+        this.weight = (int) Math.min(Integer.MAX_VALUE, weight);
+    }
+
+    /**
+     * Creates a {@link CacheEntry} of given response, whose body is copied to given {@link ByteBuf}.
+     */
+    static CacheEntry of(HttpRequest request,
+                         HttpResponse response,
+                         ByteBuf body,
+                         long requestTime,
+                         long responseTime,
+                         boolean shared) {
+        final HttpHeaders headers = new Http1HeadersImpl();
+        headers.add(response.headers());
+        final ByteBuf content = response.body().getByteBuf();
+        body.writeBytes(content, content.readerIndex(), content.readableBytes());
+        return new CacheEntry(response.status(), response.version(), headers,
+                varyValuesOf(request, varyNamesOf(headers)), body, requestTime, responseTime, shared);
+    }
+
+    /**
+     * Creates a {@link CacheEntry} of given response whose body is used directly, which means that the entry
+     * doesn't own the body and must not be released.
+     */
+    static CacheEntry wrap(HttpRequest request,
+                           HttpResponse response,
+                           long requestTime,
+                           long responseTime,
+                           boolean shared) {
+        final HttpHeaders headers = new Http1HeadersImpl();
+        headers.add(response.headers());
+        return new CacheEntry(response.status(), response.version(), headers,
+                varyValuesOf(request, varyNamesOf(headers)), response.body().getByteBuf(), requestTime,
+                responseTime, shared);
+    }
+
+    /**
+     * Creates a new {@link CacheEntry} which is updated by the headers of a {@code 304 Not Modified} response, and
+     * shares the body with current entry.
+     *
+     * @return entry, or {@code null} if the body of current entry has been released concurrently
+     */
+    CacheEntry refresh(HttpRequest request,
+                       HttpResponse notModified,
+                       long requestTime,
+                       long responseTime,
+                       boolean shared) {
+        final HttpHeaders headers0 = new Http1HeadersImpl();
+        headers0.add(headers);
+        for (String name : notModified.headers().names()) {
+            // The length of the stored body never changes.
+            if (HttpHeaderNames.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                continue;
+            }
+            headers0.set(name, notModified.headers().getAll(name));
+        }
+        try {
+            body.retain();
+        } catch (IllegalReferenceCountException ex) {
+            return null;
+        }
+        return new CacheEntry(status, version, headers0, varyValuesOf(request, varyNamesOf(headers0)),
+                body, requestTime, responseTime, shared);
+    }
+
+    /**
+     * Obtains the current age in milliseconds.
+     *
+     * @param now current time in milliseconds
+     * @return age
+     */
+    long ageMillis(long now) {
+        return initialAgeMillis + Math.max(0L, now - responseTime);
+    }
+
+    long freshnessLifetimeMillis() {
+        return freshnessLifetimeMillis;
+    }
+
+    boolean hasValidator() {
+        return headers.contains(HttpHeaderNames.ETAG) || headers.contains(HttpHeaderNames.LAST_MODIFIED);
+    }
+
+    boolean isVaryAll() {
+        for (String name : varyNames) {
+            if ("*".equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the stored response can be used for given request, which depends on the headers nominated by
+     * the {@code Vary} header.
+     *
+     * @param request request
+     * @return {@code true} if matched
+     */
+    boolean matches(HttpRequest request) {
+        return Arrays.equals(varyValues, varyValuesOf(request, varyNames));
+    }
+
+    int weight() {
+        return weight;
+    }
+
+    /**
+     * Creates a {@link HttpResponse} of the stored response, which can be released by
+     * {@link io.netty.util.ReferenceCountUtil#release(Object)}.
+     *
+     * @param body       body, which is a view of {@link #body} and whose reference is owned by the response
+     * @param ageMillis  current age
+     * @return response
+     */
+    HttpResponse toResponse(ByteBuf body, long ageMillis) {
+        final HttpHeaders headers0 = new Http1HeadersImpl();
+        headers0.add(headers);
+        headers0.set(HttpHeaderNames.AGE, String.valueOf(TimeUnit.MILLISECONDS.toSeconds(ageMillis)));
+        return new CachedResponse(status, version, headers0, new BufferImpl(body));
+    }
+
+    void release() {
+        try {
+            body.release();
+        } catch (IllegalReferenceCountException ignored) {
+            // Released already.
+        }
+    }
+
+    private static long ageOf(HttpHeaders headers) {
+        final String age = headers.get(HttpHeaderNames.AGE);
+        if (age == null) {
+            return 0L;
+        }
+        try {
+            return Math.max(0L, Long.parseLong(age.trim()));
+        } catch (NumberFormatException ex) {
+            return 0L;
+        }
+    }
+
+    private static long dateOf(HttpHeaders headers, CharSequence name, long defaultValue) {
+        final String value = headers.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        final Date date = DateFormatter.parseHttpDate(value);
+        return date == null ? defaultValue : date.getTime();
+    }
+
+    private static String[] varyNamesOf(HttpHeaders headers) {
+        final String vary = String.join(",", headers.getAll(HttpHeaderNames.VARY));
+        if (vary.isEmpty()) {
+            return new String[0];
+        }
+        return Arrays.stream(vary.split(","))
+                .map(String::trim)
+                .filter(name -> !name.isEmpty())
+                .map(String::toLowerCase)
+                .sorted()
+                .distinct()
+                .toArray(String[]::new);
+    }
+
+    private static String[] varyValuesOf(HttpRequest request, String[] varyNames) {
+        final String[] values = new String[varyNames.length];
+        for (int i = 0; i < varyNames.length; i++) {
+            final CharSequence value = request.getHeader(varyNames[i]);
+            values[i] = value == null ? null : value.toString();
+        }
+        return values;
+    }
+
+    /**
+     * A {@link HttpResponse} which is served by the cache, and releasing it releases the reference of its body.
+     */
+    private static final class CachedResponse implements HttpResponse, ReferenceCounted {
+
+        private final int status;
+        private final HttpVersion version;
+        private final HttpHeaders headers;
+        private final HttpHeaders trailers = new Http1HeadersImpl();
+        private final Buffer body;
+
+        private CachedResponse(int status, HttpVersion version, HttpHeaders headers, Buffer body) {
+            this.status = status;
+            this.version = version;
+            this.headers = headers;
+            this.body = body;
+        }
+
+        @Override
+        public int status() {
+            return status;
+        }
+
+        @Override
+        public HttpVersion version() {
+            return version;
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return headers;
+        }
+
+        @Override
+        public Buffer body() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders trailers() {
+            return trailers;
+        }
+
+        @Override
+        public boolean aggregated() {
+            return true;
+        }
+
+        @Override
+        public int refCnt() {
+            return body.getByteBuf().refCnt();
+        }
+
+        @Override
+        public CachedResponse retain() {
+            body.getByteBuf().retain();
+            return this;
+        }
+
+        @Override
+        public CachedResponse retain(int increment) {
+            body.getByteBuf().retain(increment);
+            return this;
+        }
+
+        @Override
+        public CachedResponse touch() {
+            body.getByteBuf().touch();
+            return this;
+        }
+
+        @Override
+        public CachedResponse touch(Object hint) {
+            body.getByteBuf().touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return body.getByteBuf().release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return body.getByteBuf().release(decrement);
+        }
+
+        @Override
+        public String toString() {
+            return "CachedResponse[status=" + status + ", headers=" + headers + "]";
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return this == o;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(headers);
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.Checks;
+import esa.commons.http.HttpHeaderNames;
+import esa.commons.http.HttpHeaders;
+import esa.commons.http.HttpMethod;
+import esa.commons.logging.Logger;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.util.Futures;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static esa.httpclient.core.exec.RequestExecutorImpl.CUSTOM_HANDLE_KEY;
+
+/**
+ * This interceptor serves the {@code GET} requests from {@link HttpCache} according to the caching semantics of
+ * RFC 9111, which includes:
+ * <ul>
+ *     <li>freshness which is calculated by {@code max-age}, {@code s-maxage}(for shared cache) or {@code Expires},
+ *     and heuristic freshness is not used</li>
+ *     <li>{@code no-store}, {@code no-cache}, {@code private}, {@code must-revalidate} of both requests and
+ *     responses</li>
+ *     <li>secondary keys which are nominated by {@code Vary}</li>
+ *     <li>revalidation by {@code ETag} and {@code Last-Modified}, and a {@code 304 Not Modified} response
+ *     refreshes the stored one</li>
+ *     <li>{@code stale-while-revalidate}, a stale response is served while it's revalidated in background</li>
+ *     <li>invalidation of the stored response after an unsafe request to the same uri succeeds</li>
+ * </ul>
+ * Requests with conditional or {@code Range} headers, and the ones which are handled by a custom handle are
+ * not served by the cache.
+ */
+public class CacheInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerUtils.logger();
+
+    private final CacheStore cache;
+
+    public CacheInterceptor(HttpCache cache) {
+        this((CacheStore) cache);
+    }
+
+    CacheInterceptor(CacheStore cache) {
+        Checks.checkNotNull(cache, "cache must not be null");
+        this.cache = cache;
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> proceed(HttpRequest request, ExecChain next) {
+        if (isUnsafe(request.method())) {
+            return invalidateOnSuccess(request, next);
+        }
+        if (!isCacheable(request, next)) {
+            return next.proceed(request);
+        }
+
+        final CacheControl requestCc = CacheControl.parse(request.headers());
+        if (requestCc.noStore) {
+            return next.proceed(request);
+        }
+
+        final String key = keyOf(request);
+        CacheEntry entry = cache.get(key);
+        if (entry != null && !entry.matches(request)) {
+            entry = null;
+        }
+        if (entry != null) {
+            final long ageMillis = entry.ageMillis(cache.now());
+            final long lifetimeMillis = entry.freshnessLifetimeMillis();
+            final boolean mayServeStored = !entry.cc.noCache && !requestCc.noCache;
+            if (mayServeStored && ageMillis < lifetimeMillis
+                    && (requestCc.maxAge < 0L || ageMillis <= TimeUnit.SECONDS.toMillis(requestCc.maxAge))) {
+                final HttpResponse response = cache.serve(entry, ageMillis);
+                if (response != null) {
+                    cache.onHit();
+                    return CompletableFuture.completedFuture(response);
+                }
+            } else if (mayServeStored && !entry.cc.mustRevalidate && entry.cc.staleWhileRevalidate >= 0L
+                    && entry.hasValidator()
+                    && ageMillis < lifetimeMillis + TimeUnit.SECONDS.toMillis(entry.cc.staleWhileRevalidate)) {
+                final HttpResponse response = cache.serve(entry, ageMillis);
+                if (response != null) {
+                    cache.onHit();
+                    revalidateInBackground(request, next, key, entry);
+                    return CompletableFuture.completedFuture(response);
+                }
+            }
+
+            if (entry.hasValidator()) {
+                return revalidate(request, next, key, entry);
+            }
+        }
+
+        return miss(request, next, key, requestCc);
+    }
+
+    @Override
+    public int getOrder() {
+        return -5500;
+    }
+
+    private CompletableFuture<HttpResponse> miss(HttpRequest request,
+                                                 ExecChain next,
+                                                 String key,
+                                                 CacheControl requestCc) {
+        cache.onMiss();
+        final long requestTime = cache.now();
+        final CompletableFuture<HttpResponse> proceeding = next.proceed(request);
+        return Futures.propagateCancellation(proceeding, proceeding.thenApply(rsp -> {
+            store(key, request, requestCc, rsp, requestTime);
+            return rsp;
+        }));
+    }
+
+    private void revalidateInBackground(HttpRequest request, ExecChain next, String key, CacheEntry entry) {
+        if (!entry.revalidating.compareAndSet(false, true)) {
+            return;
+        }
+
+        CompletableFuture<HttpResponse> revalidation;
+        try {
+            // Nobody waits for the revalidation, so it mustn't be cut off by the deadline of current request.
+            revalidation = revalidate(request.copy(), next.withCtx(next.ctx().copyWithoutDeadline()), key, entry);
+        } catch (Throwable ex) {
+            revalidation = Futures.completed(ex);
+        }
+        revalidation.whenComplete((rsp, th) -> {
+            entry.revalidating.set(false);
+            // Nobody consumes the response which is served by the revalidation.
+            ReferenceCountUtil.release(rsp);
+            if (th != null && logger.isDebugEnabled()) {
+                logger.debug("Failed to revalidate the stored response of request: {}", request, th);
+            }
+        });
+    }
+
+    private CompletableFuture<HttpResponse> revalidate(HttpRequest request,
+                                                       ExecChain next,
+                                                       String key,
+                                                       CacheEntry entry) {
+        final HttpRequest conditional = request.copy();
+        final String etag = entry.headers.get(HttpHeaderNames.ETAG);
+        if (etag != null) {
+            conditional.setHeader(HttpHeaderNames.IF_NONE_MATCH, etag);
+        }
+        final String lastModified = entry.headers.get(HttpHeaderNames.LAST_MODIFIED);
+        if (lastModified != null) {
+            conditional.setHeader(HttpHeaderNames.IF_MODIFIED_SINCE, lastModified);
+        }
+
+        cache.onRevalidation();
+        final long requestTime = cache.now();
+        final CompletableFuture<HttpResponse> proceeding = next.proceed(conditional);
+        final CompletableFuture<HttpResponse> result = Futures.propagateCancellation(proceeding,
+                new CompletableFuture<>());
+        proceeding.whenComplete((rsp, th) -> {
+            if (th != null) {
+                result.completeExceptionally(th);
+                return;
+            }
+            try {
+                if (rsp.status() != 304) {
+                    store(key, request, CacheControl.parse(request.headers()), rsp, requestTime);
+                    result.complete(rsp);
+                    return;
+                }
+                final HttpResponse response = refresh(request, key, entry, rsp, requestTime);
+                if (response != null) {
+                    if (!result.complete(response)) {
+                        // Cancelled by the caller, so the served response won't be consumed.
+                        ReferenceCountUtil.release(response);
+                    }
+                    return;
+                }
+            } catch (Throwable ex) {
+                result.completeExceptionally(ex);
+                return;
+            }
+
+            // The stored entry has been released while revalidating, so it's regarded as a miss and the request
+            // is re-issued unconditionally, because the caller never expects a 304.
+            final CompletableFuture<HttpResponse> reissued;
+            try {
+                reissued = miss(request, next, key, CacheControl.parse(request.headers()));
+            } catch (Throwable ex) {
+                result.completeExceptionally(ex);
+                return;
+            }
+            Futures.propagateCancellation(reissued, result);
+            reissued.whenComplete((rsp0, th0) -> {
+                if (th0 == null) {
+                    result.complete(rsp0);
+                } else {
+                    result.completeExceptionally(th0);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Refreshes the stored entry by given {@code 304 Not Modified} response, and serves it.
+     *
+     * @return response, or {@code null} if the stored entry has been released concurrently
+     */
+    private HttpResponse refresh(HttpRequest request,
+                                 String key,
+                                 CacheEntry entry,
+                                 HttpResponse notModified,
+                                 long requestTime) {
+        final long responseTime = cache.now();
+        final CacheEntry refreshed = entry.refresh(request, notModified, requestTime, responseTime,
+                cache.shared());
+        if (refreshed == null) {
+            return null;
+        }
+        cache.onRevalidated();
+        // Serve before storing, the refreshed entry may be evicted at once.
+        final HttpResponse response = cache.serve(refreshed, refreshed.ageMillis(responseTime));
+        if (response != null && isStorable(request, notModified.headers(), refreshed.cc, cache.shared())) {
+            cache.put(key, refreshed);
+        } else {
+            refreshed.release();
+        }
+        return response;
+    }
+
+    private void store(String key,
+                       HttpRequest request,
+                       CacheControl requestCc,
+                       HttpResponse response,
+                       long requestTime) {
+        final CacheControl cc = CacheControl.parse(response.headers());
+        if (requestCc.noStore || !response.aggregated() || !isStorableStatus(response.status())
+                || !isStorable(request, response.headers(), cc, cache.shared())) {
+            return;
+        }
+
+        if (cache.put(key, request, response, requestTime, cache.now()) && logger.isDebugEnabled()) {
+            logger.debug("Stored the response of request: {}", request);
+        }
+    }
+
+    private CompletableFuture<HttpResponse> invalidateOnSuccess(HttpRequest request, ExecChain next) {
+        final String key = keyOf(request);
+        final CompletableFuture<HttpResponse> proceeding = next.proceed(request);
+        return Futures.propagateCancellation(proceeding, proceeding.thenApply(rsp -> {
+            if (rsp.status() < 400) {
+                cache.invalidate(key);
+            }
+            return rsp;
+        }));
+    }
+
+    static boolean isStorable(HttpRequest request, HttpHeaders headers, CacheControl cc, boolean shared) {
+        if (cc.noStore || (shared && cc.isPrivate)) {
+            return false;
+        }
+        if (shared && request.getHeader(HttpHeaderNames.AUTHORIZATION) != null
+                && !cc.isPublic && !cc.mustRevalidate && cc.sMaxAge < 0L) {
+            return false;
+        }
+        for (String vary : headers.getAll(HttpHeaderNames.VARY)) {
+            if (vary.contains("*")) {
+                return false;
+            }
+        }
+
+        // Storing a response which can neither be fresh nor be revalidated is useless.
+        return cc.maxAge >= 0L
+                || (shared && cc.sMaxAge >= 0L)
+                || headers.contains(HttpHeaderNames.EXPIRES)
+                || headers.contains(HttpHeaderNames.ETAG)
+                || headers.contains(HttpHeaderNames.LAST_MODIFIED);
+    }
+
+    static boolean isStorableStatus(int status) {
+        switch (status) {
+            case 200:
+            case 203:
+            case 204:
+            case 300:
+            case 301:
+            case 308:
+            case 404:
+            case 405:
+            case 410:
+            case 414:
+            case 501:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static boolean isUnsafe(HttpMethod method) {
+        return method != HttpMethod.GET
+                && method != HttpMethod.HEAD
+                && method != HttpMethod.OPTIONS
+                && method != HttpMethod.TRACE;
+    }
+
+    private static boolean isCacheable(HttpRequest request, ExecChain next) {
+        if (request.method() != HttpMethod.GET || request.isSegmented()) {
+            return false;
+        }
+        if (request.getHeader(HttpHeaderNames.IF_NONE_MATCH) != null
+                || request.getHeader(HttpHeaderNames.IF_MODIFIED_SINCE) != null
+                || request.getHeader(HttpHeaderNames.RANGE) != null) {
+            return false;
+        }
+
+        return !next.ctx().getAttr(CUSTOM_HANDLE_KEY, false);
+    }
+
+    private static String keyOf(HttpRequest request) {
+        return request.scheme() + "://" + request.uri().netURI().getRawAuthority()
+                + request.uri().spliceRelativeRefDirectly();
+    }
+
+}
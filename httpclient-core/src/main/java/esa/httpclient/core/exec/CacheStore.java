@@ -0,0 +1,188 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.Checks;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.metrics.HttpCacheMetric;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The store of responses which is used by {@link CacheInterceptor}, such as {@link HttpCache} in memory and
+ * {@link DiskCache} on disk.
+ */
+abstract class CacheStore {
+
+    private final boolean shared;
+    private final LongSupplier clock;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder revalidations = new LongAdder();
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final HttpCacheMetric metric = new Metric();
+
+    CacheStore(boolean shared, LongSupplier clock) {
+        Checks.checkNotNull(clock, "clock must not be null");
+        this.shared = shared;
+        this.clock = clock;
+    }
+
+    /**
+     * Whether the store is shared by multiple users, eg: in a gateway.
+     *
+     * @return shared
+     */
+    public boolean shared() {
+        return shared;
+    }
+
+    /**
+     * Obtains the metric of current store.
+     *
+     * @return metric
+     */
+    public HttpCacheMetric metric() {
+        return metric;
+    }
+
+    long now() {
+        return clock.getAsLong();
+    }
+
+    LongSupplier clock() {
+        return clock;
+    }
+
+    /**
+     * Obtains the stored entry of given key.
+     *
+     * @param key key
+     * @return entry, or {@code null} if absent
+     */
+    abstract CacheEntry get(String key);
+
+    /**
+     * Stores given response, the body of the response is still owned by the caller.
+     *
+     * @return {@code true} if the response is stored or is going to be stored
+     */
+    abstract boolean put(String key,
+                         HttpRequest request,
+                         HttpResponse response,
+                         long requestTime,
+                         long responseTime);
+
+    /**
+     * Stores given entry which is refreshed by a {@code 304 Not Modified} response, and the reference of the
+     * entry is owned by the store since then.
+     *
+     * @return {@code true} if the entry is stored or is going to be stored
+     */
+    abstract boolean put(String key, CacheEntry entry);
+
+    abstract void invalidate(String key);
+
+    /**
+     * Creates a response which reads the body of given entry, and the body of the response is owned by the caller
+     * which means that releasing it won't affect the stored entry.
+     *
+     * @param entry     entry
+     * @param ageMillis current age of the entry
+     * @return response, or {@code null} if the entry has been released concurrently
+     */
+    abstract HttpResponse serve(CacheEntry entry, long ageMillis);
+
+    abstract long entries();
+
+    abstract long weightedSize();
+
+    void onHit() {
+        hits.increment();
+    }
+
+    void onMiss() {
+        misses.increment();
+    }
+
+    void onRevalidation() {
+        revalidations.increment();
+    }
+
+    void onRevalidated() {
+        revalidated.increment();
+    }
+
+    void onEviction() {
+        evictions.increment();
+    }
+
+    private final class Metric implements HttpCacheMetric {
+
+        @Override
+        public long hits() {
+            return hits.sum();
+        }
+
+        @Override
+        public long misses() {
+            return misses.sum();
+        }
+
+        @Override
+        public long revalidations() {
+            return revalidations.sum();
+        }
+
+        @Override
+        public long revalidated() {
+            return revalidated.sum();
+        }
+
+        @Override
+        public long evictions() {
+            return evictions.sum();
+        }
+
+        @Override
+        public long entries() {
+            return CacheStore.this.entries();
+        }
+
+        @Override
+        public long weightedSize() {
+            return CacheStore.this.weightedSize();
+        }
+
+        @Override
+        public String toString() {
+            return new StringJoiner(", ", HttpCacheMetric.class.getSimpleName() + "[", "]")
+                    .add("hits=" + hits())
+                    .add("misses=" + misses())
+                    .add("revalidations=" + revalidations())
+                    .add("revalidated=" + revalidated())
+                    .add("evictions=" + evictions())
+                    .add("entries=" + entries())
+                    .add("weightedSize=" + weightedSize())
+                    .toString();
+        }
+    }
+}
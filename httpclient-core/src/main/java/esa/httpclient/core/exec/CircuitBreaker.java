@@ -0,0 +1,420 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import esa.commons.Checks;
+import esa.httpclient.core.Reusable;
+import esa.httpclient.core.metrics.CircuitBreakerMetric;
+import esa.httpclient.core.metrics.CircuitBreakerMetric.State;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Maintains a circuit breaker for every address, which opens when the failure rate or the slow call rate in a
+ * sliding window reaches the threshold, so that the requests to a broken address fail fast instead of occupying
+ * connections and waiting for timeouts. After {@link #openDurationMillis()}, the circuit breaker turns to half open
+ * and permits {@link #halfOpenCalls()} calls to probe the address, it closes if all of them succeed, otherwise it
+ * opens again.
+ * <p>
+ * Calls are counted by {@link LongAdder}s in the slots of a {@link SlidingWindow}, so that recording is
+ * contention-free. The circuit breakers of the addresses which haven't been requested for a while are evicted.
+ */
+public final class CircuitBreaker implements Reusable<CircuitBreaker> {
+
+    private final double failureRateThreshold;
+    private final double slowCallRateThreshold;
+    private final long slowCallDurationMillis;
+    private final int minimumCalls;
+    private final long windowMillis;
+    private final long openDurationMillis;
+    private final int halfOpenCalls;
+    private final long slowCallNanos;
+    private final long openNanos;
+    private final LongSupplier nanoClock;
+    private final Cache<String, AddressBreaker> breakers = HostCaches.newCache();
+    private final Map<String, CircuitBreakerMetric> unmodifiableBreakers =
+            Collections.unmodifiableMap(breakers.asMap());
+
+    CircuitBreaker(double failureRateThreshold,
+                   double slowCallRateThreshold,
+                   long slowCallDurationMillis,
+                   int minimumCalls,
+                   long windowMillis,
+                   long openDurationMillis,
+                   int halfOpenCalls,
+                   LongSupplier nanoClock) {
+        Checks.checkArg(failureRateThreshold > 0.0d && failureRateThreshold <= 1.0d, "failureRateThreshold is "
+                + failureRateThreshold + " (expected > 0 and <= 1)");
+        Checks.checkArg(slowCallRateThreshold > 0.0d && slowCallRateThreshold <= 1.0d, "slowCallRateThreshold is "
+                + slowCallRateThreshold + " (expected > 0 and <= 1)");
+        Checks.checkArg(slowCallDurationMillis >= 0L, "slowCallDurationMillis is " + slowCallDurationMillis
+                + " (expected >= 0)");
+        Checks.checkArg(minimumCalls >= 1, "minimumCalls is " + minimumCalls + " (expected >= 1)");
+        Checks.checkArg(windowMillis >= SlidingWindow.SLOTS, "windowMillis is " + windowMillis + " (expected >= "
+                + SlidingWindow.SLOTS + ")");
+        Checks.checkArg(openDurationMillis > 0L, "openDurationMillis is " + openDurationMillis + " (expected > 0)");
+        Checks.checkArg(halfOpenCalls >= 1, "halfOpenCalls is " + halfOpenCalls + " (expected >= 1)");
+        Checks.checkNotNull(nanoClock, "nanoClock must not be null");
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallRateThreshold = slowCallRateThreshold;
+        this.slowCallDurationMillis = slowCallDurationMillis;
+        this.minimumCalls = minimumCalls;
+        this.windowMillis = windowMillis;
+        this.openDurationMillis = openDurationMillis;
+        this.halfOpenCalls = halfOpenCalls;
+        this.slowCallNanos = TimeUnit.MILLISECONDS.toNanos(slowCallDurationMillis);
+        this.openNanos = TimeUnit.MILLISECONDS.toNanos(openDurationMillis);
+        this.nanoClock = nanoClock;
+    }
+
+    public static CircuitBreaker ofDefault() {
+        return new CircuitBreakerBuilder().build();
+    }
+
+    public static CircuitBreakerBuilder builder() {
+        return new CircuitBreakerBuilder();
+    }
+
+    public double failureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    public double slowCallRateThreshold() {
+        return slowCallRateThreshold;
+    }
+
+    public long slowCallDurationMillis() {
+        return slowCallDurationMillis;
+    }
+
+    public int minimumCalls() {
+        return minimumCalls;
+    }
+
+    public long windowMillis() {
+        return windowMillis;
+    }
+
+    public long openDurationMillis() {
+        return openDurationMillis;
+    }
+
+    public int halfOpenCalls() {
+        return halfOpenCalls;
+    }
+
+    /**
+     * Obtains the metrics of all the addresses.
+     *
+     * @return metrics keyed by address(host:port)
+     */
+    public Map<String, CircuitBreakerMetric> metrics() {
+        return unmodifiableBreakers;
+    }
+
+    /**
+     * Tries to acquire a permission to call given address.
+     *
+     * @param address address
+     * @return the state in which the permission is acquired, or {@code null} if the call is rejected
+     */
+    State tryAcquire(String address) {
+        return breakerOf(address).tryAcquire();
+    }
+
+    /**
+     * Records the result of a call which has acquired the permission in given state.
+     *
+     * @param address        address
+     * @param acquired       the state returned by {@link #tryAcquire(String)}
+     * @param failed         whether the call has failed
+     * @param durationNanos  the duration of the call
+     */
+    void onResult(String address, State acquired, boolean failed, long durationNanos) {
+        breakerOf(address).onResult(acquired, failed, slowCallNanos > 0L && durationNanos >= slowCallNanos);
+    }
+
+    /**
+     * Records a call which has been cut off by its deadline, which is regarded as both failed and slow.
+     *
+     * @param address  address
+     * @param acquired the state returned by {@link #tryAcquire(String)}
+     */
+    void onDeadlineExceeded(String address, State acquired) {
+        breakerOf(address).onResult(acquired, true, slowCallNanos > 0L);
+    }
+
+    /**
+     * Releases the permission of a call which has been cancelled, whose result is ignored.
+     *
+     * @param address  address
+     * @param acquired the state returned by {@link #tryAcquire(String)}
+     */
+    void onCancelled(String address, State acquired) {
+        if (acquired == State.HALF_OPEN) {
+            breakerOf(address).halfOpenPermits.incrementAndGet();
+        }
+    }
+
+    private AddressBreaker breakerOf(String address) {
+        return breakers.get(address, a -> new AddressBreaker());
+    }
+
+    @Override
+    public CircuitBreaker copy() {
+        return new CircuitBreaker(failureRateThreshold, slowCallRateThreshold, slowCallDurationMillis,
+                minimumCalls, windowMillis, openDurationMillis, halfOpenCalls, nanoClock);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", CircuitBreaker.class.getSimpleName() + "[", "]")
+                .add("failureRateThreshold=" + failureRateThreshold)
+                .add("slowCallRateThreshold=" + slowCallRateThreshold)
+                .add("slowCallDurationMillis=" + slowCallDurationMillis)
+                .add("minimumCalls=" + minimumCalls)
+                .add("windowMillis=" + windowMillis)
+                .add("openDurationMillis=" + openDurationMillis)
+                .add("halfOpenCalls=" + halfOpenCalls)
+                .toString();
+    }
+
+    private static final class Slot extends SlidingWindow.Slot {
+
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+
+        private Slot(long epoch) {
+            super(epoch);
+        }
+    }
+
+    private final class AddressBreaker implements CircuitBreakerMetric {
+
+        private final SlidingWindow<Slot> window = new SlidingWindow<>(windowMillis, nanoClock, Slot::new);
+        private final AtomicInteger halfOpenPermits = new AtomicInteger();
+        private final AtomicInteger halfOpenSuccesses = new AtomicInteger();
+        private final LongAdder rejected = new LongAdder();
+        private volatile State state = State.CLOSED;
+        private volatile long openedAt;
+
+        private State tryAcquire() {
+            final State state0 = state;
+            if (state0 == State.CLOSED) {
+                return State.CLOSED;
+            }
+            if (state0 == State.OPEN) {
+                if (nanoClock.getAsLong() - openedAt < openNanos) {
+                    rejected.increment();
+                    return null;
+                }
+                toHalfOpen();
+            }
+
+            for (;;) {
+                final int permits = halfOpenPermits.get();
+                if (permits <= 0) {
+                    rejected.increment();
+                    return null;
+                }
+                if (halfOpenPermits.compareAndSet(permits, permits - 1)) {
+                    return State.HALF_OPEN;
+                }
+            }
+        }
+
+        private void onResult(State acquired, boolean failed, boolean slow) {
+            if (acquired == State.HALF_OPEN) {
+                if (failed || slow) {
+                    transit(State.HALF_OPEN, State.OPEN);
+                } else if (halfOpenSuccesses.incrementAndGet() >= halfOpenCalls) {
+                    transit(State.HALF_OPEN, State.CLOSED);
+                }
+                return;
+            }
+
+            if (state != State.CLOSED) {
+                // Ignore the results of the calls which were permitted before opening.
+                return;
+            }
+
+            final long epoch = window.epoch();
+            final Slot slot = window.current(epoch);
+            slot.calls.increment();
+            if (failed) {
+                slot.failures.increment();
+            }
+            if (slow) {
+                slot.slowCalls.increment();
+            }
+
+            final long calls = window.sum(epoch, s -> s.calls.sum());
+            final long failures = window.sum(epoch, s -> s.failures.sum());
+            final long slowCalls = window.sum(epoch, s -> s.slowCalls.sum());
+            if (calls >= minimumCalls && (failures >= calls * failureRateThreshold
+                    || (slowCallNanos > 0L && slowCalls >= calls * slowCallRateThreshold))) {
+                transit(State.CLOSED, State.OPEN);
+            }
+        }
+
+        private synchronized void toHalfOpen() {
+            if (state == State.OPEN && nanoClock.getAsLong() - openedAt >= openNanos) {
+                halfOpenPermits.set(halfOpenCalls);
+                halfOpenSuccesses.set(0);
+                state = State.HALF_OPEN;
+            }
+        }
+
+        private synchronized void transit(State from, State to) {
+            if (state != from) {
+                return;
+            }
+            if (to == State.OPEN) {
+                openedAt = nanoClock.getAsLong();
+            } else {
+                // Starts a new window after closing
+                window.clear();
+            }
+            state = to;
+        }
+
+        @Override
+        public State state() {
+            return state;
+        }
+
+        @Override
+        public long calls() {
+            return window.sum(window.epoch(), s -> s.calls.sum());
+        }
+
+        @Override
+        public double failureRate() {
+            final long calls = calls();
+            return calls == 0L ? 0.0d : (double) window.sum(window.epoch(), s -> s.failures.sum()) / calls;
+        }
+
+        @Override
+        public double slowCallRate() {
+            final long calls = calls();
+            return calls == 0L ? 0.0d : (double) window.sum(window.epoch(), s -> s.slowCalls.sum()) / calls;
+        }
+
+        @Override
+        public long rejected() {
+            return rejected.sum();
+        }
+
+        @Override
+        public String toString() {
+            return new StringJoiner(", ", CircuitBreakerMetric.class.getSimpleName() + "[", "]")
+                    .add("state=" + state())
+                    .add("calls=" + calls())
+                    .add("failureRate=" + failureRate())
+                    .add("slowCallRate=" + slowCallRate())
+                    .add("rejected=" + rejected())
+                    .toString();
+        }
+    }
+
+    public static class CircuitBreakerBuilder {
+
+        private double failureRateThreshold = 0.5d;
+        private double slowCallRateThreshold = 1.0d;
+        private long slowCallDurationMillis;
+        private int minimumCalls = 20;
+        private long windowMillis = 10_000L;
+        private long openDurationMillis = 5_000L;
+        private int halfOpenCalls = 3;
+
+        CircuitBreakerBuilder() {
+        }
+
+        /**
+         * Opens the circuit breaker when the rate of failed calls(including the responses whose status is 5xx)
+         * in the window reaches given threshold.
+         *
+         * @param failureRateThreshold threshold, defaults to 0.5
+         * @return this builder
+         */
+        public CircuitBreakerBuilder failureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+            return this;
+        }
+
+        /**
+         * Opens the circuit breaker when the rate of slow calls in the window reaches given threshold.
+         *
+         * @param slowCallRateThreshold threshold, defaults to 1.0
+         * @return this builder
+         */
+        public CircuitBreakerBuilder slowCallRateThreshold(double slowCallRateThreshold) {
+            this.slowCallRateThreshold = slowCallRateThreshold;
+            return this;
+        }
+
+        /**
+         * Calls which take longer than given duration are slow, 0 means that slow calls are not detected.
+         *
+         * @param slowCallDurationMillis duration in milliseconds, defaults to 0
+         * @return this builder
+         */
+        public CircuitBreakerBuilder slowCallDurationMillis(long slowCallDurationMillis) {
+            this.slowCallDurationMillis = slowCallDurationMillis;
+            return this;
+        }
+
+        /**
+         * The rates are not evaluated until there have been given count of calls in the window.
+         *
+         * @param minimumCalls minimum calls, defaults to 20
+         * @return this builder
+         */
+        public CircuitBreakerBuilder minimumCalls(int minimumCalls) {
+            this.minimumCalls = minimumCalls;
+            return this;
+        }
+
+        public CircuitBreakerBuilder windowMillis(long windowMillis) {
+            this.windowMillis = windowMillis;
+            return this;
+        }
+
+        public CircuitBreakerBuilder openDurationMillis(long openDurationMillis) {
+            this.openDurationMillis = openDurationMillis;
+            return this;
+        }
+
+        public CircuitBreakerBuilder halfOpenCalls(int halfOpenCalls) {
+            this.halfOpenCalls = halfOpenCalls;
+            return this;
+        }
+
+        public CircuitBreaker build() {
+            return new CircuitBreaker(failureRateThreshold, slowCallRateThreshold, slowCallDurationMillis,
+                    minimumCalls, windowMillis, openDurationMillis, halfOpenCalls, System::nanoTime);
+        }
+
+    }
+}
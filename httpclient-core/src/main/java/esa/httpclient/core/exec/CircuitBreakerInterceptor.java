@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.Checks;
+import esa.commons.logging.Logger;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.exception.CircuitBreakerOpenException;
+import esa.httpclient.core.metrics.CircuitBreakerMetric.State;
+import esa.httpclient.core.util.Futures;
+import esa.httpclient.core.util.LoggerUtils;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This interceptor rejects the requests to the addresses whose {@link CircuitBreaker} is open immediately with a
+ * {@link CircuitBreakerOpenException}, without acquiring connections or waiting for timeouts. A request fails if
+ * an exception is caught or the status of the response is 5xx, and a request cut off by its deadline is both failed
+ * and slow.
+ */
+public class CircuitBreakerInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerUtils.logger();
+
+    private final CircuitBreaker breaker;
+
+    public CircuitBreakerInterceptor(CircuitBreaker breaker) {
+        Checks.checkNotNull(breaker, "CircuitBreaker must not be null");
+        this.breaker = breaker;
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> proceed(HttpRequest request, ExecChain next) {
+        final String address = HostCaches.keyOf(request);
+        final State acquired = breaker.tryAcquire(address);
+        if (acquired == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Circuit breaker of {} is open, reject request: {}", address, request);
+            }
+            return Futures.completed(new CircuitBreakerOpenException("Circuit breaker of " + address
+                    + " is open"));
+        }
+
+        final long start = System.nanoTime();
+        final CompletableFuture<HttpResponse> response;
+        try {
+            response = next.proceed(request);
+        } catch (Throwable ex) {
+            breaker.onResult(address, acquired, true, System.nanoTime() - start);
+            throw ex;
+        }
+
+        response.whenComplete((rsp, th) -> {
+            if (th != null && Futures.unwrapped(th) instanceof CancellationException) {
+                // A call cut off by its deadline(see DeadlineInterceptor) is what the breaker exists for, only
+                // the cancellations made by the caller are ignored.
+                if (DeadlineInterceptor.isCutOffByDeadline(th, next.ctx())) {
+                    breaker.onDeadlineExceeded(address, acquired);
+                } else {
+                    breaker.onCancelled(address, acquired);
+                }
+                return;
+            }
+            breaker.onResult(address, acquired, th != null || rsp.status() >= 500, System.nanoTime() - start);
+        });
+        return response;
+    }
+
+    @Override
+    public int getOrder() {
+        return -1000;
+    }
+
+}
@@ -0,0 +1,404 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.Checks;
+import esa.commons.http.HttpHeaderNames;
+import esa.commons.http.HttpHeaders;
+import esa.commons.http.HttpMethod;
+import esa.commons.http.HttpVersion;
+import esa.commons.logging.Logger;
+import esa.commons.netty.core.Buffer;
+import esa.commons.netty.core.BufferImpl;
+import esa.commons.netty.http.Http1HeadersImpl;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.util.Futures;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static esa.httpclient.core.exec.RequestExecutorImpl.CUSTOM_HANDLE_KEY;
+
+/**
+ * This interceptor coalesces the identical idempotent requests which are in flight concurrently, so that they
+ * share a single exchange with the upstream(aka single-flight), which is helpful to reduce the load of upstream
+ * when there are bursts of identical requests, eg: cache-miss stampedes. Requests are identical if they have the
+ * same method, uri and values of the headers which are specified by {@link #CoalescingInterceptor(CharSequence...)}.
+ * <p>
+ * Every request obtains its own view of the shared {@link HttpResponse}, whose body is a slice of the aggregated
+ * body without copying, and whose headers can be modified independently. If the shared response is reference
+ * counted, eg: served by {@link HttpCache}, every view retains its own reference which should be released as well.
+ * Only {@code GET} and {@code HEAD} requests which are aggregated by the default handle and have the same priority
+ * are coalesced.
+ * <p>
+ * The shared exchange is sent with a copy of the context of the request which starts it but without the deadline,
+ * and every request waits for it until its own deadline(see {@link DeadlineInterceptor}). Cancelling the response
+ * of a request only detaches the request from the shared exchange, which is cancelled once all the requests
+ * waiting for it have detached.
+ * <p>
+ * Coalescing is disabled by default, and it can be enabled by adding this interceptor to
+ * {@link esa.httpclient.core.HttpClientBuilder#addInterceptor(Interceptor)}.
+ */
+public class CoalescingInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerUtils.logger();
+
+    private static final CharSequence[] DEFAULT_HEADERS = {
+            HttpHeaderNames.ACCEPT,
+            HttpHeaderNames.ACCEPT_ENCODING,
+            HttpHeaderNames.ACCEPT_LANGUAGE,
+            HttpHeaderNames.AUTHORIZATION,
+            HttpHeaderNames.COOKIE
+    };
+
+    private final CharSequence[] headers;
+    private final ConcurrentHashMap<Key, Flight> inFlights = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a {@link CoalescingInterceptor} which distinguishes requests by {@code Accept},
+     * {@code Accept-Encoding}, {@code Accept-Language}, {@code Authorization} and {@code Cookie} headers.
+     */
+    public CoalescingInterceptor() {
+        this(DEFAULT_HEADERS);
+    }
+
+    /**
+     * Creates a {@link CoalescingInterceptor} which distinguishes requests by the values of given headers besides
+     * method and uri, which should contain all the headers which the response may vary by.
+     *
+     * @param headers names of headers
+     */
+    public CoalescingInterceptor(CharSequence... headers) {
+        Checks.checkNotNull(headers, "headers must not be null");
+        this.headers = headers.clone();
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> proceed(HttpRequest request, ExecChain next) {
+        if (!isCoalescable(request, next)) {
+            return next.proceed(request);
+        }
+
+        final Key key = keyOf(request, next.ctx().priority());
+        for (;;) {
+            final Flight flight = new Flight(key);
+            final Flight inFlight = inFlights.putIfAbsent(key, flight);
+            if (inFlight == null) {
+                // Obtain the view before starting, the exchange may complete at once, eg: served by cache.
+                final CompletableFuture<HttpResponse> view = flight.view();
+                flight.start(request, next);
+                return view;
+            }
+            final CompletableFuture<HttpResponse> view = inFlight.tryAttach();
+            if (view != null) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Coalesced request: {} with the identical one in flight", request);
+                }
+                return view;
+            }
+            // The exchange in flight has completed or been abandoned by all its waiters, start a new one.
+            inFlights.remove(key, inFlight);
+        }
+    }
+
+    @Override
+    public int getOrder() {
+        return -6000;
+    }
+
+    /**
+     * Obtains the count of exchanges which are in flight and can be shared.
+     *
+     * @return count
+     */
+    int inFlights() {
+        return inFlights.size();
+    }
+
+    private Key keyOf(HttpRequest request, int priority) {
+        final String[] values = new String[headers.length];
+        for (int i = 0; i < headers.length; i++) {
+            final CharSequence value = request.getHeader(headers[i]);
+            values[i] = value == null ? null : value.toString();
+        }
+        return new Key(request.method(),
+                request.scheme() + "://" + request.uri().netURI().getRawAuthority()
+                        + request.uri().spliceRelativeRefDirectly(),
+                values,
+                priority);
+    }
+
+    private static boolean isCoalescable(HttpRequest request, ExecChain next) {
+        if (request.method() != HttpMethod.GET && request.method() != HttpMethod.HEAD) {
+            return false;
+        }
+        if (request.isSegmented() || request.isMultipart() || request.isFile()) {
+            return false;
+        }
+
+        return !next.ctx().getAttr(CUSTOM_HANDLE_KEY, false);
+    }
+
+    /**
+     * An exchange in flight which is shared by the identical requests, it's cancelled once all the requests waiting
+     * for it have detached.
+     */
+    private final class Flight {
+
+        private final Key key;
+        private final CompletableFuture<HttpResponse> shared = new CompletableFuture<>();
+        private CompletableFuture<HttpResponse> upstream;
+        private int waiters;
+        private boolean abandoned;
+        private boolean completed;
+
+        private Flight(Key key) {
+            this.key = key;
+            // The request which starts the exchange is waiting for it.
+            this.waiters = 1;
+        }
+
+        private void start(HttpRequest request, ExecChain next) {
+            CompletableFuture<HttpResponse> response;
+            try {
+                // The deadline of the request which starts the exchange mustn't fail the other waiters.
+                response = next.withCtx(next.ctx().copyWithoutDeadline()).proceed(request);
+            } catch (Throwable ex) {
+                response = Futures.completed(ex);
+            }
+            synchronized (this) {
+                upstream = response;
+            }
+            response.whenComplete((rsp, th) -> {
+                // Remove before completing, so that the subsequent requests start a new exchange.
+                inFlights.remove(key, this);
+                synchronized (this) {
+                    completed = true;
+                }
+                if (th == null) {
+                    // All the views have been attached, and each of them has retained the response if it's
+                    // reference counted.
+                    shared.complete(rsp);
+                    ReferenceCountUtil.release(rsp);
+                } else {
+                    shared.completeExceptionally(Futures.unwrapped(th));
+                }
+            });
+        }
+
+        private CompletableFuture<HttpResponse> tryAttach() {
+            synchronized (this) {
+                if (abandoned || completed) {
+                    return null;
+                }
+                waiters++;
+                // Attach while holding the lock, so that the view is completed before the shared response is
+                // released.
+                return view();
+            }
+        }
+
+        /**
+         * Obtains a view of the shared exchange for a waiter, cancelling the view detaches the waiter.
+         *
+         * @return view
+         */
+        private CompletableFuture<HttpResponse> view() {
+            final CompletableFuture<HttpResponse> view = new CompletableFuture<>();
+            shared.whenComplete((rsp, th) -> {
+                if (th == null) {
+                    final ResponseView rsp0 = ResponseView.of(rsp);
+                    if (!view.complete(rsp0)) {
+                        ReferenceCountUtil.release(rsp0);
+                    }
+                } else {
+                    view.completeExceptionally(Futures.unwrapped(th));
+                }
+            });
+            view.whenComplete((rsp, th) -> {
+                if (view.isCancelled()) {
+                    detach();
+                }
+            });
+            return view;
+        }
+
+        private void detach() {
+            final CompletableFuture<HttpResponse> upstream0;
+            synchronized (this) {
+                if (--waiters > 0 || shared.isDone()) {
+                    return;
+                }
+                abandoned = true;
+                upstream0 = upstream;
+            }
+            inFlights.remove(key, this);
+            if (logger.isDebugEnabled()) {
+                logger.debug("All the requests waiting for the shared exchange have detached, cancel it");
+            }
+            if (upstream0 != null) {
+                upstream0.cancel(false);
+            }
+        }
+    }
+
+    private static final class Key {
+
+        private final HttpMethod method;
+        private final String uri;
+        private final String[] headers;
+        private final int priority;
+        private final int hash;
+
+        private Key(HttpMethod method, String uri, String[] headers, int priority) {
+            this.method = method;
+            this.uri = uri;
+            this.headers = headers;
+            this.priority = priority;
+            this.hash = 31 * (31 * (31 * method.hashCode() + uri.hashCode()) + Arrays.hashCode(headers)) + priority;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return method == key.method && priority == key.priority && uri.equals(key.uri)
+                    && Arrays.equals(headers, key.headers);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * A view of the shared {@link HttpResponse}, whose body has its own reader and writer indexes while sharing the
+     * content with the others.
+     */
+    private static class ResponseView implements HttpResponse {
+
+        private final HttpResponse underlying;
+        private final Buffer body;
+        private final HttpHeaders headers = new Http1HeadersImpl();
+        private final HttpHeaders trailers = new Http1HeadersImpl();
+
+        private ResponseView(HttpResponse underlying, Buffer body) {
+            this.underlying = underlying;
+            this.body = body;
+            this.headers.add(underlying.headers());
+            this.trailers.add(underlying.trailers());
+        }
+
+        private static ResponseView of(HttpResponse underlying) {
+            if (underlying instanceof ReferenceCounted) {
+                return new RetainedResponseView(underlying,
+                        new BufferImpl(underlying.body().getByteBuf().retainedSlice()));
+            }
+            return new ResponseView(underlying, underlying.body().slice());
+        }
+
+        @Override
+        public int status() {
+            return underlying.status();
+        }
+
+        @Override
+        public HttpVersion version() {
+            return underlying.version();
+        }
+
+        @Override
+        public HttpHeaders headers() {
+            return headers;
+        }
+
+        @Override
+        public Buffer body() {
+            return body;
+        }
+
+        @Override
+        public HttpHeaders trailers() {
+            return trailers;
+        }
+
+        @Override
+        public boolean aggregated() {
+            return underlying.aggregated();
+        }
+    }
+
+    /**
+     * A view of the shared reference counted {@link HttpResponse}, which owns a reference of the shared body.
+     */
+    private static final class RetainedResponseView extends ResponseView implements ReferenceCounted {
+
+        private RetainedResponseView(HttpResponse underlying, Buffer body) {
+            super(underlying, body);
+        }
+
+        @Override
+        public int refCnt() {
+            return body().getByteBuf().refCnt();
+        }
+
+        @Override
+        public RetainedResponseView retain() {
+            body().getByteBuf().retain();
+            return this;
+        }
+
+        @Override
+        public RetainedResponseView retain(int increment) {
+            body().getByteBuf().retain(increment);
+            return this;
+        }
+
+        @Override
+        public RetainedResponseView touch() {
+            body().getByteBuf().touch();
+            return this;
+        }
+
+        @Override
+        public RetainedResponseView touch(Object hint) {
+            body().getByteBuf().touch(hint);
+            return this;
+        }
+
+        @Override
+        public boolean release() {
+            return body().getByteBuf().release();
+        }
+
+        @Override
+        public boolean release(int decrement) {
+            return body().getByteBuf().release(decrement);
+        }
+    }
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.Checks;
+import esa.commons.logging.Logger;
+import esa.httpclient.core.Context;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.exception.ConcurrencyLimitExceededException;
+import esa.httpclient.core.exec.ConcurrencyLimiter.Permit;
+import esa.httpclient.core.util.Futures;
+import esa.httpclient.core.util.LoggerUtils;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This interceptor limits the count of in-flight requests to every address by {@link ConcurrencyLimiter} before
+ * acquiring connections. Requests over the limit wait in the queue of the limiter if it's not full, otherwise they
+ * are rejected immediately with a {@link ConcurrencyLimitExceededException}.
+ */
+public class ConcurrencyLimitInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerUtils.logger();
+
+    private final ConcurrencyLimiter limiter;
+
+    public ConcurrencyLimitInterceptor(ConcurrencyLimiter limiter) {
+        Checks.checkNotNull(limiter, "ConcurrencyLimiter must not be null");
+        this.limiter = limiter;
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> proceed(HttpRequest request, ExecChain next) {
+        final String address = HostCaches.keyOf(request);
+        final CompletableFuture<Permit> acquired = limiter.acquire(address);
+        if (acquired == null) {
+            if (logger.isDebugEnabled()) {
+                logger.debug("Concurrency limit of {} is exceeded, reject request: {}", address, request);
+            }
+            return Futures.completed(new ConcurrencyLimitExceededException("Concurrency limit of " + address
+                    + " is exceeded"));
+        }
+        if (acquired.isDone()) {
+            return proceed0(request, next, acquired.getNow(null));
+        }
+
+        final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        response.whenComplete((r, t) -> {
+            // Give up waiting
+            if (response.isCancelled()) {
+                acquired.cancel(false);
+            }
+        });
+        acquired.whenComplete((permit, th) -> {
+            if (th != null) {
+                return;
+            }
+            final CompletableFuture<HttpResponse> proceeding;
+            try {
+                proceeding = proceed0(request, next, permit);
+            } catch (Throwable ex) {
+                response.completeExceptionally(ex);
+                return;
+            }
+            response.whenComplete((r, t) -> {
+                if (response.isCancelled()) {
+                    proceeding.cancel(false);
+                }
+            });
+            proceeding.whenComplete((r, t) -> {
+                if (t == null) {
+                    response.complete(r);
+                } else {
+                    response.completeExceptionally(Futures.unwrapped(t));
+                }
+            });
+        });
+        return response;
+    }
+
+    @Override
+    public int getOrder() {
+        return -500;
+    }
+
+    private CompletableFuture<HttpResponse> proceed0(HttpRequest request, ExecChain next, Permit permit) {
+        limiter.onStart(request, permit);
+        final CompletableFuture<HttpResponse> response;
+        try {
+            response = next.proceed(request);
+        } catch (Throwable ex) {
+            limiter.release(request, permit, false);
+            throw ex;
+        }
+        response.whenComplete((rsp, th) -> limiter.release(request, permit,
+                th != null && isDropped(th, next.ctx())));
+        return response;
+    }
+
+    private static boolean isDropped(Throwable th, Context ctx) {
+        final Throwable cause = Futures.unwrapped(th);
+        // The slowest requests are usually cut off by their deadlines(see DeadlineInterceptor).
+        return cause instanceof SocketTimeoutException || cause instanceof TimeoutException
+                || DeadlineInterceptor.isCutOffByDeadline(cause, ctx);
+    }
+
+}
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import esa.commons.Checks;
+import esa.httpclient.core.Context;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.Listener;
+import esa.httpclient.core.Reusable;
+import esa.httpclient.core.metrics.ConcurrencyLimitMetric;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Queue;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Maintains an adaptive concurrency limit for every address, which is adjusted by the gradient of round-trip
+ * times(aka the gradient algorithm of TCP Vegas): the long-term average RTT is the baseline, and the limit shrinks
+ * when the RTT of recent requests rises above it(which means that requests are queueing in the upstream), and
+ * grows by {@code sqrt(limit)} while the RTT stays around the baseline. Requests which time out shrink the limit
+ * multiplicatively. The limits of the addresses which haven't been requested for a while are evicted.
+ * <p>
+ * The RTT of a request is measured from {@link Listener#onWriteAttempt(HttpRequest, Context)} to
+ * {@link Listener#onCompleted(HttpRequest, Context, HttpResponse)}, which excludes the time spent on waiting for
+ * connections, so {@link #listener()} must be registered to the client, which is done automatically when the
+ * limiter is configured by {@link esa.httpclient.core.HttpClientBuilder#concurrencyLimiter(ConcurrencyLimiter)}.
+ */
+public final class ConcurrencyLimiter implements Reusable<ConcurrencyLimiter> {
+
+    /**
+     * The count of samples before the long-term average is smoothed by {@link #longWindow}.
+     */
+    private static final int WARMUP_SAMPLES = 10;
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final double smoothing;
+    private final double rttTolerance;
+    private final int longWindow;
+    private final int maxQueued;
+    private final LongSupplier nanoClock;
+    private final Cache<String, AddressLimit> limits = HostCaches.newCache();
+    private final Map<String, ConcurrencyLimitMetric> unmodifiableLimits =
+            Collections.unmodifiableMap(limits.asMap());
+    private final ConcurrentHashMap<HttpRequest, Permit> permits = new ConcurrentHashMap<>();
+    private final Listener listener = new RttListener();
+
+    ConcurrencyLimiter(int initialLimit,
+                       int minLimit,
+                       int maxLimit,
+                       double smoothing,
+                       double rttTolerance,
+                       int longWindow,
+                       int maxQueued,
+                       LongSupplier nanoClock) {
+        Checks.checkArg(minLimit >= 1, "minLimit is " + minLimit + " (expected >= 1)");
+        Checks.checkArg(maxLimit >= minLimit, "maxLimit is " + maxLimit + " (expected >= minLimit)");
+        Checks.checkArg(initialLimit >= minLimit && initialLimit <= maxLimit, "initialLimit is " + initialLimit
+                + " (expected >= minLimit and <= maxLimit)");
+        Checks.checkArg(smoothing > 0.0d && smoothing <= 1.0d, "smoothing is " + smoothing
+                + " (expected > 0 and <= 1)");
+        Checks.checkArg(rttTolerance >= 1.0d, "rttTolerance is " + rttTolerance + " (expected >= 1)");
+        Checks.checkArg(longWindow >= 1, "longWindow is " + longWindow + " (expected >= 1)");
+        Checks.checkArg(maxQueued >= 0, "maxQueued is " + maxQueued + " (expected >= 0)");
+        Checks.checkNotNull(nanoClock, "nanoClock must not be null");
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.smoothing = smoothing;
+        this.rttTolerance = rttTolerance;
+        this.longWindow = longWindow;
+        this.maxQueued = maxQueued;
+        this.nanoClock = nanoClock;
+    }
+
+    public static ConcurrencyLimiter ofDefault() {
+        return new ConcurrencyLimiterBuilder().build();
+    }
+
+    public static ConcurrencyLimiterBuilder builder() {
+        return new ConcurrencyLimiterBuilder();
+    }
+
+    public int initialLimit() {
+        return initialLimit;
+    }
+
+    public int minLimit() {
+        return minLimit;
+    }
+
+    public int maxLimit() {
+        return maxLimit;
+    }
+
+    public double smoothing() {
+        return smoothing;
+    }
+
+    public double rttTolerance() {
+        return rttTolerance;
+    }
+
+    public int longWindow() {
+        return longWindow;
+    }
+
+    public int maxQueued() {
+        return maxQueued;
+    }
+
+    /**
+     * Obtains the {@link Listener} which measures the RTT of requests.
+     *
+     * @return listener
+     */
+    public Listener listener() {
+        return listener;
+    }
+
+    /**
+     * Obtains the metrics of all the addresses.
+     *
+     * @return metrics keyed by address(host:port)
+     */
+    public Map<String, ConcurrencyLimitMetric> metrics() {
+        return unmodifiableLimits;
+    }
+
+    /**
+     * Acquires a permit to send a request to given address.
+     *
+     * @param address address
+     * @return a future which is completed with the permit once it's acquired, or {@code null} if the request is
+     * rejected because both the limit and the queue are full.
+     */
+    CompletableFuture<Permit> acquire(String address) {
+        return limitOf(address).acquire();
+    }
+
+    /**
+     * Binds given permit to the request, so that the RTT of the request can be measured.
+     *
+     * @param request request
+     * @param permit  permit
+     */
+    void onStart(HttpRequest request, Permit permit) {
+        permits.put(request, permit);
+    }
+
+    /**
+     * Releases the permit of given request.
+     *
+     * @param request request
+     * @param permit  permit
+     * @param dropped whether the request has been dropped by the upstream, eg: timed out
+     */
+    void release(HttpRequest request, Permit permit, boolean dropped) {
+        permits.remove(request, permit);
+        permit.limit.release(permit, dropped);
+    }
+
+    private AddressLimit limitOf(String address) {
+        return limits.get(address, a -> new AddressLimit());
+    }
+
+    @Override
+    public ConcurrencyLimiter copy() {
+        return new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, smoothing, rttTolerance, longWindow,
+                maxQueued, nanoClock);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", ConcurrencyLimiter.class.getSimpleName() + "[", "]")
+                .add("initialLimit=" + initialLimit)
+                .add("minLimit=" + minLimit)
+                .add("maxLimit=" + maxLimit)
+                .add("smoothing=" + smoothing)
+                .add("rttTolerance=" + rttTolerance)
+                .add("longWindow=" + longWindow)
+                .add("maxQueued=" + maxQueued)
+                .toString();
+    }
+
+    static final class Permit {
+
+        private final AddressLimit limit;
+        private final int inflight;
+        private volatile long writeStart;
+        private volatile long rtt = -1L;
+
+        private Permit(AddressLimit limit, int inflight) {
+            this.limit = limit;
+            this.inflight = inflight;
+        }
+    }
+
+    private final class RttListener implements Listener {
+
+        @Override
+        public void onWriteAttempt(HttpRequest request, Context ctx) {
+            final Permit permit = permits.get(request);
+            if (permit != null) {
+                permit.writeStart = nanoClock.getAsLong();
+            }
+        }
+
+        @Override
+        public void onCompleted(HttpRequest request, Context ctx, HttpResponse response) {
+            final Permit permit = permits.get(request);
+            if (permit != null && permit.writeStart != 0L) {
+                permit.rtt = Math.max(1L, nanoClock.getAsLong() - permit.writeStart);
+            }
+        }
+    }
+
+    private final class AddressLimit implements ConcurrencyLimitMetric {
+
+        private final AtomicInteger inflight = new AtomicInteger();
+        private final AtomicInteger queued = new AtomicInteger();
+        private final Queue<CompletableFuture<Permit>> waiters = new ConcurrentLinkedQueue<>();
+        private final LongAdder rejected = new LongAdder();
+        private volatile double limit = initialLimit;
+
+        /**
+         * Guarded by this.
+         */
+        private double longRtt;
+        private long samples;
+
+        private CompletableFuture<Permit> acquire() {
+            final Permit permit = tryAcquire();
+            if (permit != null) {
+                return CompletableFuture.completedFuture(permit);
+            }
+
+            if (queued.incrementAndGet() > maxQueued) {
+                queued.decrementAndGet();
+                rejected.increment();
+                return null;
+            }
+            final CompletableFuture<Permit> waiter = new CompletableFuture<>();
+            waiter.whenComplete((p, th) -> {
+                if (waiter.isCancelled() && waiters.remove(waiter)) {
+                    queued.decrementAndGet();
+                }
+            });
+            waiters.offer(waiter);
+            // A permit may have been released before the waiter is queued.
+            drain();
+            return waiter;
+        }
+
+        private Permit tryAcquire() {
+            for (;;) {
+                final int current = inflight.get();
+                if (current >= (int) limit) {
+                    return null;
+                }
+                if (inflight.compareAndSet(current, current + 1)) {
+                    return new Permit(this, current + 1);
+                }
+            }
+        }
+
+        private void release(Permit permit, boolean dropped) {
+            inflight.decrementAndGet();
+            if (dropped || permit.rtt > 0L) {
+                onSample(permit.rtt, permit.inflight, dropped);
+            }
+            drain();
+        }
+
+        private void drain() {
+            while (!waiters.isEmpty()) {
+                final Permit permit = tryAcquire();
+                if (permit == null) {
+                    return;
+                }
+                final CompletableFuture<Permit> waiter = waiters.poll();
+                if (waiter == null) {
+                    inflight.decrementAndGet();
+                    return;
+                }
+                queued.decrementAndGet();
+                if (!waiter.complete(permit)) {
+                    inflight.decrementAndGet();
+                }
+            }
+        }
+
+        private synchronized void onSample(long rtt, int inflightAtStart, boolean dropped) {
+            double newLimit;
+            if (dropped) {
+                newLimit = limit * 0.9d;
+            } else {
+                samples++;
+                if (samples == 1L) {
+                    longRtt = rtt;
+                } else {
+                    final double factor = samples <= WARMUP_SAMPLES
+                            ? 1.0d / samples : 2.0d / (longWindow + 1);
+                    longRtt = longRtt * (1.0d - factor) + rtt * factor;
+                }
+                // Recover from a long-term average which has been raised by a temporary spike soon.
+                if (longRtt > 2.0d * rtt) {
+                    longRtt *= 0.95d;
+                }
+                // The limit is not reached, so the RTT says nothing about whether the limit is too small.
+                if (inflightAtStart < limit / 2.0d) {
+                    return;
+                }
+
+                final double gradient = Math.max(0.5d, Math.min(1.0d, rttTolerance * longRtt / rtt));
+                newLimit = limit * gradient + Math.sqrt(limit);
+                newLimit = limit * (1.0d - smoothing) + newLimit * smoothing;
+            }
+            limit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        }
+
+        @Override
+        public int limit() {
+            return (int) limit;
+        }
+
+        @Override
+        public int inflight() {
+            return inflight.get();
+        }
+
+        @Override
+        public int queued() {
+            return queued.get();
+        }
+
+        @Override
+        public long rejected() {
+            return rejected.sum();
+        }
+
+        @Override
+        public synchronized double rttMillis() {
+            return longRtt / 1_000_000.0d;
+        }
+
+        @Override
+        public String toString() {
+            return new StringJoiner(", ", ConcurrencyLimitMetric.class.getSimpleName() + "[", "]")
+                    .add("limit=" + limit())
+                    .add("inflight=" + inflight())
+                    .add("queued=" + queued())
+                    .add("rejected=" + rejected())
+                    .add("rttMillis=" + rttMillis())
+                    .toString();
+        }
+    }
+
+    public static class ConcurrencyLimiterBuilder {
+
+        private int initialLimit = 20;
+        private int minLimit = 1;
+        private int maxLimit = 200;
+        private double smoothing = 0.2d;
+        private double rttTolerance = 1.5d;
+        private int longWindow = 600;
+        private int maxQueued;
+
+        ConcurrencyLimiterBuilder() {
+        }
+
+        public ConcurrencyLimiterBuilder initialLimit(int initialLimit) {
+            this.initialLimit = initialLimit;
+            return this;
+        }
+
+        public ConcurrencyLimiterBuilder minLimit(int minLimit) {
+            this.minLimit = minLimit;
+            return this;
+        }
+
+        public ConcurrencyLimiterBuilder maxLimit(int maxLimit) {
+            this.maxLimit = maxLimit;
+            return this;
+        }
+
+        /**
+         * Sets how fast the limit converges to the new estimation.
+         *
+         * @param smoothing smoothing factor, defaults to 0.2
+         * @return this builder
+         */
+        public ConcurrencyLimiterBuilder smoothing(double smoothing) {
+            this.smoothing = smoothing;
+            return this;
+        }
+
+        /**
+         * The limit won't shrink until the RTT of recent requests exceeds the baseline by given ratio.
+         *
+         * @param rttTolerance tolerance, defaults to 1.5
+         * @return this builder
+         */
+        public ConcurrencyLimiterBuilder rttTolerance(double rttTolerance) {
+            this.rttTolerance = rttTolerance;
+            return this;
+        }
+
+        /**
+         * Sets the count of samples the long-term average RTT is averaged over.
+         *
+         * @param longWindow window, defaults to 600
+         * @return this builder
+         */
+        public ConcurrencyLimiterBuilder longWindow(int longWindow) {
+            this.longWindow = longWindow;
+            return this;
+        }
+
+        /**
+         * Sets the max count of requests which wait for permits when the limit is reached, the requests beyond it
+         * are rejected.
+         *
+         * @param maxQueued max queued count, defaults to 0 which means rejecting immediately
+         * @return this builder
+         */
+        public ConcurrencyLimiterBuilder maxQueued(int maxQueued) {
+            this.maxQueued = maxQueued;
+            return this;
+        }
+
+        public ConcurrencyLimiter build() {
+            return new ConcurrencyLimiter(initialLimit, minLimit, maxLimit, smoothing, rttTolerance, longWindow,
+                    maxQueued, System::nanoTime);
+        }
+
+    }
+}
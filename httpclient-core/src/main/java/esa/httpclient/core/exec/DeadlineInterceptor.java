@@ -0,0 +1,125 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.logging.Logger;
+import esa.httpclient.core.Context;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.exception.DeadlineExceededException;
+import esa.httpclient.core.util.Futures;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.util.Timer;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This interceptor enforces the end-to-end deadline of a request(see {@link esa.httpclient.core.Context#deadline()}),
+ * which covers the filters, the waiting for a connection, the connecting, the writing and the reading of all the
+ * retries and redirections. It's the outermost interceptor, once the deadline passes, the response fails with a
+ * {@link DeadlineExceededException} and the execution in flight is cancelled.
+ */
+public class DeadlineInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerUtils.logger();
+
+    private final Timer timer;
+
+    public DeadlineInterceptor() {
+        this(null);
+    }
+
+    /**
+     * Creates a {@link DeadlineInterceptor} which waits for the deadlines by given {@link Timer}.
+     *
+     * @param timer timer, the delays are scheduled on the I/O threads(or the shared timer) if it's null
+     */
+    public DeadlineInterceptor(Timer timer) {
+        this.timer = timer;
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> proceed(HttpRequest request, ExecChain next) {
+        final long deadline = next.ctx().deadline();
+        if (deadline <= 0L) {
+            return next.proceed(request);
+        }
+
+        final long remaining = deadline - System.currentTimeMillis();
+        if (remaining <= 0L) {
+            return Futures.completed(deadlineExceeded(request));
+        }
+
+        final CompletableFuture<HttpResponse> proceeding = next.proceed(request);
+        if (proceeding.isDone()) {
+            return proceeding;
+        }
+
+        final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        final CompletableFuture<Void> timeout = Timers.delay(timer, next.ctx(), remaining, TimeUnit.MILLISECONDS);
+        timeout.thenRun(() -> {
+            if (response.completeExceptionally(deadlineExceeded(request))) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Deadline exceeded, cancel request: {}", request);
+                }
+            }
+        });
+
+        // Cancels the execution in flight once the response has been completed(eg: the deadline has passed or
+        // cancelled by caller).
+        response.whenComplete((r, t) -> {
+            timeout.cancel(false);
+            proceeding.cancel(false);
+        });
+        proceeding.whenComplete((r, t) -> {
+            if (t == null) {
+                response.complete(r);
+            } else {
+                response.completeExceptionally(Futures.unwrapped(t));
+            }
+        });
+        return response;
+    }
+
+    @Override
+    public int getOrder() {
+        return -7000;
+    }
+
+    /**
+     * Whether the given exception is the cancellation of a request whose deadline has passed(eg: cancelled by
+     * {@link DeadlineInterceptor}) rather than a cancellation made by the caller.
+     *
+     * @param th  exception
+     * @param ctx ctx of the request
+     * @return {@code true} if the request was cut off by its deadline
+     */
+    static boolean isCutOffByDeadline(Throwable th, Context ctx) {
+        if (!(Futures.unwrapped(th) instanceof CancellationException)) {
+            return false;
+        }
+        final long deadline = ctx.deadline();
+        return deadline > 0L && System.currentTimeMillis() >= deadline;
+    }
+
+    private static DeadlineExceededException deadlineExceeded(HttpRequest request) {
+        return new DeadlineExceededException("Deadline exceeded before request: " + request.uri().toString()
+                + " completed");
+    }
+
+}
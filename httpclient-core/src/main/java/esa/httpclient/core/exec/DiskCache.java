@@ -0,0 +1,902 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.Checks;
+import esa.commons.concurrent.ThreadFactories;
+import esa.commons.http.HttpVersion;
+import esa.commons.logging.Logger;
+import esa.commons.netty.http.Http1HeadersImpl;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * The store of {@link DiskCacheInterceptor}, which persists the responses in append-only segment files under a
+ * directory, so that they survive restarts. Segment files are mapped into memory, and the body of a response
+ * which is served from the cache is a view of the mapped region, which means that no copy happens on the heap.
+ * <p>
+ * An index of the live records is kept in memory and is rebuilt by scanning the segments when the cache is
+ * opened, and a record which is torn by a crash is discarded by its checksum. Records which are overwritten or
+ * invalidated become garbage, and a sealed segment whose live ratio drops below
+ * {@link #compactionThreshold()} is compacted in background by copying its live records to the active segment.
+ * The oldest segments are dropped once the total size of segments exceeds {@link #maximumSize()}.
+ * <p>
+ * Records are written by a background writer, so that the callers, which are usually the I/O threads, never wait
+ * for the disk, and a response is discarded if there are too many pending writes. The lock of the cache is only
+ * held to reserve room in the active segment and to update the index, both writing and compacting copy the bytes
+ * outside of it.
+ * <p>
+ * Only one {@link DiskCache} should be opened for a directory at a time, and it's shared by the copies of
+ * {@link esa.httpclient.core.HttpClientBuilder}, so it should be closed by the owner.
+ */
+public final class DiskCache extends CacheStore implements Closeable {
+
+    private static final Logger logger = LoggerUtils.logger();
+
+    static final String SUFFIX = ".seg";
+
+    private static final int MAGIC = 0xE5AC0DE1;
+    private static final int RECORD_HEADER = 12;
+    private static final byte TYPE_PUT = 1;
+    private static final byte TYPE_REMOVE = 2;
+    private static final int MAX_PENDING_WRITES = 1024;
+
+    private final File directory;
+    private final int segmentSize;
+    private final long maximumSize;
+    private final int maximumEntrySize;
+    private final double compactionThreshold;
+
+    private final ConcurrentHashMap<String, Slot> index = new ConcurrentHashMap<>();
+
+    /**
+     * Count of pending invalidations of every key, and the writes which are submitted before them are discarded.
+     */
+    private final ConcurrentHashMap<String, Integer> invalidating = new ConcurrentHashMap<>();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private final AtomicLong liveBytes = new AtomicLong();
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final AtomicInteger pendingWrites = new AtomicInteger();
+    private final Object compactionLock = new Object();
+    private final ExecutorService writer;
+    private final ExecutorService compactor;
+
+    /**
+     * Guarded by the lock of {@link DiskCache}.
+     */
+    private Segment active;
+    private volatile boolean closed;
+
+    DiskCache(File directory,
+              int segmentSize,
+              long maximumSize,
+              int maximumEntrySize,
+              double compactionThreshold,
+              boolean shared,
+              LongSupplier clock) throws IOException {
+        super(shared, clock);
+        Checks.checkNotNull(directory, "directory must not be null");
+        Checks.checkArg(segmentSize > RECORD_HEADER, "segmentSize is " + segmentSize + " (expected > "
+                + RECORD_HEADER + ")");
+        Checks.checkArg(maximumSize >= 2L * segmentSize, "maximumSize is " + maximumSize
+                + " (expected >= 2 * segmentSize)");
+        Checks.checkArg(maximumEntrySize > 0 && maximumEntrySize < segmentSize, "maximumEntrySize is "
+                + maximumEntrySize + " (expected > 0 and < segmentSize)");
+        Checks.checkArg(compactionThreshold >= 0.0d && compactionThreshold < 1.0d, "compactionThreshold is "
+                + compactionThreshold + " (expected >= 0 and < 1)");
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Failed to create directory: " + directory);
+        }
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.maximumSize = maximumSize;
+        this.maximumEntrySize = maximumEntrySize;
+        this.compactionThreshold = compactionThreshold;
+        this.writer = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                ThreadFactories.namedThreadFactory("HttpClient-DiskCache-Writer-", true));
+        this.compactor = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(),
+                ThreadFactories.namedThreadFactory("HttpClient-DiskCache-Compactor-", true));
+        recover();
+    }
+
+    public static DiskCacheBuilder builder(File directory) {
+        return new DiskCacheBuilder(directory);
+    }
+
+    public File directory() {
+        return directory;
+    }
+
+    public int segmentSize() {
+        return segmentSize;
+    }
+
+    public long maximumSize() {
+        return maximumSize;
+    }
+
+    public int maximumEntrySize() {
+        return maximumEntrySize;
+    }
+
+    public double compactionThreshold() {
+        return compactionThreshold;
+    }
+
+    @Override
+    CacheEntry get(String key) {
+        final Slot slot = index.get(key);
+        return slot == null ? null : slot.entry;
+    }
+
+    @Override
+    boolean put(String key,
+                HttpRequest request,
+                HttpResponse response,
+                long requestTime,
+                long responseTime) {
+        final ByteBuf body = response.body().getByteBuf();
+        if (body.readableBytes() > maximumEntrySize) {
+            return false;
+        }
+        // The entry doesn't own the body, which is only used to build the metadata.
+        final byte[] meta = metaOf(TYPE_PUT, key, CacheEntry.wrap(request, response, requestTime, responseTime,
+                shared()));
+        return write(key, meta, body.retainedDuplicate());
+    }
+
+    @Override
+    boolean put(String key, CacheEntry entry) {
+        return write(key, metaOf(TYPE_PUT, key, entry), entry.body);
+    }
+
+    /**
+     * Drops given key from the index at once, and the invalidation is persisted in background.
+     */
+    @Override
+    void invalidate(String key) {
+        if (!index.containsKey(key) && pendingWrites.get() == 0) {
+            return;
+        }
+        // Mark before dropping, so that a pending write of the key won't be put into the index after that.
+        invalidating.merge(key, 1, Integer::sum);
+        synchronized (this) {
+            kill(index.remove(key));
+        }
+        try {
+            writer.execute(() -> persistInvalidation(key));
+        } catch (Throwable ex) {
+            // Closed, it may be resurrected after restarting.
+            invalidating.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+            logger.warn("Failed to persist the invalidation of " + key, ex);
+        }
+    }
+
+    @Override
+    HttpResponse serve(CacheEntry entry, long ageMillis) {
+        // Every response has its own ByteBuf which wraps the mapped region, so that releasing it won't affect
+        // the others.
+        return entry.toResponse(Unpooled.wrappedBuffer(entry.body.nioBuffer()), ageMillis);
+    }
+
+    @Override
+    long entries() {
+        return index.size();
+    }
+
+    @Override
+    long weightedSize() {
+        return liveBytes.get();
+    }
+
+    /**
+     * Obtains the count of segment files.
+     *
+     * @return count
+     */
+    synchronized int segments() {
+        return segments.size();
+    }
+
+    /**
+     * Waits until the pending writes are done.
+     */
+    void flush() {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException ignored) {
+            // Closed
+        }
+    }
+
+    /**
+     * Compacts the sealed segments whose live ratio is below {@link #compactionThreshold()}, which runs in
+     * background automatically.
+     */
+    void compact() {
+        synchronized (compactionLock) {
+            final List<Segment> candidates = new ArrayList<>();
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                for (Segment segment : segments.values()) {
+                    // A sealed segment never gets new records once the ones being written are done.
+                    if (segment != active && segment.writing == 0
+                            && segment.liveBytes < segment.position * compactionThreshold) {
+                        candidates.add(segment);
+                    }
+                }
+            }
+            for (Segment segment : candidates) {
+                try {
+                    compact(segment);
+                } catch (IOException ex) {
+                    logger.warn("Failed to compact segment: " + segment.file, ex);
+                    break;
+                }
+            }
+            synchronized (this) {
+                evictIfNecessary();
+            }
+        }
+    }
+
+    /**
+     * Flushes the mapped segments to disk after the pending writes are done, and stops compacting. The stored
+     * responses are still readable after closing, but nothing would be stored any more.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        writer.shutdown();
+        compactor.shutdown();
+        try {
+            writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            compactor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            for (Segment segment : segments.values()) {
+                segment.buffer.force();
+            }
+        }
+    }
+
+    /**
+     * Submits a record to the writer, and the body will be released once it's written.
+     */
+    private boolean write(String key, byte[] meta, ByteBuf body) {
+        final int length = RECORD_HEADER + meta.length + 4 + body.readableBytes();
+        if (closed || length > segmentSize) {
+            body.release();
+            return false;
+        }
+        if (pendingWrites.incrementAndGet() > MAX_PENDING_WRITES) {
+            pendingWrites.decrementAndGet();
+            body.release();
+            return false;
+        }
+        try {
+            writer.execute(() -> {
+                try {
+                    append(key, meta, body, length);
+                } finally {
+                    pendingWrites.decrementAndGet();
+                    body.release();
+                }
+            });
+            return true;
+        } catch (Throwable ex) {
+            // Closed
+            pendingWrites.decrementAndGet();
+            body.release();
+            return false;
+        }
+    }
+
+    private void append(String key, byte[] meta, ByteBuf body, int length) {
+        final Reservation reservation;
+        synchronized (this) {
+            try {
+                reservation = reserve(length);
+            } catch (IOException ex) {
+                logger.warn("Failed to store " + key + " on disk", ex);
+                return;
+            }
+        }
+
+        final Segment segment = reservation.segment;
+        writeRecord(segment, reservation.offset, meta, body);
+        final Slot slot = new Slot(segment, reservation.offset, length,
+                readRecord(segment, reservation.offset).entry);
+        synchronized (this) {
+            segment.writing--;
+            // The segment may have been dropped while writing, and the key may have been invalidated.
+            if (segments.get(segment.id) == segment && !invalidating.containsKey(key)) {
+                live(key, slot);
+                kill(index.put(key, slot));
+                evictIfNecessary();
+            }
+        }
+        maybeCompact();
+    }
+
+    private void persistInvalidation(String key) {
+        final byte[] meta = metaOf(TYPE_REMOVE, key, null);
+        final Reservation reservation;
+        synchronized (this) {
+            invalidating.computeIfPresent(key, (k, count) -> count == 1 ? null : count - 1);
+            // The tombstone is always written, because the discarded writes of the key are on disk as well.
+            try {
+                reservation = reserve(RECORD_HEADER + meta.length + 4);
+            } catch (IOException ex) {
+                logger.warn("Failed to persist the invalidation of " + key, ex);
+                return;
+            }
+        }
+
+        writeRecord(reservation.segment, reservation.offset, meta, Unpooled.EMPTY_BUFFER);
+        synchronized (this) {
+            reservation.segment.writing--;
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Invalidated {} at {}:{}", key, reservation.segment.id, reservation.offset);
+        }
+        maybeCompact();
+    }
+
+    /**
+     * Reserves room for a record of given length in the active segment, which is guarded by the lock of
+     * {@link DiskCache}.
+     */
+    private Reservation reserve(int length) throws IOException {
+        final Segment segment = segmentFor(length);
+        final int offset = segment.position;
+        segment.position += length;
+        segment.writing++;
+        return new Reservation(segment, offset);
+    }
+
+    private void live(String key, Slot slot) {
+        slot.segment.liveBytes += slot.length;
+        slot.segment.keys.add(key);
+        liveBytes.addAndGet(slot.length);
+    }
+
+    private void kill(Slot slot) {
+        if (slot != null) {
+            slot.segment.liveBytes -= slot.length;
+            liveBytes.addAndGet(-slot.length);
+        }
+    }
+
+    /**
+     * Obtains the active segment which has enough room for a record of given length, the active one is sealed
+     * and a new one is created if it's full.
+     */
+    private Segment segmentFor(int length) throws IOException {
+        if (active != null && active.position + length <= segmentSize) {
+            return active;
+        }
+        final long id = segments.isEmpty() ? 0L : segments.lastKey() + 1L;
+        active = Segment.open(new File(directory, String.format("%016d", id) + SUFFIX), id, segmentSize);
+        segments.put(id, active);
+        return active;
+    }
+
+    private void evictIfNecessary() {
+        while ((long) segments.size() * segmentSize > maximumSize && segments.size() > 1) {
+            final Segment oldest = segments.pollFirstEntry().getValue();
+            for (String key : oldest.keys) {
+                final Slot slot = index.get(key);
+                if (slot != null && slot.segment == oldest && index.remove(key, slot)) {
+                    kill(slot);
+                    onEviction();
+                }
+            }
+            oldest.delete();
+        }
+    }
+
+    private void maybeCompact() {
+        if (closed || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } finally {
+                    compacting.set(false);
+                }
+            });
+        } catch (Throwable ex) {
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * Copies the live records of given sealed segment to the active segment without holding the lock, and then
+     * swaps the slots in the index if they haven't been changed meanwhile.
+     */
+    private void compact(Segment segment) throws IOException {
+        final boolean hasOlder;
+        final int position;
+        synchronized (this) {
+            if (segments.get(segment.id) != segment) {
+                return;
+            }
+            hasOlder = segments.firstKey() < segment.id;
+            position = segment.position;
+        }
+
+        int offset = 0;
+        while (offset < position) {
+            if (closed) {
+                return;
+            }
+            final Record record = readRecord(segment, offset);
+            final Slot slot = index.get(record.key);
+            final boolean live = record.type == TYPE_PUT
+                    ? slot != null && slot.segment == segment && slot.offset == offset
+                    // Tombstones are kept as long as the dead records they cover may exist.
+                    : hasOlder && slot == null;
+            if (live) {
+                move(segment, offset, record, slot);
+            }
+            offset += record.length;
+        }
+
+        synchronized (this) {
+            if (!segments.remove(segment.id, segment)) {
+                return;
+            }
+        }
+        segment.delete();
+        if (logger.isDebugEnabled()) {
+            logger.debug("Compacted segment: {}", segment.file);
+        }
+    }
+
+    private void move(Segment segment, int offset, Record record, Slot slot) throws IOException {
+        final Reservation reservation;
+        synchronized (this) {
+            reservation = reserve(record.length);
+        }
+
+        final Segment target = reservation.segment;
+        final ByteBuffer src = segment.buffer.duplicate();
+        src.limit(offset + record.length).position(offset);
+        final ByteBuffer dst = target.buffer.duplicate();
+        dst.position(reservation.offset);
+        dst.put(src);
+        final Slot moved = record.type == TYPE_PUT
+                ? new Slot(target, reservation.offset, record.length, readRecord(target, reservation.offset).entry)
+                : null;
+        synchronized (this) {
+            target.writing--;
+            if (moved != null && segments.get(target.id) == target && index.replace(record.key, slot, moved)) {
+                kill(slot);
+                live(record.key, moved);
+            }
+        }
+    }
+
+    private void recover() throws IOException {
+        final File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        final TreeMap<Long, File> sorted = new TreeMap<>();
+        for (File file : files) {
+            try {
+                sorted.put(Long.parseLong(file.getName().substring(0, file.getName().length()
+                        - SUFFIX.length())), file);
+            } catch (NumberFormatException ignored) {
+                // Not a segment.
+            }
+        }
+
+        for (Map.Entry<Long, File> e : sorted.entrySet()) {
+            if (e.getValue().length() != segmentSize) {
+                logger.warn("Discard segment: {} whose size doesn't match segmentSize: {}", e.getValue(),
+                        segmentSize);
+                if (!e.getValue().delete()) {
+                    logger.warn("Failed to delete segment: {}", e.getValue());
+                }
+                continue;
+            }
+            final Segment segment = Segment.open(e.getValue(), e.getKey(), segmentSize);
+            segments.put(segment.id, segment);
+            int offset = 0;
+            Record record;
+            while ((record = tryReadRecord(segment, offset)) != null) {
+                if (record.type == TYPE_PUT) {
+                    final Slot slot = new Slot(segment, offset, record.length, record.entry);
+                    live(record.key, slot);
+                    kill(index.put(record.key, slot));
+                } else {
+                    kill(index.remove(record.key));
+                }
+                offset += record.length;
+            }
+            // Discard the torn record if any.
+            segment.position = offset;
+            active = segment;
+        }
+        evictIfNecessary();
+        if (!index.isEmpty()) {
+            logger.info("Recovered {} responses from disk cache: {}", index.size(), directory);
+        }
+    }
+
+    private Record tryReadRecord(Segment segment, int offset) {
+        if (offset + RECORD_HEADER > segmentSize || segment.buffer.getInt(offset) != MAGIC) {
+            return null;
+        }
+        final int length = segment.buffer.getInt(offset + 4);
+        if (length <= RECORD_HEADER || length > segmentSize - offset) {
+            return null;
+        }
+        final ByteBuffer payload = segment.buffer.duplicate();
+        payload.limit(offset + length).position(offset + RECORD_HEADER);
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != segment.buffer.getInt(offset + 8)) {
+            return null;
+        }
+        try {
+            return readRecord(segment, offset);
+        } catch (RuntimeException ex) {
+            return null;
+        }
+    }
+
+    private Record readRecord(Segment segment, int offset) {
+        final ByteBuffer buf = segment.buffer.duplicate();
+        final int length = buf.getInt(offset + 4);
+        buf.limit(offset + length).position(offset + RECORD_HEADER);
+        final byte type = buf.get();
+        final String key = readString(buf);
+        if (type != TYPE_PUT) {
+            return new Record(type, key, length, null);
+        }
+
+        final long requestTime = buf.getLong();
+        final long responseTime = buf.getLong();
+        final int status = buf.getShort();
+        final byte version = buf.get();
+        final Http1HeadersImpl headers = new Http1HeadersImpl();
+        final int headerCount = buf.getInt();
+        for (int i = 0; i < headerCount; i++) {
+            headers.add(readString(buf), readString(buf));
+        }
+        final String[] varyValues = new String[buf.getInt()];
+        for (int i = 0; i < varyValues.length; i++) {
+            varyValues[i] = readString(buf);
+        }
+        final int bodyLength = buf.getInt();
+        final ByteBuffer body = buf.slice();
+        body.limit(bodyLength);
+        return new Record(type, key, length, new CacheEntry(status,
+                version == 0 ? null : HttpVersion.values()[version - 1], headers, varyValues,
+                Unpooled.wrappedBuffer(body), requestTime, responseTime, shared()));
+    }
+
+    /**
+     * Writes a record at given offset of the segment, which has been reserved. The magic is written at last so
+     * that a torn record can be detected.
+     */
+    private static void writeRecord(Segment segment, int offset, byte[] meta, ByteBuf body) {
+        final int bodyLength = body.readableBytes();
+        final int length = RECORD_HEADER + meta.length + 4 + bodyLength;
+        final ByteBuffer buf = segment.buffer.duplicate();
+        buf.position(offset + RECORD_HEADER);
+        buf.put(meta);
+        buf.putInt(bodyLength);
+        final ByteBuffer dst = buf.slice();
+        dst.limit(bodyLength);
+        body.getBytes(body.readerIndex(), dst);
+
+        final ByteBuffer payload = segment.buffer.duplicate();
+        payload.limit(offset + length).position(offset + RECORD_HEADER);
+        final CRC32 crc = new CRC32();
+        crc.update(payload);
+        segment.buffer.putInt(offset + 4, length);
+        segment.buffer.putInt(offset + 8, (int) crc.getValue());
+        segment.buffer.putInt(offset, MAGIC);
+    }
+
+    private static byte[] metaOf(byte type, String key, CacheEntry entry) {
+        final List<byte[]> strings = new ArrayList<>();
+        int length = 1 + sizeOf(key, strings);
+        int headers = 0;
+        if (entry != null) {
+            length += 8 + 8 + 2 + 1 + 4 + 4;
+            for (Map.Entry<String, String> header : entry.headers) {
+                length += sizeOf(header.getKey(), strings) + sizeOf(header.getValue(), strings);
+                headers++;
+            }
+            for (String value : entry.varyValues) {
+                length += sizeOf(value, strings);
+            }
+        }
+
+        final ByteBuffer buf = ByteBuffer.allocate(length);
+        final Iterator<byte[]> it = strings.iterator();
+        buf.put(type);
+        writeString(buf, it.next());
+        if (entry != null) {
+            buf.putLong(entry.requestTime);
+            buf.putLong(entry.responseTime);
+            buf.putShort((short) entry.status);
+            buf.put(entry.version == null ? 0 : (byte) (entry.version.ordinal() + 1));
+            buf.putInt(headers);
+            for (int i = 0; i < headers * 2; i++) {
+                writeString(buf, it.next());
+            }
+            buf.putInt(entry.varyValues.length);
+            for (int i = 0; i < entry.varyValues.length; i++) {
+                writeString(buf, it.next());
+            }
+        }
+        return buf.array();
+    }
+
+    private static int sizeOf(String value, List<byte[]> strings) {
+        final byte[] bytes = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        strings.add(bytes);
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    private static void writeString(ByteBuffer buf, byte[] bytes) {
+        if (bytes == null) {
+            buf.putInt(-1);
+        } else {
+            buf.putInt(bytes.length);
+            buf.put(bytes);
+        }
+    }
+
+    private static String readString(ByteBuffer buf) {
+        final int length = buf.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buf.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", DiskCache.class.getSimpleName() + "[", "]")
+                .add("directory=" + directory)
+                .add("segmentSize=" + segmentSize)
+                .add("maximumSize=" + maximumSize)
+                .add("maximumEntrySize=" + maximumEntrySize)
+                .add("compactionThreshold=" + compactionThreshold)
+                .add("shared=" + shared())
+                .toString();
+    }
+
+    private static final class Segment {
+
+        private final long id;
+        private final File file;
+        private final MappedByteBuffer buffer;
+
+        /**
+         * Guarded by the lock of {@link DiskCache}.
+         */
+        private int position;
+        private long liveBytes;
+        private int writing;
+
+        /**
+         * Keys of the records which have been live in this segment, so that the index needn't be scanned while
+         * dropping it. Guarded by the lock of {@link DiskCache}.
+         */
+        private final List<String> keys = new ArrayList<>();
+
+        private Segment(long id, File file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        private static Segment open(File file, long id, int size) throws IOException {
+            // Closing the channel closes the file as well.
+            try (FileChannel channel = new RandomAccessFile(file, "rw").getChannel()) {
+                // The mapping is still valid after the channel is closed.
+                return new Segment(id, file, channel.map(FileChannel.MapMode.READ_WRITE, 0L, size));
+            }
+        }
+
+        private void delete() {
+            // The mapped regions which are being read are still valid after deleting.
+            if (!file.delete()) {
+                logger.warn("Failed to delete segment: {}", file);
+            }
+        }
+    }
+
+    private static final class Slot {
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+        private final CacheEntry entry;
+
+        private Slot(Segment segment, int offset, int length, CacheEntry entry) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.entry = entry;
+        }
+    }
+
+    private static final class Reservation {
+
+        private final Segment segment;
+        private final int offset;
+
+        private Reservation(Segment segment, int offset) {
+            this.segment = segment;
+            this.offset = offset;
+        }
+    }
+
+    private static final class Record {
+
+        private final byte type;
+        private final String key;
+        private final int length;
+        private final CacheEntry entry;
+
+        private Record(byte type, String key, int length, CacheEntry entry) {
+            this.type = type;
+            this.key = key;
+            this.length = length;
+            this.entry = entry;
+        }
+    }
+
+    public static class DiskCacheBuilder {
+
+        private final File directory;
+        private int segmentSize = 64 * 1024 * 1024;
+        private long maximumSize = 1024L * 1024L * 1024L;
+        private int maximumEntrySize = 16 * 1024 * 1024;
+        private double compactionThreshold = 0.5d;
+        private boolean shared;
+
+        DiskCacheBuilder(File directory) {
+            this.directory = directory;
+        }
+
+        /**
+         * Sets the size of every segment file, which must be larger than {@link #maximumEntrySize(int)}.
+         *
+         * @param segmentSize size in bytes, defaults to 64MB
+         * @return this builder
+         */
+        public DiskCacheBuilder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        /**
+         * Sets the max total size of the segment files, the oldest segments are dropped when it's exceeded.
+         *
+         * @param maximumSize size in bytes, defaults to 1GB
+         * @return this builder
+         */
+        public DiskCacheBuilder maximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Responses whose body is larger than given size won't be stored.
+         *
+         * @param maximumEntrySize size in bytes, defaults to 16MB
+         * @return this builder
+         */
+        public DiskCacheBuilder maximumEntrySize(int maximumEntrySize) {
+            this.maximumEntrySize = maximumEntrySize;
+            return this;
+        }
+
+        /**
+         * A sealed segment is compacted once the ratio of its live records drops below given threshold, 0 means
+         * that segments are never compacted.
+         *
+         * @param compactionThreshold threshold, defaults to 0.5
+         * @return this builder
+         */
+        public DiskCacheBuilder compactionThreshold(double compactionThreshold) {
+            this.compactionThreshold = compactionThreshold;
+            return this;
+        }
+
+        /**
+         * Whether the cache is shared by multiple users, see {@link HttpCache.HttpCacheBuilder#shared(boolean)}.
+         *
+         * @param shared shared, defaults to false
+         * @return this builder
+         */
+        public DiskCacheBuilder shared(boolean shared) {
+            this.shared = shared;
+            return this;
+        }
+
+        /**
+         * Opens the {@link DiskCache}, and the responses which have been stored in the directory are recovered.
+         *
+         * @return cache
+         * @throws UncheckedIOException if failed to open the segment files
+         */
+        public DiskCache build() {
+            try {
+                return new DiskCache(directory, segmentSize, maximumSize, maximumEntrySize, compactionThreshold,
+                        shared, System::currentTimeMillis);
+            } catch (IOException ex) {
+                throw new UncheckedIOException("Failed to open disk cache in " + directory, ex);
+            }
+        }
+    }
+}
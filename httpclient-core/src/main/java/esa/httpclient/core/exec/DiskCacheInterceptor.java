@@ -0,0 +1,46 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This interceptor serves requests from {@link DiskCache} with the same semantics as {@link CacheInterceptor},
+ * and it's ordered after {@link CacheInterceptor} so that it works as the second tier below the in-memory cache:
+ * the responses which are served from disk are stored by the in-memory cache if they are small enough.
+ */
+public class DiskCacheInterceptor implements Interceptor {
+
+    private final CacheInterceptor delegate;
+
+    public DiskCacheInterceptor(DiskCache cache) {
+        this.delegate = new CacheInterceptor(cache);
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> proceed(HttpRequest request, ExecChain next) {
+        return delegate.proceed(request, next);
+    }
+
+    @Override
+    public int getOrder() {
+        return -5400;
+    }
+
+}
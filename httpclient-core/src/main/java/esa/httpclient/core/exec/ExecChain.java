@@ -45,4 +45,15 @@ public interface ExecChain {
      */
     CompletableFuture<HttpResponse> proceed(HttpRequest request);
 
+    /**
+     * Obtains a chain which proceeds with given {@link Context} instead, so that the requests which are sent
+     * concurrently on behalf of the same request, eg: hedged requests, don't share their state.
+     *
+     * @param ctx ctx
+     * @return chain, or current chain if it can't be bound to another {@link Context}
+     */
+    default ExecChain withCtx(Context ctx) {
+        return this;
+    }
+
 }
@@ -52,8 +52,41 @@ public class FilteringExec implements Interceptor {
             listener.onFiltersStart(request, ctx0);
         }
 
-        return applyRequestFilters(request, ctx0)
-                .thenCompose(v -> next.proceed(request));
+        final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        applyRequestFilters(request, ctx0).whenComplete((v, th) -> {
+            if (th != null) {
+                response.completeExceptionally(Futures.unwrapped(th));
+                return;
+            }
+            // Maybe cancelled while filtering
+            if (response.isDone()) {
+                return;
+            }
+
+            final CompletableFuture<HttpResponse> proceeding;
+            try {
+                proceeding = next.proceed(request);
+            } catch (Throwable ex) {
+                response.completeExceptionally(ex);
+                return;
+            }
+
+            // Propagate the cancellation to the underlying execution, so that the request can be cancelled on
+            // the wire, eg: the loser of hedged requests.
+            response.whenComplete((r, t) -> {
+                if (response.isCancelled()) {
+                    proceeding.cancel(false);
+                }
+            });
+            proceeding.whenComplete((r, t) -> {
+                if (t == null) {
+                    response.complete(r);
+                } else {
+                    response.completeExceptionally(Futures.unwrapped(t));
+                }
+            });
+        });
+        return response;
     }
 
     private CompletableFuture<Void> applyRequestFilters(HttpRequest request, FilterContext ctx) {
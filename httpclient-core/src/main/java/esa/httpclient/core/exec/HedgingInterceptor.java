@@ -0,0 +1,314 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import esa.commons.Checks;
+import esa.commons.http.HttpMethod;
+import esa.commons.logging.Logger;
+import esa.httpclient.core.Context;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.config.HedgingOptions;
+import esa.httpclient.core.util.Futures;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.util.Timer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static esa.httpclient.core.exec.RequestExecutorImpl.CUSTOM_HANDLE_KEY;
+
+/**
+ * This interceptor sends hedged(speculative) requests for idempotent requests. If no response has arrived within
+ * the delay, which is fixed or the observed latency of the host at given percentile, another copy of the request
+ * will be sent and the first successful response wins. The other requests in flight will be cancelled, which
+ * resets the stream of HTTP/2 or closes the connection of HTTP/1.x, and the count of hedged requests is limited
+ * by the budget of {@link HedgingOptions}. Every hedged request proceeds with its own copy of the {@link Context},
+ * so that the concurrent requests don't share their state.
+ * <p>
+ * The latency of a host is sampled from the first request only, which is recorded once it completes, or once it's
+ * beaten by a hedged request as it takes at least that long, so that the slow ones are taken into account.
+ * <p>
+ * Only {@code GET} and {@code HEAD} requests which are aggregated by the default handle are hedged, because the
+ * response of other requests can not be consumed twice.
+ */
+public class HedgingInterceptor implements Interceptor {
+
+    private static final Logger logger = LoggerUtils.logger();
+
+    private final HedgingOptions options;
+    private final Timer timer;
+    private final Cache<String, Latencies> latencies = HostCaches.newCache();
+
+    public HedgingInterceptor(HedgingOptions options) {
+        this(options, null);
+    }
+
+    /**
+     * Creates a {@link HedgingInterceptor} which waits for the delays by given {@link Timer}.
+     *
+     * @param options options
+     * @param timer   timer, the delays are scheduled on the I/O threads(or the shared timer) if it's null
+     */
+    public HedgingInterceptor(HedgingOptions options, Timer timer) {
+        Checks.checkNotNull(options, "HedgingOptions must not be null");
+        this.options = options;
+        this.timer = timer;
+    }
+
+    @Override
+    public CompletableFuture<HttpResponse> proceed(HttpRequest request, ExecChain next) {
+        if (!isHedgeable(request, next)) {
+            return next.proceed(request);
+        }
+
+        final String host = HostCaches.keyOf(request);
+        if (options.budget() != null) {
+            options.budget().onRequest(host);
+        }
+
+        // Copies the request and the context before they are used, because they may be modified while sending.
+        return new Hedging(request, request.copy(), next, next.ctx().copy(), host).start();
+    }
+
+    @Override
+    public int getOrder() {
+        return -2000;
+    }
+
+    /**
+     * Obtains the delay before sending the hedged request of given host.
+     *
+     * @param host host
+     * @return delay in milliseconds
+     */
+    long delayMillis(String host) {
+        if (options.percentile() <= 0.0d) {
+            return options.delayMillis();
+        }
+
+        final Latencies l = latencies.getIfPresent(host);
+        final long delay = l == null ? -1L : l.percentile();
+        return delay > 0L ? delay : options.delayMillis();
+    }
+
+    void onLatency(String host, long latencyMillis) {
+        if (options.percentile() > 0.0d) {
+            latencies.get(host, k -> new Latencies(options.percentile())).record(latencyMillis);
+        }
+    }
+
+    private static boolean isHedgeable(HttpRequest request, ExecChain next) {
+        if (request.method() != HttpMethod.GET && request.method() != HttpMethod.HEAD) {
+            return false;
+        }
+        if (request.isSegmented() || request.isMultipart() || request.isFile()) {
+            return false;
+        }
+
+        return !next.ctx().getAttr(CUSTOM_HANDLE_KEY, false);
+    }
+
+    private final class Hedging {
+
+        private final HttpRequest request;
+        private final HttpRequest pristine;
+        private final ExecChain next;
+        private final Context pristineCtx;
+        private final String host;
+        private final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        private final List<CompletableFuture<HttpResponse>> attempts = new ArrayList<>(2);
+        private int attempted;
+        private int outstanding;
+        private CompletableFuture<Void> delay;
+        private long primaryStart;
+        private boolean primarySampled;
+
+        private Hedging(HttpRequest request, HttpRequest pristine, ExecChain next, Context pristineCtx, String host) {
+            this.request = request;
+            this.pristine = pristine;
+            this.next = next;
+            this.pristineCtx = pristineCtx;
+            this.host = host;
+        }
+
+        private CompletableFuture<HttpResponse> start() {
+            // Cancels all the requests in flight and the pending hedge once the response has been completed(eg:
+            // completed by the winner or cancelled by caller).
+            response.whenComplete((r, t) -> cancelAll());
+            attempt(request, next);
+            return response;
+        }
+
+        private void attempt(HttpRequest request0, ExecChain chain) {
+            final boolean primary;
+            synchronized (this) {
+                if (response.isDone()) {
+                    return;
+                }
+                outstanding++;
+                primary = ++attempted == 1;
+                if (attempted <= options.maxHedges()) {
+                    // The hedge is sent from an I/O thread once the delay has elapsed.
+                    delay = Timers.delay(timer, pristineCtx, delayMillis(host), TimeUnit.MILLISECONDS);
+                    delay.thenRun(this::hedge);
+                }
+                if (primary) {
+                    primaryStart = System.nanoTime();
+                }
+            }
+
+            CompletableFuture<HttpResponse> attempt;
+            try {
+                attempt = chain.proceed(request0);
+            } catch (Throwable ex) {
+                attempt = Futures.completed(ex);
+            }
+
+            synchronized (this) {
+                attempts.add(attempt);
+            }
+            // Maybe completed by another attempt concurrently
+            if (response.isDone()) {
+                attempt.cancel(false);
+            }
+
+            final CompletableFuture<HttpResponse> attempt0 = attempt;
+            attempt.whenComplete((rsp, th) -> onAttemptDone(attempt0, rsp, th, primary));
+        }
+
+        private void hedge() {
+            if (response.isDone()) {
+                return;
+            }
+            if (options.budget() != null && !options.budget().tryRetry(host)) {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Hedging budget has been exhausted, skip hedging request: {}", request);
+                }
+                return;
+            }
+
+            if (logger.isDebugEnabled()) {
+                logger.debug("No response has arrived within the delay, begin to hedge request: {}", request);
+            }
+            attempt(pristine.copy(), next.withCtx(pristineCtx.copy()));
+        }
+
+        private void onAttemptDone(CompletableFuture<HttpResponse> attempt,
+                                   HttpResponse rsp,
+                                   Throwable th,
+                                   boolean primary) {
+            if (attempt.isCancelled()) {
+                return;
+            }
+
+            if (primary) {
+                samplePrimary();
+            }
+            if (th == null) {
+                // The primary one takes at least as long as now if it's beaten by a hedged one.
+                if (response.complete(rsp) && !primary) {
+                    samplePrimary();
+                }
+                return;
+            }
+
+            // Fails only if there is no other request in flight, so that the error can be handled by the
+            // interceptors before(eg: retried by RetryInterceptor) as soon as possible.
+            final boolean last;
+            synchronized (this) {
+                last = --outstanding <= 0;
+            }
+            if (last) {
+                response.completeExceptionally(Futures.unwrapped(th));
+            }
+        }
+
+        private void samplePrimary() {
+            final long start;
+            synchronized (this) {
+                if (primarySampled) {
+                    return;
+                }
+                primarySampled = true;
+                start = primaryStart;
+            }
+            onLatency(host, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        private void cancelAll() {
+            final List<CompletableFuture<HttpResponse>> attempts0;
+            synchronized (this) {
+                if (delay != null) {
+                    delay.cancel(false);
+                }
+                attempts0 = new ArrayList<>(attempts);
+            }
+
+            for (CompletableFuture<HttpResponse> attempt : attempts0) {
+                attempt.cancel(false);
+            }
+        }
+    }
+
+    /**
+     * Recent latencies of a host, the percentile of which is re-calculated once every {@link #RECALCULATE_INTERVAL}
+     * samples.
+     */
+    private static final class Latencies {
+
+        private static final int SIZE = 256;
+        private static final int MIN_SAMPLES = 32;
+        private static final int RECALCULATE_INTERVAL = 32;
+
+        private final double percentile;
+        private final AtomicLongArray samples = new AtomicLongArray(SIZE);
+        private final AtomicLong count = new AtomicLong();
+        private volatile long value = -1L;
+
+        private Latencies(double percentile) {
+            this.percentile = percentile;
+        }
+
+        private void record(long latencyMillis) {
+            final long index = count.getAndIncrement();
+            samples.set((int) (index % SIZE), latencyMillis);
+            if ((index + 1) >= MIN_SAMPLES && (index + 1) % RECALCULATE_INTERVAL == 0) {
+                recalculate((int) Math.min(index + 1, SIZE));
+            }
+        }
+
+        private long percentile() {
+            return value;
+        }
+
+        private void recalculate(int size) {
+            final long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = samples.get(i);
+            }
+            Arrays.sort(sorted);
+            value = sorted[Math.max(0, (int) Math.ceil(percentile * size) - 1)];
+        }
+    }
+
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.Scheme;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the caches of the state kept for every host, eg: latencies, retry budgets and circuit breakers, which
+ * are evicted once the hosts haven't been accessed for a while, so that the state of the hosts which are no longer
+ * requested won't be kept forever. All of them are keyed by {@link #keyOf(HttpRequest)}.
+ */
+final class HostCaches {
+
+    static final long MAXIMUM_SIZE = 4096L;
+    static final long EXPIRE_MINUTES = 10L;
+
+    private HostCaches() {
+    }
+
+    /**
+     * Obtains the key of the host of given request, which is the address(host:port) that connection pools are
+     * keyed by, and the default port of the scheme is used if absent.
+     *
+     * @param request request
+     * @return address(host:port)
+     */
+    static String keyOf(HttpRequest request) {
+        int port = request.uri().port();
+        if (port <= 0) {
+            port = Scheme.HTTPS.name0().equalsIgnoreCase(request.scheme())
+                    ? Scheme.HTTPS.port() : Scheme.HTTP.port();
+        }
+        return request.uri().host() + ":" + port;
+    }
+
+    static <V> Cache<String, V> newCache() {
+        return Caffeine.newBuilder()
+                .maximumSize(MAXIMUM_SIZE)
+                .expireAfterAccess(EXPIRE_MINUTES, TimeUnit.MINUTES)
+                .build();
+    }
+}
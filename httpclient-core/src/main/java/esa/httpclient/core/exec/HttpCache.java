@@ -0,0 +1,265 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import esa.commons.Checks;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.Reusable;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.util.IllegalReferenceCountException;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * The store of {@link CacheInterceptor}, which holds the responses in memory and is bounded by the total size of
+ * them. Bodies of the stored responses are held in pooled direct {@link ByteBuf}s, and the body of a response
+ * which is served from the cache is a retained slice of the stored one, so that a cache hit never copies the body.
+ * <p>
+ * The served response owns a reference of the stored body, which should be released once the response has been
+ * consumed, eg: {@code ReferenceCountUtil.release(response)}, otherwise the pooled memory of an evicted entry
+ * is never returned to the pool, which is reported as a leak by netty.
+ * Releasing the served response never affects the stored one. Users who can't release the responses should
+ * enable {@link HttpCacheBuilder#copyOnRead(boolean)}.
+ * <p>
+ * A single response is stored for every uri, and the one with a different {@code Vary} is replaced.
+ */
+public final class HttpCache extends CacheStore implements Reusable<HttpCache> {
+
+    private final long maximumSize;
+    private final int maximumEntrySize;
+    private final boolean copyOnRead;
+    private final Cache<String, CacheEntry> store;
+
+    private final LongAdder weightedSize = new LongAdder();
+
+    HttpCache(long maximumSize, int maximumEntrySize, boolean shared, boolean copyOnRead, LongSupplier clock) {
+        super(shared, clock);
+        Checks.checkArg(maximumSize > 0L, "maximumSize is " + maximumSize + " (expected > 0)");
+        Checks.checkArg(maximumEntrySize > 0 && maximumEntrySize <= maximumSize, "maximumEntrySize is "
+                + maximumEntrySize + " (expected > 0 and <= maximumSize)");
+        this.maximumSize = maximumSize;
+        this.maximumEntrySize = maximumEntrySize;
+        this.copyOnRead = copyOnRead;
+        this.store = Caffeine.newBuilder()
+                .maximumWeight(maximumSize)
+                .weigher((String key, CacheEntry entry) -> entry.weight())
+                // Release the bodies in the caller thread, so that the memory is freed in time.
+                .executor(Runnable::run)
+                .removalListener((String key, CacheEntry entry, RemovalCause cause) -> {
+                    if (entry == null) {
+                        return;
+                    }
+                    weightedSize.add(-entry.weight());
+                    if (cause == RemovalCause.SIZE) {
+                        onEviction();
+                    }
+                    entry.release();
+                })
+                .build();
+    }
+
+    public static HttpCache ofDefault() {
+        return new HttpCacheBuilder().build();
+    }
+
+    public static HttpCacheBuilder builder() {
+        return new HttpCacheBuilder();
+    }
+
+    public long maximumSize() {
+        return maximumSize;
+    }
+
+    public int maximumEntrySize() {
+        return maximumEntrySize;
+    }
+
+    public boolean copyOnRead() {
+        return copyOnRead;
+    }
+
+    /**
+     * Removes all the stored responses.
+     */
+    public void clear() {
+        store.invalidateAll();
+        store.cleanUp();
+    }
+
+    @Override
+    CacheEntry get(String key) {
+        return store.getIfPresent(key);
+    }
+
+    /**
+     * Stores the body of given response, and the response won't be stored if the body is larger than
+     * {@link #maximumEntrySize()}.
+     */
+    @Override
+    boolean put(String key,
+                HttpRequest request,
+                HttpResponse response,
+                long requestTime,
+                long responseTime) {
+        final int length = response.body().readableBytes();
+        if (length > maximumEntrySize) {
+            return false;
+        }
+
+        final ByteBuf body = PooledByteBufAllocator.DEFAULT.directBuffer(length, length);
+        final CacheEntry entry;
+        try {
+            entry = CacheEntry.of(request, response, body, requestTime, responseTime, shared());
+        } catch (Throwable ex) {
+            body.release();
+            throw ex;
+        }
+        return put(key, entry);
+    }
+
+    @Override
+    boolean put(String key, CacheEntry entry) {
+        if (entry.weight() > maximumSize) {
+            entry.release();
+            return false;
+        }
+        weightedSize.add(entry.weight());
+        store.put(key, entry);
+        return true;
+    }
+
+    @Override
+    void invalidate(String key) {
+        store.invalidate(key);
+    }
+
+    @Override
+    HttpResponse serve(CacheEntry entry, long ageMillis) {
+        final ByteBuf body;
+        try {
+            // The slice has its own reference count, so releasing it more than once won't free the stored body.
+            body = entry.body.retainedSlice();
+        } catch (IllegalReferenceCountException ex) {
+            return null;
+        }
+        if (!copyOnRead) {
+            return entry.toResponse(body, ageMillis);
+        }
+        // Copy from the retained slice, so that the body won't be freed by a concurrent eviction.
+        try {
+            return entry.toResponse(Unpooled.copiedBuffer(body), ageMillis);
+        } finally {
+            body.release();
+        }
+    }
+
+    @Override
+    long entries() {
+        return store.estimatedSize();
+    }
+
+    @Override
+    long weightedSize() {
+        return weightedSize.sum();
+    }
+
+    @Override
+    public HttpCache copy() {
+        return new HttpCache(maximumSize, maximumEntrySize, shared(), copyOnRead, clock());
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", HttpCache.class.getSimpleName() + "[", "]")
+                .add("maximumSize=" + maximumSize)
+                .add("maximumEntrySize=" + maximumEntrySize)
+                .add("shared=" + shared())
+                .add("copyOnRead=" + copyOnRead)
+                .toString();
+    }
+
+    public static class HttpCacheBuilder {
+
+        private long maximumSize = 64L * 1024L * 1024L;
+        private int maximumEntrySize = 1024 * 1024;
+        private boolean shared;
+        private boolean copyOnRead;
+
+        HttpCacheBuilder() {
+        }
+
+        /**
+         * Sets the max total size of the stored responses in bytes.
+         *
+         * @param maximumSize size, defaults to 64MB
+         * @return this builder
+         */
+        public HttpCacheBuilder maximumSize(long maximumSize) {
+            this.maximumSize = maximumSize;
+            return this;
+        }
+
+        /**
+         * Responses whose body is larger than given size won't be stored.
+         *
+         * @param maximumEntrySize size in bytes, defaults to 1MB
+         * @return this builder
+         */
+        public HttpCacheBuilder maximumEntrySize(int maximumEntrySize) {
+            this.maximumEntrySize = maximumEntrySize;
+            return this;
+        }
+
+        /**
+         * Whether the cache is shared by multiple users, eg: in a gateway. A shared cache honors {@code s-maxage}
+         * and won't store {@code private} responses or the responses to requests with {@code Authorization}
+         * unless they are explicitly allowed.
+         *
+         * @param shared shared, defaults to false
+         * @return this builder
+         */
+        public HttpCacheBuilder shared(boolean shared) {
+            this.shared = shared;
+            return this;
+        }
+
+        /**
+         * Whether every response served from the cache obtains its own heap copy of the stored body instead of a
+         * retained slice of it. Copying frees users from releasing the served responses, but costs a heap
+         * allocation and a copy of the whole body on every hit, which grows with the size of the body, see
+         * {@code HttpCacheBenchmark} in the benchmark module.
+         *
+         * @param copyOnRead copy on read, defaults to false
+         * @return this builder
+         */
+        public HttpCacheBuilder copyOnRead(boolean copyOnRead) {
+            this.copyOnRead = copyOnRead;
+            return this;
+        }
+
+        public HttpCache build() {
+            return new HttpCache(maximumSize, maximumEntrySize, shared, copyOnRead, System::currentTimeMillis);
+        }
+    }
+}
@@ -52,6 +52,11 @@ public class LinkedExecChain implements ExecChain {
         return current.proceed(request, next);
     }
 
+    @Override
+    public ExecChain withCtx(Context ctx) {
+        return new LinkedExecChain(current, next.withCtx(ctx), ctx);
+    }
+
     static ExecChain from(Interceptor[] interceptors,
                           HttpTransceiver transceiver,
                           BiFunction<Listener, CompletableFuture<HttpResponse>, HandleImpl> handle,
@@ -84,6 +89,11 @@ public class LinkedExecChain implements ExecChain {
             public CompletableFuture<HttpResponse> proceed(HttpRequest request) {
                 return transceiver.handle(request, ctx, handle, listener);
             }
+
+            @Override
+            public ExecChain withCtx(Context ctx0) {
+                return buildTransceiver(transceiver, handle, ctx0, listener);
+            }
         };
 
     }
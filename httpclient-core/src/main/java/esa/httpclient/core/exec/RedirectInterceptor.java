@@ -78,7 +78,10 @@ public class RedirectInterceptor implements Interceptor {
             return;
         }
 
-        next.proceed(request).whenComplete((rsp, th) -> {
+        final CompletableFuture<HttpResponse> attempt = next.proceed(request);
+        // Propagate the cancellation(eg: the deadline has passed) to the attempt in flight.
+        response.whenComplete((r, t) -> attempt.cancel(false));
+        attempt.whenComplete((rsp, th) -> {
             try {
                 // Update hasRedirectedCount immediately
                 final int hasDirectedCount = next.ctx().getAttr(HAS_REDIRECTED_COUNT, -1) + 1;
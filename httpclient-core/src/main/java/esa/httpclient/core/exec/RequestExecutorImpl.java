@@ -33,6 +33,7 @@ import java.util.function.Consumer;
 public class RequestExecutorImpl implements RequestExecutor {
 
     static final String LISTENER_KEY = "$listener";
+    static final String CUSTOM_HANDLE_KEY = "$customHandle";
 
     private final Interceptor[] interceptors;
     private final HttpTransceiver transceiver;
@@ -56,6 +57,9 @@ public class RequestExecutorImpl implements RequestExecutor {
                 ctx,
                 listener);
 
+        if (handle != null || handler != null) {
+            chain.ctx().setAttr(CUSTOM_HANDLE_KEY, true);
+        }
         listener.onInterceptorsStart(request, chain.ctx());
         chain.ctx().setAttr(LISTENER_KEY, listener);
         return chain.proceed(request);
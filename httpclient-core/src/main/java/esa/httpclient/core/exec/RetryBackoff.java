@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.IntToLongFunction;
+
+/**
+ * The interval before retrying a request, which is aware of the interval before previous retry of the same request,
+ * so that stateful strategies(eg: decorrelated jitter) are supported as well. It can be used as the
+ * {@code intervalMs} of {@link RetryInterceptor} and {@link esa.httpclient.core.config.RetryOptions}.
+ */
+@FunctionalInterface
+public interface RetryBackoff extends IntToLongFunction {
+
+    /**
+     * Obtains the interval in milliseconds before the {@code retryCount}th retry.
+     *
+     * @param retryCount             retry count, which starts from 1
+     * @param previousIntervalMillis the interval before previous retry, which is 0 before the first retry
+     * @return interval in milliseconds, retry immediately if it's not positive
+     */
+    long intervalMillis(int retryCount, long previousIntervalMillis);
+
+    @Override
+    default long applyAsLong(int retryCount) {
+        return intervalMillis(retryCount, 0L);
+    }
+
+    /**
+     * Exponential backoff: {@code min(maxMillis, baseMillis * 2 ^ (retryCount - 1))}.
+     *
+     * @param baseMillis interval before the first retry
+     * @param maxMillis  max interval
+     * @return backoff
+     */
+    static RetryBackoff exponential(long baseMillis, long maxMillis) {
+        RetryBackoffs.checkArgs(baseMillis, maxMillis);
+        return (retryCount, previous) -> RetryBackoffs.exponentialInterval(baseMillis, maxMillis, retryCount);
+    }
+
+    /**
+     * Exponential backoff with full jitter: {@code random(0, min(maxMillis, baseMillis * 2 ^ (retryCount - 1)))},
+     * which spreads the retries of concurrent requests evenly so that they won't retry in lockstep.
+     *
+     * @param baseMillis interval before the first retry
+     * @param maxMillis  max interval
+     * @return backoff
+     */
+    static RetryBackoff fullJitter(long baseMillis, long maxMillis) {
+        RetryBackoffs.checkArgs(baseMillis, maxMillis);
+        return (retryCount, previous) -> ThreadLocalRandom.current()
+                .nextLong(RetryBackoffs.exponentialInterval(baseMillis, maxMillis, retryCount) + 1L);
+    }
+
+    /**
+     * Decorrelated jitter: {@code min(maxMillis, random(baseMillis, previousIntervalMillis * 3))}, which grows
+     * according to the previous interval rather than the retry count.
+     *
+     * @param baseMillis min interval
+     * @param maxMillis  max interval
+     * @return backoff
+     */
+    static RetryBackoff decorrelatedJitter(long baseMillis, long maxMillis) {
+        RetryBackoffs.checkArgs(baseMillis, maxMillis);
+        return (retryCount, previous) -> {
+            final long upper = Math.max(baseMillis, previous > Long.MAX_VALUE / 3L ? Long.MAX_VALUE : previous * 3L);
+            final long interval = upper <= baseMillis
+                    ? baseMillis
+                    : ThreadLocalRandom.current().nextLong(baseMillis, upper);
+            return Math.min(maxMillis, interval);
+        };
+    }
+}
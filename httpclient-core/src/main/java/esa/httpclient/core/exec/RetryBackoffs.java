@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.Checks;
+
+final class RetryBackoffs {
+
+    private RetryBackoffs() {
+    }
+
+    static long exponentialInterval(long baseMillis, long maxMillis, int retryCount) {
+        final int shift = Math.max(0, retryCount - 1);
+        // Avoid overflow
+        if (shift >= Long.numberOfLeadingZeros(baseMillis) - 1) {
+            return maxMillis;
+        }
+        return Math.min(maxMillis, baseMillis << shift);
+    }
+
+    static void checkArgs(long baseMillis, long maxMillis) {
+        Checks.checkArg(baseMillis >= 1L, "baseMillis is " + baseMillis + " (expected >= 1)");
+        Checks.checkArg(maxMillis >= baseMillis, "maxMillis is " + maxMillis
+                + " (expected >= baseMillis: " + baseMillis + ")");
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import esa.commons.Checks;
+import esa.httpclient.core.Reusable;
+import esa.httpclient.core.metrics.RetryBudgetMetric;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Limits the retries of every host to a ratio of its recent requests plus a minimum rate, so that a degraded host
+ * won't be overwhelmed by retries. In a sliding window, the count of retries which are allowed is
+ * {@code requests * ratio + minRetriesPerSecond * windowSeconds}, and the retries over the budget fail fast.
+ * <p>
+ * Requests are counted by {@link LongAdder}s in the slots of a {@link SlidingWindow}, so that recording is
+ * contention-free, and a retry is reserved by a single CAS on the counter of current slot, so that the concurrent
+ * retries never overspend the budget. The budgets of the hosts which haven't been requested for a while are evicted.
+ */
+public final class RetryBudget implements Reusable<RetryBudget> {
+
+    private static final long DEFAULT_WINDOW_MILLIS = 10_000L;
+
+    private final double ratio;
+    private final int minRetriesPerSecond;
+    private final long windowMillis;
+    private final long minRetries;
+    private final LongSupplier nanoClock;
+    private final Cache<String, HostBudget> budgets = HostCaches.newCache();
+    private final Map<String, RetryBudgetMetric> unmodifiableBudgets =
+            Collections.unmodifiableMap(budgets.asMap());
+
+    RetryBudget(double ratio, int minRetriesPerSecond, long windowMillis, LongSupplier nanoClock) {
+        Checks.checkArg(ratio >= 0.0d, "ratio is " + ratio + " (expected >= 0)");
+        Checks.checkArg(minRetriesPerSecond >= 0, "minRetriesPerSecond is " + minRetriesPerSecond
+                + " (expected >= 0)");
+        Checks.checkArg(windowMillis >= SlidingWindow.SLOTS, "windowMillis is " + windowMillis + " (expected >= "
+                + SlidingWindow.SLOTS + ")");
+        Checks.checkNotNull(nanoClock, "nanoClock must not be null");
+        this.ratio = ratio;
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.windowMillis = windowMillis;
+        this.minRetries = minRetriesPerSecond * windowMillis / 1000L;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Creates a {@link RetryBudget} whose window is 10 seconds.
+     *
+     * @param ratio               ratio of retries to requests, eg: 0.1 means that 10% of requests can be retried
+     * @param minRetriesPerSecond min retries per second which are allowed even if there are few requests
+     * @return budget
+     */
+    public static RetryBudget of(double ratio, int minRetriesPerSecond) {
+        return of(ratio, minRetriesPerSecond, DEFAULT_WINDOW_MILLIS);
+    }
+
+    /**
+     * Creates a {@link RetryBudget}.
+     *
+     * @param ratio               ratio of retries to requests, eg: 0.1 means that 10% of requests can be retried
+     * @param minRetriesPerSecond min retries per second which are allowed even if there are few requests
+     * @param windowMillis        the length of the sliding window in which the requests and retries are counted
+     * @return budget
+     */
+    public static RetryBudget of(double ratio, int minRetriesPerSecond, long windowMillis) {
+        return new RetryBudget(ratio, minRetriesPerSecond, windowMillis, System::nanoTime);
+    }
+
+    public double ratio() {
+        return ratio;
+    }
+
+    public int minRetriesPerSecond() {
+        return minRetriesPerSecond;
+    }
+
+    public long windowMillis() {
+        return windowMillis;
+    }
+
+    /**
+     * Obtains the metrics of all the hosts.
+     *
+     * @return metrics keyed by address(host:port)
+     */
+    public Map<String, RetryBudgetMetric> metrics() {
+        return unmodifiableBudgets;
+    }
+
+    /**
+     * Records a request(not including retries) to given host.
+     *
+     * @param host host
+     */
+    void onRequest(String host) {
+        final SlidingWindow<Slot> window = budgetOf(host).window;
+        window.current(window.epoch()).requests.increment();
+    }
+
+    /**
+     * Withdraws a retry from the budget of given host.
+     *
+     * @param host host
+     * @return {@code true} if the retry is allowed, otherwise {@code false}
+     */
+    boolean tryRetry(String host) {
+        final HostBudget budget = budgetOf(host);
+        for (;;) {
+            final long epoch = budget.window.epoch();
+            final Slot slot = budget.window.current(epoch);
+            final long retries = slot.retries.get();
+            if (budget.allowed(epoch) - budget.retries(epoch, slot) - retries <= 0L) {
+                budget.exhausted.increment();
+                return false;
+            }
+            if (slot.retries.compareAndSet(retries, retries + 1L)) {
+                return true;
+            }
+        }
+    }
+
+    private HostBudget budgetOf(String host) {
+        return budgets.get(host, h -> new HostBudget());
+    }
+
+    @Override
+    public RetryBudget copy() {
+        return new RetryBudget(ratio, minRetriesPerSecond, windowMillis, nanoClock);
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", RetryBudget.class.getSimpleName() + "[", "]")
+                .add("ratio=" + ratio)
+                .add("minRetriesPerSecond=" + minRetriesPerSecond)
+                .add("windowMillis=" + windowMillis)
+                .toString();
+    }
+
+    private static final class Slot extends SlidingWindow.Slot {
+
+        private final LongAdder requests = new LongAdder();
+        private final AtomicLong retries = new AtomicLong();
+
+        private Slot(long epoch) {
+            super(epoch);
+        }
+    }
+
+    private final class HostBudget implements RetryBudgetMetric {
+
+        private final SlidingWindow<Slot> window = new SlidingWindow<>(windowMillis, nanoClock, Slot::new);
+        private final LongAdder exhausted = new LongAdder();
+
+        private long allowed(long epoch) {
+            return (long) (window.sum(epoch, s -> s.requests.sum()) * ratio) + minRetries;
+        }
+
+        /**
+         * Sums the retries in the window, excluding given slot.
+         */
+        private long retries(long epoch, Slot excluded) {
+            return window.sum(epoch, s -> s == excluded ? 0L : s.retries.get());
+        }
+
+        @Override
+        public long requests() {
+            return window.sum(window.epoch(), s -> s.requests.sum());
+        }
+
+        @Override
+        public long retries() {
+            return retries(window.epoch(), null);
+        }
+
+        @Override
+        public long available() {
+            final long epoch = window.epoch();
+            return Math.max(0L, allowed(epoch) - retries(epoch, null));
+        }
+
+        @Override
+        public long exhausted() {
+            return exhausted.sum();
+        }
+
+        @Override
+        public String toString() {
+            return new StringJoiner(", ", RetryBudgetMetric.class.getSimpleName() + "[", "]")
+                    .add("requests=" + requests())
+                    .add("retries=" + retries())
+                    .add("available=" + available())
+                    .add("exhausted=" + exhausted())
+                    .toString();
+        }
+    }
+}
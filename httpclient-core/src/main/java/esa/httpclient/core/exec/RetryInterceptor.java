@@ -17,27 +17,65 @@ package esa.httpclient.core.exec;
 
 import esa.commons.Checks;
 import esa.commons.logging.Logger;
+import esa.httpclient.core.Context;
 import esa.httpclient.core.HttpRequest;
 import esa.httpclient.core.HttpResponse;
 import esa.httpclient.core.exception.RetryException;
 import esa.httpclient.core.util.Futures;
 import esa.httpclient.core.util.LoggerUtils;
+import io.netty.util.Timer;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.IntToLongFunction;
 
 public class RetryInterceptor implements Interceptor {
 
     static final String HAS_RETRIED_COUNT = "$retried.count";
+    static final String PREVIOUS_INTERVAL = "$retried.previousInterval";
     private static final Logger logger = LoggerUtils.logger();
 
     private final RetryPredicate predicate;
     private final IntToLongFunction intervalMs;
+    private final RetryBudget budget;
+    private final Timer timer;
+
+    /**
+     * Whether the deprecated {@link #backOff(HttpRequest, int, IntToLongFunction)} is overridden, which is called
+     * by the default {@link #backOff(HttpRequest, Context, int, long)} to keep the compatibility.
+     */
+    private final boolean legacyBackOff;
 
     public RetryInterceptor(RetryPredicate predicate, IntToLongFunction intervalMs) {
+        this(predicate, intervalMs, null, null);
+    }
+
+    public RetryInterceptor(RetryPredicate predicate, IntToLongFunction intervalMs, RetryBudget budget) {
+        this(predicate, intervalMs, budget, null);
+    }
+
+    public RetryInterceptor(RetryPredicate predicate, IntToLongFunction intervalMs, Timer timer) {
+        this(predicate, intervalMs, null, timer);
+    }
+
+    /**
+     * Creates a {@link RetryInterceptor} which waits for the intervals by given {@link Timer}.
+     *
+     * @param predicate  predicate
+     * @param intervalMs interval before every retry, which may be a {@link RetryBackoff}
+     * @param budget     budget which limits the retries of every host, which may be null
+     * @param timer      timer, the delays are scheduled on the I/O threads(or the shared timer) if it's null
+     */
+    public RetryInterceptor(RetryPredicate predicate,
+                            IntToLongFunction intervalMs,
+                            RetryBudget budget,
+                            Timer timer) {
         Checks.checkNotNull(predicate, "RetryPredicate must not be null");
         this.predicate = predicate;
         this.intervalMs = intervalMs;
+        this.budget = budget;
+        this.timer = timer;
+        this.legacyBackOff = overridesLegacyBackOff(getClass());
     }
 
     @Override
@@ -59,6 +97,9 @@ public class RetryInterceptor implements Interceptor {
             return next.proceed(request);
         }
 
+        if (budget != null) {
+            budget.onRequest(HostCaches.keyOf(request));
+        }
         final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
         doRetry(response, request, next, maxRetries);
         return response;
@@ -77,7 +118,10 @@ public class RetryInterceptor implements Interceptor {
             return;
         }
 
-        next.proceed(request).whenComplete((rsp, th) -> {
+        final CompletableFuture<HttpResponse> attempt = next.proceed(request);
+        // Propagate the cancellation(eg: the deadline has passed) to the attempt in flight.
+        response.whenComplete((r, t) -> attempt.cancel(false));
+        attempt.whenComplete((rsp, th) -> {
             try {
                 // Update hasRetriedCount immediately.
                 int hasRetriedCount = next.ctx().getAttr(HAS_RETRIED_COUNT, -1) + 1;
@@ -96,21 +140,37 @@ public class RetryInterceptor implements Interceptor {
                 }
 
                 if (hasRetriedCount < maxRetries) {
-                    if (intervalMs != null) {
-                        try {
-                            backOff(request, hasRetriedCount + 1, intervalMs);
-                        } catch (InterruptedException ex) {
-                            response.completeExceptionally(new RetryException("Interrupted during retry interval",
-                                    ex));
+                    // Fail fast if the retry budget has been exhausted.
+                    if (budget != null && !budget.tryRetry(HostCaches.keyOf(request))) {
+                        final String msg = "Failed to proceed request: " + request.uri().netURI().toString()
+                                + ", retry budget has been exhausted after retries: " + hasRetriedCount;
+                        if (th == null) {
+                            response.completeExceptionally(new RetryException(msg));
+                        } else {
+                            response.completeExceptionally(new RetryException(msg, th));
                         }
+                        return;
                     }
 
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("Begin to retry request: {}, current retryCount: {}",
-                                request, hasRetriedCount + 1);
+                    final int retryCount = hasRetriedCount + 1;
+                    final long interval = intervalMs == null ? 0L : intervalOf(next.ctx(), retryCount);
+                    if (interval <= 0L && !legacyBackOff) {
+                        retry(response, request, next, maxRetries, retryCount);
+                        return;
                     }
 
-                    doRetry(response, request, next, maxRetries);
+                    // Never block current thread(usually an I/O thread) while waiting for the interval.
+                    final CompletableFuture<Void> backOff = backOff(request, next.ctx(), retryCount, interval);
+                    // The waiting is cancelled as soon as the response has been completed(eg: cancelled by caller).
+                    response.whenComplete((r, t) -> backOff.cancel(false));
+                    backOff.whenComplete((v, t) -> {
+                        if (t == null) {
+                            retry(response, request, next, maxRetries, retryCount);
+                        } else if (!response.isDone()) {
+                            response.completeExceptionally(new RetryException("Failed to back off before retrying"
+                                    + " request: " + request.uri().netURI().toString(), Futures.unwrapped(t)));
+                        }
+                    });
                 } else {
                     final String msg = String
                             .format("Failed to proceed request: " + request.uri().netURI().toString() +
@@ -127,6 +187,51 @@ public class RetryInterceptor implements Interceptor {
         });
     }
 
+    /**
+     * Waits for given interval before retrying the request asynchronously, the future is completed on an I/O
+     * thread(if any) so that the retry is sent from it rather than from a timer thread. If the deprecated
+     * {@link #backOff(HttpRequest, int, IntToLongFunction)} is overridden, it's called instead in current thread.
+     *
+     * @param request        request
+     * @param ctx            ctx
+     * @param retryCount     retry count, which starts from 1
+     * @param intervalMillis interval in milliseconds, which is positive unless the deprecated
+     *                       {@link #backOff(HttpRequest, int, IntToLongFunction)} is overridden
+     * @return future which will be completed once the interval has elapsed, and cancelling the future cancels the
+     * waiting
+     */
+    protected CompletableFuture<Void> backOff(HttpRequest request,
+                                              Context ctx,
+                                              int retryCount,
+                                              long intervalMillis) {
+        if (legacyBackOff) {
+            try {
+                backOff(request, retryCount, intervalMs);
+                return Futures.completed();
+            } catch (InterruptedException ex) {
+                return Futures.completed(ex);
+            }
+        }
+
+        if (logger.isDebugEnabled()) {
+            logger.debug("Begin to back off {}ms before retrying request: {}, retryCount: {}",
+                    intervalMillis, request, retryCount);
+        }
+
+        return Timers.delay(timer, ctx, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Waits for the interval before retrying the request by blocking current thread.
+     *
+     * @param request    request
+     * @param retryCount retry count, which starts from 1
+     * @param intervalMs interval before every retry
+     * @throws InterruptedException if interrupted while waiting
+     * @deprecated current thread is usually an I/O thread which mustn't be blocked, use
+     * {@link #backOff(HttpRequest, Context, int, long)} instead. This method is only called if it's overridden.
+     */
+    @Deprecated
     protected void backOff(HttpRequest request, int retryCount, IntToLongFunction intervalMs)
             throws InterruptedException {
         long interval = intervalMs.applyAsLong(retryCount);
@@ -140,4 +245,43 @@ public class RetryInterceptor implements Interceptor {
         Thread.sleep(interval);
     }
 
+    private void retry(CompletableFuture<HttpResponse> response,
+                       HttpRequest request,
+                       ExecChain next,
+                       int maxRetries,
+                       int retryCount) {
+        if (logger.isDebugEnabled()) {
+            logger.debug("Begin to retry request: {}, current retryCount: {}", request, retryCount);
+        }
+
+        try {
+            doRetry(response, request, next, maxRetries);
+        } catch (Throwable ex) {
+            response.completeExceptionally(new RetryException("Unexpected exception occurred when retrying", ex));
+        }
+    }
+
+    private long intervalOf(Context ctx, int retryCount) {
+        if (!(intervalMs instanceof RetryBackoff)) {
+            return intervalMs.applyAsLong(retryCount);
+        }
+
+        final long interval = ((RetryBackoff) intervalMs).intervalMillis(retryCount,
+                ctx.getAttr(PREVIOUS_INTERVAL, 0L));
+        ctx.setAttr(PREVIOUS_INTERVAL, interval);
+        return interval;
+    }
+
+    private static boolean overridesLegacyBackOff(Class<?> clazz) {
+        for (Class<?> c = clazz; c != RetryInterceptor.class; c = c.getSuperclass()) {
+            try {
+                c.getDeclaredMethod("backOff", HttpRequest.class, int.class, IntToLongFunction.class);
+                return true;
+            } catch (NoSuchMethodException ignored) {
+                // Not declared by current class.
+            }
+        }
+        return false;
+    }
+
 }
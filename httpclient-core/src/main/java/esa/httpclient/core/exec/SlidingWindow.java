@@ -0,0 +1,119 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * A sliding window which consists of {@link #SLOTS} slots, each of which holds the counters of a period(aka epoch)
+ * of the window. A stale slot is replaced by a new one rather than being reset, so that no count of current slot is
+ * lost, and the slots which have slid out of the window are ignored when summing.
+ *
+ * @param <S> type of slot
+ */
+final class SlidingWindow<S extends SlidingWindow.Slot> {
+
+    static final int SLOTS = 10;
+
+    private final AtomicReferenceArray<S> slots = new AtomicReferenceArray<>(SLOTS);
+    private final long slotNanos;
+    private final LongSupplier nanoClock;
+    private final LongFunction<S> slotFactory;
+
+    /**
+     * Creates a {@link SlidingWindow}.
+     *
+     * @param windowMillis length of the window, which has been checked to be not less than {@link #SLOTS}
+     * @param nanoClock    clock in nanoseconds
+     * @param slotFactory  creates the slot of given epoch
+     */
+    SlidingWindow(long windowMillis, LongSupplier nanoClock, LongFunction<S> slotFactory) {
+        this.slotNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis) / SLOTS;
+        this.nanoClock = nanoClock;
+        this.slotFactory = slotFactory;
+        clear();
+    }
+
+    long epoch() {
+        return Math.floorDiv(nanoClock.getAsLong(), slotNanos);
+    }
+
+    /**
+     * Obtains the slot of given epoch, which is created if the slot at its index is stale.
+     *
+     * @param epoch epoch
+     * @return slot
+     */
+    S current(long epoch) {
+        final int index = (int) Math.floorMod(epoch, (long) SLOTS);
+        for (;;) {
+            final S slot = slots.get(index);
+            if (slot.epoch >= epoch) {
+                return slot;
+            }
+            // Rarely reached, only once per slot in a window.
+            final S fresh = slotFactory.apply(epoch);
+            if (slots.compareAndSet(index, slot, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    /**
+     * Sums the counter of the slots in the window which ends at given epoch.
+     *
+     * @param epoch   epoch
+     * @param counter counter of a slot
+     * @return sum
+     */
+    long sum(long epoch, ToLongFunction<S> counter) {
+        long sum = 0L;
+        for (int i = 0; i < SLOTS; i++) {
+            final S slot = slots.get(i);
+            final long slotEpoch = slot.epoch;
+            if (slotEpoch <= epoch && slotEpoch > epoch - SLOTS) {
+                sum += counter.applyAsLong(slot);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Drops all the counts, so that a new window starts.
+     */
+    void clear() {
+        for (int i = 0; i < SLOTS; i++) {
+            // Never used by any epoch.
+            slots.set(i, slotFactory.apply(Long.MIN_VALUE));
+        }
+    }
+
+    /**
+     * The base of the slots, which holds the counters of an epoch.
+     */
+    abstract static class Slot {
+
+        final long epoch;
+
+        Slot(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.concurrent.ThreadFactories;
+import esa.httpclient.core.Context;
+import esa.httpclient.core.ContextNames;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the delayed actions of the interceptors, eg: the back-off before retrying, the delay before hedging
+ * and the deadline of a request. The delays are scheduled on the I/O thread of current execution(the current
+ * event loop, otherwise one of the I/O threads given by {@link ContextNames#IO_THREADS}) whenever possible, so
+ * that the attempts after them are sent from I/O threads too. Only if there is no such I/O thread or a custom
+ * {@link Timer} is given, the timer is used and the future is completed back on the I/O thread if there is one.
+ */
+final class Timers {
+
+    private static final String TICK_DURATION_KEY = "esa.httpclient.timer.tickDurationMs";
+    private static final String TICKS_PER_WHEEL_KEY = "esa.httpclient.timer.ticksPerWheel";
+
+    private Timers() {
+    }
+
+    /**
+     * Creates a future which will be completed once the given delay has elapsed, and cancelling the future
+     * cancels the waiting.
+     *
+     * @param timer timer, the shared one is used if it's null and there is no I/O thread to schedule on
+     * @param ctx   ctx of current execution
+     * @param delay delay
+     * @param unit  unit of delay
+     * @return future
+     */
+    static CompletableFuture<Void> delay(Timer timer, Context ctx, long delay, TimeUnit unit) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        final EventExecutor executor = executorOf(ctx);
+        if (timer == null && executor != null) {
+            try {
+                final ScheduledFuture<?> scheduled = executor.schedule(() -> future.complete(null), delay, unit);
+                future.whenComplete((v, t) -> {
+                    if (future.isCancelled()) {
+                        scheduled.cancel(false);
+                    }
+                });
+                return future;
+            } catch (RejectedExecutionException ignored) {
+                // Falls back to the timer if the event loop is shutting down.
+            }
+        }
+
+        final Timeout timeout = (timer == null ? TimerHolder.TIMER : timer)
+                .newTimeout(t -> completeOn(executor, future), delay, unit);
+        future.whenComplete((v, t) -> {
+            if (future.isCancelled()) {
+                timeout.cancel();
+            }
+        });
+        return future;
+    }
+
+    private static void completeOn(EventExecutor executor, CompletableFuture<Void> future) {
+        if (executor == null || executor.inEventLoop()) {
+            future.complete(null);
+            return;
+        }
+        try {
+            executor.execute(() -> future.complete(null));
+        } catch (RejectedExecutionException ex) {
+            future.complete(null);
+        }
+    }
+
+    private static EventExecutor executorOf(Context ctx) {
+        final EventExecutor current = ThreadExecutorMap.currentExecutor();
+        if (current != null) {
+            return current;
+        }
+        final Object ioThreads = ctx == null ? null : ctx.getAttr(ContextNames.IO_THREADS);
+        if (ioThreads instanceof EventExecutorGroup && !((EventExecutorGroup) ioThreads).isShuttingDown()) {
+            return ((EventExecutorGroup) ioThreads).next();
+        }
+        return null;
+    }
+
+    /**
+     * The timer shared by all the interceptors, which is created lazily.
+     */
+    private static final class TimerHolder {
+
+        private static final Timer TIMER = new HashedWheelTimer(ThreadFactories
+                .namedThreadFactory("HttpClient-Timer-", true),
+                SystemPropertyUtil.getLong(TICK_DURATION_KEY, 10L),
+                TimeUnit.MILLISECONDS,
+                SystemPropertyUtil.getInt(TICKS_PER_WHEEL_KEY, 512));
+    }
+}
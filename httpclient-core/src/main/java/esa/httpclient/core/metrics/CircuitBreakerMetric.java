@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.metrics;
+
+/**
+ * The metric of the circuit breaker of a single address.
+ */
+public interface CircuitBreakerMetric {
+
+    /**
+     * Obtains current state.
+     *
+     * @return state
+     */
+    State state();
+
+    /**
+     * Obtains the count of calls in current window.
+     *
+     * @return calls
+     */
+    long calls();
+
+    /**
+     * Obtains the rate of failed calls in current window.
+     *
+     * @return failure rate which is between 0 and 1
+     */
+    double failureRate();
+
+    /**
+     * Obtains the rate of slow calls in current window.
+     *
+     * @return slow call rate which is between 0 and 1
+     */
+    double slowCallRate();
+
+    /**
+     * Obtains the total count of calls which have been rejected while the circuit breaker is not closed.
+     *
+     * @return rejected count
+     */
+    long rejected();
+
+    enum State {
+
+        /**
+         * All the calls are permitted.
+         */
+        CLOSED,
+
+        /**
+         * All the calls are rejected.
+         */
+        OPEN,
+
+        /**
+         * A limited count of calls are permitted to probe whether the address has recovered.
+         */
+        HALF_OPEN
+    }
+
+}
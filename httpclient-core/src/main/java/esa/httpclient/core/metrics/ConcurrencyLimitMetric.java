@@ -0,0 +1,58 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.metrics;
+
+/**
+ * The metric of the adaptive concurrency limit of a single address.
+ */
+public interface ConcurrencyLimitMetric {
+
+    /**
+     * Obtains current concurrency limit.
+     *
+     * @return limit
+     */
+    int limit();
+
+    /**
+     * Obtains the count of requests which are in flight.
+     *
+     * @return in-flight count
+     */
+    int inflight();
+
+    /**
+     * Obtains the count of requests which are waiting for permits.
+     *
+     * @return queued count
+     */
+    int queued();
+
+    /**
+     * Obtains the total count of requests which have been rejected because of the limit.
+     *
+     * @return rejected count
+     */
+    long rejected();
+
+    /**
+     * Obtains the long-term average round-trip time in milliseconds, which is the baseline of the gradient.
+     *
+     * @return rtt
+     */
+    double rttMillis();
+
+}
@@ -29,4 +29,88 @@ public interface ConnectionPoolMetric {
 
     ChannelPoolOptions options();
 
+    /**
+     * Obtains the count of idle connections(or HTTP/2 connections which have no active stream).
+     *
+     * @return idle count
+     */
+    default int idle() {
+        return 0;
+    }
+
+    /**
+     * Obtains the total count of connections which have been created.
+     *
+     * @return created count
+     */
+    default long created() {
+        return 0L;
+    }
+
+    /**
+     * Obtains the total count of connections which have been closed.
+     *
+     * @return closed count
+     */
+    default long closed() {
+        return 0L;
+    }
+
+    /**
+     * Obtains the total count of failed acquisitions, eg: timeout, connect failure or the waiting queue is full.
+     *
+     * @return acquire failures
+     */
+    default long acquireFailures() {
+        return 0L;
+    }
+
+    /**
+     * Obtains the {@link Histogram} of the time(in nanoseconds) spent on acquiring connections, including the
+     * time of waiting in queue and establishing new connections.
+     *
+     * @return histogram
+     */
+    default Histogram acquireTime() {
+        return Histogram.EMPTY;
+    }
+
+    /**
+     * Obtains the total count of failed connecting.
+     *
+     * @return connect failures
+     */
+    default long connectFailures() {
+        return 0L;
+    }
+
+    /**
+     * Obtains the {@link Histogram} of the time(in nanoseconds) spent on establishing new connections
+     * successfully, whose {@link Histogram#count()} is the total count of established connections.
+     *
+     * @return histogram
+     */
+    default Histogram connectTime() {
+        return Histogram.EMPTY;
+    }
+
+    /**
+     * Obtains the {@link Histogram} of the round-trip time(in nanoseconds) of the PINGs sent on idle HTTP/2
+     * connections by the health check.
+     *
+     * @return histogram
+     */
+    default Histogram pingRtt() {
+        return Histogram.EMPTY;
+    }
+
+    /**
+     * Obtains the total count of idle connections which have been evicted by the health check.
+     *
+     * @return unhealthy evictions
+     */
+    default long unhealthyEvictions() {
+        return 0L;
+    }
+
 }
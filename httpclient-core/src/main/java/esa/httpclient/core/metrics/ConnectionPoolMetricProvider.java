@@ -16,6 +16,7 @@
 package esa.httpclient.core.metrics;
 
 import java.net.SocketAddress;
+import java.util.Collections;
 import java.util.Map;
 
 public interface ConnectionPoolMetricProvider {
@@ -37,4 +38,24 @@ public interface ConnectionPoolMetricProvider {
         return all().get(address);
     }
 
+    /**
+     * Obtains the {@link ConnectionPoolMetric}s of the cached connectors which open a new connection for every
+     * request whose keepAlive is {@code false}.
+     *
+     * @return metrics, must be not null
+     */
+    default Map<SocketAddress, ConnectionPoolMetric> connectors() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Obtains the {@link ConnectionPoolMetric}s of the pools which have been replaced or evicted and are being
+     * drained, which disappear once all of their acquired connections have been released and closed.
+     *
+     * @return metrics, must be not null
+     */
+    default Map<SocketAddress, ConnectionPoolMetric> draining() {
+        return Collections.emptyMap();
+    }
+
 }
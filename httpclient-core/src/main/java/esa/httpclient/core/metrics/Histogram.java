@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.metrics;
+
+/**
+ * A histogram which records the distribution of non-negative values, eg: latencies in nanoseconds.
+ */
+public interface Histogram {
+
+    /**
+     * An empty {@link Histogram} which never records any value.
+     */
+    Histogram EMPTY = new Histogram() {
+        @Override
+        public long count() {
+            return 0L;
+        }
+
+        @Override
+        public long sum() {
+            return 0L;
+        }
+
+        @Override
+        public long max() {
+            return 0L;
+        }
+
+        @Override
+        public long percentile(double percentile) {
+            return 0L;
+        }
+    };
+
+    /**
+     * Obtains the count of recorded values.
+     *
+     * @return count
+     */
+    long count();
+
+    /**
+     * Obtains the sum of recorded values.
+     *
+     * @return sum
+     */
+    long sum();
+
+    /**
+     * Obtains the max recorded value.
+     *
+     * @return max
+     */
+    long max();
+
+    /**
+     * Obtains the mean of recorded values.
+     *
+     * @return mean, 0 if there is no recorded value
+     */
+    default double mean() {
+        final long count = count();
+        return count == 0L ? 0.0d : (double) sum() / count;
+    }
+
+    /**
+     * Obtains the approximate value at the given percentile, eg: {@code percentile(0.99)} for p99.
+     *
+     * @param percentile percentile, which should be in [0.0, 1.0]
+     * @return value, 0 if there is no recorded value
+     */
+    long percentile(double percentile);
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.metrics;
+
+/**
+ * The metric of the HTTP response cache.
+ */
+public interface HttpCacheMetric {
+
+    /**
+     * Obtains the total count of requests which have been served by the cache without any exchange with the
+     * upstream(including the stale responses which are served while revalidating in background).
+     *
+     * @return hit count
+     */
+    long hits();
+
+    /**
+     * Obtains the total count of cacheable requests which have not been served by the cache.
+     *
+     * @return miss count
+     */
+    long misses();
+
+    /**
+     * Obtains the total count of conditional requests which have been sent to revalidate the stored responses.
+     *
+     * @return revalidation count
+     */
+    long revalidations();
+
+    /**
+     * Obtains the total count of revalidations which have been answered by {@code 304 Not Modified}, so that the
+     * stored responses are reused.
+     *
+     * @return revalidated count
+     */
+    long revalidated();
+
+    /**
+     * Obtains the total count of stored responses which have been evicted because of the size limit.
+     *
+     * @return eviction count
+     */
+    long evictions();
+
+    /**
+     * Obtains the count of stored responses.
+     *
+     * @return entry count
+     */
+    long entries();
+
+    /**
+     * Obtains the estimated size of stored responses in bytes.
+     *
+     * @return size in bytes
+     */
+    long weightedSize();
+
+}
@@ -15,6 +15,9 @@
  */
 package esa.httpclient.core.metrics;
 
+import java.util.Collections;
+import java.util.Map;
+
 public interface MetricPoint {
 
     ConnectionPoolMetricProvider connectionPoolMetric();
@@ -23,4 +26,42 @@ public interface MetricPoint {
 
     CallbackExecutorMetric callbackExecutorMetric();
 
+    /**
+     * Obtains the {@link RetryBudgetMetric}s of all the hosts, which is empty if the retry budget is not configured.
+     *
+     * @return metrics keyed by address(host:port), must be not null
+     */
+    default Map<String, RetryBudgetMetric> retryBudgetMetric() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Obtains the {@link CircuitBreakerMetric}s of all the addresses, which is empty if the circuit breaker is not
+     * configured.
+     *
+     * @return metrics keyed by address(host:port), must be not null
+     */
+    default Map<String, CircuitBreakerMetric> circuitBreakerMetric() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Obtains the {@link ConcurrencyLimitMetric}s of all the addresses, which is empty if the concurrency limiter
+     * is not configured.
+     *
+     * @return metrics keyed by address(host:port), must be not null
+     */
+    default Map<String, ConcurrencyLimitMetric> concurrencyLimitMetric() {
+        return Collections.emptyMap();
+    }
+
+    /**
+     * Obtains the {@link HttpCacheMetric} of the response cache.
+     *
+     * @return metric, null if the response cache is not configured
+     */
+    default HttpCacheMetric httpCacheMetric() {
+        return null;
+    }
+
 }
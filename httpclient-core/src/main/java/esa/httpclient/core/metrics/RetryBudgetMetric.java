@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.metrics;
+
+/**
+ * The metric of the retry budget of a single host.
+ */
+public interface RetryBudgetMetric {
+
+    /**
+     * Obtains the count of requests in current window.
+     *
+     * @return requests
+     */
+    long requests();
+
+    /**
+     * Obtains the count of retries in current window.
+     *
+     * @return retries
+     */
+    long retries();
+
+    /**
+     * Obtains the count of retries which are still allowed in current window.
+     *
+     * @return available retries
+     */
+    long available();
+
+    /**
+     * Obtains the total count of retries which have been rejected since the budget was exhausted.
+     *
+     * @return exhausted count
+     */
+    long exhausted();
+
+}
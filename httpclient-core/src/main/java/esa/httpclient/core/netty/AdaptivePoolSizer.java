@@ -0,0 +1,159 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.commons.Checks;
+import esa.httpclient.core.metrics.Histogram;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.SystemPropertyUtil;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resizes a {@link ResizableChannelPool} in place periodically within {@code [minSize, maxSize]}:
+ * <ul>
+ *     <li>grows by half(at least one, and at least the count of pending acquisitions) once there are pending
+ *     acquisitions, or the mean acquire time of last interval exceeds {@link #GROW_WAIT_MILLIS} while there is no
+ *     idle connection.</li>
+ *     <li>shrinks by half of the fewest idle connections once there have been idle connections for
+ *     {@link #SHRINK_AFTER_INTERVALS} consecutive intervals.</li>
+ * </ul>
+ * The sizer stops itself as soon as the pool is closed.
+ */
+final class AdaptivePoolSizer implements Runnable {
+
+    private static final String INTERVAL_MILLIS_KEY = "esa.httpclient.adaptivePool.intervalMillis";
+    private static final String GROW_WAIT_MILLIS_KEY = "esa.httpclient.adaptivePool.growWaitMillis";
+    private static final String SHRINK_AFTER_INTERVALS_KEY = "esa.httpclient.adaptivePool.shrinkAfterIntervals";
+
+    static final long INTERVAL_MILLIS = SystemPropertyUtil.getLong(INTERVAL_MILLIS_KEY, 1000L);
+    static final long GROW_WAIT_MILLIS = SystemPropertyUtil.getLong(GROW_WAIT_MILLIS_KEY, 10L);
+    static final int SHRINK_AFTER_INTERVALS = SystemPropertyUtil.getInt(SHRINK_AFTER_INTERVALS_KEY, 5);
+
+    private final ResizableChannelPool pool;
+    private final int minSize;
+    private final int maxSize;
+    private final long growWaitNanos;
+    private final int shrinkAfterIntervals;
+
+    /**
+     * All the following states are only accessed by the executor which runs this sizer.
+     */
+    private long lastAcquireCount;
+    private long lastAcquireTime;
+    private int idleIntervals;
+    private int fewestIdle;
+
+    private volatile ScheduledFuture<?> future;
+
+    AdaptivePoolSizer(ResizableChannelPool pool, int minSize, int maxSize) {
+        this(pool, minSize, maxSize, GROW_WAIT_MILLIS, SHRINK_AFTER_INTERVALS);
+    }
+
+    AdaptivePoolSizer(ResizableChannelPool pool,
+                      int minSize,
+                      int maxSize,
+                      long growWaitMillis,
+                      int shrinkAfterIntervals) {
+        Checks.checkNotNull(pool, "ResizableChannelPool must not be null");
+        Checks.checkArg(minSize >= 1, "minSize is " + minSize + " (expected >= 1)");
+        Checks.checkArg(maxSize >= minSize, "maxSize is " + maxSize + " (expected >= minSize)");
+        Checks.checkArg(growWaitMillis >= 0L, "growWaitMillis is " + growWaitMillis + " (expected >= 0)");
+        Checks.checkArg(shrinkAfterIntervals >= 1, "shrinkAfterIntervals is " + shrinkAfterIntervals
+                + " (expected >= 1)");
+        this.pool = pool;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.growWaitNanos = TimeUnit.MILLISECONDS.toNanos(growWaitMillis);
+        this.shrinkAfterIntervals = shrinkAfterIntervals;
+    }
+
+    /**
+     * Runs this sizer every {@link #INTERVAL_MILLIS} by the given executor until the pool is closed.
+     *
+     * @param executor executor
+     * @return this
+     */
+    AdaptivePoolSizer start(EventExecutor executor) {
+        future = executor.scheduleWithFixedDelay(this, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    @Override
+    public void run() {
+        if (pool.isClosed()) {
+            final ScheduledFuture<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+            return;
+        }
+
+        try {
+            adjust();
+        } catch (Throwable ex) {
+            LoggerUtils.logger().warn("Unexpected exception occurred while resizing connection pool", ex);
+        }
+    }
+
+    /**
+     * Samples the pool and resizes it if necessary.
+     *
+     * @return the max connections after adjusting
+     */
+    int adjust() {
+        final int current = pool.maxConnections();
+        final Histogram acquireTime = pool.stats().acquireTime();
+        final long acquireCount = acquireTime.count();
+        final long acquireTimeSum = acquireTime.sum();
+        final long acquisitions = acquireCount - lastAcquireCount;
+        final long meanWait = acquisitions <= 0L ? 0L : (acquireTimeSum - lastAcquireTime) / acquisitions;
+        lastAcquireCount = acquireCount;
+        lastAcquireTime = acquireTimeSum;
+
+        final int pending = pool.pendingAcquireCount();
+        final int idle = pool.idleCount();
+        if (pending > 0 || (idle == 0 && acquisitions > 0L && meanWait >= growWaitNanos)) {
+            idleIntervals = 0;
+            return resize(current, Math.min(maxSize, current + Math.max(pending, Math.max(1, current >> 1))));
+        }
+
+        if (idle == 0) {
+            idleIntervals = 0;
+            return current;
+        }
+
+        fewestIdle = idleIntervals == 0 ? idle : Math.min(fewestIdle, idle);
+        if (++idleIntervals < shrinkAfterIntervals) {
+            return current;
+        }
+
+        idleIntervals = 0;
+        return resize(current, Math.max(minSize, current - Math.max(1, fewestIdle >> 1)));
+    }
+
+    private int resize(int current, int target) {
+        if (target == current) {
+            return current;
+        }
+
+        LoggerUtils.logger().debug("Resizing connection pool from {} to {}", current, target);
+        pool.resize(target);
+        return target;
+    }
+}
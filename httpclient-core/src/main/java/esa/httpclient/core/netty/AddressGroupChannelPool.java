@@ -0,0 +1,497 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.commons.Checks;
+import esa.httpclient.core.resolver.AddressBalancer;
+import esa.httpclient.core.resolver.HostResolver;
+import esa.httpclient.core.util.Futures;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.SystemPropertyUtil;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * A {@link io.netty.channel.pool.ChannelPool} of a host which consists of a sub-pool per resolved address. The
+ * resolved addresses are refreshed periodically, and the requests are routed across the sub-pools by an
+ * {@link AddressBalancer}. The resolution runs in the given executor, because the resolver may block, and only
+ * the periodical refresh is scheduled by the {@link GlobalEventExecutor}.
+ * <p>
+ * Once an address is removed from the resolved addresses, its sub-pool will no longer be selected, and will be
+ * closed as soon as all its acquired {@link Channel}s are released and pending acquisitions are completed. The
+ * sub-pools are kept if the resolution fails or resolves nothing, so that a transient DNS failure will not tear
+ * down the established connections.
+ */
+final class AddressGroupChannelPool implements io.netty.channel.pool.ChannelPool, DrainableChannelPool,
+        PrioritizedChannelPool, ManagedChannelPool {
+
+    private static final String REFRESH_INTERVAL_SECONDS_KEY = "esa.httpclient.addressRefreshIntervalSeconds";
+    static final long REFRESH_INTERVAL_SECONDS = SystemPropertyUtil.getLong(REFRESH_INTERVAL_SECONDS_KEY, 30L);
+
+    private static final AttributeKey<SubPool> SUB_POOL_KEY = AttributeKey.valueOf("esa.httpclient.addressSubPool");
+
+    private static final IllegalStateException POOL_CLOSED =
+            new IllegalStateException("AddressGroupChannelPool was closed");
+
+    private final String host;
+    private final int port;
+    private final HostResolver resolver;
+    private final Executor resolveExecutor;
+    private final AddressBalancer balancer;
+    private final Function<InetSocketAddress, io.netty.channel.pool.ChannelPool> factory;
+    private final ChannelPoolStats stats;
+    private final ScheduledFuture<?> refreshTask;
+
+    /**
+     * Selectable sub-pools, which is replaced as a whole once the resolved addresses change.
+     */
+    private volatile List<SubPool> active = Collections.emptyList();
+
+    /**
+     * Sub-pools of the removed addresses, which are waiting for their in-flight acquisitions.
+     */
+    private final List<SubPool> draining = new CopyOnWriteArrayList<>();
+
+    private volatile CompletableFuture<Void> resolving;
+    private volatile boolean closed;
+
+    AddressGroupChannelPool(InetSocketAddress address,
+                            HostResolver resolver,
+                            Executor resolveExecutor,
+                            AddressBalancer balancer,
+                            ChannelPoolStats stats,
+                            Function<InetSocketAddress, io.netty.channel.pool.ChannelPool> factory) {
+        this(address, resolver, resolveExecutor, balancer, stats, factory,
+                TimeUnit.SECONDS.toMillis(REFRESH_INTERVAL_SECONDS));
+    }
+
+    AddressGroupChannelPool(InetSocketAddress address,
+                            HostResolver resolver,
+                            Executor resolveExecutor,
+                            AddressBalancer balancer,
+                            ChannelPoolStats stats,
+                            Function<InetSocketAddress, io.netty.channel.pool.ChannelPool> factory,
+                            long refreshIntervalMillis) {
+        Checks.checkNotNull(address, "Address must not be null");
+        Checks.checkNotNull(resolver, "HostResolver must not be null");
+        Checks.checkNotNull(resolveExecutor, "ResolveExecutor must not be null");
+        Checks.checkNotNull(balancer, "AddressBalancer must not be null");
+        Checks.checkNotNull(stats, "ChannelPoolStats must not be null");
+        Checks.checkNotNull(factory, "Factory must not be null");
+        Checks.checkArg(refreshIntervalMillis >= 1L, "refreshIntervalMillis is " + refreshIntervalMillis
+                + " (expected >= 1)");
+        this.host = address.getHostString();
+        this.port = address.getPort();
+        this.resolver = resolver;
+        this.resolveExecutor = resolveExecutor;
+        this.balancer = balancer;
+        this.stats = stats;
+        this.factory = factory;
+
+        // Resolve in advance, so that the first acquisition needn't wait for it mostly.
+        refresh();
+        this.refreshTask = GlobalEventExecutor.INSTANCE.scheduleAtFixedRate(this::refresh,
+                refreshIntervalMillis, refreshIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public Future<Channel> acquire() {
+        return acquire(GlobalEventExecutor.INSTANCE.newPromise());
+    }
+
+    @Override
+    public Future<Channel> acquire(Promise<Channel> promise) {
+        return acquire(promise, 0, 0L);
+    }
+
+    @Override
+    public Future<Channel> acquire(int priority, long deadline) {
+        return acquire(GlobalEventExecutor.INSTANCE.newPromise(), priority, deadline);
+    }
+
+    private Future<Channel> acquire(Promise<Channel> promise, int priority, long deadline) {
+        Checks.checkNotNull(promise, "Promise must not be null");
+        if (closed) {
+            promise.tryFailure(POOL_CLOSED);
+            return promise;
+        }
+
+        final List<SubPool> subPools = active;
+        if (!subPools.isEmpty()) {
+            acquire(select(subPools), promise, priority, deadline);
+            return promise;
+        }
+
+        // Wait for the first resolution.
+        refresh().whenComplete((v, ex) -> {
+            final List<SubPool> resolved = active;
+            if (closed) {
+                promise.tryFailure(POOL_CLOSED);
+            } else if (resolved.isEmpty()) {
+                promise.tryFailure(new UnknownHostException("Failed to resolve " + host));
+            } else {
+                acquire(select(resolved), promise, priority, deadline);
+            }
+        });
+        return promise;
+    }
+
+    @Override
+    public Future<Void> release(Channel channel) {
+        return release(channel, channel.eventLoop().newPromise());
+    }
+
+    @Override
+    public Future<Void> release(Channel channel, Promise<Void> promise) {
+        Checks.checkNotNull(channel, "Channel must not be null");
+        Checks.checkNotNull(promise, "Promise must not be null");
+        final SubPool subPool = channel.attr(SUB_POOL_KEY).get();
+        if (subPool == null || subPool.group != this) {
+            channel.close();
+            promise.tryFailure(new IllegalArgumentException("Channel " + channel
+                    + " was not acquired from this AddressGroupChannelPool"));
+            return promise;
+        }
+
+        subPool.pool.release(channel, promise);
+        if (subPool.draining) {
+            promise.addListener(f -> closeIfDrained(subPool));
+        }
+        return promise;
+    }
+
+    @Override
+    public void close() {
+        closeAsync();
+    }
+
+    @Override
+    public Future<Void> closeAsync() {
+        closed = true;
+        refreshTask.cancel(false);
+
+        final List<Future<?>> futures = new ArrayList<>();
+        synchronized (this) {
+            for (SubPool subPool : active) {
+                futures.add(ChannelPools.closeAsync(subPool.pool));
+            }
+            for (SubPool subPool : draining) {
+                futures.add(ChannelPools.closeAsync(subPool.pool));
+            }
+            active = Collections.emptyList();
+            draining.clear();
+        }
+        return ChannelPools.whenAll(futures);
+    }
+
+    @Override
+    public Future<Void> drain() {
+        closed = true;
+        refreshTask.cancel(false);
+
+        final List<Future<?>> futures = new ArrayList<>();
+        synchronized (this) {
+            for (SubPool subPool : active) {
+                futures.add(ChannelPools.drain(subPool.pool));
+            }
+            for (SubPool subPool : draining) {
+                futures.add(ChannelPools.drain(subPool.pool));
+            }
+        }
+        return ChannelPools.whenAll(futures);
+    }
+
+    /**
+     * Warms up the sub-pool of every resolved address.
+     *
+     * @param connections expected count of connections of every sub-pool
+     * @return future
+     */
+    @Override
+    public Future<Void> warmUp(int connections) {
+        final Promise<Void> promise = GlobalEventExecutor.INSTANCE.newPromise();
+        final CompletableFuture<Void> resolved = active.isEmpty() ? refresh() : CompletableFuture.completedFuture(null);
+        resolved.whenComplete((v, ex) -> {
+            final List<Future<?>> futures = new ArrayList<>();
+            for (SubPool subPool : active) {
+                futures.add(ChannelPools.warmUp(subPool.pool, connections));
+            }
+            ChannelPools.whenAll(futures).addListener(f -> {
+                if (f.isSuccess()) {
+                    promise.trySuccess(null);
+                } else {
+                    promise.tryFailure(f.cause());
+                }
+            });
+        });
+        return promise;
+    }
+
+    /**
+     * Resolves the host and updates the sub-pools, the in-progress resolution will be reused.
+     *
+     * @return future which will be completed once the sub-pools are updated
+     */
+    CompletableFuture<Void> refresh() {
+        CompletableFuture<Void> current = resolving;
+        if (current != null && !current.isDone()) {
+            return current;
+        }
+
+        synchronized (this) {
+            current = resolving;
+            if (current != null && !current.isDone()) {
+                return current;
+            }
+
+            CompletableFuture<List<InetAddress>> resolved;
+            try {
+                // The resolver may block the current thread.
+                resolved = CompletableFuture.supplyAsync(() -> resolver.resolveAll(host), resolveExecutor)
+                        .thenCompose(Function.identity());
+            } catch (RejectedExecutionException ex) {
+                resolved = Futures.completed(ex);
+            }
+            current = resolved.handle((addresses, ex) -> {
+                if (ex != null) {
+                    LoggerUtils.logger().warn("Failed to resolve {}, keep using the previous addresses: {}",
+                            host, addresses(active), ex);
+                } else {
+                    onResolved(addresses);
+                }
+                return null;
+            });
+            resolving = current;
+            return current;
+        }
+    }
+
+    List<InetSocketAddress> activeAddresses() {
+        return addresses(active);
+    }
+
+    List<InetSocketAddress> drainingAddresses() {
+        return addresses(draining);
+    }
+
+    @Override
+    public int maxConnections() {
+        int maxConnections = 0;
+        for (SubPool subPool : active) {
+            maxConnections += ChannelPools.maxConnections(subPool.pool);
+        }
+        return maxConnections;
+    }
+
+    @Override
+    public int maxPendingAcquires() {
+        int maxPendingAcquires = 0;
+        for (SubPool subPool : active) {
+            maxPendingAcquires += ChannelPools.maxPendingAcquires(subPool.pool);
+        }
+        return maxPendingAcquires;
+    }
+
+    @Override
+    public int acquiredCount() {
+        int acquiredCount = 0;
+        for (SubPool subPool : active) {
+            acquiredCount += ChannelPools.acquiredCount(subPool.pool);
+        }
+        for (SubPool subPool : draining) {
+            acquiredCount += ChannelPools.acquiredCount(subPool.pool);
+        }
+        return acquiredCount;
+    }
+
+    @Override
+    public int pendingAcquireCount() {
+        int pendingAcquireCount = 0;
+        for (SubPool subPool : active) {
+            pendingAcquireCount += ChannelPools.pendingAcquireCount(subPool.pool);
+        }
+        for (SubPool subPool : draining) {
+            pendingAcquireCount += ChannelPools.pendingAcquireCount(subPool.pool);
+        }
+        return pendingAcquireCount;
+    }
+
+    @Override
+    public int idleCount() {
+        int idleCount = 0;
+        for (SubPool subPool : active) {
+            idleCount += ChannelPools.idleCount(subPool.pool);
+        }
+        return idleCount;
+    }
+
+    @Override
+    public ChannelPoolStats stats() {
+        return stats;
+    }
+
+    private SubPool select(List<SubPool> subPools) {
+        if (subPools.size() == 1) {
+            return subPools.get(0);
+        }
+        return (SubPool) balancer.select(subPools);
+    }
+
+    private void acquire(SubPool subPool, Promise<Channel> promise, int priority, long deadline) {
+        final Future<Channel> acquired = ChannelPools.acquire(subPool.pool, priority, deadline);
+        promise.addListener(f -> {
+            if (f.isCancelled()) {
+                acquired.cancel(false);
+            }
+        });
+        acquired.addListener(f -> {
+            if (!f.isSuccess()) {
+                promise.tryFailure(f.cause());
+                return;
+            }
+
+            final Channel channel = (Channel) f.getNow();
+            channel.attr(SUB_POOL_KEY).set(subPool);
+            if (!promise.trySuccess(channel)) {
+                // The promise has been cancelled, give back the channel.
+                release(channel);
+            }
+        });
+    }
+
+    private synchronized void onResolved(List<InetAddress> addresses) {
+        if (closed) {
+            return;
+        }
+        if (addresses == null || addresses.isEmpty()) {
+            LoggerUtils.logger().warn("Resolved nothing of {}, keep using the previous addresses: {}",
+                    host, addresses(active));
+            return;
+        }
+
+        final Set<InetSocketAddress> resolved = new LinkedHashSet<>(addresses.size());
+        for (InetAddress address : addresses) {
+            resolved.add(new InetSocketAddress(address, port));
+        }
+
+        final List<SubPool> previous = active;
+        final List<SubPool> updated = new ArrayList<>(resolved.size());
+        for (InetSocketAddress address : resolved) {
+            SubPool subPool = find(previous, address);
+            if (subPool == null) {
+                // The address which is back again.
+                subPool = find(draining, address);
+                if (subPool != null) {
+                    draining.remove(subPool);
+                    subPool.draining = false;
+                } else {
+                    subPool = new SubPool(this, address, factory.apply(address));
+                }
+            }
+            updated.add(subPool);
+        }
+        active = Collections.unmodifiableList(updated);
+
+        for (SubPool subPool : previous) {
+            if (!resolved.contains(subPool.address)) {
+                LoggerUtils.logger().info("Address {} of {} has been removed, begin to drain its connection pool",
+                        subPool.address, host);
+                subPool.draining = true;
+                draining.add(subPool);
+            }
+        }
+        for (SubPool subPool : draining) {
+            closeIfDrained(subPool);
+        }
+    }
+
+    private void closeIfDrained(SubPool subPool) {
+        if (!subPool.draining
+                || ChannelPools.acquiredCount(subPool.pool) > 0
+                || ChannelPools.pendingAcquireCount(subPool.pool) > 0) {
+            return;
+        }
+
+        synchronized (this) {
+            if (subPool.draining && draining.remove(subPool)) {
+                LoggerUtils.logger().info("Closing the drained connection pool of {}", subPool.address);
+                ChannelPools.closeAsync(subPool.pool);
+            }
+        }
+    }
+
+    private static SubPool find(List<SubPool> subPools, InetSocketAddress address) {
+        for (SubPool subPool : subPools) {
+            if (subPool.address.equals(address)) {
+                return subPool;
+            }
+        }
+        return null;
+    }
+
+    private static List<InetSocketAddress> addresses(List<SubPool> subPools) {
+        final List<InetSocketAddress> addresses = new ArrayList<>(subPools.size());
+        for (SubPool subPool : subPools) {
+            addresses.add(subPool.address);
+        }
+        return addresses;
+    }
+
+    private static final class SubPool implements AddressBalancer.Endpoint {
+
+        private final AddressGroupChannelPool group;
+        private final InetSocketAddress address;
+        private final io.netty.channel.pool.ChannelPool pool;
+        private volatile boolean draining;
+
+        private SubPool(AddressGroupChannelPool group,
+                        InetSocketAddress address,
+                        io.netty.channel.pool.ChannelPool pool) {
+            this.group = group;
+            this.address = address;
+            this.pool = pool;
+        }
+
+        @Override
+        public InetSocketAddress address() {
+            return address;
+        }
+
+        @Override
+        public int outstanding() {
+            return ChannelPools.acquiredCount(pool) + ChannelPools.pendingAcquireCount(pool);
+        }
+    }
+}
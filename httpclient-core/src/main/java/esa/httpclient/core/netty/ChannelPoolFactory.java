@@ -17,6 +17,7 @@ package esa.httpclient.core.netty;
 
 import esa.commons.Checks;
 import esa.commons.function.ThrowingSupplier;
+import esa.commons.http.HttpVersion;
 import esa.httpclient.core.HttpClientBuilder;
 import esa.httpclient.core.config.ChannelPoolOptions;
 import esa.httpclient.core.config.NetOptions;
@@ -26,21 +27,20 @@ import esa.httpclient.core.util.LoggerUtils;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.UnpooledByteBufAllocator;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.epoll.Epoll;
 import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.pool.AbstractChannelPoolHandler;
-import io.netty.channel.pool.ChannelHealthChecker;
 import io.netty.channel.pool.ChannelPoolHandler;
-import io.netty.channel.pool.FixedChannelPool;
-import io.netty.channel.pool.SimpleChannelPool;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.SslHandler;
+import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.internal.SystemPropertyUtil;
 
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.concurrent.Executor;
 
 final class ChannelPoolFactory {
 
@@ -53,7 +53,17 @@ final class ChannelPoolFactory {
     private static final String PREFER_NATIVE_KEY = "esa.httpclient.preferNative";
     static final boolean PREFER_NATIVE = SystemPropertyUtil.getBoolean(PREFER_NATIVE_KEY, true);
 
-    ChannelPoolFactory() {
+    private final Executor resolveExecutor;
+
+    /**
+     * Creates a {@link ChannelPoolFactory}.
+     *
+     * @param resolveExecutor executor to resolve the addresses of a host whose connections are pooled per resolved
+     *                        address, see {@link AddressGroupChannelPool}
+     */
+    ChannelPoolFactory(Executor resolveExecutor) {
+        Checks.checkNotNull(resolveExecutor, "ResolveExecutor must not be null");
+        this.resolveExecutor = resolveExecutor;
     }
 
     ChannelPool create(boolean ssl,
@@ -83,22 +93,43 @@ final class ChannelPoolFactory {
             }
         };
         final ChannelInitializer initializer = new ChannelInitializer(builder, sslHandler, ssl);
+        final ConnectionLifetime lifetime = ConnectionLifetime.of(options.maxLifetime(),
+                options.maxRequestsPerConnection());
+        final ChannelPoolStats stats = new ChannelPoolStats();
         final io.netty.channel.pool.ChannelPool underlying;
-        if (keepAlive) {
+        if (!keepAlive) {
+            LoggerUtils.logger().debug("Begin to create a new connection pool, address: {}, options: {}",
+                    address, options);
+            underlying = new DirectConnectAndCloseChannelPool(bootstrap, handler, initializer, stats);
+        } else if (builder.addressBalancer() != null
+                && address instanceof InetSocketAddress
+                && ((InetSocketAddress) address).isUnresolved()) {
+            LoggerUtils.logger().info("Begin to create a new connection pool per resolved address, address: {}," +
+                    " options: {}", address, options);
+            underlying = new AddressGroupChannelPool((InetSocketAddress) address,
+                    builder.resolver(),
+                    resolveExecutor,
+                    builder.addressBalancer(),
+                    stats,
+                    resolved -> newKeepAlivePool(bootstrap.clone().remoteAddress(resolved),
+                            ioThreads,
+                            builder,
+                            options,
+                            handler,
+                            initializer,
+                            lifetime,
+                            stats));
+        } else {
             LoggerUtils.logger().info("Begin to create a new connection pool, address: {}, options: {}",
                     address, options);
-            underlying = new ChannelPoolImpl(bootstrap,
+            underlying = newKeepAlivePool(bootstrap,
+                    ioThreads,
+                    builder,
+                    options,
                     handler,
                     initializer,
-                    ChannelHealthChecker.ACTIVE,
-                    FixedChannelPool.AcquireTimeoutAction.FAIL,
-                    options.connectTimeout(),
-                    options.poolSize(),
-                    options.waitingQueueLength());
-        } else {
-            LoggerUtils.logger().debug("Begin to create a new connection pool, address: {}, options: {}",
-                    address, options);
-            underlying = new DirectConnectAndCloseChannelPool(bootstrap, handler, initializer);
+                    lifetime,
+                    stats);
         }
 
         return new ChannelPool(underlying,
@@ -122,6 +153,123 @@ final class ChannelPoolFactory {
                 sslHandler);
     }
 
+    /**
+     * Creates a keepAlive pool(striped if necessary) which connects to the remote address of given
+     * {@link Bootstrap}, and starts to size it adaptively and to check its idle connections if necessary.
+     */
+    private static io.netty.channel.pool.ChannelPool newKeepAlivePool(Bootstrap bootstrap,
+                                                                       EventLoopGroup ioThreads,
+                                                                       HttpClientBuilder builder,
+                                                                       ChannelPoolOptions options,
+                                                                       ChannelPoolHandler handler,
+                                                                       ChannelInitializer initializer,
+                                                                       ConnectionLifetime lifetime,
+                                                                       ChannelPoolStats stats) {
+        // The adaptive pool starts from its min size and grows on demand.
+        final int initialPoolSize = options.isAdaptive()
+                ? Math.min(options.poolSize(), Math.max(options.minPoolSize(), options.minIdle()))
+                : options.poolSize();
+        final io.netty.channel.pool.ChannelPool pool;
+        if (builder.isStripedConnectionPool()) {
+            final int stripes = countOf(ioThreads);
+            final int poolSize = stripedSize(initialPoolSize, stripes);
+            final int waitingQueueLength = stripedSize(options.waitingQueueLength(), stripes);
+            final int minIdle = options.minIdle() > 0 ? stripedSize(options.minIdle(), stripes) : 0;
+            final StripedChannelPool striped = new StripedChannelPool(ioThreads, stats,
+                    loop -> newKeepAlivePool(bootstrap.clone(loop),
+                            handler,
+                            initializer,
+                            builder.version(),
+                            options.connectTimeout(),
+                            poolSize,
+                            waitingQueueLength,
+                            minIdle,
+                            lifetime,
+                            stats));
+            // The rounded up shares may exceed the initial pool size in total, divides it exactly.
+            striped.resize(initialPoolSize);
+            pool = striped;
+        } else {
+            pool = newKeepAlivePool(bootstrap,
+                    handler,
+                    initializer,
+                    builder.version(),
+                    options.connectTimeout(),
+                    initialPoolSize,
+                    options.waitingQueueLength(),
+                    options.minIdle(),
+                    lifetime,
+                    stats);
+        }
+
+        if (options.isAdaptive() && pool instanceof ResizableChannelPool) {
+            new AdaptivePoolSizer((ResizableChannelPool) pool, options.minPoolSize(), options.poolSize())
+                    .start(ioThreads.next());
+        }
+        if (options.healthCheckInterval() > 0 && pool instanceof HealthCheckedChannelPool) {
+            new ConnectionHealthChecker((HealthCheckedChannelPool) pool)
+                    .start(ioThreads.next(), options.healthCheckInterval());
+        }
+        return pool;
+    }
+
+    private static io.netty.channel.pool.ChannelPool newKeepAlivePool(Bootstrap bootstrap,
+                                                                       ChannelPoolHandler handler,
+                                                                       ChannelInitializer initializer,
+                                                                       HttpVersion version,
+                                                                       int connectTimeout,
+                                                                       int poolSize,
+                                                                       int waitingQueueLength,
+                                                                       int minIdle,
+                                                                       ConnectionLifetime lifetime,
+                                                                       ChannelPoolStats stats) {
+        if (HttpVersion.HTTP_2 == version) {
+            // Connections are multiplexed, so that the poolSize limits the count of connections
+            // rather than the count of concurrent requests.
+            return new Http2ChannelPool(bootstrap,
+                    handler,
+                    initializer,
+                    connectTimeout,
+                    poolSize,
+                    waitingQueueLength,
+                    minIdle,
+                    lifetime,
+                    stats);
+        }
+
+        return new LockFreeChannelPool(bootstrap,
+                handler,
+                initializer,
+                connectTimeout,
+                poolSize,
+                waitingQueueLength,
+                minIdle,
+                lifetime,
+                stats);
+    }
+
+    private static int countOf(EventLoopGroup ioThreads) {
+        int count = 0;
+        for (EventExecutor ignored : ioThreads) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Divides the given size into stripes, and each stripe has one at least.
+     *
+     * @param size      total size
+     * @param stripes   count of stripes
+     * @return          size of a single stripe
+     */
+    static int stripedSize(int size, int stripes) {
+        if (stripes <= 1) {
+            return size;
+        }
+        return Math.max(1, (size + stripes - 1) / stripes);
+    }
+
     /**
      * Designed as package visibility for unit test purpose.
      *
@@ -144,6 +292,11 @@ final class ChannelPoolFactory {
                 .poolSize(builder.connectionPoolSize())
                 .connectTimeout(builder.connectTimeout())
                 .waitingQueueLength(builder.connectionPoolWaitingQueueLength())
+                .minIdle(builder.connectionPoolMinIdle())
+                .minPoolSize(builder.connectionPoolMinSize())
+                .maxLifetime(builder.connectionMaxLifetime())
+                .maxRequestsPerConnection(builder.maxRequestsPerConnection())
+                .healthCheckInterval(builder.connectionHealthCheckInterval())
                 .readTimeout(builder.readTimeout())
                 .build();
     }
@@ -209,58 +362,4 @@ final class ChannelPoolFactory {
             bootstrap.option(ChannelOption.SO_LINGER, options.soLinger());
         }
     }
-
-    private static final class ChannelPoolImpl extends FixedChannelPool {
-
-        private final ChannelInitializer initializer;
-
-        private ChannelPoolImpl(Bootstrap bootstrap,
-                                io.netty.channel.pool.ChannelPoolHandler handler,
-                                ChannelInitializer initializer,
-                                ChannelHealthChecker healthCheck,
-                                AcquireTimeoutAction action,
-                                final long acquireTimeoutMillis,
-                                int maxConnections,
-                                int maxPendingAcquires) {
-            super(bootstrap, handler, healthCheck, action,
-                    acquireTimeoutMillis, maxConnections, maxPendingAcquires);
-            Checks.checkNotNull(initializer, "ChannelInitializer must not be null");
-            this.initializer = initializer;
-        }
-
-        @Override
-        protected ChannelFuture connectChannel(Bootstrap bs) {
-            return initializer.onConnected(super.connectChannel(bs));
-        }
-    }
-
-    private static final class DirectConnectAndCloseChannelPool extends SimpleChannelPool {
-
-        private final ChannelInitializer initializer;
-
-        private DirectConnectAndCloseChannelPool(Bootstrap bootstrap,
-                                                 ChannelPoolHandler handler,
-                                                 ChannelInitializer initializer) {
-            super(bootstrap, handler, ChannelHealthChecker.ACTIVE, false, false);
-            Checks.checkNotNull(initializer, "ChannelInitializer must not be null");
-            this.initializer = initializer;
-        }
-
-        @Override
-        protected Channel pollChannel() {
-            return null;
-        }
-
-        @Override
-        protected boolean offerChannel(Channel channel) {
-            channel.close();
-            return true;
-        }
-
-        @Override
-        protected ChannelFuture connectChannel(Bootstrap bs) {
-            return initializer.onConnected(super.connectChannel(bs));
-        }
-    }
-
 }
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.httpclient.core.metrics.Histogram;
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.Future;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cumulative statistics of a connection pool, which are maintained by the pool itself and can be shared by the
+ * stripes of a {@link StripedChannelPool}. All the counters are based on {@link LongAdder}, so that they are
+ * cheap to update concurrently and to read.
+ */
+final class ChannelPoolStats {
+
+    private final LongAdder created = new LongAdder();
+    private final LongAdder closed = new LongAdder();
+    private final LongAdder acquireFailures = new LongAdder();
+    private final ExponentialHistogram acquireTime = new ExponentialHistogram();
+    private final LongAdder connectFailures = new LongAdder();
+    private final ExponentialHistogram connectTime = new ExponentialHistogram();
+    private final ExponentialHistogram pingRtt = new ExponentialHistogram();
+    private final LongAdder unhealthyEvictions = new LongAdder();
+
+    /**
+     * Records a new {@link Channel}, which will be recorded as closed once it is closed.
+     *
+     * @param channel channel
+     */
+    void onCreated(Channel channel) {
+        created.increment();
+        channel.closeFuture().addListener(f -> closed.increment());
+    }
+
+    /**
+     * Records the result and the time spent of the given acquisition once it's done.
+     *
+     * @param future     acquisition
+     * @param startNanos the {@link System#nanoTime()} when the acquisition started
+     */
+    void onAcquire(Future<Channel> future, long startNanos) {
+        if (future.isDone()) {
+            onAcquired(future, startNanos);
+        } else {
+            future.addListener(f -> onAcquired(future, startNanos));
+        }
+    }
+
+    /**
+     * Records the result and the time spent of the given connecting once it's done.
+     *
+     * @param future     connecting
+     * @param startNanos the {@link System#nanoTime()} when the connecting started
+     */
+    void onConnect(Future<Channel> future, long startNanos) {
+        if (future.isDone()) {
+            onConnected(future, startNanos);
+        } else {
+            future.addListener(f -> onConnected(future, startNanos));
+        }
+    }
+
+    /**
+     * Records the round-trip time of a PING which has been acknowledged.
+     *
+     * @param rttNanos round-trip time in nanoseconds
+     */
+    void onPingAck(long rttNanos) {
+        pingRtt.record(rttNanos);
+    }
+
+    /**
+     * Records an idle connection which has been evicted by the health check.
+     */
+    void onUnhealthyEvicted() {
+        unhealthyEvictions.increment();
+    }
+
+    long created() {
+        return created.sum();
+    }
+
+    long closed() {
+        return closed.sum();
+    }
+
+    long acquireFailures() {
+        return acquireFailures.sum();
+    }
+
+    Histogram acquireTime() {
+        return acquireTime;
+    }
+
+    long connectFailures() {
+        return connectFailures.sum();
+    }
+
+    Histogram connectTime() {
+        return connectTime;
+    }
+
+    Histogram pingRtt() {
+        return pingRtt;
+    }
+
+    long unhealthyEvictions() {
+        return unhealthyEvictions.sum();
+    }
+
+    private void onConnected(Future<Channel> future, long startNanos) {
+        if (future.isSuccess()) {
+            connectTime.record(System.nanoTime() - startNanos);
+        } else if (!future.isCancelled()) {
+            connectFailures.increment();
+        }
+    }
+
+    private void onAcquired(Future<Channel> future, long startNanos) {
+        acquireTime.record(System.nanoTime() - startNanos);
+        if (!future.isSuccess() && !future.isCancelled()) {
+            acquireFailures.increment();
+        }
+    }
+}
@@ -21,42 +21,95 @@ import com.github.benmanes.caffeine.cache.RemovalCause;
 import com.github.benmanes.caffeine.cache.RemovalListener;
 import esa.commons.Checks;
 import esa.commons.function.ThrowingSupplier;
-import esa.commons.reflect.BeanUtils;
 import esa.httpclient.core.HttpClientBuilder;
 import esa.httpclient.core.config.CacheOptions;
 import esa.httpclient.core.config.ChannelPoolOptions;
 import esa.httpclient.core.metrics.ConnectionPoolMetric;
 import esa.httpclient.core.metrics.ConnectionPoolMetricProvider;
+import esa.httpclient.core.metrics.Histogram;
 import esa.httpclient.core.util.LoggerUtils;
+import io.netty.channel.Channel;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.pool.FixedChannelPool;
 import io.netty.channel.pool.SimpleChannelPool;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.internal.SystemPropertyUtil;
 
 import java.net.SocketAddress;
+import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 import java.util.StringJoiner;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
 public class ChannelPools implements ConnectionPoolMetricProvider {
 
-    static final ChannelPoolFactory CHANNEL_POOL_FACTORY = new ChannelPoolFactory();
+    private static final String RESOLVER_THREADS_KEY = "esa.httpclient.resolverThreads";
+    private static final int RESOLVER_THREADS = SystemPropertyUtil.getInt(RESOLVER_THREADS_KEY, 2);
+    private static final int RESOLVER_QUEUE_SIZE = 1024;
+
+    /**
+     * Resolves the addresses of the hosts whose connections are pooled per resolved address, which is bounded so
+     * that a blocking resolver stalls neither the global event executor nor too many threads.
+     */
+    private final ThreadPoolExecutor resolveExecutor;
+    private final ChannelPoolFactory factory;
 
     private final Cache<SocketAddress, ChannelPool> cachedPools;
+
+    /**
+     * Metrics of the cached pools, which are maintained along with the {@link #cachedPools}, so that reading
+     * metrics neither copies the cache nor refreshes the access time of the cached pools.
+     */
+    private final ConcurrentMap<SocketAddress, ConnectionPoolMetric> metrics = new ConcurrentHashMap<>();
+    private final Map<SocketAddress, ConnectionPoolMetric> unmodifiableMetrics =
+            Collections.unmodifiableMap(metrics);
+
+    /**
+     * Connectors for the requests whose keepAlive is {@code false}, which are cached separately so that they
+     * never evict the keepAlive pools.
+     */
+    private final Cache<SocketAddress, ChannelPool> cachedConnectors;
+    private final ConcurrentMap<SocketAddress, ConnectionPoolMetric> connectorMetrics = new ConcurrentHashMap<>();
+    private final Map<SocketAddress, ConnectionPoolMetric> unmodifiableConnectorMetrics =
+            Collections.unmodifiableMap(connectorMetrics);
+
+    /**
+     * Metrics of the pools which have been removed from the cache(eg: replaced by new options or expired) and are
+     * being drained, the latest one of each address is kept in {@link #drainingMetrics} to be observed.
+     */
+    private final Set<ChannelPoolMetricImpl> drainingPools = ConcurrentHashMap.newKeySet();
+    private final ConcurrentMap<SocketAddress, ConnectionPoolMetric> drainingMetrics = new ConcurrentHashMap<>();
+    private final Map<SocketAddress, ConnectionPoolMetric> unmodifiableDrainingMetrics =
+            Collections.unmodifiableMap(drainingMetrics);
     private final AtomicBoolean closed = new AtomicBoolean();
 
     public ChannelPools(CacheOptions options) {
         Checks.checkNotNull(options, "CacheOptions must not be null");
+        resolveExecutor = new ThreadPoolExecutor(RESOLVER_THREADS, RESOLVER_THREADS, 60L, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(RESOLVER_QUEUE_SIZE), new ThreadFactoryImpl("HttpClient-Resolver", true));
+        resolveExecutor.allowCoreThreadTimeOut(true);
+        factory = new ChannelPoolFactory(resolveExecutor);
         cachedPools = Caffeine.newBuilder()
                 .initialCapacity(options.initialCapacity())
                 .maximumSize(options.maximumSize())
                 .expireAfterAccess(options.expireSeconds(), TimeUnit.SECONDS)
-                .removalListener(new ChannelPoolRemovalListener())
+                .removalListener(new ChannelPoolRemovalListener(metrics, true))
+                .build();
+        cachedConnectors = Caffeine.newBuilder()
+                .initialCapacity(options.initialCapacity())
+                .maximumSize(options.maximumSize())
+                .expireAfterAccess(options.expireSeconds(), TimeUnit.SECONDS)
+                .removalListener(new ChannelPoolRemovalListener(connectorMetrics, false))
                 .build();
     }
 
@@ -66,6 +119,12 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
         return cachedPools.getIfPresent(address);
     }
 
+    ChannelPool getConnectorIfPresent(SocketAddress address) {
+        checkClosed();
+
+        return cachedConnectors.getIfPresent(address);
+    }
+
     ChannelPool getOrCreate(boolean ssl,
                             boolean keepAlive,
                             SocketAddress address,
@@ -74,23 +133,27 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
                             ThrowingSupplier<SslHandler> sslHandler) {
         checkClosed();
 
-        // Only keepAlive connection will be cached.
-        if (keepAlive) {
-            return cachedPools.get(address, addr -> CHANNEL_POOL_FACTORY.create(ssl,
-                    true,
+        // The connectors of non-keepAlive requests are cached too, so that the bootstrap and initializer
+        // are built only once per address.
+        final Cache<SocketAddress, ChannelPool> cache = keepAlive ? cachedPools : cachedConnectors;
+        final ConcurrentMap<SocketAddress, ConnectionPoolMetric> metricMap = keepAlive ? metrics : connectorMetrics;
+        return cache.get(address, addr -> {
+            final ChannelPool channelPool = factory.create(ssl,
+                    keepAlive,
                     addr,
                     ioThreads,
                     builder,
-                    sslHandler));
-        } else {
-            return CHANNEL_POOL_FACTORY.create(ssl, false, address, ioThreads, builder, sslHandler);
-        }
+                    sslHandler);
+            metricMap.put(addr, new ChannelPoolMetricImpl(addr, channelPool));
+            return channelPool;
+        });
     }
 
     void put(SocketAddress address, ChannelPool channelPool) {
         checkClosed();
 
         if (channelPool != null) {
+            metrics.put(address, new ChannelPoolMetricImpl(address, channelPool));
             cachedPools.put(address, channelPool);
         }
     }
@@ -108,6 +171,35 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
                         entry.getKey(), th);
             }
         }
+        metrics.clear();
+
+        for (Map.Entry<SocketAddress, ChannelPool> entry : cachedConnectors.asMap().entrySet()) {
+            try {
+                close(entry.getKey(), entry.getValue(), false);
+            } catch (Throwable th) {
+                LoggerUtils.logger().error("Exception occurred when closing connector: {}",
+                        entry.getKey(), th);
+            }
+        }
+        connectorMetrics.clear();
+
+        // Stop draining and close the remaining connections directly.
+        for (ChannelPoolMetricImpl metric : drainingPools) {
+            try {
+                close(metric.address, metric.channelPool, false);
+            } catch (Throwable th) {
+                LoggerUtils.logger().error("Exception occurred when closing draining connection pool: {}",
+                        metric.address, th);
+            }
+        }
+        drainingPools.clear();
+        drainingMetrics.clear();
+
+        resolveExecutor.shutdownNow();
+    }
+
+    ChannelPoolFactory factory() {
+        return factory;
     }
 
     @Override
@@ -115,7 +207,7 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
         if (closed.get()) {
             return null;
         } else {
-            return all().get(address);
+            return metrics.get(address);
         }
     }
 
@@ -125,14 +217,67 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
             return Collections.emptyMap();
         }
 
-        Map<SocketAddress, ChannelPool> channelPools0 = new HashMap<>(cachedPools.asMap());
+        // A live view rather than a copy, which is cheap enough to be read frequently.
+        return unmodifiableMetrics;
+    }
 
-        Map<SocketAddress, ConnectionPoolMetric> metrics = new HashMap<>(channelPools0.size());
-        for (Map.Entry<SocketAddress, ChannelPool> entry : channelPools0.entrySet()) {
-            metrics.put(entry.getKey(), new ChannelPoolMetricImpl(entry.getValue()));
+    @Override
+    public Map<SocketAddress, ConnectionPoolMetric> connectors() {
+        if (closed.get()) {
+            return Collections.emptyMap();
         }
 
-        return metrics;
+        return unmodifiableConnectorMetrics;
+    }
+
+    @Override
+    public Map<SocketAddress, ConnectionPoolMetric> draining() {
+        if (closed.get()) {
+            return Collections.emptyMap();
+        }
+
+        return unmodifiableDrainingMetrics;
+    }
+
+    /**
+     * Drains the given pool which has been removed from the cache, it's observable by {@link #draining()} until
+     * all its acquired connections are released.
+     *
+     * @param address     address
+     * @param channelPool pool
+     */
+    private void drain(SocketAddress address, ChannelPool channelPool) {
+        if (channelPool == null) {
+            return;
+        }
+        if (closed.get()) {
+            close(address, channelPool, true);
+            return;
+        }
+
+        final ChannelPoolMetricImpl metric = new ChannelPoolMetricImpl(address, channelPool);
+        drainingPools.add(metric);
+        drainingMetrics.put(address, metric);
+        final long startTime = System.nanoTime();
+        LoggerUtils.logger().info("Begin to drain connection pool {}, active connections: {}",
+                address, metric.active());
+
+        final Future<Void> drainFuture;
+        try {
+            drainFuture = drain(channelPool.underlying);
+        } catch (Throwable ex) {
+            LoggerUtils.logger().error("Failed to drain connection pool {}", address, ex);
+            drainingPools.remove(metric);
+            drainingMetrics.remove(address, metric);
+            close(address, channelPool, true);
+            return;
+        }
+
+        drainFuture.addListener(f -> {
+            drainingPools.remove(metric);
+            drainingMetrics.remove(address, metric);
+            closingLog(address, drainFuture, startTime);
+        });
     }
 
     private void checkClosed() {
@@ -147,7 +292,7 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
         }
 
         io.netty.channel.pool.ChannelPool underlying = channelPool.underlying;
-        if (!(underlying instanceof SimpleChannelPool)) {
+        if (!(underlying instanceof SimpleChannelPool) && !(underlying instanceof ManagedChannelPool)) {
             underlying.close();
             return;
         }
@@ -166,7 +311,7 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
             }
         } else {
             // Do close async
-            Future<Void> closeFuture = ((SimpleChannelPool) underlying).closeAsync();
+            Future<Void> closeFuture = closeAsync(underlying);
             if (closeFuture.isDone()) {
                 closingLog(address, closeFuture, startTime);
             } else {
@@ -175,6 +320,84 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
         }
     }
 
+    /**
+     * Closes the given {@link io.netty.channel.pool.ChannelPool} asynchronously if it's supported, otherwise
+     * closes it directly.
+     *
+     * @param channelPool channel pool
+     * @return future
+     */
+    static Future<Void> closeAsync(io.netty.channel.pool.ChannelPool channelPool) {
+        if (channelPool instanceof SimpleChannelPool) {
+            return ((SimpleChannelPool) channelPool).closeAsync();
+        }
+        if (channelPool instanceof ManagedChannelPool) {
+            return ((ManagedChannelPool) channelPool).closeAsync();
+        }
+
+        try {
+            channelPool.close();
+            return GlobalEventExecutor.INSTANCE.newSucceededFuture(null);
+        } catch (Throwable ex) {
+            return GlobalEventExecutor.INSTANCE.newFailedFuture(ex);
+        }
+    }
+
+    /**
+     * Drains the given {@link io.netty.channel.pool.ChannelPool} if it's supported, otherwise closes it
+     * asynchronously.
+     *
+     * @param channelPool channel pool
+     * @return future which will be completed once the pool has been drained
+     */
+    static Future<Void> drain(io.netty.channel.pool.ChannelPool channelPool) {
+        if (channelPool instanceof DrainableChannelPool) {
+            return ((DrainableChannelPool) channelPool).drain();
+        }
+        return closeAsync(channelPool);
+    }
+
+    /**
+     * Opens connections of the given {@link io.netty.channel.pool.ChannelPool} in advance if it's supported.
+     *
+     * @param channelPool channel pool
+     * @param connections expected count of connections
+     * @return future
+     */
+    static Future<Void> warmUp(io.netty.channel.pool.ChannelPool channelPool, int connections) {
+        if (channelPool instanceof ManagedChannelPool) {
+            return ((ManagedChannelPool) channelPool).warmUp(connections);
+        }
+
+        return GlobalEventExecutor.INSTANCE.newSucceededFuture(null);
+    }
+
+    /**
+     * Obtains a {@link Future} which will be completed once all the given futures are completed, and it will be
+     * failed if any of the given futures fails.
+     *
+     * @param futures futures
+     * @return future
+     */
+    static Future<Void> whenAll(Collection<? extends Future<?>> futures) {
+        if (futures.isEmpty()) {
+            return GlobalEventExecutor.INSTANCE.newSucceededFuture(null);
+        }
+
+        final Promise<Void> promise = GlobalEventExecutor.INSTANCE.newPromise();
+        final AtomicInteger remaining = new AtomicInteger(futures.size());
+        for (Future<?> future : futures) {
+            future.addListener(f -> {
+                if (!f.isSuccess()) {
+                    promise.tryFailure(f.cause());
+                } else if (remaining.decrementAndGet() == 0) {
+                    promise.trySuccess(null);
+                }
+            });
+        }
+        return promise;
+    }
+
     private static void closingLog(SocketAddress address, Future<Void> closeFuture, long startTime) {
         long endTime = System.nanoTime();
         if (closeFuture.isSuccess()) {
@@ -186,42 +409,174 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
         }
     }
 
-    private static class ChannelPoolRemovalListener implements RemovalListener<SocketAddress, ChannelPool> {
+    /**
+     * Acquires a {@link Channel} from given pool with given priority and deadline, which are ignored if the pool
+     * is not a {@link PrioritizedChannelPool}.
+     *
+     * @param channelPool pool
+     * @param priority    priority
+     * @param deadline    absolute deadline in milliseconds since the epoch, 0 means no deadline
+     * @return future
+     */
+    static Future<Channel> acquire(io.netty.channel.pool.ChannelPool channelPool, int priority, long deadline) {
+        if ((priority != 0 || deadline > 0L) && channelPool instanceof PrioritizedChannelPool) {
+            return ((PrioritizedChannelPool) channelPool).acquire(priority, deadline);
+        }
+        return channelPool.acquire();
+    }
+
+    static int maxConnections(io.netty.channel.pool.ChannelPool channelPool) {
+        if (channelPool instanceof MeteredChannelPool) {
+            return ((MeteredChannelPool) channelPool).maxConnections();
+        }
+        return 0;
+    }
+
+    static int maxPendingAcquires(io.netty.channel.pool.ChannelPool channelPool) {
+        if (channelPool instanceof MeteredChannelPool) {
+            return ((MeteredChannelPool) channelPool).maxPendingAcquires();
+        }
+        return 0;
+    }
+
+    static int acquiredCount(io.netty.channel.pool.ChannelPool channelPool) {
+        if (channelPool instanceof MeteredChannelPool) {
+            return ((MeteredChannelPool) channelPool).acquiredCount();
+        }
+        return 0;
+    }
+
+    static int pendingAcquireCount(io.netty.channel.pool.ChannelPool channelPool) {
+        if (channelPool instanceof MeteredChannelPool) {
+            return ((MeteredChannelPool) channelPool).pendingAcquireCount();
+        }
+        return 0;
+    }
+
+    static int idleCount(io.netty.channel.pool.ChannelPool channelPool) {
+        if (channelPool instanceof MeteredChannelPool) {
+            return ((MeteredChannelPool) channelPool).idleCount();
+        }
+        return 0;
+    }
+
+    private class ChannelPoolRemovalListener implements RemovalListener<SocketAddress, ChannelPool> {
+
+        private final ConcurrentMap<SocketAddress, ConnectionPoolMetric> metrics;
+
+        /**
+         * Whether to drain the removed pools, otherwise close them directly.
+         */
+        private final boolean drain;
+
+        private ChannelPoolRemovalListener(ConcurrentMap<SocketAddress, ConnectionPoolMetric> metrics,
+                                           boolean drain) {
+            this.metrics = metrics;
+            this.drain = drain;
+        }
 
         @Override
         public void onRemoval(SocketAddress key, ChannelPool value, RemovalCause cause) {
-            close(key, value, true);
+            if (key != null) {
+                // The pool may have been replaced already, so only the metric of the removed one is discarded.
+                metrics.computeIfPresent(key, (k, metric) ->
+                        ((ChannelPoolMetricImpl) metric).channelPool == value ? null : metric);
+            }
+            if (drain) {
+                // The removed pool may be still in use(eg: replaced by new options, or expired while serving
+                // long requests), so that it's drained rather than closed.
+                drain(key, value);
+            } else {
+                close(key, value, true);
+            }
         }
     }
 
     private static class ChannelPoolMetricImpl implements ConnectionPoolMetric {
 
-        private final FixedChannelPool channelPool;
+        private final SocketAddress address;
+        private final ChannelPool channelPool;
+        private final io.netty.channel.pool.ChannelPool underlying;
         private final ChannelPoolOptions options;
 
-        private ChannelPoolMetricImpl(ChannelPool channelPool) {
-            this.channelPool = (FixedChannelPool) channelPool.underlying;
+        /**
+         * {@code null} if the underlying pool doesn't maintain its own statistics.
+         */
+        private final ChannelPoolStats stats;
+
+        private ChannelPoolMetricImpl(SocketAddress address, ChannelPool channelPool) {
+            this.address = address;
+            this.channelPool = channelPool;
+            this.underlying = channelPool.underlying;
             this.options = channelPool.options;
+            this.stats = underlying instanceof MeteredChannelPool
+                    ? ((MeteredChannelPool) underlying).stats()
+                    : null;
         }
 
         @Override
         public int maxSize() {
-            return (int) BeanUtils.getFieldValue(channelPool, "maxConnections");
+            return ChannelPools.maxConnections(underlying);
         }
 
         @Override
         public int maxPendingAcquires() {
-            return (int) BeanUtils.getFieldValue(channelPool, "maxPendingAcquires");
+            return ChannelPools.maxPendingAcquires(underlying);
         }
 
         @Override
         public int active() {
-            return ((AtomicInteger) BeanUtils.getFieldValue(channelPool, "acquiredChannelCount")).intValue();
+            return ChannelPools.acquiredCount(underlying);
         }
 
         @Override
         public int pendingAcquireCount() {
-            return (int) BeanUtils.getFieldValue(channelPool, "pendingAcquireCount");
+            return ChannelPools.pendingAcquireCount(underlying);
+        }
+
+        @Override
+        public int idle() {
+            return ChannelPools.idleCount(underlying);
+        }
+
+        @Override
+        public long created() {
+            return stats == null ? 0L : stats.created();
+        }
+
+        @Override
+        public long closed() {
+            return stats == null ? 0L : stats.closed();
+        }
+
+        @Override
+        public long acquireFailures() {
+            return stats == null ? 0L : stats.acquireFailures();
+        }
+
+        @Override
+        public Histogram acquireTime() {
+            return stats == null ? Histogram.EMPTY : stats.acquireTime();
+        }
+
+        @Override
+        public long connectFailures() {
+            return stats == null ? 0L : stats.connectFailures();
+        }
+
+        @Override
+        public Histogram connectTime() {
+            return stats == null ? Histogram.EMPTY : stats.connectTime();
+        }
+
+        @Override
+        public Histogram pingRtt() {
+            return stats == null ? Histogram.EMPTY : stats.pingRtt();
+        }
+
+        @Override
+        public long unhealthyEvictions() {
+            return stats == null ? 0L : stats.unhealthyEvictions();
         }
 
         @Override
@@ -236,7 +591,16 @@ public class ChannelPools implements ConnectionPoolMetricProvider {
                     .add("maxSize=" + maxSize())
                     .add("maxPendingAcquires=" + maxPendingAcquires())
                     .add("active=" + active())
+                    .add("idle=" + idle())
                     .add("pendingAcquireCount=" + pendingAcquireCount())
+                    .add("created=" + created())
+                    .add("closed=" + closed())
+                    .add("acquireFailures=" + acquireFailures())
+                    .add("acquireTime=" + acquireTime())
+                    .add("connectFailures=" + connectFailures())
+                    .add("connectTime=" + connectTime())
+                    .add("pingRtt=" + pingRtt())
+                    .add("unhealthyEvictions=" + unhealthyEvictions())
                     .toString();
         }
     }
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.commons.Checks;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Checks the idle connections of a {@link HealthCheckedChannelPool} periodically:
+ * <ul>
+ *     <li>an idle HTTP/1.1 connection is evicted once it has been closed by remote peer(eg: EOF has been read) or
+ *     it has been marked as stale by {@link #markStale(Channel)}(eg: unexpected bytes have been read while there is
+ *     no in-flight request).</li>
+ *     <li>a PING frame is sent on every idle HTTP/2 connection and its round-trip time is recorded, the connection
+ *     whose PING has not been acknowledged until next check is evicted.</li>
+ * </ul>
+ * The checker stops itself as soon as the pool is closed.
+ */
+final class ConnectionHealthChecker implements Runnable {
+
+    private static final AttributeKey<Boolean> STALE_KEY = AttributeKey.valueOf("esa.httpclient.staleConnection");
+
+    private final HealthCheckedChannelPool pool;
+
+    private volatile ScheduledFuture<?> future;
+
+    ConnectionHealthChecker(HealthCheckedChannelPool pool) {
+        Checks.checkNotNull(pool, "HealthCheckedChannelPool must not be null");
+        this.pool = pool;
+    }
+
+    /**
+     * Runs this checker every {@code intervalMillis} by the given executor until the pool is closed.
+     *
+     * @param executor       executor
+     * @param intervalMillis interval in milliseconds
+     * @return this
+     */
+    ConnectionHealthChecker start(EventExecutor executor, long intervalMillis) {
+        Checks.checkArg(intervalMillis >= 1L, "intervalMillis is " + intervalMillis + " (expected >= 1)");
+        future = executor.scheduleWithFixedDelay(this, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    @Override
+    public void run() {
+        if (pool.isClosed()) {
+            final ScheduledFuture<?> future = this.future;
+            if (future != null) {
+                future.cancel(false);
+            }
+            return;
+        }
+
+        try {
+            pool.checkHealth();
+        } catch (Throwable ex) {
+            LoggerUtils.logger().warn("Unexpected exception occurred while checking connection pool", ex);
+        }
+    }
+
+    /**
+     * Marks the given {@link Channel} as stale, which will never be reused.
+     *
+     * @param channel channel
+     */
+    static void markStale(Channel channel) {
+        channel.attr(STALE_KEY).set(Boolean.TRUE);
+    }
+
+    static boolean isStale(Channel channel) {
+        return channel.hasAttr(STALE_KEY) && Boolean.TRUE.equals(channel.attr(STALE_KEY).get());
+    }
+
+    /**
+     * Whether the given {@link Channel} can be reused.
+     *
+     * @param channel channel
+     * @return {@code true} if the channel is active and not stale
+     */
+    static boolean isHealthy(Channel channel) {
+        return channel.isActive() && !isStale(channel);
+    }
+}
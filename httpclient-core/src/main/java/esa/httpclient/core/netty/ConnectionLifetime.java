@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.commons.Checks;
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the lifetime and the count of requests of pooled connections, so that the connections will be retired
+ * and re-established periodically instead of being pinned to the same server forever.
+ * <p>
+ * The lifetime of every connection is reduced by a random jitter(at most {@link #JITTER_PERCENT} percent), so
+ * that the connections created at the same time will not be retired at the same moment.
+ */
+final class ConnectionLifetime {
+
+    static final ConnectionLifetime UNLIMITED = new ConnectionLifetime(0L, 0);
+
+    static final int JITTER_PERCENT = 10;
+
+    private static final AttributeKey<Usage> USAGE_KEY = AttributeKey.valueOf("esa.httpclient.connectionUsage");
+
+    private final long maxLifetimeNanos;
+    private final int maxRequests;
+
+    private ConnectionLifetime(long maxLifetimeNanos, int maxRequests) {
+        this.maxLifetimeNanos = maxLifetimeNanos;
+        this.maxRequests = maxRequests;
+    }
+
+    /**
+     * Obtains a {@link ConnectionLifetime}.
+     *
+     * @param maxLifetimeMillis max lifetime of a connection, 0 means unlimited
+     * @param maxRequests       max count of requests of a connection, 0 means unlimited
+     * @return lifetime
+     */
+    static ConnectionLifetime of(long maxLifetimeMillis, int maxRequests) {
+        Checks.checkArg(maxLifetimeMillis >= 0L, "maxLifetime is " + maxLifetimeMillis + " (expected >= 0)");
+        Checks.checkArg(maxRequests >= 0, "maxRequests is " + maxRequests + " (expected >= 0)");
+        if (maxLifetimeMillis == 0L && maxRequests == 0) {
+            return UNLIMITED;
+        }
+        return new ConnectionLifetime(TimeUnit.MILLISECONDS.toNanos(maxLifetimeMillis), maxRequests);
+    }
+
+    boolean isUnlimited() {
+        return this == UNLIMITED;
+    }
+
+    /**
+     * Starts to track the given {@link Channel}, which should be called once the {@link Channel} is created.
+     *
+     * @param channel channel
+     */
+    void onCreated(Channel channel) {
+        if (isUnlimited()) {
+            return;
+        }
+
+        long expireAt = Long.MAX_VALUE;
+        if (maxLifetimeNanos > 0L) {
+            final long jitter = maxLifetimeNanos * JITTER_PERCENT / 100;
+            expireAt = System.nanoTime() + maxLifetimeNanos
+                    - (jitter > 0L ? ThreadLocalRandom.current().nextLong(jitter) : 0L);
+        }
+        channel.attr(USAGE_KEY).set(new Usage(expireAt));
+    }
+
+    /**
+     * Records a request of the given {@link Channel}, which should be called once the {@link Channel} is acquired.
+     *
+     * @param channel channel
+     */
+    void onAcquired(Channel channel) {
+        if (maxRequests <= 0) {
+            return;
+        }
+
+        final Usage usage = channel.attr(USAGE_KEY).get();
+        if (usage != null) {
+            usage.requests++;
+        }
+    }
+
+    /**
+     * Whether the given {@link Channel} has exceeded its lifetime or max count of requests.
+     *
+     * @param channel channel
+     * @return {@code true} if the {@link Channel} should be retired.
+     */
+    boolean isExpired(Channel channel) {
+        if (isUnlimited()) {
+            return false;
+        }
+
+        final Usage usage = channel.attr(USAGE_KEY).get();
+        if (usage == null) {
+            return false;
+        }
+
+        return (maxRequests > 0 && usage.requests >= maxRequests)
+                || (maxLifetimeNanos > 0L && System.nanoTime() - usage.expireAt >= 0L);
+    }
+
+    private static final class Usage {
+
+        private final long expireAt;
+
+        /**
+         * The count of requests, which is only modified by the exclusive owner of the connection(or the executor
+         * of the {@link Http2ChannelPool}).
+         */
+        private volatile int requests;
+
+        private Usage(long expireAt) {
+            this.expireAt = expireAt;
+        }
+    }
+}
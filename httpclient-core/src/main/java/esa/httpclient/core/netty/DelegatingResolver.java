@@ -47,6 +47,12 @@ class DelegatingResolver extends InetNameResolver {
 
     @Override
     protected void doResolveAll(String inetHost, Promise<List<InetAddress>> promise) {
-        throw new UnsupportedOperationException("Please use doResolve() instead of doResolveAll()");
+        delegate.resolveAll(inetHost).whenComplete((addresses, th) -> {
+            if (th != null) {
+                promise.setFailure(th);
+            } else {
+                promise.setSuccess(addresses);
+            }
+        });
     }
 }
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.commons.Checks;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A connector for the requests whose keepAlive is {@code false}, which opens a new {@link Channel} for every
+ * acquisition and closes it once it's released.
+ * <p>
+ * The {@link Bootstrap} and the {@link ChannelInitializer} are prepared once and reused by all the connections, so
+ * that an instance can be cached per address and every acquisition only pays for the connection itself.
+ */
+final class DirectConnectAndCloseChannelPool implements io.netty.channel.pool.ChannelPool, MeteredChannelPool {
+
+    private static final AttributeKey<DirectConnectAndCloseChannelPool> POOL_KEY =
+            AttributeKey.valueOf("esa.httpclient.directConnectAndCloseChannelPool");
+
+    private final Bootstrap bootstrap;
+    private final ChannelPoolHandler handler;
+    private final ChannelInitializer initializer;
+    private final ChannelPoolStats stats;
+
+    private final AtomicInteger connectingCount = new AtomicInteger();
+    private final AtomicInteger acquiredCount = new AtomicInteger();
+
+    DirectConnectAndCloseChannelPool(Bootstrap bootstrap,
+                                     ChannelPoolHandler handler,
+                                     ChannelInitializer initializer) {
+        this(bootstrap, handler, initializer, new ChannelPoolStats());
+    }
+
+    DirectConnectAndCloseChannelPool(Bootstrap bootstrap,
+                                     ChannelPoolHandler handler,
+                                     ChannelInitializer initializer,
+                                     ChannelPoolStats stats) {
+        Checks.checkNotNull(bootstrap, "Bootstrap must not be null");
+        Checks.checkNotNull(handler, "ChannelPoolHandler must not be null");
+        Checks.checkNotNull(stats, "ChannelPoolStats must not be null");
+        this.bootstrap = bootstrap.clone();
+        this.bootstrap.handler(new io.netty.channel.ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                handler.channelCreated(ch);
+                stats.onCreated(ch);
+            }
+        });
+        this.handler = handler;
+        this.initializer = initializer;
+        this.stats = stats;
+    }
+
+    @Override
+    public Future<Channel> acquire() {
+        return acquire(bootstrap.config().group().next().newPromise());
+    }
+
+    @Override
+    public Future<Channel> acquire(Promise<Channel> promise) {
+        Checks.checkNotNull(promise, "Promise must not be null");
+        final long startNanos = System.nanoTime();
+        connectingCount.incrementAndGet();
+        try {
+            // The bootstrap is reusable, and there is no need to clone it for every connection.
+            final Future<Channel> future = HappyEyeballsConnector.connect(bootstrap, initializer);
+            stats.onConnect(future, startNanos);
+            if (future.isDone()) {
+                onConnected(future, promise);
+            } else {
+                future.addListener(f -> onConnected(future, promise));
+            }
+        } catch (Throwable ex) {
+            connectingCount.decrementAndGet();
+            promise.tryFailure(ex);
+        }
+
+        stats.onAcquire(promise, startNanos);
+        return promise;
+    }
+
+    @Override
+    public Future<Void> release(Channel channel) {
+        return release(channel, channel.eventLoop().newPromise());
+    }
+
+    @Override
+    public Future<Void> release(Channel channel, Promise<Void> promise) {
+        Checks.checkNotNull(channel, "Channel must not be null");
+        Checks.checkNotNull(promise, "Promise must not be null");
+        if (!channel.attr(POOL_KEY).compareAndSet(this, null)) {
+            channel.close();
+            promise.tryFailure(new IllegalArgumentException("Channel " + channel
+                    + " was not acquired from this DirectConnectAndCloseChannelPool"));
+            return promise;
+        }
+
+        acquiredCount.decrementAndGet();
+        try {
+            handler.channelReleased(channel);
+        } catch (Throwable ex) {
+            LoggerUtils.logger().warn("Unexpected exception occurred while releasing connection: {}",
+                    channel, ex);
+        }
+        channel.close();
+        promise.trySuccess(null);
+        return promise;
+    }
+
+    /**
+     * Nothing to close, the acquired {@link Channel}s will be closed once they are released.
+     */
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Unlimited.
+     */
+    @Override
+    public int maxConnections() {
+        return 0;
+    }
+
+    /**
+     * Unlimited.
+     */
+    @Override
+    public int maxPendingAcquires() {
+        return 0;
+    }
+
+    @Override
+    public int acquiredCount() {
+        return acquiredCount.get();
+    }
+
+    /**
+     * Obtains the count of connections which are being established.
+     */
+    @Override
+    public int pendingAcquireCount() {
+        return connectingCount.get();
+    }
+
+    @Override
+    public int idleCount() {
+        return 0;
+    }
+
+    @Override
+    public ChannelPoolStats stats() {
+        return stats;
+    }
+
+    private void onConnected(Future<Channel> future, Promise<Channel> promise) {
+        connectingCount.decrementAndGet();
+        if (!future.isSuccess()) {
+            promise.tryFailure(future.cause());
+            return;
+        }
+
+        final Channel channel = future.getNow();
+        channel.attr(POOL_KEY).set(this);
+        acquiredCount.incrementAndGet();
+        try {
+            handler.channelAcquired(channel);
+        } catch (Throwable ex) {
+            LoggerUtils.logger().warn("Unexpected exception occurred while acquiring connection: {}",
+                    channel, ex);
+        }
+        if (!promise.trySuccess(channel)) {
+            // The promise has been cancelled.
+            release(channel);
+        }
+    }
+}
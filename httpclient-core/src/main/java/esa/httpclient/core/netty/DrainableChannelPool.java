@@ -0,0 +1,34 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import io.netty.util.concurrent.Future;
+
+/**
+ * A {@link MeteredChannelPool} which can be closed gracefully by draining: no more acquisition will be accepted,
+ * the idle connections are closed immediately, and every acquired connection is closed as soon as it's released
+ * rather than at a fixed deadline, so that neither the idle connections are wasted nor the in-flight requests are
+ * interrupted.
+ */
+interface DrainableChannelPool extends MeteredChannelPool {
+
+    /**
+     * Begins to drain this pool.
+     *
+     * @return future which will be completed once all the acquired connections have been released
+     */
+    Future<Void> drain();
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.httpclient.core.metrics.Histogram;
+
+import java.util.StringJoiner;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A lock-free {@link Histogram} whose buckets are exponential: the bucket {@code i} holds the values in
+ * {@code [2^(i-1), 2^i)}, so that recording a value only costs an increment of a {@link LongAdder}, and the
+ * percentiles are approximated by the upper bound of the bucket(at most 2x of the real value).
+ */
+final class ExponentialHistogram implements Histogram {
+
+    private static final int BUCKETS = Long.SIZE;
+
+    private final LongAdder[] buckets = new LongAdder[BUCKETS];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    ExponentialHistogram() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    void record(long value) {
+        final long v = Math.max(0L, value);
+        buckets[indexOf(v)].increment();
+        count.increment();
+        sum.add(v);
+
+        long current;
+        while (v > (current = max.get())) {
+            if (max.compareAndSet(current, v)) {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public long count() {
+        return count.sum();
+    }
+
+    @Override
+    public long sum() {
+        return sum.sum();
+    }
+
+    @Override
+    public long max() {
+        return max.get();
+    }
+
+    @Override
+    public long percentile(double percentile) {
+        final long[] counts = new long[BUCKETS];
+        long total = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = buckets[i].sum();
+            total += counts[i];
+        }
+        if (total == 0L) {
+            return 0L;
+        }
+
+        final double p = Math.min(1.0d, Math.max(0.0d, percentile));
+        final long rank = Math.max(1L, (long) Math.ceil(p * total));
+        final long max = max();
+        long accumulated = 0L;
+        for (int i = 0; i < BUCKETS; i++) {
+            accumulated += counts[i];
+            if (accumulated >= rank) {
+                return Math.min(upperBoundOf(i), max);
+            }
+        }
+        return max;
+    }
+
+    @Override
+    public String toString() {
+        return new StringJoiner(", ", "Histogram[", "]")
+                .add("count=" + count())
+                .add("mean=" + (long) mean())
+                .add("p50=" + percentile(0.5d))
+                .add("p99=" + percentile(0.99d))
+                .add("max=" + max())
+                .toString();
+    }
+
+    static int indexOf(long value) {
+        return BUCKETS - Long.numberOfLeadingZeros(value);
+    }
+
+    static long upperBoundOf(int index) {
+        return index >= BUCKETS - 1 ? Long.MAX_VALUE : (1L << index) - 1L;
+    }
+}
@@ -18,6 +18,7 @@ package esa.httpclient.core.netty;
 import esa.commons.http.HttpVersion;
 import esa.httpclient.core.Context;
 import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
 import esa.httpclient.core.Listener;
 import io.netty.channel.Channel;
 import io.netty.channel.pool.ChannelPool;
@@ -61,13 +62,17 @@ class H2TransceiverHandle extends TransceiverHandle {
             this.channel = channel;
         }
 
+        /**
+         * The stream slot is held until the response has completed, so that the {@link Http2ChannelPool}
+         * can count the concurrent streams of the connection correctly.
+         */
         @Override
-        public void onWriteDone(HttpRequest request, Context ctx) {
+        public void onCompleted(HttpRequest request, Context ctx, HttpResponse response) {
             if (released.compareAndSet(false, true)) {
                 channelPool.release(channel);
             }
 
-            super.onWriteDone(request, ctx);
+            super.onCompleted(request, ctx, response);
         }
 
         @Override
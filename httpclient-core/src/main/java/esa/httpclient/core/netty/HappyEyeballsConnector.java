@@ -0,0 +1,320 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.EventLoop;
+import io.netty.resolver.AddressResolver;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.SystemPropertyUtil;
+
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Opens connections to the remote address of a {@link Bootstrap} by the Happy Eyeballs algorithm(RFC 8305) if the
+ * remote address is an unresolved {@link InetSocketAddress} which is resolved to more than one address:
+ * <ul>
+ *     <li>the resolved addresses are sorted by interleaving the address families, starting with the family of the
+ *     first resolved address.</li>
+ *     <li>connection attempts are started one by one, and the next one is started as soon as the previous one has
+ *     failed or the connection attempt delay has elapsed, whichever comes first.</li>
+ *     <li>the first established connection wins, and all the other attempts are cancelled.</li>
+ * </ul>
+ * So that a slow or unreachable address just delays the connection by the connection attempt delay rather than the
+ * whole connect timeout. The remote address which has been resolved already(eg: connection pool per resolved address)
+ * is connected directly.
+ */
+final class HappyEyeballsConnector {
+
+    private static final String ENABLED_KEY = "esa.httpclient.happyEyeballs.enabled";
+    private static final String CONNECTION_ATTEMPT_DELAY_MILLIS_KEY =
+            "esa.httpclient.happyEyeballs.connectionAttemptDelayMillis";
+
+    static final boolean ENABLED = SystemPropertyUtil.getBoolean(ENABLED_KEY, true);
+
+    /**
+     * The recommended value of RFC 8305.
+     */
+    static final long CONNECTION_ATTEMPT_DELAY_MILLIS =
+            SystemPropertyUtil.getLong(CONNECTION_ATTEMPT_DELAY_MILLIS_KEY, 250L);
+
+    private HappyEyeballsConnector() {
+    }
+
+    /**
+     * Opens a connection to the remote address of given {@link Bootstrap} and initializes it by given
+     * {@link ChannelInitializer}.
+     *
+     * @param bootstrap   bootstrap which has been configured with a remote address
+     * @param initializer initializer, which may be {@code null}
+     * @return future which will be completed once the winner connection has been initialized
+     */
+    static Future<Channel> connect(Bootstrap bootstrap, ChannelInitializer initializer) {
+        return connect(bootstrap, initializer, ENABLED, CONNECTION_ATTEMPT_DELAY_MILLIS);
+    }
+
+    /**
+     * Designed as package visibility for unit test purpose.
+     */
+    static Future<Channel> connect(Bootstrap bootstrap,
+                                   ChannelInitializer initializer,
+                                   boolean enabled,
+                                   long attemptDelayMillis) {
+        final EventLoop executor = bootstrap.config().group().next();
+        final Promise<Channel> promise = executor.newPromise();
+        final SocketAddress remoteAddress = bootstrap.config().remoteAddress();
+        if (!enabled
+                || !(remoteAddress instanceof InetSocketAddress)
+                || !((InetSocketAddress) remoteAddress).isUnresolved()) {
+            initialize(bootstrap.connect(), initializer, promise);
+            return promise;
+        }
+
+        @SuppressWarnings("unchecked")
+        final AddressResolver<SocketAddress> resolver =
+                (AddressResolver<SocketAddress>) bootstrap.config().resolver().getResolver(executor);
+        final Future<List<SocketAddress>> resolveFuture = resolver.resolveAll(remoteAddress);
+        if (resolveFuture.isDone()) {
+            onResolved(bootstrap, initializer, attemptDelayMillis, executor, resolveFuture, promise);
+        } else {
+            resolveFuture.addListener(f ->
+                    onResolved(bootstrap, initializer, attemptDelayMillis, executor, resolveFuture, promise));
+        }
+        return promise;
+    }
+
+    private static void onResolved(Bootstrap bootstrap,
+                                   ChannelInitializer initializer,
+                                   long attemptDelayMillis,
+                                   EventLoop executor,
+                                   Future<List<SocketAddress>> resolveFuture,
+                                   Promise<Channel> promise) {
+        if (!resolveFuture.isSuccess()) {
+            promise.tryFailure(resolveFuture.cause());
+            return;
+        }
+
+        final List<SocketAddress> addresses = resolveFuture.getNow();
+        if (addresses == null || addresses.isEmpty()) {
+            promise.tryFailure(new IllegalStateException("Failed to resolve "
+                    + bootstrap.config().remoteAddress() + ": no address"));
+            return;
+        }
+        if (addresses.size() == 1) {
+            initialize(bootstrap.connect(addresses.get(0)), initializer, promise);
+            return;
+        }
+
+        final Race race = new Race(bootstrap, initializer, attemptDelayMillis, executor,
+                interleave(addresses), promise);
+        if (executor.inEventLoop()) {
+            race.startNext();
+        } else {
+            executor.execute(race::startNext);
+        }
+    }
+
+    /**
+     * Sorts the given addresses by interleaving the address families, starting with the family of the first one.
+     * Designed as package visibility for unit test purpose.
+     *
+     * @param addresses addresses
+     * @return sorted addresses
+     */
+    static List<SocketAddress> interleave(List<SocketAddress> addresses) {
+        final LinkedList<SocketAddress> preferred = new LinkedList<>();
+        final LinkedList<SocketAddress> others = new LinkedList<>();
+        final boolean preferIpv6 = isIpv6(addresses.get(0));
+        for (SocketAddress address : addresses) {
+            if (isIpv6(address) == preferIpv6) {
+                preferred.add(address);
+            } else {
+                others.add(address);
+            }
+        }
+
+        final List<SocketAddress> sorted = new ArrayList<>(addresses.size());
+        while (!preferred.isEmpty() || !others.isEmpty()) {
+            if (!preferred.isEmpty()) {
+                sorted.add(preferred.poll());
+            }
+            if (!others.isEmpty()) {
+                sorted.add(others.poll());
+            }
+        }
+        return sorted;
+    }
+
+    private static boolean isIpv6(SocketAddress address) {
+        return address instanceof InetSocketAddress
+                && ((InetSocketAddress) address).getAddress() instanceof Inet6Address;
+    }
+
+    private static void initialize(ChannelFuture connectFuture,
+                                   ChannelInitializer initializer,
+                                   Promise<Channel> promise) {
+        final ChannelFuture future = initializer == null ? connectFuture : initializer.onConnected(connectFuture);
+        if (future.isDone()) {
+            onInitialized(future, promise);
+        } else {
+            future.addListener(f -> onInitialized(future, promise));
+        }
+    }
+
+    private static void onInitialized(ChannelFuture future, Promise<Channel> promise) {
+        if (!future.isSuccess()) {
+            promise.tryFailure(future.cause());
+        } else if (!promise.trySuccess(future.channel())) {
+            // The promise has been cancelled.
+            future.channel().close();
+        }
+    }
+
+    /**
+     * The state of the connection attempts to the resolved addresses, which is only accessed by the
+     * {@link #executor}.
+     */
+    private static final class Race {
+
+        private final Bootstrap bootstrap;
+        private final ChannelInitializer initializer;
+        private final long attemptDelayMillis;
+        private final EventLoop executor;
+        private final List<SocketAddress> addresses;
+        private final Promise<Channel> promise;
+        private final List<ChannelFuture> attempts = new LinkedList<>();
+
+        private int next;
+        private boolean done;
+        private Throwable cause;
+        private ScheduledFuture<?> delayTask;
+
+        private Race(Bootstrap bootstrap,
+                     ChannelInitializer initializer,
+                     long attemptDelayMillis,
+                     EventLoop executor,
+                     List<SocketAddress> addresses,
+                     Promise<Channel> promise) {
+            this.bootstrap = bootstrap;
+            this.initializer = initializer;
+            this.attemptDelayMillis = attemptDelayMillis;
+            this.executor = executor;
+            this.addresses = addresses;
+            this.promise = promise;
+            promise.addListener(f -> {
+                if (f.isCancelled()) {
+                    executor.execute(this::cancel);
+                }
+            });
+        }
+
+        private void startNext() {
+            cancelDelayTask();
+            if (done || next >= addresses.size()) {
+                return;
+            }
+            if (promise.isDone()) {
+                cancel();
+                return;
+            }
+
+            final SocketAddress address = addresses.get(next++);
+            final ChannelFuture attempt;
+            try {
+                attempt = bootstrap.connect(address);
+            } catch (Throwable ex) {
+                onAttemptFailed(address, ex);
+                return;
+            }
+
+            attempts.add(attempt);
+            attempt.addListener(f -> {
+                if (executor.inEventLoop()) {
+                    onAttemptDone(address, attempt);
+                } else {
+                    executor.execute(() -> onAttemptDone(address, attempt));
+                }
+            });
+            if (!done && next < addresses.size()) {
+                delayTask = executor.schedule(this::startNext, attemptDelayMillis, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void onAttemptDone(SocketAddress address, ChannelFuture attempt) {
+            attempts.remove(attempt);
+            if (done) {
+                // Lost the race.
+                if (attempt.isSuccess()) {
+                    attempt.channel().close();
+                }
+                return;
+            }
+
+            if (attempt.isSuccess()) {
+                done = true;
+                cancel();
+                initialize(attempt, initializer, promise);
+            } else {
+                onAttemptFailed(address, attempt.cause());
+            }
+        }
+
+        private void onAttemptFailed(SocketAddress address, Throwable ex) {
+            LoggerUtils.logger().debug("Failed to connect to {}, try the next address if present", address, ex);
+            if (cause == null) {
+                cause = ex;
+            } else if (ex != null && ex != cause) {
+                cause.addSuppressed(ex);
+            }
+
+            if (next < addresses.size()) {
+                // Starts the next attempt immediately rather than waiting for the delay.
+                startNext();
+            } else if (attempts.isEmpty()) {
+                done = true;
+                promise.tryFailure(cause);
+            }
+        }
+
+        private void cancel() {
+            done = true;
+            cancelDelayTask();
+            for (ChannelFuture attempt : attempts) {
+                attempt.cancel(false);
+                attempt.channel().close();
+            }
+            attempts.clear();
+        }
+
+        private void cancelDelayTask() {
+            if (delayTask != null) {
+                delayTask.cancel(false);
+                delayTask = null;
+            }
+        }
+    }
+}
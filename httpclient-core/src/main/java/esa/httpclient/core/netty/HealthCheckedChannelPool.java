@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+/**
+ * A {@link MeteredChannelPool} whose idle connections can be checked in the background, so that the broken ones are
+ * evicted before they are acquired by the callers.
+ */
+interface HealthCheckedChannelPool extends MeteredChannelPool {
+
+    /**
+     * Checks all the idle connections and evicts the unhealthy ones, the connections which are in use are left
+     * untouched.
+     */
+    void checkHealth();
+
+    /**
+     * Whether this pool has been closed.
+     *
+     * @return {@code true} if closed
+     */
+    boolean isClosed();
+}
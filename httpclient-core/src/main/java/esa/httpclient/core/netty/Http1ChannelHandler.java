@@ -90,8 +90,10 @@ class Http1ChannelHandler extends SimpleChannelInboundHandler<HttpObject> {
     protected void channelRead0(ChannelHandlerContext ctx, HttpObject msg) {
         final NettyHandle handle = registry.get(reusableRequestId);
         // Handle == null means the request has ended(timeout, exceeds maxContentLength, or others),
-        // and the current msg should be ignored.
+        // and the current msg should be ignored. The connection is out of sync with the server then, so that
+        // it must not be reused.
         if (handle == null) {
+            ConnectionHealthChecker.markStale(ctx.channel());
             if (LoggerUtils.logger().isDebugEnabled()) {
                 int size = (msg instanceof HttpResponse) ? 0 : ((HttpContent) msg).content().readableBytes();
                 LoggerUtils.logger().debug("There is no handler to handle inbound object, size: {}" +
@@ -0,0 +1,791 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.commons.Checks;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.handler.codec.http2.Http2Connection;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.internal.SystemPropertyUtil;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link io.netty.channel.pool.ChannelPool} which is designed for multiplexed HTTP/2 connections. Be different
+ * from {@link io.netty.channel.pool.FixedChannelPool}, a {@link Channel} acquired from this pool is not owned
+ * exclusively by the acquirer, instead, each acquisition occupies a stream slot of a shared connection until the
+ * {@link Channel} is released. The number of slots of a connection is limited by SETTINGS_MAX_CONCURRENT_STREAMS
+ * announced by remote peer, and {@code maxConnections} limits the count of connections rather than streams.
+ * <p>
+ * A new connection will be opened only when all the existing connections have reached their limit, and the
+ * acquirers will be queued(at most {@code maxPendingAcquires}) until a stream slot is available, and they are served
+ * by priority and then by the earliest deadline(see {@link PrioritizedChannelPool}). All the states are only
+ * accessed by a fixed {@link EventExecutor}, so that there is no need to synchronize.
+ * <p>
+ * Note that if the connection has fallen back to HTTP/1.1(eg: h2c upgrade is rejected), it's regarded as a
+ * connection which only has a single slot.
+ * <p>
+ * If {@code minConnections} is positive, connections will be opened in the background as soon as the pool is
+ * created, and be replenished whenever a connection is closed.
+ * <p>
+ * A connection which has exceeded its {@link ConnectionLifetime} will be retired once a stream slot of it is
+ * released: a GOAWAY frame is sent and no more stream will be assigned to it, then it will be closed as soon as
+ * all its active streams are released.
+ * <p>
+ * The {@code maxConnections} can be changed in place by {@link #resize(int)}, the surplus connections will be
+ * closed if they have no active stream.
+ * <p>
+ * The connections which have no active stream can be checked by PING through {@link #checkHealth()}, the
+ * connection whose previous PING has not been acknowledged is evicted.
+ * <p>
+ * Be different from {@link #close()} which closes all the connections(the active streams only have a chance to
+ * finish within the graceful shutdown timeout of HTTP/2), {@link #drain()} retires the connections which have active
+ * streams and closes each of them as soon as its last stream is released.
+ */
+final class Http2ChannelPool implements io.netty.channel.pool.ChannelPool, ResizableChannelPool,
+        HealthCheckedChannelPool, DrainableChannelPool, PrioritizedChannelPool, ManagedChannelPool {
+
+    private static final String INITIAL_MAX_CONCURRENT_STREAMS_KEY = "esa.httpclient.h2.initialMaxConcurrentStreams";
+
+    /**
+     * The max concurrent streams we assume before receiving the first SETTINGS frame of remote peer, the value is
+     * the minimum recommended by RFC 7540.
+     */
+    static final int INITIAL_MAX_CONCURRENT_STREAMS = SystemPropertyUtil.getInt(INITIAL_MAX_CONCURRENT_STREAMS_KEY,
+            100);
+
+    private static final AttributeKey<Connection> CONNECTION_KEY =
+            AttributeKey.valueOf("esa.httpclient.h2Connection");
+
+    private static final IllegalStateException POOL_CLOSED =
+            new IllegalStateException("Http2ChannelPool was closed");
+
+    private static final IllegalStateException FULL_PENDING_ACQUIRES =
+            new IllegalStateException("Too many outstanding acquire operations");
+
+    private final Bootstrap bootstrap;
+    private final ChannelPoolHandler handler;
+    private final ChannelInitializer initializer;
+    private final EventExecutor executor;
+    private final long acquireTimeoutNanos;
+    private volatile int maxConnections;
+    private final int maxPendingAcquires;
+    private final int minConnections;
+    private final ConnectionLifetime lifetime;
+    private final ChannelPoolStats stats;
+
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * The retired connections which still have active streams.
+     */
+    private final List<Connection> retiredConnections = new ArrayList<>();
+    private final Queue<PendingAcquire> pendingAcquires = new PriorityQueue<>();
+    private long acquireSequence;
+
+    /**
+     * The futures of connections which are being opened.
+     */
+    private final List<Future<Void>> connecting = new ArrayList<>();
+    private volatile boolean closed;
+
+    /**
+     * Completed once the pool has been drained and all the stream slots have been released.
+     */
+    private final Promise<Void> drained = GlobalEventExecutor.INSTANCE.newPromise();
+
+    /**
+     * The count of acquired stream slots, which is only modified by {@link #executor}.
+     */
+    private volatile int acquiredCount;
+    private volatile int pendingAcquireCount;
+    private volatile int connectionCount;
+    private volatile int idleCount;
+
+    Http2ChannelPool(Bootstrap bootstrap,
+                     ChannelPoolHandler handler,
+                     ChannelInitializer initializer,
+                     long acquireTimeoutMillis,
+                     int maxConnections,
+                     int maxPendingAcquires) {
+        this(bootstrap, handler, initializer, acquireTimeoutMillis, maxConnections, maxPendingAcquires, 0,
+                ConnectionLifetime.UNLIMITED, new ChannelPoolStats());
+    }
+
+    Http2ChannelPool(Bootstrap bootstrap,
+                     ChannelPoolHandler handler,
+                     ChannelInitializer initializer,
+                     long acquireTimeoutMillis,
+                     int maxConnections,
+                     int maxPendingAcquires,
+                     int minConnections,
+                     ConnectionLifetime lifetime,
+                     ChannelPoolStats stats) {
+        Checks.checkNotNull(bootstrap, "Bootstrap must not be null");
+        Checks.checkNotNull(handler, "ChannelPoolHandler must not be null");
+        Checks.checkArg(maxConnections >= 1, "maxConnections is " + maxConnections + " (expected >= 1)");
+        Checks.checkArg(maxPendingAcquires >= 1, "maxPendingAcquires is " + maxPendingAcquires
+                + " (expected >= 1)");
+        Checks.checkArg(minConnections >= 0, "minConnections is " + minConnections + " (expected >= 0)");
+        Checks.checkNotNull(lifetime, "ConnectionLifetime must not be null");
+        Checks.checkNotNull(stats, "ChannelPoolStats must not be null");
+        this.bootstrap = bootstrap.clone();
+        this.bootstrap.handler(new io.netty.channel.ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                handler.channelCreated(ch);
+                lifetime.onCreated(ch);
+                stats.onCreated(ch);
+            }
+        });
+        this.handler = handler;
+        this.initializer = initializer;
+        this.executor = bootstrap.config().group().next();
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        this.maxConnections = maxConnections;
+        this.maxPendingAcquires = maxPendingAcquires;
+        this.lifetime = lifetime;
+        this.stats = stats;
+        this.minConnections = Math.min(minConnections, maxConnections);
+        if (this.minConnections > 0) {
+            warmUp(this.minConnections);
+        }
+    }
+
+    @Override
+    public Future<Channel> acquire() {
+        return acquire(executor.newPromise());
+    }
+
+    @Override
+    public Future<Channel> acquire(Promise<Channel> promise) {
+        return acquire(promise, 0, 0L);
+    }
+
+    @Override
+    public Future<Channel> acquire(int priority, long deadline) {
+        return acquire(executor.newPromise(), priority, deadline);
+    }
+
+    private Future<Channel> acquire(Promise<Channel> promise, int priority, long deadline) {
+        Checks.checkNotNull(promise, "Promise must not be null");
+        final long startNanos = System.nanoTime();
+        if (executor.inEventLoop()) {
+            acquire0(promise, priority, deadline);
+        } else {
+            executor.execute(() -> acquire0(promise, priority, deadline));
+        }
+        stats.onAcquire(promise, startNanos);
+        return promise;
+    }
+
+    @Override
+    public Future<Void> release(Channel channel) {
+        return release(channel, executor.newPromise());
+    }
+
+    @Override
+    public Future<Void> release(Channel channel, Promise<Void> promise) {
+        Checks.checkNotNull(channel, "Channel must not be null");
+        Checks.checkNotNull(promise, "Promise must not be null");
+        if (executor.inEventLoop()) {
+            release0(channel, promise);
+        } else {
+            executor.execute(() -> release0(channel, promise));
+        }
+        return promise;
+    }
+
+    @Override
+    public void close() {
+        closeAsync();
+    }
+
+    @Override
+    public Future<Void> closeAsync() {
+        final Promise<Void> promise = GlobalEventExecutor.INSTANCE.newPromise();
+        if (executor.inEventLoop()) {
+            close0(promise);
+        } else {
+            executor.execute(() -> close0(promise));
+        }
+        return promise;
+    }
+
+    @Override
+    public Future<Void> drain() {
+        if (executor.inEventLoop()) {
+            drain0();
+        } else {
+            executor.execute(this::drain0);
+        }
+        return drained;
+    }
+
+    /**
+     * Opens new connections in the background until there are {@code connections} ones, the count of
+     * connections is still limited by {@link #maxConnections}.
+     *
+     * @param connections expected count of connections
+     * @return future which will be completed once all the new connections are established
+     */
+    @Override
+    public Future<Void> warmUp(int connections) {
+        final Promise<Void> promise = executor.newPromise();
+        if (executor.inEventLoop()) {
+            warmUp0(connections, promise);
+        } else {
+            executor.execute(() -> warmUp0(connections, promise));
+        }
+        return promise;
+    }
+
+    @Override
+    public void resize(int maxConnections) {
+        Checks.checkArg(maxConnections >= 0, "maxConnections is " + maxConnections + " (expected >= 0)");
+        if (executor.inEventLoop()) {
+            resize0(maxConnections);
+        } else {
+            executor.execute(() -> resize0(maxConnections));
+        }
+    }
+
+    @Override
+    public void checkHealth() {
+        if (executor.inEventLoop()) {
+            checkHealth0();
+        } else {
+            executor.execute(this::checkHealth0);
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    @Override
+    public int maxPendingAcquires() {
+        return maxPendingAcquires;
+    }
+
+    @Override
+    public int acquiredCount() {
+        return acquiredCount;
+    }
+
+    @Override
+    public int pendingAcquireCount() {
+        return pendingAcquireCount;
+    }
+
+    @Override
+    public int idleCount() {
+        return idleCount;
+    }
+
+    @Override
+    public ChannelPoolStats stats() {
+        return stats;
+    }
+
+    int connectionCount() {
+        return connectionCount;
+    }
+
+    private void acquire0(Promise<Channel> promise, int priority, long deadline) {
+        if (closed) {
+            promise.tryFailure(POOL_CLOSED);
+            return;
+        }
+
+        if (PendingAcquire.isExpired(deadline)) {
+            promise.tryFailure(PendingAcquire.deadlineExceeded());
+            return;
+        }
+
+        final Connection connection = select();
+        if (connection != null) {
+            assign(connection, promise);
+            return;
+        }
+
+        if (pendingAcquires.size() >= maxPendingAcquires) {
+            promise.tryFailure(FULL_PENDING_ACQUIRES);
+            return;
+        }
+
+        final PendingAcquire pending = new PendingAcquire(promise, priority, deadline, acquireSequence++);
+        pending.timeout = executor.schedule(() -> onTimeout(pending), pending.timeoutNanos(acquireTimeoutNanos),
+                TimeUnit.NANOSECONDS);
+        pendingAcquires.offer(pending);
+        pendingAcquireCount = pendingAcquires.size();
+        promise.addListener(f -> {
+            if (f.isCancelled()) {
+                if (executor.inEventLoop()) {
+                    onCancelled(pending);
+                } else {
+                    executor.execute(() -> onCancelled(pending));
+                }
+            }
+        });
+        connectIfNecessary();
+    }
+
+    private void release0(Channel channel, Promise<Void> promise) {
+        final Connection connection = channel.attr(CONNECTION_KEY).get();
+        if (connection == null || connection.pool != this) {
+            channel.close();
+            promise.tryFailure(new IllegalArgumentException("Channel " + channel
+                    + " was not acquired from this Http2ChannelPool"));
+            return;
+        }
+
+        if (connection.acquired > 0) {
+            connection.acquired--;
+            acquiredCount--;
+            updateCounts();
+        }
+
+        try {
+            handler.channelReleased(channel);
+        } catch (Throwable ex) {
+            LoggerUtils.logger().warn("Unexpected exception occurred while releasing connection: {}",
+                    channel, ex);
+        }
+
+        if (!closed && !connection.retired && lifetime.isExpired(channel)) {
+            retire(connection);
+        }
+
+        if (closed || connection.retired) {
+            if (connection.acquired == 0) {
+                channel.close();
+            }
+        }
+        if (!closed) {
+            servePendingAcquires();
+        }
+        completeDrainIfNecessary();
+        promise.trySuccess(null);
+    }
+
+    private void drain0() {
+        if (!closed) {
+            closed = true;
+            failPendingAcquires();
+
+            for (Connection connection : new ArrayList<>(connections)) {
+                if (connection.acquired == 0) {
+                    connection.channel.close();
+                } else {
+                    // Stop creating new streams and close it after all its active streams are released.
+                    retire(connection);
+                }
+            }
+        }
+        completeDrainIfNecessary();
+    }
+
+    private void completeDrainIfNecessary() {
+        if (closed && acquiredCount == 0) {
+            drained.trySuccess(null);
+        }
+    }
+
+    private void close0(Promise<Void> promise) {
+        if (!closed) {
+            closed = true;
+            failPendingAcquires();
+        }
+
+        // Note: the Http2ConnectionHandler will close the connection gracefully and the active
+        // streams will have a chance to finish.
+        for (Connection connection : new ArrayList<>(connections)) {
+            connection.channel.close();
+        }
+        // The retired connections may be still draining.
+        for (Connection connection : new ArrayList<>(retiredConnections)) {
+            connection.channel.close();
+        }
+        promise.trySuccess(null);
+    }
+
+    private void failPendingAcquires() {
+        PendingAcquire pending;
+        while ((pending = pendingAcquires.poll()) != null) {
+            pending.timeout.cancel(false);
+            pending.promise.tryFailure(POOL_CLOSED);
+        }
+        pendingAcquireCount = 0;
+    }
+
+    private void resize0(int maxConnections) {
+        final int previous = this.maxConnections;
+        this.maxConnections = maxConnections;
+        if (closed) {
+            return;
+        }
+        if (maxConnections > previous) {
+            if (!pendingAcquires.isEmpty()) {
+                connectIfNecessary();
+            }
+            return;
+        }
+
+        // Close the surplus connections which have no active stream.
+        for (Connection connection : new ArrayList<>(connections)) {
+            if (connections.size() <= maxConnections) {
+                break;
+            }
+            if (connection.acquired == 0) {
+                connection.retired = true;
+                connections.remove(connection);
+                connection.channel.close();
+            }
+        }
+        updateCounts();
+    }
+
+    private void checkHealth0() {
+        if (closed) {
+            return;
+        }
+
+        for (Connection connection : new ArrayList<>(connections)) {
+            if (connection.acquired > 0) {
+                continue;
+            }
+
+            if (!ConnectionHealthChecker.isHealthy(connection.channel)
+                    || (connection.h2Handler != null && connection.h2Handler.isPingOutstanding())) {
+                LoggerUtils.logger().debug("Evict unhealthy connection: {}", connection.channel);
+                stats.onUnhealthyEvicted();
+                connection.retired = true;
+                connections.remove(connection);
+                connection.channel.close();
+            } else if (connection.h2Handler != null) {
+                connection.h2Handler.writePing().addListener(f -> {
+                    if (f.isSuccess()) {
+                        stats.onPingAck((Long) f.getNow());
+                    }
+                });
+            }
+        }
+        updateCounts();
+    }
+
+    private void warmUp0(int count, Promise<Void> promise) {
+        final int target = Math.min(count, maxConnections);
+        final List<Future<?>> futures = new ArrayList<>(connecting);
+        while (!closed && connections.size() + connecting.size() < target) {
+            futures.add(connect());
+        }
+
+        ChannelPools.whenAll(futures).addListener(f -> {
+            if (f.isSuccess()) {
+                promise.trySuccess(null);
+            } else {
+                LoggerUtils.logger().warn("Failed to warm up connection pool: {}",
+                        bootstrap.config().remoteAddress(), f.cause());
+                promise.tryFailure(f.cause());
+            }
+        });
+    }
+
+    private void onTimeout(PendingAcquire pending) {
+        if (pendingAcquires.remove(pending)) {
+            pendingAcquireCount = pendingAcquires.size();
+            pending.promise.tryFailure(pending.timeoutCause());
+        }
+    }
+
+    private void onCancelled(PendingAcquire pending) {
+        if (pendingAcquires.remove(pending)) {
+            pendingAcquireCount = pendingAcquires.size();
+            pending.timeout.cancel(false);
+        }
+    }
+
+    /**
+     * Selects the least loaded connection which still has available stream slots.
+     *
+     * @return connection, may be null
+     */
+    private Connection select() {
+        Connection selected = null;
+        int selectedAvailable = 0;
+        for (int i = 0; i < connections.size(); i++) {
+            final Connection connection = connections.get(i);
+            final int available = connection.available();
+            if (available > selectedAvailable) {
+                selected = connection;
+                selectedAvailable = available;
+            }
+        }
+
+        return selected;
+    }
+
+    private void assign(Connection connection, Promise<Channel> promise) {
+        connection.acquired++;
+        acquiredCount++;
+        if (promise.trySuccess(connection.channel)) {
+            lifetime.onAcquired(connection.channel);
+        } else {
+            // The promise has been cancelled, give back the slot.
+            connection.acquired--;
+            acquiredCount--;
+        }
+        updateCounts();
+    }
+
+    /**
+     * Stops assigning stream slots of the given connection, and opens a new connection instead if necessary.
+     *
+     * @param connection connection
+     */
+    private void retire(Connection connection) {
+        connection.retired = true;
+        connections.remove(connection);
+        retiredConnections.add(connection);
+        updateCounts();
+        if (connection.h2Handler != null && connection.channel.isActive()) {
+            connection.h2Handler.writeGoAwayOnRetirement();
+        }
+
+        if (!closed) {
+            replenish();
+        }
+    }
+
+    private void servePendingAcquires() {
+        PendingAcquire pending;
+        while ((pending = pendingAcquires.peek()) != null) {
+            if (pending.isExpired()) {
+                pendingAcquires.poll();
+                pending.timeout.cancel(false);
+                pending.promise.tryFailure(PendingAcquire.deadlineExceeded());
+                continue;
+            }
+
+            final Connection connection = select();
+            if (connection == null) {
+                break;
+            }
+
+            pendingAcquires.poll();
+            pending.timeout.cancel(false);
+            assign(connection, pending.promise);
+        }
+        pendingAcquireCount = pendingAcquires.size();
+
+        if (!pendingAcquires.isEmpty()) {
+            connectIfNecessary();
+        }
+    }
+
+    /**
+     * Opens a new connection only when there is no connection in connecting and all the existing connections
+     * have reached their limit, and the count of connections doesn't exceed {@link #maxConnections}.
+     */
+    private void connectIfNecessary() {
+        if (!connecting.isEmpty() || connections.size() >= maxConnections) {
+            return;
+        }
+
+        connect();
+    }
+
+    /**
+     * Opens a new connection.
+     *
+     * @return future which will be completed once the connection is added to this pool
+     */
+    private Future<Void> connect() {
+        final Promise<Void> promise = executor.newPromise();
+        connecting.add(promise);
+        final Future<Channel> future;
+        try {
+            future = connectChannel();
+        } catch (Throwable ex) {
+            connecting.remove(promise);
+            onConnectFailed(ex);
+            promise.tryFailure(ex);
+            return promise;
+        }
+        if (future.isDone()) {
+            onConnected(future, promise);
+        } else {
+            future.addListener(f -> onConnected(future, promise));
+        }
+        return promise;
+    }
+
+    private Future<Channel> connectChannel() {
+        final long startNanos = System.nanoTime();
+        final Future<Channel> future = HappyEyeballsConnector.connect(bootstrap, initializer);
+        stats.onConnect(future, startNanos);
+        return future;
+    }
+
+    private void onConnected(Future<Channel> future, Promise<Void> promise) {
+        // The listener of connect future is notified by the event loop of channel.
+        if (!executor.inEventLoop()) {
+            executor.execute(() -> onConnected(future, promise));
+            return;
+        }
+
+        connecting.remove(promise);
+        if (!future.isSuccess()) {
+            onConnectFailed(future.cause());
+            promise.tryFailure(future.cause());
+            return;
+        }
+
+        final Channel channel = future.getNow();
+        if (closed) {
+            channel.close();
+            promise.tryFailure(POOL_CLOSED);
+            return;
+        }
+
+        final Connection connection = new Connection(this, channel);
+        channel.attr(CONNECTION_KEY).set(connection);
+        connections.add(connection);
+        updateCounts();
+
+        channel.closeFuture().addListener(f -> {
+            if (executor.inEventLoop()) {
+                onClosed(connection);
+            } else {
+                executor.execute(() -> onClosed(connection));
+            }
+        });
+
+        promise.trySuccess(null);
+        servePendingAcquires();
+    }
+
+    /**
+     * Refreshes the counts which may be read by other threads, which must be called in the {@link #executor}.
+     */
+    private void updateCounts() {
+        int idle = 0;
+        for (Connection connection : connections) {
+            if (connection.acquired == 0) {
+                idle++;
+            }
+        }
+        idleCount = idle;
+        connectionCount = connections.size();
+    }
+
+    private void onConnectFailed(Throwable cause) {
+        // Fail all the waiters fast if there is no available connection, otherwise the waiters
+        // will be served as soon as the existing connections have released stream slots.
+        if (connections.isEmpty()) {
+            PendingAcquire pending;
+            while ((pending = pendingAcquires.poll()) != null) {
+                pending.timeout.cancel(false);
+                pending.promise.tryFailure(cause);
+            }
+            pendingAcquireCount = 0;
+        }
+    }
+
+    private void onClosed(Connection connection) {
+        connections.remove(connection);
+        retiredConnections.remove(connection);
+        // The retired connection has been removed already, but its slots may be still acquired.
+        acquiredCount -= connection.acquired;
+        connection.acquired = 0;
+        updateCounts();
+
+        if (!closed) {
+            replenish();
+        }
+        completeDrainIfNecessary();
+    }
+
+    private void replenish() {
+        if (connections.size() + connecting.size() < minConnections) {
+            warmUp0(minConnections, executor.newPromise());
+        } else if (!pendingAcquires.isEmpty()) {
+            connectIfNecessary();
+        }
+    }
+
+    private static final class Connection {
+
+        private final Http2ChannelPool pool;
+        private final Channel channel;
+
+        /**
+         * May be null if the connection has fallen back to HTTP/1.1
+         */
+        private final Http2ConnectionHandler h2Handler;
+
+        private int acquired;
+        private boolean retired;
+
+        private Connection(Http2ChannelPool pool, Channel channel) {
+            this.pool = pool;
+            this.channel = channel;
+            this.h2Handler = channel.pipeline().get(Http2ConnectionHandler.class);
+        }
+
+        private int available() {
+            if (!ConnectionHealthChecker.isHealthy(channel)) {
+                return 0;
+            }
+
+            return maxStreams() - acquired;
+        }
+
+        private int maxStreams() {
+            if (h2Handler == null) {
+                return 1;
+            }
+
+            final Http2Connection connection = h2Handler.connection();
+            if (connection.goAwayReceived() || connection.goAwaySent()) {
+                return 0;
+            }
+
+            if (!h2Handler.decoder().prefaceReceived()) {
+                return INITIAL_MAX_CONCURRENT_STREAMS;
+            }
+            return connection.local().maxActiveStreams();
+        }
+    }
+}
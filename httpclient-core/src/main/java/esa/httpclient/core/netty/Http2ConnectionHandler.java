@@ -28,6 +28,8 @@ import io.netty.handler.codec.http2.Http2Headers;
 import io.netty.handler.codec.http2.Http2Settings;
 import io.netty.handler.codec.http2.HttpConversionUtil;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
 
 import static esa.httpclient.core.netty.Utils.handleIdleEvt;
 import static io.netty.buffer.ByteBufUtil.writeAscii;
@@ -39,6 +41,13 @@ class Http2ConnectionHandler extends io.netty.handler.codec.http2.Http2Connectio
     private final HandleRegistry registry;
     private volatile ChannelHandlerContext ctx;
 
+    /**
+     * The outstanding PING which is waiting for acknowledgement, and the payload of it is the
+     * {@link System#nanoTime()} when it was sent.
+     */
+    private volatile Promise<Long> pingPromise;
+    private volatile long pingPayload;
+
     Http2ConnectionHandler(Http2ConnectionDecoder decoder,
                            Http2ConnectionEncoder encoder,
                            Http2Settings initialSettings,
@@ -176,6 +185,97 @@ class Http2ConnectionHandler extends io.netty.handler.codec.http2.Http2Connectio
         }
     }
 
+    /**
+     * Sends a GOAWAY frame to tell the remote peer that no more streams will be created on current connection,
+     * and the active streams will be completed normally.
+     *
+     * @return future
+     */
+    ChannelFuture writeGoAwayOnRetirement() {
+        final ChannelPromise promise = ctx.newPromise();
+        final Runnable runnable = () -> {
+            goAway(ctx, connection().remote().lastStreamCreated(),
+                    NO_ERROR.code(),
+                    writeAscii(ctx.alloc(), "Connection retired"),
+                    promise);
+            ctx.flush();
+        };
+
+        if (inEventLoop()) {
+            runnable.run();
+        } else {
+            ctx.channel().eventLoop().execute(runnable);
+        }
+
+        return promise;
+    }
+
+    /**
+     * Sends a PING frame to measure the round-trip time, which must not be called until the previous PING has been
+     * acknowledged.
+     *
+     * @return future which will be completed with the round-trip time in nanoseconds once the PING is acknowledged
+     */
+    Future<Long> writePing() {
+        final Promise<Long> promise = ctx.executor().newPromise();
+        final Runnable runnable = () -> {
+            final long payload = System.nanoTime();
+            pingPayload = payload;
+            pingPromise = promise;
+            encoder().writePing(ctx, false, payload, ctx.newPromise());
+            ctx.flush();
+        };
+
+        if (inEventLoop()) {
+            runnable.run();
+        } else {
+            ctx.channel().eventLoop().execute(runnable);
+        }
+
+        return promise;
+    }
+
+    /**
+     * Whether there is a PING which has been sent but not been acknowledged yet.
+     *
+     * @return {@code true} if outstanding
+     */
+    boolean isPingOutstanding() {
+        final Promise<Long> promise = pingPromise;
+        return promise != null && !promise.isDone();
+    }
+
+    void onPingAck(long data) {
+        final Promise<Long> promise = pingPromise;
+        if (promise != null && data == pingPayload) {
+            promise.trySuccess(System.nanoTime() - data);
+        }
+    }
+
+    /**
+     * Resets the stream by sending a RST_STREAM frame with given {@code errorCode}, eg: the response of the stream is
+     * no longer interested in.
+     *
+     * @param streamId  stream id
+     * @param errorCode error code
+     * @return future
+     */
+    ChannelFuture writeRstStream(int streamId, long errorCode) {
+        final ChannelPromise promise = ctx.newPromise();
+        final Runnable runnable = () -> {
+            resetStream(ctx, streamId, errorCode, promise);
+            ctx.flush();
+        };
+
+        if (inEventLoop()) {
+            runnable.run();
+        } else {
+            ctx.channel().eventLoop().execute(runnable);
+        }
+
+        return promise;
+    }
+
     ChannelFuture writeGoAwayOnExhaustion(ChannelPromise promise) {
         final ChannelPromise promise0 = ctx.newPromise();
 
@@ -218,6 +218,13 @@ class Http2FrameHandler extends Http2EventAdapter {
         onHeaders(promisedStreamId, promisedStream, headers, false, false);
     }
 
+    @Override
+    public void onPingAckRead(ChannelHandlerContext ctx, long data) {
+        if (ctx.handler() instanceof Http2ConnectionHandler) {
+            ((Http2ConnectionHandler) ctx.handler()).onPingAck(data);
+        }
+    }
+
     @Override
     public void onStreamRemoved(Http2Stream stream) {
         try {
@@ -0,0 +1,643 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.commons.Checks;
+import esa.httpclient.core.util.LoggerUtils;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.pool.ChannelPoolHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+import io.netty.util.internal.PlatformDependent;
+
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed size {@link io.netty.channel.pool.ChannelPool} which has the same semantics as
+ * {@link io.netty.channel.pool.FixedChannelPool} with {@code AcquireTimeoutAction.FAIL}, but all the acquisitions
+ * and releases are completed in the caller thread instead of being submitted to a single executor.
+ * <p>
+ * The idle {@link Channel}s are kept in a lock-free stack, so that the most recently used {@link Channel} is
+ * preferred, and the count of acquired {@link Channel}s is limited by an atomic permit counter. Acquirers which
+ * fail to obtain a permit are offered to a bounded multi-producer-single-consumer queue, which is drained by
+ * whoever releases a permit.
+ * <p>
+ * The pending acquisitions are served by priority and then by the earliest deadline(see
+ * {@link PrioritizedChannelPool}): the single consumer moves them from the queue to a heap which is only accessed
+ * by itself, and the ones whose deadline has passed are failed instead of being served.
+ * <p>
+ * If {@code minIdle} is positive, idle {@link Channel}s will be opened in the background until there are
+ * {@code minIdle} idle ones(as long as the {@code maxConnections} is not reached), and be replenished whenever an
+ * idle {@link Channel} is acquired or closed.
+ * <p>
+ * The {@link Channel}s which have exceeded their {@link ConnectionLifetime} will be closed once they are released
+ * rather than be reused.
+ * <p>
+ * The {@code maxConnections} can be changed in place by {@link #resize(int)}, the surplus {@link Channel}s will be
+ * closed once they are idle.
+ * <p>
+ * The {@link Channel}s which are inactive or stale are never reused, and the idle ones can be evicted in the
+ * background through {@link #checkHealth()}.
+ */
+final class LockFreeChannelPool implements io.netty.channel.pool.ChannelPool, ResizableChannelPool,
+        HealthCheckedChannelPool, DrainableChannelPool, PrioritizedChannelPool, ManagedChannelPool {
+
+    private static final AttributeKey<LockFreeChannelPool> POOL_KEY =
+            AttributeKey.valueOf("esa.httpclient.lockFreeChannelPool");
+
+    private static final IllegalStateException POOL_CLOSED =
+            new IllegalStateException("LockFreeChannelPool was closed");
+
+    private static final IllegalStateException FULL_PENDING_ACQUIRES =
+            new IllegalStateException("Too many outstanding acquire operations");
+
+    private final Bootstrap bootstrap;
+    private final ChannelPoolHandler handler;
+    private final ChannelInitializer initializer;
+    private final long acquireTimeoutNanos;
+    private volatile int maxConnections;
+    private final int maxPendingAcquires;
+    private final int minIdle;
+    private final ConnectionLifetime lifetime;
+    private final ChannelPoolStats stats;
+
+    private final Deque<Channel> idleChannels = new ConcurrentLinkedDeque<>();
+    private final Queue<PendingAcquire> pendingAcquires = PlatformDependent.newMpscQueue();
+
+    /**
+     * The pending acquisitions ordered by priority, which is only accessed by the consumer of
+     * {@link #pendingAcquires}.
+     */
+    private final Queue<PendingAcquire> orderedAcquires = new PriorityQueue<>();
+    private final AtomicLong acquireSequence = new AtomicLong();
+
+    /**
+     * Count of permits which have been obtained, including the connecting ones.
+     */
+    private final AtomicInteger acquiredCount = new AtomicInteger();
+    private final AtomicInteger pendingAcquireCount = new AtomicInteger();
+    private final AtomicInteger idleCount = new AtomicInteger();
+
+    /**
+     * Count of connections which are being opened to warm up this pool.
+     */
+    private final AtomicInteger warmingCount = new AtomicInteger();
+    private final Set<Future<?>> warmingFutures = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Work-in-progress counter which guarantees that {@link #pendingAcquires} has a single consumer.
+     */
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean closed;
+
+    /**
+     * Completed once the pool has been closed and all the permits have been released.
+     */
+    private final Promise<Void> drained = GlobalEventExecutor.INSTANCE.newPromise();
+
+    LockFreeChannelPool(Bootstrap bootstrap,
+                        ChannelPoolHandler handler,
+                        ChannelInitializer initializer,
+                        long acquireTimeoutMillis,
+                        int maxConnections,
+                        int maxPendingAcquires) {
+        this(bootstrap, handler, initializer, acquireTimeoutMillis, maxConnections, maxPendingAcquires, 0,
+                ConnectionLifetime.UNLIMITED, new ChannelPoolStats());
+    }
+
+    LockFreeChannelPool(Bootstrap bootstrap,
+                        ChannelPoolHandler handler,
+                        ChannelInitializer initializer,
+                        long acquireTimeoutMillis,
+                        int maxConnections,
+                        int maxPendingAcquires,
+                        int minIdle,
+                        ConnectionLifetime lifetime,
+                        ChannelPoolStats stats) {
+        Checks.checkNotNull(bootstrap, "Bootstrap must not be null");
+        Checks.checkNotNull(handler, "ChannelPoolHandler must not be null");
+        Checks.checkArg(acquireTimeoutMillis >= 1, "acquireTimeoutMillis is " + acquireTimeoutMillis
+                + " (expected >= 1)");
+        Checks.checkArg(maxConnections >= 1, "maxConnections is " + maxConnections + " (expected >= 1)");
+        Checks.checkArg(maxPendingAcquires >= 1, "maxPendingAcquires is " + maxPendingAcquires
+                + " (expected >= 1)");
+        Checks.checkArg(minIdle >= 0, "minIdle is " + minIdle + " (expected >= 0)");
+        Checks.checkNotNull(lifetime, "ConnectionLifetime must not be null");
+        Checks.checkNotNull(stats, "ChannelPoolStats must not be null");
+        this.bootstrap = bootstrap.clone();
+        this.bootstrap.handler(new io.netty.channel.ChannelInitializer<Channel>() {
+            @Override
+            protected void initChannel(Channel ch) throws Exception {
+                handler.channelCreated(ch);
+                lifetime.onCreated(ch);
+                stats.onCreated(ch);
+                if (LockFreeChannelPool.this.minIdle > 0) {
+                    ch.closeFuture().addListener(f -> onClosed(ch));
+                }
+            }
+        });
+        this.handler = handler;
+        this.initializer = initializer;
+        this.acquireTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(acquireTimeoutMillis);
+        this.maxConnections = maxConnections;
+        this.maxPendingAcquires = maxPendingAcquires;
+        this.lifetime = lifetime;
+        this.stats = stats;
+        this.minIdle = Math.min(minIdle, maxConnections);
+        if (this.minIdle > 0) {
+            warmUp(this.minIdle);
+        }
+    }
+
+    @Override
+    public Future<Channel> acquire() {
+        return acquire(bootstrap.config().group().next().newPromise());
+    }
+
+    @Override
+    public Future<Channel> acquire(Promise<Channel> promise) {
+        return acquire(promise, 0, 0L);
+    }
+
+    @Override
+    public Future<Channel> acquire(int priority, long deadline) {
+        return acquire(bootstrap.config().group().next().newPromise(), priority, deadline);
+    }
+
+    private Future<Channel> acquire(Promise<Channel> promise, int priority, long deadline) {
+        Checks.checkNotNull(promise, "Promise must not be null");
+        final long startNanos = System.nanoTime();
+        acquire0(promise, priority, deadline);
+        stats.onAcquire(promise, startNanos);
+        return promise;
+    }
+
+    @Override
+    public Future<Void> release(Channel channel) {
+        return release(channel, channel.eventLoop().newPromise());
+    }
+
+    @Override
+    public Future<Void> release(Channel channel, Promise<Void> promise) {
+        Checks.checkNotNull(channel, "Channel must not be null");
+        Checks.checkNotNull(promise, "Promise must not be null");
+        if (!channel.attr(POOL_KEY).compareAndSet(this, null)) {
+            channel.close();
+            promise.tryFailure(new IllegalArgumentException("Channel " + channel
+                    + " was not acquired from this LockFreeChannelPool"));
+            return promise;
+        }
+
+        try {
+            handler.channelReleased(channel);
+        } catch (Throwable ex) {
+            LoggerUtils.logger().warn("Unexpected exception occurred while releasing connection: {}",
+                    channel, ex);
+        }
+
+        if (closed || !ConnectionHealthChecker.isHealthy(channel) || lifetime.isExpired(channel)
+                || acquiredCount.get() > maxConnections) {
+            // Also close the surplus channels after shrinking.
+            channel.close();
+        } else {
+            offerIdle(channel);
+        }
+
+        releasePermit();
+        promise.trySuccess(null);
+        return promise;
+    }
+
+    @Override
+    public void close() {
+        closeAsync();
+    }
+
+    @Override
+    public Future<Void> closeAsync() {
+        closed = true;
+
+        // Fail all the pending acquisitions.
+        drainPendingAcquires();
+
+        Channel channel;
+        while ((channel = pollIdle()) != null) {
+            channel.close();
+        }
+        completeDrainIfNecessary();
+
+        return GlobalEventExecutor.INSTANCE.newSucceededFuture(null);
+    }
+
+    /**
+     * Closes this pool, and the acquired {@link Channel}s will be closed once they are released.
+     *
+     * @return future which will be completed once all the acquired {@link Channel}s are released
+     */
+    @Override
+    public Future<Void> drain() {
+        closeAsync();
+        return drained;
+    }
+
+    /**
+     * Opens new {@link Channel}s in the background until there are {@code connections} idle ones, the count of
+     * opened {@link Channel}s is still limited by {@link #maxConnections}.
+     *
+     * @param connections expected count of idle connections
+     * @return future which will be completed once all the new {@link Channel}s are connected
+     */
+    @Override
+    public Future<Void> warmUp(int connections) {
+        final List<Future<?>> futures = new ArrayList<>(warmingFutures);
+        for (;;) {
+            if (closed) {
+                break;
+            }
+            final int warming = warmingCount.get();
+            if (idleCount.get() + warming >= connections) {
+                break;
+            }
+            if (!warmingCount.compareAndSet(warming, warming + 1)) {
+                continue;
+            }
+            if (!tryAcquirePermit()) {
+                warmingCount.decrementAndGet();
+                break;
+            }
+            // Idle channels don't hold permits, make sure that the total count of channels doesn't
+            // exceed maxConnections.
+            if (idleCount.get() + acquiredCount.get() > maxConnections) {
+                warmingCount.decrementAndGet();
+                releasePermit();
+                break;
+            }
+            futures.add(connectIdle());
+        }
+
+        return ChannelPools.whenAll(futures);
+    }
+
+    @Override
+    public void resize(int maxConnections) {
+        Checks.checkArg(maxConnections >= 0, "maxConnections is " + maxConnections + " (expected >= 0)");
+        final int previous = this.maxConnections;
+        this.maxConnections = maxConnections;
+        if (maxConnections > previous) {
+            // New permits are available for the pending acquisitions.
+            drainPendingAcquires();
+            return;
+        }
+
+        Channel channel;
+        while (idleCount.get() + acquiredCount.get() > maxConnections && (channel = pollIdle()) != null) {
+            channel.close();
+        }
+    }
+
+    @Override
+    public void checkHealth() {
+        for (Channel channel : idleChannels) {
+            if (closed) {
+                return;
+            }
+            if (ConnectionHealthChecker.isHealthy(channel) && !lifetime.isExpired(channel)) {
+                continue;
+            }
+            // The channel may have been acquired concurrently.
+            if (removeIdle(channel)) {
+                if (!lifetime.isExpired(channel)) {
+                    LoggerUtils.logger().debug("Evict unhealthy connection: {}", channel);
+                    stats.onUnhealthyEvicted();
+                }
+                channel.close();
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    @Override
+    public int maxPendingAcquires() {
+        return maxPendingAcquires;
+    }
+
+    @Override
+    public int acquiredCount() {
+        return acquiredCount.get();
+    }
+
+    @Override
+    public int pendingAcquireCount() {
+        return pendingAcquireCount.get();
+    }
+
+    @Override
+    public int idleCount() {
+        return idleCount.get();
+    }
+
+    @Override
+    public ChannelPoolStats stats() {
+        return stats;
+    }
+
+    private void acquire0(Promise<Channel> promise, int priority, long deadline) {
+        if (closed) {
+            promise.tryFailure(POOL_CLOSED);
+            return;
+        }
+
+        if (PendingAcquire.isExpired(deadline)) {
+            promise.tryFailure(PendingAcquire.deadlineExceeded());
+            return;
+        }
+
+        // Take the fast path only if nobody is waiting, otherwise the waiters would be starved by the newcomers
+        // and the permits are handed out in order while draining.
+        if (pendingAcquireCount.get() == 0 && tryAcquirePermit()) {
+            acquireChannel(promise);
+            return;
+        }
+
+        if (pendingAcquireCount.incrementAndGet() > maxPendingAcquires) {
+            pendingAcquireCount.decrementAndGet();
+            promise.tryFailure(FULL_PENDING_ACQUIRES);
+            return;
+        }
+
+        final PendingAcquire pending = new PendingAcquire(promise, priority, deadline,
+                acquireSequence.getAndIncrement());
+        pending.timeout = bootstrap.config().group().next().schedule(() -> onTimeout(pending),
+                pending.timeoutNanos(acquireTimeoutNanos), TimeUnit.NANOSECONDS);
+        promise.addListener(f -> {
+            if (f.isCancelled()) {
+                onCancelled(pending);
+            }
+        });
+        pendingAcquires.offer(pending);
+
+        // A permit may have been released before the pending acquisition is offered.
+        drainPendingAcquires();
+    }
+
+    private boolean tryAcquirePermit() {
+        for (;;) {
+            final int acquired = acquiredCount.get();
+            if (acquired >= maxConnections) {
+                return false;
+            }
+            if (acquiredCount.compareAndSet(acquired, acquired + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void releasePermit() {
+        acquiredCount.decrementAndGet();
+        drainPendingAcquires();
+        completeDrainIfNecessary();
+    }
+
+    private void completeDrainIfNecessary() {
+        if (closed && acquiredCount.get() == 0) {
+            drained.trySuccess(null);
+        }
+    }
+
+    /**
+     * Obtains a {@link Channel} for the given promise, which must be called after obtaining a permit.
+     *
+     * @param promise promise
+     */
+    private void acquireChannel(Promise<Channel> promise) {
+        Channel channel;
+        while ((channel = pollIdle()) != null) {
+            if (ConnectionHealthChecker.isHealthy(channel) && !lifetime.isExpired(channel)) {
+                if (minIdle > 0 && idleCount.get() < minIdle) {
+                    warmUp(minIdle);
+                }
+                onAcquired(channel, promise);
+                return;
+            }
+            channel.close();
+        }
+
+        final Future<Channel> future;
+        try {
+            future = connect();
+        } catch (Throwable ex) {
+            onConnectFailed(promise, ex);
+            return;
+        }
+
+        if (future.isDone()) {
+            onConnected(future, promise);
+        } else {
+            future.addListener(f -> onConnected(future, promise));
+        }
+    }
+
+    private Future<Channel> connect() {
+        final long startNanos = System.nanoTime();
+        final Future<Channel> future = HappyEyeballsConnector.connect(bootstrap, initializer);
+        stats.onConnect(future, startNanos);
+        return future;
+    }
+
+    /**
+     * Opens a new {@link Channel} and offers it to the idle ones, which must be called after obtaining a permit.
+     *
+     * @return future
+     */
+    private Future<?> connectIdle() {
+        final Future<Channel> future;
+        try {
+            future = connect();
+        } catch (Throwable ex) {
+            warmingCount.decrementAndGet();
+            releasePermit();
+            return GlobalEventExecutor.INSTANCE.newFailedFuture(ex);
+        }
+
+        warmingFutures.add(future);
+        future.addListener(f -> {
+            if (future.isSuccess()) {
+                offerIdle(future.getNow());
+            } else {
+                LoggerUtils.logger().warn("Failed to warm up connection pool: {}",
+                        bootstrap.config().remoteAddress(), future.cause());
+            }
+            warmingFutures.remove(future);
+            warmingCount.decrementAndGet();
+            releasePermit();
+        });
+        return future;
+    }
+
+    private void offerIdle(Channel channel) {
+        idleChannels.offerFirst(channel);
+        idleCount.incrementAndGet();
+
+        // The pool may have been closed concurrently, make sure that the channel won't leak.
+        if (closed && removeIdle(channel)) {
+            channel.close();
+        }
+    }
+
+    private Channel pollIdle() {
+        final Channel channel = idleChannels.pollFirst();
+        if (channel != null) {
+            idleCount.decrementAndGet();
+        }
+        return channel;
+    }
+
+    private boolean removeIdle(Channel channel) {
+        if (idleChannels.remove(channel)) {
+            idleCount.decrementAndGet();
+            return true;
+        }
+        return false;
+    }
+
+    private void onClosed(Channel channel) {
+        removeIdle(channel);
+        if (!closed && idleCount.get() < minIdle) {
+            warmUp(minIdle);
+        }
+    }
+
+    private void onConnected(Future<Channel> future, Promise<Channel> promise) {
+        if (future.isSuccess()) {
+            onAcquired(future.getNow(), promise);
+        } else {
+            onConnectFailed(promise, future.cause());
+        }
+    }
+
+    private void onConnectFailed(Promise<Channel> promise, Throwable cause) {
+        releasePermit();
+        promise.tryFailure(cause);
+    }
+
+    private void onAcquired(Channel channel, Promise<Channel> promise) {
+        channel.attr(POOL_KEY).set(this);
+        lifetime.onAcquired(channel);
+        try {
+            handler.channelAcquired(channel);
+        } catch (Throwable ex) {
+            LoggerUtils.logger().warn("Unexpected exception occurred while acquiring connection: {}",
+                    channel, ex);
+        }
+
+        if (closed || !promise.trySuccess(channel)) {
+            // The pool has been closed or the promise has been cancelled, give back the channel.
+            release(channel);
+            if (closed) {
+                promise.tryFailure(POOL_CLOSED);
+            }
+        }
+    }
+
+    private void onTimeout(PendingAcquire pending) {
+        if (pending.tryComplete()) {
+            pendingAcquireCount.decrementAndGet();
+            pending.promise.tryFailure(pending.timeoutCause());
+        }
+    }
+
+    private void onCancelled(PendingAcquire pending) {
+        // The cancelled one will be skipped while draining.
+        if (pending.tryComplete()) {
+            pendingAcquireCount.decrementAndGet();
+            pending.timeout.cancel(false);
+        }
+    }
+
+    private void drainPendingAcquires() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+
+        int missed = 1;
+        for (;;) {
+            PendingAcquire pending;
+            while ((pending = pendingAcquires.poll()) != null) {
+                orderedAcquires.offer(pending);
+            }
+
+            while ((pending = orderedAcquires.peek()) != null) {
+                if (pending.isDone()) {
+                    // Timed out or cancelled already
+                    orderedAcquires.poll();
+                    continue;
+                }
+
+                if (closed || pending.isExpired()) {
+                    orderedAcquires.poll();
+                    if (pending.tryComplete()) {
+                        pendingAcquireCount.decrementAndGet();
+                        pending.timeout.cancel(false);
+                        pending.promise.tryFailure(closed ? POOL_CLOSED : PendingAcquire.deadlineExceeded());
+                    }
+                    continue;
+                }
+
+                if (!tryAcquirePermit()) {
+                    break;
+                }
+
+                orderedAcquires.poll();
+                if (pending.tryComplete()) {
+                    pendingAcquireCount.decrementAndGet();
+                    pending.timeout.cancel(false);
+                    acquireChannel(pending.promise);
+                } else {
+                    acquiredCount.decrementAndGet();
+                }
+            }
+
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import io.netty.util.concurrent.Future;
+
+/**
+ * A {@link io.netty.channel.pool.ChannelPool} which can be closed asynchronously and warmed up in advance, so that
+ * the callers can wait for the closing or the warming up without knowing the concrete type of the pool.
+ */
+interface ManagedChannelPool {
+
+    /**
+     * Closes this pool asynchronously.
+     *
+     * @return future which will be completed once this pool has been closed
+     */
+    Future<Void> closeAsync();
+
+    /**
+     * Opens new connections in the background until there are {@code connections} ones, the count of connections
+     * is still limited by the max connections of this pool.
+     *
+     * @param connections expected count of connections
+     * @return future which will be completed once all the new connections are established
+     */
+    Future<Void> warmUp(int connections);
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+/**
+ * A {@link io.netty.channel.pool.ChannelPool} which maintains its own statistics, so that there is no need to
+ * obtain them by reflection.
+ */
+interface MeteredChannelPool {
+
+    /**
+     * Obtains max count of connections.
+     *
+     * @return max connections
+     */
+    int maxConnections();
+
+    /**
+     * Obtains max count of pending acquisitions.
+     *
+     * @return max pending acquires
+     */
+    int maxPendingAcquires();
+
+    /**
+     * Obtains the count of connections(or stream slots of HTTP/2) which have been acquired.
+     *
+     * @return acquired count
+     */
+    int acquiredCount();
+
+    /**
+     * Obtains the count of pending acquisitions.
+     *
+     * @return pending acquire count
+     */
+    int pendingAcquireCount();
+
+    /**
+     * Obtains the count of idle connections(or connections which have no acquired stream slot of HTTP/2).
+     *
+     * @return idle count
+     */
+    int idleCount();
+
+    /**
+     * Obtains the cumulative statistics.
+     *
+     * @return stats
+     */
+    ChannelPoolStats stats();
+}
@@ -25,6 +25,16 @@ public class NettyContext extends Context {
     private volatile Runnable continueCallback;
     protected volatile CompletableFuture<SegmentWriter> writer;
 
+    /**
+     * Obtains a copy of current context, the state of writing is not copied.
+     *
+     * @return copied context
+     */
+    @Override
+    public NettyContext copy() {
+        return copyTo(new NettyContext());
+    }
+
     void set100ContinueCallback(Runnable callback) {
         this.continueCallback = callback;
     }
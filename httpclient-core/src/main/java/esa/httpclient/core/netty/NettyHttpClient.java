@@ -27,6 +27,7 @@ import esa.commons.reflect.BeanUtils;
 import esa.commons.spi.SpiLoader;
 import esa.httpclient.core.CompositeRequest;
 import esa.httpclient.core.Context;
+import esa.httpclient.core.ContextNames;
 import esa.httpclient.core.Handle;
 import esa.httpclient.core.Handler;
 import esa.httpclient.core.HttpClient;
@@ -34,21 +35,31 @@ import esa.httpclient.core.HttpClientBuilder;
 import esa.httpclient.core.HttpRequest;
 import esa.httpclient.core.HttpRequestFacade;
 import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.HttpUri;
 import esa.httpclient.core.IdentityFactory;
 import esa.httpclient.core.Listener;
 import esa.httpclient.core.ListenerProxy;
 import esa.httpclient.core.ModifiableClient;
+import esa.httpclient.core.Scheme;
 import esa.httpclient.core.config.CallbackThreadPoolOptions;
 import esa.httpclient.core.config.ChannelPoolOptions;
 import esa.httpclient.core.config.Decompression;
+import esa.httpclient.core.config.RetryOptions;
 import esa.httpclient.core.config.SslOptions;
+import esa.httpclient.core.exec.CircuitBreaker;
+import esa.httpclient.core.exec.ConcurrencyLimiter;
+import esa.httpclient.core.exec.HttpCache;
 import esa.httpclient.core.exec.RequestExecutor;
 import esa.httpclient.core.exec.RequestExecutorImpl;
 import esa.httpclient.core.metrics.CallbackExecutorMetric;
+import esa.httpclient.core.metrics.CircuitBreakerMetric;
+import esa.httpclient.core.metrics.ConcurrencyLimitMetric;
 import esa.httpclient.core.metrics.ConnectionPoolMetric;
 import esa.httpclient.core.metrics.ConnectionPoolMetricProvider;
+import esa.httpclient.core.metrics.HttpCacheMetric;
 import esa.httpclient.core.metrics.IoThreadGroupMetric;
 import esa.httpclient.core.metrics.IoThreadMetric;
+import esa.httpclient.core.metrics.RetryBudgetMetric;
 import esa.httpclient.core.spi.SslEngineFactory;
 import esa.httpclient.core.util.Futures;
 import esa.httpclient.core.util.LoggerUtils;
@@ -67,10 +78,13 @@ import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
 import io.netty.util.concurrent.EventExecutor;
 import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.internal.ThreadExecutorMap;
 
 import javax.net.ssl.SSLException;
 import java.net.SocketAddress;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
@@ -78,8 +92,6 @@ import java.util.StringJoiner;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
@@ -105,21 +117,10 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
     private static final IdentityFactory.Identified<EventLoopGroup> SHARED_IO_THREADS = IdentityFactoryProvider
             .ioThreadsIdentityFactory().generate(sharedIoThreads());
 
-    private static final ScheduledExecutorService CLOSE_CONNECTION_POOL_SCHEDULER =
-            new ScheduledThreadPoolExecutor(1,
-                    new ThreadFactoryImpl("HttpClient-CloseConnectionPool-Scheduler", true),
-                    (r, executor) -> LoggerUtils.logger().error(
-                            "HttpClient-CloseConnectionPool-Scheduler-Pool has full, a task has been rejected"));
-
     private static final String IOTHREADS_KYE = "esa.httpclient.ioThreads";
     private static final int IOTHREADS = SystemPropertyUtil.getInt(IOTHREADS_KYE,
             Math.min(Platforms.cpuNum() << 1, 16));
 
-    private static final String CLOSE_CONNECTION_POOL_DELAY_SECONDS_KEY =
-            "esa.httpclient.closeConnectionPoolDelaySeconds";
-    private static final long CLOSE_CHANNEL_POOL_DELAY_SECONDS = SystemPropertyUtil
-            .getLong(CLOSE_CONNECTION_POOL_DELAY_SECONDS_KEY, 120L);
-
     private static final String IOTHREADS_GRACEFULLY_SHUTDOWN_QUIET_PERIOD_KEY =
             "esa.httpclient.ioThreadsGracefullyShutdownQuietPeriod";
     private static final long IOTHREADS_GRACEFULLY_SHUTDOWN_QUIET_PERIOD =
@@ -144,6 +145,7 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
 
     private final SslEngineFactory sslEngineFactory;
     private final AtomicBoolean closed = new AtomicBoolean(false);
+    private volatile LimiterListener limiterListener;
 
     public NettyHttpClient(HttpClientBuilder builder, ChannelPools channelPools) {
         this(builder, channelPools, SHARED_IO_THREADS, SHARED_CALLBACK_EXECUTOR);
@@ -240,23 +242,76 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
                                                    Handler handler) {
         Checks.checkNotNull(request, "HttpRequest must not be null");
         Checks.checkNotNull(ctx, "Context must not be null");
-        final Listener listener = ListenerProxy.DEFAULT;
+        final Listener listener = listenerOf(builder.concurrencyLimiter());
 
         addAcceptEncodingIfAbsent(request);
 
-        CompletableFuture<HttpResponse> response = executor.execute(request, ctx, listener, handle, handler);
+        ctx.setAttr(ContextNames.IO_THREADS, ioThreads.origin());
+        final CompletableFuture<HttpResponse> execution = executor.execute(request, ctx, listener, handle, handler);
+        CompletableFuture<HttpResponse> response = execution;
         if (request.buffer() != null) {
-            response = response.whenComplete((rsp, th) -> Utils.tryRelease(request.buffer().getByteBuf()));
+            // Note that: the buffer is released by the execution itself, the action of a derived future
+            // will be skipped once the derived future has been cancelled.
+            final CompletableFuture<HttpResponse> released = new CompletableFuture<>();
+            execution.whenComplete((rsp, th) -> {
+                Utils.tryRelease(request.buffer().getByteBuf());
+                if (th == null) {
+                    released.complete(rsp);
+                } else {
+                    released.completeExceptionally(th);
+                }
+            });
+            response = released;
         }
 
-        if (callbackExecutor.origin() == null) {
-            return response;
-        } else {
+        if (callbackExecutor.origin() != null && !(builder.isStripedConnectionPool() && inIoThreads())) {
             // Note that: only if callback executor exists and the response
             // of original execution completes normally, we switch the original
-            // response to continue execute in callback executor.
-            return response.thenComposeAsync(Futures::completed, callbackExecutor.origin());
+            // response to continue execute in callback executor. Besides, if the request is executed
+            // in current I/O thread entirely, switching to callback executor will cause unnecessary
+            // thread handoffs.
+            response = response.thenComposeAsync(Futures::completed, callbackExecutor.origin());
+        }
+
+        // Cancelling the returned response will cancel the request on the wire.
+        return Futures.propagateCancellation(execution, response);
+    }
+
+    @Override
+    public CompletableFuture<Void> warmUp(String... uris) {
+        Checks.checkNotNull(uris, "Uris must not be null");
+        if (!builder.isKeepAlive()) {
+            return Futures.completed();
+        }
+
+        final NettyTransceiver transceiver = new NettyTransceiver(ioThreads.origin(),
+                channelPools,
+                builder,
+                sslEngineFactory);
+        final List<io.netty.util.concurrent.Future<?>> futures = new ArrayList<>(uris.length);
+        try {
+            for (String uri : uris) {
+                final HttpUri httpUri = new HttpUri(uri);
+                final boolean ssl = Scheme.HTTPS == Utils.toScheme(httpUri.netURI());
+                final ChannelPool channelPool = transceiver.getChannelPool(ssl,
+                        true,
+                        ServerSelector.addressOf(httpUri));
+                futures.add(ChannelPools.warmUp(channelPool.underlying,
+                        Math.max(1, channelPool.options.minIdle())));
+            }
+        } catch (Throwable ex) {
+            return Futures.completed(ex);
         }
+
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+        ChannelPools.whenAll(futures).addListener(f -> {
+            if (f.isSuccess()) {
+                result.complete(null);
+            } else {
+                result.completeExceptionally(f.cause());
+            }
+        });
+        return result;
     }
 
     @Override
@@ -281,6 +336,33 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
         return new CallbackExecutorMetricImpl(callbackExecutor.origin(), callbackExecutor.id());
     }
 
+    @Override
+    public Map<String, RetryBudgetMetric> retryBudgetMetric() {
+        final RetryOptions retryOptions = builder.retryOptions();
+        if (retryOptions == null || retryOptions.budget() == null) {
+            return Collections.emptyMap();
+        }
+        return retryOptions.budget().metrics();
+    }
+
+    @Override
+    public Map<String, CircuitBreakerMetric> circuitBreakerMetric() {
+        final CircuitBreaker circuitBreaker = builder.circuitBreaker();
+        return circuitBreaker == null ? Collections.emptyMap() : circuitBreaker.metrics();
+    }
+
+    @Override
+    public Map<String, ConcurrencyLimitMetric> concurrencyLimitMetric() {
+        final ConcurrencyLimiter limiter = builder.concurrencyLimiter();
+        return limiter == null ? Collections.emptyMap() : limiter.metrics();
+    }
+
+    @Override
+    public HttpCacheMetric httpCacheMetric() {
+        final HttpCache httpCache = builder.httpCache();
+        return httpCache == null ? null : httpCache.metric();
+    }
+
     @Override
     public void close() {
         if (closed.compareAndSet(false, true)) {
@@ -291,12 +373,33 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
 
             sslEngineFactory.onDestroy();
 
+            // Release the bodies of stored responses.
+            if (builder.httpCache() != null) {
+                builder.httpCache().clear();
+            }
+
             if (ACTIVE_CLIENTS.intValue() == 0) {
                 closeGlobalGracefully();
             }
         }
     }
 
+    /**
+     * Obtains the {@link Listener} of requests, which includes the one of given {@link ConcurrencyLimiter} to
+     * measure the RTT.
+     */
+    Listener listenerOf(ConcurrencyLimiter limiter) {
+        if (limiter == null) {
+            return ListenerProxy.DEFAULT;
+        }
+        LimiterListener current = limiterListener;
+        if (current == null || current.limiter != limiter) {
+            current = new LimiterListener(limiter);
+            limiterListener = current;
+        }
+        return current.listener;
+    }
+
     private HttpRequestFacade newRequestFacade(HttpMethod method, String uri) {
         Checks.checkNotNull("HttpMethod must not be null");
         Checks.checkNotEmptyArg(uri, "HttpRequest's uri must not be empty");
@@ -306,24 +409,6 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
     }
 
     private static void closeGlobalGracefully() {
-        // Shutdown Closing-ChannelPool-Scheduler
-        try {
-            CLOSE_CONNECTION_POOL_SCHEDULER.shutdown();
-            CLOSE_CONNECTION_POOL_SCHEDULER.awaitTermination(5L, TimeUnit.SECONDS);
-            List<Runnable> unfinishedTasks = CLOSE_CONNECTION_POOL_SCHEDULER.shutdownNow();
-            String msg = "Closed NettyHttpClient-CloseConnectionPool-Scheduler-ThreadPool" +
-                    " successfully, unfinished tasks: " + unfinishedTasks.size();
-
-            if (unfinishedTasks.isEmpty()) {
-                LoggerUtils.logger().info(msg);
-            } else {
-                LoggerUtils.logger().error(msg);
-            }
-        } catch (Throwable ex) {
-            LoggerUtils.logger().error("Error while closing NettyHttpClient-CloseConnectionPool-" +
-                    "Scheduler-ThreadPool", ex);
-        }
-
         // Shutdown IO-Threads
         if (SHARED_IO_THREADS.origin() != null) {
             try {
@@ -357,9 +442,6 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
                 LoggerUtils.logger().error("Error while closing Callback-Executor-ThreadPool", ex);
             }
         }
-
-        // Shutdown ReadTimeout-Timer
-        NettyTransceiver.closeTimer();
     }
 
     @Override
@@ -374,7 +456,12 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
         if (options.connectTimeout() == builder.connectTimeout()
                 && options.readTimeout() == builder.readTimeout()
                 && options.poolSize() == builder.connectionPoolSize()
-                && options.waitingQueueLength() == builder.connectionPoolWaitingQueueLength()) {
+                && options.waitingQueueLength() == builder.connectionPoolWaitingQueueLength()
+                && options.minIdle() == builder.connectionPoolMinIdle()
+                && options.minPoolSize() == builder.connectionPoolMinSize()
+                && options.maxLifetime() == builder.connectionMaxLifetime()
+                && options.maxRequestsPerConnection() == builder.maxRequestsPerConnection()
+                && options.healthCheckInterval() == builder.connectionHealthCheckInterval()) {
             return this;
         }
 
@@ -382,7 +469,12 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
                 .connectTimeout(options.connectTimeout())
                 .readTimeout(options.readTimeout())
                 .connectionPoolSize(options.poolSize())
-                .connectionPoolWaitingQueueLength(options.waitingQueueLength());
+                .connectionPoolWaitingQueueLength(options.waitingQueueLength())
+                .connectionPoolMinIdle(options.minIdle())
+                .connectionPoolMinSize(options.minPoolSize())
+                .connectionMaxLifetime(options.maxLifetime())
+                .maxRequestsPerConnection(options.maxRequestsPerConnection())
+                .connectionHealthCheckInterval(options.healthCheckInterval());
 
         if (!applyToExisted) {
             return this;
@@ -424,16 +516,15 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
         }
 
         channelPools.put(address,
-                ChannelPools.CHANNEL_POOL_FACTORY.create(old.ssl,
+                channelPools.factory().create(old.ssl,
                         true,
                         address,
                         ioThreads.origin(),
                         builder,
                         options,
                         old.sslHandler));
-        CLOSE_CONNECTION_POOL_SCHEDULER.schedule(() -> ChannelPools.close(address, old, true),
-                CLOSE_CHANNEL_POOL_DELAY_SECONDS,
-                TimeUnit.SECONDS);
+        // The replaced pool is drained by the removal listener of channelPools, that is, its idle connections are
+        // closed immediately and the others will be closed as soon as their in-flight requests finish.
     }
 
     /**
@@ -479,6 +570,11 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
                 .build();
     }
 
+    private boolean inIoThreads() {
+        final EventExecutor current = ThreadExecutorMap.currentExecutor();
+        return current != null && current.parent() == ioThreads.origin();
+    }
+
     private static EventLoopGroup sharedIoThreads() {
         if (PREFER_NATIVE && Epoll.isAvailable()) {
             return new EpollEventLoopGroup(IOTHREADS,
@@ -742,4 +838,15 @@ public class NettyHttpClient implements HttpClient, ModifiableClient<NettyHttpCl
         }
     }
 
+
+    private static final class LimiterListener {
+
+        private final ConcurrencyLimiter limiter;
+        private final Listener listener;
+
+        private LimiterListener(ConcurrencyLimiter limiter) {
+            this.limiter = limiter;
+            this.listener = new ListenerProxy(Arrays.asList(ListenerProxy.DEFAULT, limiter.listener()));
+        }
+    }
 }
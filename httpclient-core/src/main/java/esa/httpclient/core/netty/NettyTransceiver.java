@@ -17,7 +17,6 @@ package esa.httpclient.core.netty;
 
 import esa.commons.Checks;
 import esa.commons.StringUtils;
-import esa.commons.concurrent.ThreadFactories;
 import esa.commons.http.HttpHeaderNames;
 import esa.commons.http.HttpHeaderValues;
 import esa.commons.netty.http.Http1HeadersImpl;
@@ -29,6 +28,7 @@ import esa.httpclient.core.Listener;
 import esa.httpclient.core.Scheme;
 import esa.httpclient.core.SegmentRequest;
 import esa.httpclient.core.config.SslOptions;
+import esa.httpclient.core.exception.DeadlineExceededException;
 import esa.httpclient.core.exec.HttpTransceiver;
 import esa.httpclient.core.filter.ResponseFilter;
 import esa.httpclient.core.spi.SslEngineFactory;
@@ -43,11 +43,8 @@ import io.netty.channel.pool.ChannelPool;
 import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.ssl.SslHandler;
-import io.netty.util.HashedWheelTimer;
-import io.netty.util.Timeout;
-import io.netty.util.Timer;
 import io.netty.util.concurrent.Future;
-import io.netty.util.internal.SystemPropertyUtil;
+import io.netty.util.concurrent.ScheduledFuture;
 
 import javax.net.ssl.SSLEngine;
 import java.io.IOException;
@@ -55,7 +52,7 @@ import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.time.Duration;
-import java.util.Set;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
@@ -65,10 +62,6 @@ import static esa.httpclient.core.netty.Utils.WRITE_BUF_IS_FULL;
 
 class NettyTransceiver implements HttpTransceiver {
 
-    private static final String HASHEDWHEELTIMER_TICKDURATION_KEY = "esa.httpclient.hashedWheelTimer.tickDurationMs";
-    private static final String HASHEDWHEELTIMER_SIZE_KEY = "esa.httpclient.hashedWheelTimer.size";
-
-    private static final Timer READ_TIMEOUT_TIMER;
     private static final ServerSelector SERVER_SELECTOR = ServerSelector.DEFAULT;
 
     private static final H1TransceiverHandle H1_HANDLE = new H1TransceiverHandle();
@@ -80,14 +73,6 @@ class NettyTransceiver implements HttpTransceiver {
     private final SslEngineFactory sslEngineFactory;
     private final ResponseFilter[] rspFilters;
 
-    static {
-        READ_TIMEOUT_TIMER = new HashedWheelTimer(ThreadFactories
-                .namedThreadFactory("HttpClient-ReadTimout-Checker-", true),
-                SystemPropertyUtil.getLong(HASHEDWHEELTIMER_TICKDURATION_KEY, 30L),
-                TimeUnit.MILLISECONDS,
-                SystemPropertyUtil.getInt(HASHEDWHEELTIMER_SIZE_KEY, 512));
-    }
-
     NettyTransceiver(EventLoopGroup ioThreads,
                      ChannelPools channelPools,
                      HttpClientBuilder builder,
@@ -136,9 +121,18 @@ class NettyTransceiver implements HttpTransceiver {
         listener.onConnectionAttempt(request, ctx, address);
 
         final RequestWriter writer = detectWriter(request);
-        final Future<Channel> channel = channelPool.acquire();
+        final Future<Channel> channel = ChannelPools.acquire(channelPool, ctx.priority(), ctx.deadline());
 
         final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        if (!channel.isDone()) {
+            // Give up the pending acquisition as soon as the response has been cancelled, so that the waiting
+            // slot of the pool is freed immediately.
+            response.whenComplete((r, t) -> {
+                if (response.isCancelled()) {
+                    channel.cancel(false);
+                }
+            });
+        }
         if (channel.isDone()) {
             this.handle0(request,
                     address,
@@ -166,17 +160,22 @@ class NettyTransceiver implements HttpTransceiver {
         return response;
     }
 
-    static void closeTimer() {
-        final long start = System.nanoTime();
-        final Set<Timeout> tasks = READ_TIMEOUT_TIMER.stop();
-        LoggerUtils.logger().info("Begin to close readTimeout-Timer, unfinished tasks size: {}", tasks.size());
-        for (Timeout item : tasks) {
-            if (item.task() instanceof ReadTimeoutTask) {
-                ((ReadTimeoutTask) item.task()).cancel();
-            }
+    /**
+     * Obtains the read timeout of current attempt, which is shrunk to the time left before the deadline of the
+     * request.
+     *
+     * @param request request
+     * @param ctx     ctx
+     * @return timeout in nanoseconds
+     */
+    static long readTimeoutNanos(HttpRequest request, Context ctx) {
+        final long readTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(request.readTimeout());
+        final long deadline = ctx.deadline();
+        if (deadline <= 0L) {
+            return readTimeoutNanos;
         }
-        LoggerUtils.logger().info("Closed readTimeout-Timer successfully and all" +
-                " unfinished tasks has been canceled, time elapsed: {}", (System.nanoTime() - start) / 1_000_000);
+        final long remainingNanos = TimeUnit.MILLISECONDS.toNanos(deadline - System.currentTimeMillis());
+        return Math.max(1L, Math.min(readTimeoutNanos, remainingNanos));
     }
 
     private static SocketAddress selectServer(HttpRequest request, Context ctx) {
@@ -194,6 +193,12 @@ class NettyTransceiver implements HttpTransceiver {
                  RequestWriter writer,
                  CompletableFuture<SegmentWriter> segmentWriterPromise) {
         if (!channel.isSuccess()) {
+            if (channel.isCancelled()) {
+                // The acquisition has been given up along with the cancelled response.
+                endRequestWriter(segmentWriterPromise, new CancellationException("Request: " + request.uri()
+                        + " has been cancelled while acquiring connection"));
+                return;
+            }
             this.onAcquireConnectionFailed(request,
                     address,
                     ctx,
@@ -205,6 +210,14 @@ class NettyTransceiver implements HttpTransceiver {
         }
 
         final Channel channel0 = channel.getNow();
+        // Maybe cancelled while acquiring connection
+        if (response.isDone()) {
+            channelPool.release(channel0);
+            endRequestWriter(segmentWriterPromise, new CancellationException("Request: " + request.uri()
+                    + " has been cancelled before writing"));
+            return;
+        }
+
         try {
             this.doWrite(request,
                     ctx,
@@ -285,8 +298,10 @@ class NettyTransceiver implements HttpTransceiver {
                                            Listener listener,
                                            CompletableFuture<HttpResponse> response,
                                            CompletableFuture<SegmentWriter> segmentWriterPromise) {
-        // Maybe caused by too many acquires or channel has closed.
-        final Throwable cause = new ConnectException(channel.cause().getMessage());
+        // Maybe caused by too many acquires or channel has closed, and the request whose deadline has passed
+        // is not allowed to be retried.
+        final Throwable cause = channel.cause() instanceof DeadlineExceededException
+                ? channel.cause() : new ConnectException(channel.cause().getMessage());
         response.completeExceptionally(cause);
         endRequestWriter(segmentWriterPromise, cause);
 
@@ -333,6 +348,14 @@ class NettyTransceiver implements HttpTransceiver {
             segmentWriterPromise.complete((SegmentWriter) writer);
         }
 
+        // Cancel the request on the wire as soon as the response has been cancelled, eg: the loser of
+        // hedged requests.
+        response.whenComplete((r, t) -> {
+            if (response.isCancelled()) {
+                channel.eventLoop().execute(() -> cancel(requestId, request, channel, http2, registry));
+            }
+        });
+
         if (endFuture.isDone()) {
             this.onWriteDone(requestId,
                     request,
@@ -340,6 +363,7 @@ class NettyTransceiver implements HttpTransceiver {
                     headFuture,
                     endFuture,
                     h,
+                    http2,
                     registry,
                     response,
                     segmentWriterPromise);
@@ -352,6 +376,7 @@ class NettyTransceiver implements HttpTransceiver {
                             headFuture,
                             endFuture,
                             h,
+                            http2,
                             registry,
                             response,
                             segmentWriterPromise);
@@ -365,12 +390,18 @@ class NettyTransceiver implements HttpTransceiver {
     ChannelPool getChannelPool(HttpRequest request, SocketAddress address) {
         final boolean keepAlive = isKeepAlive(request);
 
-        esa.httpclient.core.netty.ChannelPool channelPool = keepAlive ? channelPools.getIfPresent(address) : null;
+        esa.httpclient.core.netty.ChannelPool channelPool = keepAlive
+                ? channelPools.getIfPresent(address)
+                : channelPools.getConnectorIfPresent(address);
         if (channelPool != null) {
             return channelPool.underlying;
         }
 
         final boolean ssl = Scheme.HTTPS.name0().equals(request.scheme());
+        return getChannelPool(ssl, keepAlive, address).underlying;
+    }
+
+    esa.httpclient.core.netty.ChannelPool getChannelPool(boolean ssl, boolean keepAlive, SocketAddress address) {
         return channelPools.getOrCreate(ssl,
                 keepAlive,
                 address,
@@ -398,7 +429,7 @@ class NettyTransceiver implements HttpTransceiver {
                     }
 
                     return sslHandler;
-                }).underlying;
+                });
     }
 
     static RequestWriter detectWriter(HttpRequest request) {
@@ -505,17 +536,22 @@ class NettyTransceiver implements HttpTransceiver {
                              ChannelFuture headFuture,
                              ChannelFuture endFuture,
                              TimeoutHandle handle,
+                             boolean http2,
                              HandleRegistry registry,
                              CompletableFuture<HttpResponse> response,
                              CompletableFuture<SegmentWriter> segmentWriterPromise) {
         if (endFuture.isSuccess()) {
             handle.onWriteDone(request, ctx);
 
-            Timeout timeout = READ_TIMEOUT_TIMER.newTimeout(new ReadTimeoutTask(requestId,
+            // Schedule the read timeout on the event loop of the connection, which keeps the timeouts in its own
+            // deadline heap, so that there is neither a global timer thread nor a handoff between threads.
+            final Channel channel = endFuture.channel();
+            final ScheduledFuture<?> timeout = channel.eventLoop().schedule(new ReadTimeoutTask(requestId,
                             request.uri().toString(),
-                            endFuture.channel(),
+                            channel,
+                            http2,
                             registry),
-                    TimeUnit.MILLISECONDS.toNanos(request.readTimeout()),
+                    readTimeoutNanos(request, ctx),
                     TimeUnit.NANOSECONDS);
             handle.addCancelTask(timeout);
             return;
@@ -535,6 +571,30 @@ class NettyTransceiver implements HttpTransceiver {
         endWithError(request, ctx, handle, response, segmentWriterPromise, cause);
     }
 
+    /**
+     * Cancels the request which is in flight, the stream will be reset with {@code CANCEL} for HTTP/2 and the
+     * connection will be closed for HTTP/1.x because there is no other way to abort the exchange.
+     */
+    private static void cancel(int requestId,
+                               HttpRequest request,
+                               Channel channel,
+                               boolean http2,
+                               HandleRegistry registry) {
+        final NettyHandle handle = registry.remove(requestId);
+        if (handle == null) {
+            // Has ended already.
+            return;
+        }
+
+        if (LoggerUtils.logger().isDebugEnabled()) {
+            LoggerUtils.logger().debug("Request: {} has been cancelled, begin to {}", request.uri(),
+                    http2 ? "reset stream: " + requestId : "close connection: " + channel);
+        }
+
+        Utils.abortExchange(channel, requestId, http2);
+        handle.onError(new CancellationException("Request: " + request.uri() + " has been cancelled"));
+    }
+
     /**
      * Set keepAlive to given headers.
      *
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.httpclient.core.exception.DeadlineExceededException;
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * An acquisition which is waiting for a {@link Channel}, the one with higher priority is ordered first, and then the
+ * one with earlier deadline, and then the one which was created earlier.
+ */
+final class PendingAcquire implements Comparable<PendingAcquire> {
+
+    private static final AtomicIntegerFieldUpdater<PendingAcquire> DONE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(PendingAcquire.class, "done");
+
+    final Promise<Channel> promise;
+    final int priority;
+
+    /**
+     * The deadline converted to {@link System#nanoTime()} once when queued, so that it's compared with the
+     * timeout of acquisitions on the same monotonic clock.
+     */
+    private final boolean hasDeadline;
+    private final long deadlineNanos;
+    private final long sequence;
+    ScheduledFuture<?> timeout;
+
+    private volatile int done;
+
+    /**
+     * Whether the {@link #timeout} is scheduled at the deadline rather than the timeout of acquisitions.
+     */
+    private boolean deadlineBound;
+
+    PendingAcquire(Promise<Channel> promise, int priority, long deadline, long sequence) {
+        this.promise = promise;
+        this.priority = priority;
+        this.hasDeadline = deadline > 0L;
+        this.deadlineNanos = hasDeadline
+                ? System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(deadline - System.currentTimeMillis())
+                : 0L;
+        this.sequence = sequence;
+    }
+
+    /**
+     * Whether the given deadline has passed.
+     *
+     * @param deadline deadline in milliseconds since the epoch, 0 means no deadline
+     * @return {@code true} if expired
+     */
+    static boolean isExpired(long deadline) {
+        return deadline > 0L && System.currentTimeMillis() >= deadline;
+    }
+
+    static DeadlineExceededException deadlineExceeded() {
+        return new DeadlineExceededException("Deadline exceeded while waiting for a connection");
+    }
+
+    /**
+     * Whether the deadline of this acquisition has passed.
+     *
+     * @return {@code true} if expired
+     */
+    boolean isExpired() {
+        return hasDeadline && System.nanoTime() - deadlineNanos >= 0L;
+    }
+
+    /**
+     * Obtains the delay of timeout, which is the smaller one between the {@code acquireTimeoutNanos} and the time
+     * left before the deadline.
+     *
+     * @param acquireTimeoutNanos timeout of acquisitions
+     * @return delay in nanoseconds
+     */
+    long timeoutNanos(long acquireTimeoutNanos) {
+        if (!hasDeadline) {
+            return acquireTimeoutNanos;
+        }
+        final long remainingNanos = deadlineNanos - System.nanoTime();
+        if (remainingNanos >= acquireTimeoutNanos) {
+            return acquireTimeoutNanos;
+        }
+        deadlineBound = true;
+        return Math.max(0L, remainingNanos);
+    }
+
+    /**
+     * Obtains the cause of a timed out acquisition.
+     *
+     * @return cause
+     */
+    Exception timeoutCause() {
+        if (deadlineBound || isExpired()) {
+            return deadlineExceeded();
+        }
+        return new TimeoutException("Acquire operation took longer then configured maximum time");
+    }
+
+    boolean tryComplete() {
+        return DONE_UPDATER.compareAndSet(this, 0, 1);
+    }
+
+    boolean isDone() {
+        return done == 1;
+    }
+
+    @Override
+    public int compareTo(PendingAcquire other) {
+        if (priority != other.priority) {
+            return priority > other.priority ? -1 : 1;
+        }
+        if (hasDeadline != other.hasDeadline) {
+            return hasDeadline ? -1 : 1;
+        }
+        if (hasDeadline && deadlineNanos != other.deadlineNanos) {
+            return deadlineNanos - other.deadlineNanos < 0L ? -1 : 1;
+        }
+        return Long.compare(sequence, other.sequence);
+    }
+}
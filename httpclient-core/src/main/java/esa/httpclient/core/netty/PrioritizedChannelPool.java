@@ -0,0 +1,36 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.Future;
+
+/**
+ * A {@link io.netty.channel.pool.ChannelPool} whose pending acquisitions are served by priority and then by the
+ * earliest deadline instead of FIFO, the acquisitions whose deadline can no longer be met are failed with
+ * {@link esa.httpclient.core.exception.DeadlineExceededException} immediately.
+ */
+interface PrioritizedChannelPool {
+
+    /**
+     * Acquires a {@link Channel} with given priority and deadline.
+     *
+     * @param priority priority, the higher the value is, the earlier the acquisition will be served
+     * @param deadline absolute deadline in milliseconds since the epoch, 0 means no deadline
+     * @return future
+     */
+    Future<Channel> acquire(int priority, long deadline);
+}
@@ -17,48 +17,48 @@ package esa.httpclient.core.netty;
 
 import esa.httpclient.core.util.LoggerUtils;
 import io.netty.channel.Channel;
-import io.netty.util.Timeout;
-import io.netty.util.TimerTask;
 
 import java.net.SocketTimeoutException;
 
-final class ReadTimeoutTask implements TimerTask {
+/**
+ * The task which is scheduled on the event loop of the connection, so that it runs in the same thread with the
+ * handling of the response.
+ */
+final class ReadTimeoutTask implements Runnable {
 
     private final int requestId;
     private final String uri;
     private final Channel channel;
+    private final boolean http2;
     private final HandleRegistry registry;
 
     ReadTimeoutTask(int requestId,
                     String uri,
                     Channel channel,
+                    boolean http2,
                     HandleRegistry registry) {
         this.requestId = requestId;
         this.uri = uri;
         this.channel = channel;
+        this.http2 = http2;
         this.registry = registry;
     }
 
     @Override
-    public void run(Timeout timeout) {
+    public void run() {
         final NettyHandle handle = registry.remove(requestId);
-        if (handle != null) {
-            channel.eventLoop().execute(() -> handle.onError(new
-                    SocketTimeoutException("Request: " + uri + " reads timeout")));
-            channel.close();
-            if (LoggerUtils.logger().isDebugEnabled()) {
-                LoggerUtils.logger().debug("Request: " + uri + " reads timeout, begin to close connection: "
-                        + channel);
-            }
+        if (handle == null) {
+            return;
         }
-    }
 
-    void cancel() {
-        NettyHandle handle = registry.remove(requestId);
-        if (handle != null) {
-            handle.onError(new IllegalStateException("Request: " + uri +
-                    " haven't finished while connection: " + channel + "has closed"));
+        if (LoggerUtils.logger().isDebugEnabled()) {
+            LoggerUtils.logger().debug("Request: " + uri + " reads timeout, begin to "
+                    + (http2 ? "reset stream: " + requestId + " of connection: " : "close connection: ")
+                    + channel);
         }
+        // Only the timed out stream is reset for HTTP/2, the other streams of the connection go on.
+        Utils.abortExchange(channel, requestId, http2);
+        handle.onError(new SocketTimeoutException("Request: " + uri + " reads timeout"));
     }
 
 }
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+/**
+ * A {@link MeteredChannelPool} whose max count of connections can be changed in place, without replacing the
+ * pool or interrupting the in-flight requests.
+ */
+interface ResizableChannelPool extends MeteredChannelPool {
+
+    /**
+     * Changes the max count of connections. The pending acquisitions will be served as soon as possible after
+     * growing, and the surplus connections will be closed once they are idle after shrinking.
+     *
+     * @param maxConnections new max connections, which must not be negative, and no new connection will be opened
+     *                       if it's zero
+     */
+    void resize(int maxConnections);
+
+    /**
+     * Whether this pool has been closed.
+     *
+     * @return {@code true} if closed
+     */
+    boolean isClosed();
+}
@@ -276,6 +276,7 @@ public class SegmentRequestImpl extends HttpRequestBaseImpl implements SegmentRe
             }
 
             this.started = true;
+            startDeadline();
             response = executor.execute(this, ctx, ListenerProxy.DEFAULT, handle, handler);
             segmentWriter = ctx.getWriter().orElse(null);
         }
@@ -372,6 +373,27 @@ public class SegmentRequestImpl extends HttpRequestBaseImpl implements SegmentRe
         return this;
     }
 
+    @Override
+    public SegmentRequest priority(int priority) {
+        checkStarted();
+        super.priority(priority);
+        return this;
+    }
+
+    @Override
+    public SegmentRequest totalTimeout(int totalTimeout) {
+        checkStarted();
+        super.totalTimeout(totalTimeout);
+        return this;
+    }
+
+    @Override
+    public SegmentRequest deadline(long deadline) {
+        checkStarted();
+        super.deadline(deadline);
+        return this;
+    }
+
     @Override
     public SegmentRequest addHeaders(Map<? extends CharSequence, ? extends CharSequence> headers) {
         super.addHeaders(headers);
@@ -25,8 +25,15 @@ import java.net.SocketAddress;
 
 interface ServerSelector {
 
-    ServerSelector DEFAULT = (request, ctx) -> {
-        final HttpUri uri = request.uri();
+    ServerSelector DEFAULT = (request, ctx) -> addressOf(request.uri());
+
+    /**
+     * Obtains the unresolved address of given {@link HttpUri}, the default port of scheme will be used if absent.
+     *
+     * @param uri uri
+     * @return address
+     */
+    static SocketAddress addressOf(HttpUri uri) {
         int port = uri.port();
         if (port <= 0) {
             port = Scheme.HTTPS == Utils.toScheme(uri.netURI())
@@ -34,7 +41,7 @@ interface ServerSelector {
         }
 
         return InetSocketAddress.createUnresolved(uri.host(), port);
-    };
+    }
 
     /**
      * Detects target server to connect.
@@ -0,0 +1,293 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.commons.Checks;
+import io.netty.channel.Channel;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.internal.ThreadExecutorMap;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * A {@link io.netty.channel.pool.ChannelPool} which consists of a sub-pool per {@link EventLoop} of the given
+ * {@link EventLoopGroup}, and every sub-pool only creates {@link Channel}s which are registered to its own
+ * {@link EventLoop}.
+ * <p>
+ * If the acquisition is started from an {@link EventLoop} which belongs to the {@link EventLoopGroup}, the
+ * sub-pool of current {@link EventLoop} is always used, which means that the acquisition, the writing of request
+ * and the reading of response are all handled in current thread without any thread switching. Otherwise, a
+ * sub-pool will be selected by {@link EventLoopGroup#next()}.
+ * <p>
+ * If it's resized to less connections than the count of stripes, only {@code maxConnections} stripes keep serving
+ * acquisitions with one connection each, and the others are resized to zero, so that the total count of
+ * connections never exceeds {@code maxConnections}.
+ */
+final class StripedChannelPool implements io.netty.channel.pool.ChannelPool, ResizableChannelPool,
+        HealthCheckedChannelPool, DrainableChannelPool, PrioritizedChannelPool, ManagedChannelPool {
+
+    private final EventLoopGroup group;
+
+    /**
+     * Read only after constructing, so that it's safe to access it without synchronizing.
+     */
+    private final Map<EventExecutor, io.netty.channel.pool.ChannelPool> stripes;
+
+    /**
+     * All the stripes and the indexes of their {@link EventLoop}s, only the first {@link #serving} stripes serve
+     * acquisitions.
+     */
+    private final io.netty.channel.pool.ChannelPool[] ordered;
+    private final Map<EventExecutor, Integer> indexes;
+    private final AtomicInteger nextServing = new AtomicInteger();
+    private volatile int serving;
+
+    /**
+     * Shared by all the stripes, so that the cumulative statistics need not to be merged when reading.
+     */
+    private final ChannelPoolStats stats;
+
+    StripedChannelPool(EventLoopGroup group, Function<EventLoop, io.netty.channel.pool.ChannelPool> factory) {
+        this(group, new ChannelPoolStats(), factory);
+    }
+
+    StripedChannelPool(EventLoopGroup group,
+                       ChannelPoolStats stats,
+                       Function<EventLoop, io.netty.channel.pool.ChannelPool> factory) {
+        Checks.checkNotNull(group, "EventLoopGroup must not be null");
+        Checks.checkNotNull(stats, "ChannelPoolStats must not be null");
+        Checks.checkNotNull(factory, "Factory must not be null");
+        final Map<EventExecutor, io.netty.channel.pool.ChannelPool> stripes = new IdentityHashMap<>();
+        final Map<EventExecutor, Integer> indexes = new IdentityHashMap<>();
+        final List<io.netty.channel.pool.ChannelPool> ordered = new ArrayList<>();
+        for (EventExecutor executor : group) {
+            Checks.checkArg(executor instanceof EventLoop, "Unexpected executor: " + executor);
+            final io.netty.channel.pool.ChannelPool stripe = factory.apply((EventLoop) executor);
+            stripes.put(executor, stripe);
+            indexes.put(executor, ordered.size());
+            ordered.add(stripe);
+        }
+        Checks.checkArg(!stripes.isEmpty(), "EventLoopGroup must not be empty");
+        this.group = group;
+        this.stats = stats;
+        this.stripes = Collections.unmodifiableMap(stripes);
+        this.indexes = Collections.unmodifiableMap(indexes);
+        this.ordered = ordered.toArray(new io.netty.channel.pool.ChannelPool[0]);
+        this.serving = this.ordered.length;
+    }
+
+    @Override
+    public Future<Channel> acquire() {
+        return select().acquire();
+    }
+
+    @Override
+    public Future<Channel> acquire(Promise<Channel> promise) {
+        return select().acquire(promise);
+    }
+
+    @Override
+    public Future<Channel> acquire(int priority, long deadline) {
+        return ChannelPools.acquire(select(), priority, deadline);
+    }
+
+    @Override
+    public Future<Void> release(Channel channel) {
+        return release(channel, channel.eventLoop().newPromise());
+    }
+
+    @Override
+    public Future<Void> release(Channel channel, Promise<Void> promise) {
+        Checks.checkNotNull(channel, "Channel must not be null");
+        Checks.checkNotNull(promise, "Promise must not be null");
+        final io.netty.channel.pool.ChannelPool stripe = stripes.get(channel.eventLoop());
+        if (stripe == null) {
+            channel.close();
+            promise.tryFailure(new IllegalArgumentException("Channel " + channel
+                    + " was not acquired from this StripedChannelPool"));
+            return promise;
+        }
+
+        return stripe.release(channel, promise);
+    }
+
+    @Override
+    public void close() {
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            stripe.close();
+        }
+    }
+
+    @Override
+    public Future<Void> closeAsync() {
+        final List<Future<?>> futures = new ArrayList<>(stripes.size());
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            futures.add(ChannelPools.closeAsync(stripe));
+        }
+        return ChannelPools.whenAll(futures);
+    }
+
+    @Override
+    public Future<Void> drain() {
+        final List<Future<?>> futures = new ArrayList<>(stripes.size());
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            futures.add(ChannelPools.drain(stripe));
+        }
+        return ChannelPools.whenAll(futures);
+    }
+
+    /**
+     * Warms up every serving stripe with an equal share of the given {@code connections}.
+     *
+     * @param connections expected count of connections
+     * @return future
+     */
+    @Override
+    public Future<Void> warmUp(int connections) {
+        final int serving = this.serving;
+        final int share = connections > 0 ? ChannelPoolFactory.stripedSize(connections, serving) : 0;
+        final List<Future<?>> futures = new ArrayList<>(serving);
+        for (int i = 0; i < serving; i++) {
+            futures.add(ChannelPools.warmUp(ordered[i], share));
+        }
+        return ChannelPools.whenAll(futures);
+    }
+
+    /**
+     * Divides the given {@code maxConnections} into the stripes as evenly as possible. If there are more stripes
+     * than {@code maxConnections}, only {@code maxConnections} stripes keep serving and the others are resized to
+     * zero. Stripes which are not resizable are left untouched.
+     *
+     * @param maxConnections new max connections
+     */
+    @Override
+    public void resize(int maxConnections) {
+        Checks.checkArg(maxConnections >= 1, "maxConnections is " + maxConnections + " (expected >= 1)");
+        final int serving = Math.min(maxConnections, ordered.length);
+        // Stops routing acquisitions to the stripes which are going to be resized to zero before shrinking them,
+        // and starts routing to the new serving stripes only after they have grown.
+        if (serving < this.serving) {
+            this.serving = serving;
+        }
+        final int share = maxConnections / serving;
+        int remainder = maxConnections % serving;
+        for (int i = 0; i < ordered.length; i++) {
+            if (ordered[i] instanceof ResizableChannelPool) {
+                ((ResizableChannelPool) ordered[i]).resize(i < serving ? (remainder-- > 0 ? share + 1 : share) : 0);
+            }
+        }
+        this.serving = serving;
+    }
+
+    @Override
+    public void checkHealth() {
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            if (stripe instanceof HealthCheckedChannelPool) {
+                ((HealthCheckedChannelPool) stripe).checkHealth();
+            }
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            if (!(stripe instanceof ResizableChannelPool) || !((ResizableChannelPool) stripe).isClosed()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int maxConnections() {
+        int maxConnections = 0;
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            maxConnections += ChannelPools.maxConnections(stripe);
+        }
+        return maxConnections;
+    }
+
+    @Override
+    public int maxPendingAcquires() {
+        int maxPendingAcquires = 0;
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            maxPendingAcquires += ChannelPools.maxPendingAcquires(stripe);
+        }
+        return maxPendingAcquires;
+    }
+
+    @Override
+    public int acquiredCount() {
+        int acquiredCount = 0;
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            acquiredCount += ChannelPools.acquiredCount(stripe);
+        }
+        return acquiredCount;
+    }
+
+    @Override
+    public int pendingAcquireCount() {
+        int pendingAcquireCount = 0;
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            pendingAcquireCount += ChannelPools.pendingAcquireCount(stripe);
+        }
+        return pendingAcquireCount;
+    }
+
+    @Override
+    public int idleCount() {
+        int idleCount = 0;
+        for (io.netty.channel.pool.ChannelPool stripe : stripes.values()) {
+            idleCount += ChannelPools.idleCount(stripe);
+        }
+        return idleCount;
+    }
+
+    @Override
+    public ChannelPoolStats stats() {
+        return stats;
+    }
+
+    List<io.netty.channel.pool.ChannelPool> stripes() {
+        return new ArrayList<>(stripes.values());
+    }
+
+    private io.netty.channel.pool.ChannelPool select() {
+        final int serving = this.serving;
+        final EventExecutor current = ThreadExecutorMap.currentExecutor();
+        if (current != null) {
+            final Integer index = indexes.get(current);
+            if (index != null && index < serving) {
+                return ordered[index];
+            }
+        }
+
+        if (serving == ordered.length) {
+            return stripes.get(group.next());
+        }
+        return ordered[Math.floorMod(nextServing.getAndIncrement(), serving)];
+    }
+}
@@ -20,7 +20,7 @@ import esa.httpclient.core.HttpRequest;
 import esa.httpclient.core.HttpResponse;
 import esa.httpclient.core.Listener;
 import esa.httpclient.core.ListenerProxy;
-import io.netty.util.Timeout;
+import io.netty.util.concurrent.ScheduledFuture;
 
 /**
  * The class is designed as thread-safe, because the {@code task} will only
@@ -28,13 +28,13 @@ import io.netty.util.Timeout;
  */
 class TimeoutHandle extends ListenerProxy {
 
-    private Timeout task;
+    private ScheduledFuture<?> task;
 
     TimeoutHandle(Listener delegate) {
         super(delegate);
     }
 
-    void addCancelTask(Timeout task) {
+    void addCancelTask(ScheduledFuture<?> task) {
         this.task = task;
     }
 
@@ -52,7 +52,7 @@ class TimeoutHandle extends ListenerProxy {
 
     private void cancelAndClean() {
         if (task != null) {
-            task.cancel();
+            task.cancel(false);
             task = null;
         }
     }
@@ -22,6 +22,7 @@ import esa.httpclient.core.exception.ClosedConnectionException;
 import esa.httpclient.core.util.LoggerUtils;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http2.Http2Error;
 import io.netty.handler.codec.http2.Http2Headers;
 import io.netty.handler.timeout.IdleState;
 import io.netty.handler.timeout.IdleStateEvent;
@@ -121,6 +122,24 @@ final class Utils {
         }
     }
 
+    /**
+     * Aborts the exchange of given request on the wire, the stream will be reset with {@code CANCEL} for HTTP/2
+     * so that the other streams of the connection are not affected, and the connection will be closed for HTTP/1.x
+     * because there is no other way to abort the exchange.
+     *
+     * @param channel   channel
+     * @param requestId id of request, which is the stream id for HTTP/2
+     * @param http2     whether the channel is HTTP/2 or not
+     */
+    static void abortExchange(Channel channel, int requestId, boolean http2) {
+        final Http2ConnectionHandler handler;
+        if (http2 && (handler = channel.pipeline().get(Http2ConnectionHandler.class)) != null) {
+            handler.writeRstStream(requestId, Http2Error.CANCEL.code());
+        } else {
+            channel.close();
+        }
+    }
+
     static Http2Headers standardHeaders(Http2Headers headers) {
         for (Http2Headers.PseudoHeaderName name : Http2Headers.PseudoHeaderName.values()) {
             headers.remove(name.value());
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.resolver;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+
+/**
+ * Balances the requests of a host across the connection pools of its resolved {@link InetSocketAddress}s.
+ *
+ * @see esa.httpclient.core.HttpClientBuilder#addressBalancer(AddressBalancer)
+ */
+@FunctionalInterface
+public interface AddressBalancer {
+
+    /**
+     * Obtains a new round-robin {@link AddressBalancer}.
+     *
+     * @return balancer
+     */
+    static AddressBalancer roundRobin() {
+        return new RoundRobinAddressBalancer();
+    }
+
+    /**
+     * Obtains a new {@link AddressBalancer} which selects the {@link Endpoint} with the fewest outstanding
+     * requests, so that a slow address receives fewer requests.
+     *
+     * @return balancer
+     */
+    static AddressBalancer leastOutstanding() {
+        return new LeastOutstandingAddressBalancer();
+    }
+
+    /**
+     * Selects an {@link Endpoint} to send current request.
+     *
+     * @param endpoints candidates, which is never empty
+     * @return selected endpoint, which must be one of the given {@code endpoints}
+     */
+    Endpoint select(List<? extends Endpoint> endpoints);
+
+    /**
+     * A resolved address and the state of its connection pool.
+     */
+    interface Endpoint {
+
+        /**
+         * Obtains the resolved address.
+         *
+         * @return address
+         */
+        InetSocketAddress address();
+
+        /**
+         * Obtains the count of outstanding requests, including the acquired and the pending ones.
+         *
+         * @return outstanding count
+         */
+        int outstanding();
+    }
+}
@@ -55,5 +55,6 @@ public abstract class BalancedHostResolver implements HostResolver {
      * @param inetHost inetHost
      * @return addresses
      */
-    protected abstract CompletableFuture<List<InetAddress>> resolveAll(String inetHost);
+    @Override
+    public abstract CompletableFuture<List<InetAddress>> resolveAll(String inetHost);
 }
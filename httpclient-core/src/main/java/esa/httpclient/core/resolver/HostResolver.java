@@ -17,6 +17,8 @@ package esa.httpclient.core.resolver;
 
 import java.io.Closeable;
 import java.net.InetAddress;
+import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
 
 /**
@@ -33,6 +35,20 @@ public interface HostResolver extends Closeable {
      */
     CompletableFuture<InetAddress> resolve(String inetHost);
 
+    /**
+     * Resolves the {@code inetHost} to all its {@link InetAddress}s asynchronously, which is used to maintain a
+     * connection pool per resolved {@link InetAddress}. By default, only the {@link InetAddress} obtained by
+     * {@link #resolve(String)} is returned.
+     *
+     * @param inetHost host
+     * @return addresses
+     */
+    default CompletableFuture<List<InetAddress>> resolveAll(String inetHost) {
+        return resolve(inetHost).thenApply(address -> address == null
+                ? Collections.emptyList()
+                : Collections.singletonList(address));
+    }
+
     /**
      * Closes the {@link HostResolver}.
      */
@@ -0,0 +1,45 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.resolver;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Selects the {@link Endpoint} with the fewest outstanding requests. The scanning starts from a rotating index, so
+ * that the ties are broken in a round-robin manner rather than always favoring the first one.
+ */
+final class LeastOutstandingAddressBalancer implements AddressBalancer {
+
+    private final AtomicInteger index = new AtomicInteger();
+
+    @Override
+    public Endpoint select(List<? extends Endpoint> endpoints) {
+        final int size = endpoints.size();
+        final int start = (index.getAndIncrement() & Integer.MAX_VALUE) % size;
+        Endpoint selected = null;
+        int fewest = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            final Endpoint endpoint = endpoints.get((start + i) % size);
+            final int outstanding = endpoint.outstanding();
+            if (outstanding < fewest) {
+                selected = endpoint;
+                fewest = outstanding;
+            }
+        }
+        return selected;
+    }
+}
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.resolver;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class RoundRobinAddressBalancer implements AddressBalancer {
+
+    private final AtomicInteger index = new AtomicInteger();
+
+    @Override
+    public Endpoint select(List<? extends Endpoint> endpoints) {
+        return endpoints.get((index.getAndIncrement() & Integer.MAX_VALUE) % endpoints.size());
+    }
+}
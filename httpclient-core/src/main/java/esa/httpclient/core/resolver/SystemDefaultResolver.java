@@ -31,7 +31,7 @@ import java.util.concurrent.CompletableFuture;
 public class SystemDefaultResolver extends BalancedHostResolver {
 
     @Override
-    protected CompletableFuture<List<InetAddress>> resolveAll(String inetHost) {
+    public CompletableFuture<List<InetAddress>> resolveAll(String inetHost) {
         try {
             return Futures.completed(Arrays.asList(AccessController.doPrivileged(
                     (PrivilegedExceptionAction<InetAddress[]>) () -> InetAddress.getAllByName(inetHost))));
@@ -41,6 +41,28 @@ public final class Futures {
         return CompletableFuture.completedFuture(result);
     }
 
+    /**
+     * Cancels the {@code source} once the {@code derived} future, which is derived from the {@code source} by
+     * {@link CompletableFuture#thenApply}, {@link CompletableFuture#whenComplete} and so on, has been cancelled.
+     * Note that the cancellation of a derived future never reaches the source future by default.
+     *
+     * @param source  source
+     * @param derived derived
+     * @param <T>     type of the derived
+     * @return derived
+     */
+    public static <T> CompletableFuture<T> propagateCancellation(CompletableFuture<?> source,
+                                                                 CompletableFuture<T> derived) {
+        if (source != derived) {
+            derived.whenComplete((r, t) -> {
+                if (derived.isCancelled()) {
+                    source.cancel(false);
+                }
+            });
+        }
+        return derived;
+    }
+
     public static Throwable unwrapped(Throwable t) {
         if (t instanceof CompletionException || t instanceof ExecutionException) {
             // unwrap exception of CompletableFuture
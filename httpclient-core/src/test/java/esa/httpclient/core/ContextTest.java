@@ -27,13 +27,53 @@ class ContextTest {
         then(ctx.isUseExpectContinue()).isFalse();
         then(ctx.maxRedirects()).isEqualTo(0);
         then(ctx.maxRetries()).isEqualTo(0);
+        then(ctx.priority()).isEqualTo(0);
+        then(ctx.deadline()).isEqualTo(0L);
 
         ctx.useExpectContinue(true);
         ctx.maxRetries(10);
         ctx.maxRedirects(100);
+        ctx.priority(5);
+        ctx.deadline(1000L);
         then(ctx.isUseExpectContinue()).isTrue();
         then(ctx.maxRedirects()).isEqualTo(100);
         then(ctx.maxRetries()).isEqualTo(10);
+        then(ctx.priority()).isEqualTo(5);
+        then(ctx.deadline()).isEqualTo(1000L);
+    }
+
+    @Test
+    void testCopy() {
+        final Context ctx = new Context();
+        ctx.setAttr("name", "value");
+        ctx.maxRetries(10);
+        ctx.priority(5);
+        ctx.deadline(1000L);
+
+        final Context copied = ctx.copy();
+        then(copied).isNotSameAs(ctx);
+        then((String) copied.getAttr("name")).isEqualTo("value");
+        then(copied.maxRetries()).isEqualTo(10);
+        then(copied.priority()).isEqualTo(5);
+        then(copied.deadline()).isEqualTo(1000L);
+
+        // The state is isolated since then.
+        copied.setAttr("name", "other");
+        then((String) ctx.getAttr("name")).isEqualTo("value");
+    }
+
+    @Test
+    void testCopyWithoutDeadline() {
+        final Context ctx = new Context();
+        ctx.setAttr("name", "value");
+        ctx.priority(5);
+        ctx.deadline(1000L);
+
+        final Context copied = ctx.copyWithoutDeadline();
+        then((String) copied.getAttr("name")).isEqualTo("value");
+        then(copied.priority()).isEqualTo(5);
+        then(copied.deadline()).isEqualTo(0L);
+        then(ctx.deadline()).isEqualTo(1000L);
     }
 
 }
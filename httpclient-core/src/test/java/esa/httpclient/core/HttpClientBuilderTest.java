@@ -17,23 +17,37 @@ package esa.httpclient.core;
 
 import esa.commons.http.HttpVersion;
 import esa.httpclient.core.config.Decompression;
+import esa.httpclient.core.config.HedgingOptions;
 import esa.httpclient.core.config.Http1Options;
 import esa.httpclient.core.config.Http2Options;
 import esa.httpclient.core.config.NetOptions;
 import esa.httpclient.core.config.RetryOptions;
+import esa.httpclient.core.exec.CacheInterceptor;
+import esa.httpclient.core.exec.CircuitBreaker;
+import esa.httpclient.core.exec.CircuitBreakerInterceptor;
+import esa.httpclient.core.exec.ConcurrencyLimitInterceptor;
+import esa.httpclient.core.exec.ConcurrencyLimiter;
+import esa.httpclient.core.exec.DeadlineInterceptor;
+import esa.httpclient.core.exec.DiskCache;
+import esa.httpclient.core.exec.DiskCacheInterceptor;
 import esa.httpclient.core.exec.ExpectContinueInterceptor;
 import esa.httpclient.core.exec.FilteringExec;
+import esa.httpclient.core.exec.HedgingInterceptor;
+import esa.httpclient.core.exec.HttpCache;
 import esa.httpclient.core.exec.RedirectInterceptor;
 import esa.httpclient.core.exec.RetryInterceptor;
 import esa.httpclient.core.filter.DuplexFilter;
 import esa.httpclient.core.filter.FilterContext;
 import esa.httpclient.core.filter.RequestFilter;
 import esa.httpclient.core.filter.ResponseFilter;
+import esa.httpclient.core.resolver.AddressBalancer;
 import esa.httpclient.core.resolver.HostResolver;
 import esa.httpclient.core.spi.ChannelPoolOptionsProvider;
 import esa.httpclient.core.util.Futures;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
@@ -46,6 +60,7 @@ class HttpClientBuilderTest {
     @Test
     void testBasic() {
         final HostResolver resolver = inetHost -> null;
+        final AddressBalancer balancer = AddressBalancer.roundRobin();
         final boolean h2ClearTextUpgrade = ThreadLocalRandom.current().nextBoolean();
         final int connectTimeout = ThreadLocalRandom.current().nextInt(10, 10000);
         final int readTimeout = ThreadLocalRandom.current().nextInt(10, 10000);
@@ -74,6 +89,13 @@ class HttpClientBuilderTest {
         builder.version(version);
         builder.connectionPoolSize(connectionPoolSize);
         builder.connectionPoolWaitingQueueLength(connectionPoolWaitQueueSize);
+        builder.connectionPoolMinIdle(2);
+        builder.connectionPoolMinSize(5);
+        builder.addressBalancer(balancer);
+        builder.connectionMaxLifetime(3);
+        builder.connectionHealthCheckInterval(4);
+        builder.maxRequestsPerConnection(4);
+        builder.stripedConnectionPool(true);
         builder.useDecompress(useDecompress);
         builder.decompression(decompression);
         builder.useExpectContinue(useExpectContinue);
@@ -85,6 +107,7 @@ class HttpClientBuilderTest {
         builder.maxRedirects(maxRedirects);
         builder.maxContentLength(maxContentLength);
         builder.idleTimeoutSeconds(idleTimeoutSeconds);
+        builder.totalTimeout(3000);
 
         then(builder.resolver()).isSameAs(resolver);
         then(builder.ish2ClearTextUpgrade()).isEqualTo(h2ClearTextUpgrade);
@@ -94,6 +117,13 @@ class HttpClientBuilderTest {
         then(builder.version()).isSameAs(version);
         then(builder.connectionPoolSize()).isEqualTo(connectionPoolSize);
         then(builder.connectionPoolWaitingQueueLength()).isEqualTo(connectionPoolWaitQueueSize);
+        then(builder.connectionPoolMinIdle()).isEqualTo(2);
+        then(builder.connectionPoolMinSize()).isEqualTo(5);
+        then(builder.addressBalancer()).isSameAs(balancer);
+        then(builder.connectionMaxLifetime()).isEqualTo(3);
+        then(builder.connectionHealthCheckInterval()).isEqualTo(4);
+        then(builder.maxRequestsPerConnection()).isEqualTo(4);
+        then(builder.isStripedConnectionPool()).isTrue();
         then(builder.isUseDecompress()).isEqualTo(useDecompress);
         then(builder.decompression()).isSameAs(decompression);
         then(builder.isUseExpectContinue()).isEqualTo(useExpectContinue);
@@ -105,11 +135,13 @@ class HttpClientBuilderTest {
         then(builder.maxRedirects()).isEqualTo(maxRedirects);
         then(builder.maxContentLength()).isEqualTo(maxContentLength);
         then(builder.idleTimeoutSeconds()).isEqualTo(idleTimeoutSeconds);
+        then(builder.totalTimeout()).isEqualTo(3000);
     }
 
     @Test
     void testCopy() {
         final HostResolver resolver = inetHost -> null;
+        final AddressBalancer balancer = AddressBalancer.roundRobin();
         final boolean h2ClearTextUpgrade = ThreadLocalRandom.current().nextBoolean();
         final int connectTimeout = ThreadLocalRandom.current().nextInt(10, 10000);
         final int readTimeout = ThreadLocalRandom.current().nextInt(10, 10000);
@@ -125,6 +157,10 @@ class HttpClientBuilderTest {
         final Http1Options http1Options = Http1Options.ofDefault();
         final Http2Options http2Options = Http2Options.ofDefault();
         final RetryOptions retryOptions = RetryOptions.ofDefault();
+        final HedgingOptions hedgingOptions = HedgingOptions.ofDefault();
+        final CircuitBreaker circuitBreaker = CircuitBreaker.ofDefault();
+        final ConcurrencyLimiter concurrencyLimiter = ConcurrencyLimiter.ofDefault();
+        final HttpCache httpCache = HttpCache.builder().shared(true).build();
         final int maxRedirects = ThreadLocalRandom.current().nextInt(10, 1000);
         final long maxContentLength = ThreadLocalRandom.current().nextLong(10000);
         final int idleTimeoutSeconds = ThreadLocalRandom.current().nextInt(1000);
@@ -138,6 +174,13 @@ class HttpClientBuilderTest {
         builder.version(version);
         builder.connectionPoolSize(connectionPoolSize);
         builder.connectionPoolWaitingQueueLength(connectionPoolWaitQueueSize);
+        builder.connectionPoolMinIdle(2);
+        builder.connectionPoolMinSize(5);
+        builder.addressBalancer(balancer);
+        builder.connectionMaxLifetime(3);
+        builder.connectionHealthCheckInterval(4);
+        builder.maxRequestsPerConnection(4);
+        builder.stripedConnectionPool(true);
         builder.useDecompress(useDecompress);
         builder.decompression(decompression);
         builder.useExpectContinue(useExpectContinue);
@@ -146,9 +189,14 @@ class HttpClientBuilderTest {
         builder.http1Options(http1Options);
         builder.http2Options(http2Options);
         builder.retryOptions(retryOptions);
+        builder.hedgingOptions(hedgingOptions);
+        builder.circuitBreaker(circuitBreaker);
+        builder.concurrencyLimiter(concurrencyLimiter);
+        builder.httpCache(httpCache);
         builder.maxRedirects(maxRedirects);
         builder.maxContentLength(maxContentLength);
         builder.idleTimeoutSeconds(idleTimeoutSeconds);
+        builder.totalTimeout(3000);
 
         final HttpClientBuilder builder1 = builder.copy();
 
@@ -160,14 +208,30 @@ class HttpClientBuilderTest {
         then(builder1.version()).isSameAs(version);
         then(builder1.connectionPoolSize()).isEqualTo(connectionPoolSize);
         then(builder1.connectionPoolWaitingQueueLength()).isEqualTo(connectionPoolWaitQueueSize);
+        then(builder1.connectionPoolMinIdle()).isEqualTo(2);
+        then(builder1.connectionPoolMinSize()).isEqualTo(5);
+        then(builder1.addressBalancer()).isSameAs(balancer);
+        then(builder1.connectionMaxLifetime()).isEqualTo(3);
+        then(builder1.connectionHealthCheckInterval()).isEqualTo(4);
+        then(builder1.maxRequestsPerConnection()).isEqualTo(4);
+        then(builder1.isStripedConnectionPool()).isTrue();
         then(builder1.isUseDecompress()).isEqualTo(useDecompress);
         then(builder1.decompression()).isSameAs(decompression);
         then(builder1.isUseExpectContinue()).isEqualTo(useExpectContinue);
+        then(builder1.totalTimeout()).isEqualTo(3000);
         then(builder1.channelPoolOptionsProvider()).isSameAs(channelPoolOptionsProvider);
         then(builder1.netOptions()).isNotSameAs(netOptions);
         then(builder1.http1Options()).isNotSameAs(http1Options);
         then(builder1.http2Options()).isNotSameAs(http2Options);
         then(builder1.retryOptions()).isNotSameAs(retryOptions);
+        then(builder1.hedgingOptions()).isNotSameAs(hedgingOptions);
+        then(builder1.hedgingOptions().delayMillis()).isEqualTo(hedgingOptions.delayMillis());
+        then(builder1.circuitBreaker()).isNotSameAs(circuitBreaker);
+        then(builder1.circuitBreaker().minimumCalls()).isEqualTo(circuitBreaker.minimumCalls());
+        then(builder1.concurrencyLimiter()).isNotSameAs(concurrencyLimiter);
+        then(builder1.concurrencyLimiter().initialLimit()).isEqualTo(concurrencyLimiter.initialLimit());
+        then(builder1.httpCache()).isNotSameAs(httpCache);
+        then(builder1.httpCache().shared()).isTrue();
         then(builder1.maxRedirects()).isEqualTo(maxRedirects);
         then(builder1.maxContentLength()).isEqualTo(maxContentLength);
         then(builder1.idleTimeoutSeconds()).isEqualTo(idleTimeoutSeconds);
@@ -177,28 +241,28 @@ class HttpClientBuilderTest {
     void testUnmodifiableInterceptors() {
         // Interceptor
         final HttpClientBuilder builder = new HttpClientBuilder();
-        then(builder.unmodifiableInterceptors().length).isEqualTo(4);
+        then(builder.unmodifiableInterceptors().length).isEqualTo(5);
 
         builder.addInterceptor((request, next) -> null);
-        then(builder.unmodifiableInterceptors().length).isEqualTo(5);
-        builder.addInterceptors(Collections.singletonList((request, next) -> null));
         then(builder.unmodifiableInterceptors().length).isEqualTo(6);
+        builder.addInterceptors(Collections.singletonList((request, next) -> null));
+        then(builder.unmodifiableInterceptors().length).isEqualTo(7);
 
         // Filter
-        final FilteringExec filteringExec = (FilteringExec) builder.unmodifiableInterceptors()[5];
+        final FilteringExec filteringExec = (FilteringExec) builder.unmodifiableInterceptors()[6];
 
         builder.addRequestFilter((request, ctx) -> null);
-        then(builder.unmodifiableInterceptors()[5]).isInstanceOf(FilteringExec.class);
-        then(builder.unmodifiableInterceptors()[5]).isNotSameAs(filteringExec);
+        then(builder.unmodifiableInterceptors()[6]).isInstanceOf(FilteringExec.class);
+        then(builder.unmodifiableInterceptors()[6]).isNotSameAs(filteringExec);
         builder.addRequestFilters(Collections.singletonList((request, ctx) -> null));
-        then(builder.unmodifiableInterceptors()[5]).isInstanceOf(FilteringExec.class);
-        then(builder.unmodifiableInterceptors()[5]).isNotSameAs(filteringExec);
+        then(builder.unmodifiableInterceptors()[6]).isInstanceOf(FilteringExec.class);
+        then(builder.unmodifiableInterceptors()[6]).isNotSameAs(filteringExec);
         builder.addResponseFilter((request, response, ctx) -> null);
-        then(builder.unmodifiableInterceptors()[5]).isInstanceOf(FilteringExec.class);
-        then(builder.unmodifiableInterceptors()[5]).isNotSameAs(filteringExec);
+        then(builder.unmodifiableInterceptors()[6]).isInstanceOf(FilteringExec.class);
+        then(builder.unmodifiableInterceptors()[6]).isNotSameAs(filteringExec);
         builder.addResponseFilters(Collections.singletonList((request, response, ctx) -> null));
-        then(builder.unmodifiableInterceptors()[5]).isInstanceOf(FilteringExec.class);
-        then(builder.unmodifiableInterceptors()[5]).isNotSameAs(filteringExec);
+        then(builder.unmodifiableInterceptors()[6]).isInstanceOf(FilteringExec.class);
+        then(builder.unmodifiableInterceptors()[6]).isNotSameAs(filteringExec);
         builder.addFilter(new DuplexFilter() {
             @Override
             public CompletableFuture<Void> doFilter(HttpRequest request, FilterContext ctx) {
@@ -212,8 +276,8 @@ class HttpClientBuilderTest {
                 return null;
             }
         });
-        then(builder.unmodifiableInterceptors()[5]).isInstanceOf(FilteringExec.class);
-        then(builder.unmodifiableInterceptors()[5]).isNotSameAs(filteringExec);
+        then(builder.unmodifiableInterceptors()[6]).isInstanceOf(FilteringExec.class);
+        then(builder.unmodifiableInterceptors()[6]).isNotSameAs(filteringExec);
         builder.addFilters(Collections.singletonList(new DuplexFilter() {
             @Override
             public CompletableFuture<Void> doFilter(HttpRequest request, FilterContext ctx) {
@@ -227,17 +291,48 @@ class HttpClientBuilderTest {
                 return null;
             }
         }));
-        then(builder.unmodifiableInterceptors()[5]).isInstanceOf(FilteringExec.class);
-        then(builder.unmodifiableInterceptors()[5]).isNotSameAs(filteringExec);
+        then(builder.unmodifiableInterceptors()[6]).isInstanceOf(FilteringExec.class);
+        then(builder.unmodifiableInterceptors()[6]).isNotSameAs(filteringExec);
     }
 
     @Test
     void testAbsentInterceptors() {
         final HttpClientBuilder builder = new HttpClientBuilder();
-        then(builder.unmodifiableInterceptors().length).isEqualTo(4);
+        then(builder.unmodifiableInterceptors().length).isEqualTo(5);
+        then(builder.unmodifiableInterceptors()[0]).isInstanceOf(DeadlineInterceptor.class);
 
         builder.retryOptions(null);
-        then(builder.unmodifiableInterceptors().length).isEqualTo(3);
+        then(builder.unmodifiableInterceptors().length).isEqualTo(4);
+
+        builder.hedgingOptions(HedgingOptions.ofDefault());
+        then(builder.unmodifiableInterceptors().length).isEqualTo(5);
+        then(builder.unmodifiableInterceptors()[3]).isInstanceOf(HedgingInterceptor.class);
+
+        builder.circuitBreaker(CircuitBreaker.ofDefault());
+        then(builder.unmodifiableInterceptors().length).isEqualTo(6);
+        then(builder.unmodifiableInterceptors()[4]).isInstanceOf(CircuitBreakerInterceptor.class);
+
+        builder.concurrencyLimiter(ConcurrencyLimiter.ofDefault());
+        then(builder.unmodifiableInterceptors().length).isEqualTo(7);
+        then(builder.unmodifiableInterceptors()[5]).isInstanceOf(ConcurrencyLimitInterceptor.class);
+
+        builder.httpCache(HttpCache.ofDefault());
+        then(builder.unmodifiableInterceptors().length).isEqualTo(8);
+        then(builder.unmodifiableInterceptors()[1]).isInstanceOf(CacheInterceptor.class);
+    }
+
+    @Test
+    void testDiskCache(@TempDir Path dir) {
+        final DiskCache diskCache = DiskCache.builder(dir.toFile()).build();
+        final HttpClientBuilder builder = new HttpClientBuilder()
+                .httpCache(HttpCache.ofDefault())
+                .diskCache(diskCache);
+        then(builder.unmodifiableInterceptors()[1]).isInstanceOf(CacheInterceptor.class);
+        then(builder.unmodifiableInterceptors()[2]).isInstanceOf(DiskCacheInterceptor.class);
+
+        // Shared by copies
+        then(builder.copy().diskCache()).isSameAs(diskCache);
+        diskCache.close();
     }
 
     @Test
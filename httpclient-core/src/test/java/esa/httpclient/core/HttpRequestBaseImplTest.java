@@ -26,6 +26,7 @@ import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Consumer;
 
 import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
 
 class HttpRequestBaseImplTest {
@@ -62,6 +63,8 @@ class HttpRequestBaseImplTest {
                 .maxRedirects(maxRedirects)
                 .maxRetries(maxRetries)
                 .readTimeout(readTimeout)
+                .priority(3)
+                .deadline(1000L)
                 .addHeaders(headers)
                 .addHeader("HOST", "127.0.0.1")
                 .addParams(params)
@@ -86,6 +89,9 @@ class HttpRequestBaseImplTest {
         then(request.ctx.maxRetries()).isEqualTo(maxRetries);
         then(request.ctx.maxRedirects()).isEqualTo(maxRedirects);
         then(request.ctx.isUseExpectContinue()).isFalse();
+        then(request.ctx.priority()).isEqualTo(3);
+        then(request.ctx.deadline()).isEqualTo(1000L);
+        assertThrows(IllegalArgumentException.class, () -> request.deadline(-1L));
 
         final HttpHeaders headers0 = request.headers();
         then(headers0.size()).isEqualTo(5);
@@ -103,6 +109,36 @@ class HttpRequestBaseImplTest {
         then(params0.getFirst("mmmmm")).isEqualTo("nnnn");
     }
 
+    @Test
+    void testTotalTimeout() {
+        final HttpClientBuilder builder = HttpClient.create().totalTimeout(3000);
+        final HttpRequestBaseImpl request = new HttpRequestBaseImpl(builder,
+                HttpMethod.GET, "http://127.0.0.1:8080/abc");
+        then(request.totalTimeout()).isEqualTo(3000);
+        assertThrows(IllegalArgumentException.class, () -> request.totalTimeout(-1));
+
+        // The deadline is fixed once the request starts to execute
+        then(request.ctx.deadline()).isEqualTo(0L);
+        final long start = System.currentTimeMillis();
+        request.startDeadline();
+        then(request.ctx.deadline()).isBetween(start + 3000L, System.currentTimeMillis() + 3000L);
+
+        // The earlier deadline which has been set explicitly is used
+        final HttpRequestBaseImpl request1 = (HttpRequestBaseImpl) new HttpRequestBaseImpl(builder,
+                HttpMethod.GET, "http://127.0.0.1:8080/abc")
+                .deadline(1000L);
+        request1.startDeadline();
+        then(request1.ctx.deadline()).isEqualTo(1000L);
+
+        final HttpRequestBaseImpl request2 = (HttpRequestBaseImpl) new HttpRequestBaseImpl(builder,
+                HttpMethod.GET, "http://127.0.0.1:8080/abc")
+                .totalTimeout(0);
+        request2.startDeadline();
+        then(request2.ctx.deadline()).isEqualTo(0L);
+
+        then(((HttpRequestBaseImpl) request.copy()).totalTimeout()).isEqualTo(3000);
+    }
+
     @Test
     void testCopy() {
         final Map<String, String> params = new HashMap<>();
@@ -127,6 +163,8 @@ class HttpRequestBaseImplTest {
                 .maxRetries(maxRetries)
                 .maxRedirects(maxRedirects)
                 .readTimeout(readTimeout)
+                .priority(-1)
+                .deadline(2000L)
                 .addHeaders(headers)
                 .addParams(params)
                 .handle(handle)
@@ -157,6 +195,8 @@ class HttpRequestBaseImplTest {
         then(copied.uriEncode()).isEqualTo(useUriEncode);
         then(copied.ctx.maxRetries()).isEqualTo(maxRetries);
         then(copied.ctx.maxRedirects()).isEqualTo(maxRedirects);
+        then(copied.ctx.priority()).isEqualTo(-1);
+        then(copied.ctx.deadline()).isEqualTo(2000L);
         then(copied.headers().size()).isEqualTo(2);
         then(copied.paramNames().size()).isEqualTo(2);
 
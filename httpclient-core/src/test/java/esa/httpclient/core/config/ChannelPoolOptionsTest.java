@@ -18,6 +18,7 @@ package esa.httpclient.core.config;
 import org.junit.jupiter.api.Test;
 
 import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ChannelPoolOptionsTest {
 
@@ -28,16 +29,40 @@ class ChannelPoolOptionsTest {
         then(options.poolSize()).isEqualTo(512);
         then(options.waitingQueueLength()).isEqualTo(256);
         then(options.readTimeout()).isEqualTo(6000);
+        then(options.minIdle()).isEqualTo(0);
+        then(options.maxLifetime()).isEqualTo(0);
+        then(options.maxRequestsPerConnection()).isEqualTo(0);
+        then(options.minPoolSize()).isEqualTo(0);
+        then(options.healthCheckInterval()).isEqualTo(0);
+        then(options.isAdaptive()).isFalse();
     }
 
     @Test
     void testCustom() {
         final ChannelPoolOptions options = ChannelPoolOptions.options().connectTimeout(1)
-                .poolSize(2).waitingQueueLength(3).readTimeout(4).build();
+                .poolSize(2).waitingQueueLength(3).readTimeout(4).minIdle(5)
+                .maxLifetime(6).maxRequestsPerConnection(7).minPoolSize(1)
+                .healthCheckInterval(8).build();
         then(options.connectTimeout()).isEqualTo(1L);
         then(options.poolSize()).isEqualTo(2);
         then(options.waitingQueueLength()).isEqualTo(3);
         then(options.readTimeout()).isEqualTo(4);
+        then(options.minIdle()).isEqualTo(5);
+        then(options.maxLifetime()).isEqualTo(6);
+        then(options.maxRequestsPerConnection()).isEqualTo(7);
+        then(options.minPoolSize()).isEqualTo(1);
+        then(options.healthCheckInterval()).isEqualTo(8);
+        then(options.isAdaptive()).isTrue();
+        then(options.copy()).isEqualTo(options);
+        assertThrows(IllegalArgumentException.class, () -> ChannelPoolOptions.options().minIdle(-1).build());
+        assertThrows(IllegalArgumentException.class, () -> ChannelPoolOptions.options().maxLifetime(-1).build());
+        assertThrows(IllegalArgumentException.class, () -> ChannelPoolOptions.options()
+                .maxRequestsPerConnection(-1).build());
+        assertThrows(IllegalArgumentException.class, () -> ChannelPoolOptions.options().minPoolSize(-1).build());
+        assertThrows(IllegalArgumentException.class, () -> ChannelPoolOptions.options()
+                .poolSize(2).minPoolSize(3).build());
+        assertThrows(IllegalArgumentException.class, () -> ChannelPoolOptions.options()
+                .healthCheckInterval(-1).build());
     }
 
     @Test
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.config;
+
+import esa.httpclient.core.exec.RetryBudget;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class HedgingOptionsTest {
+
+    @Test
+    void testDefault() {
+        final HedgingOptions options = HedgingOptions.ofDefault();
+        then(options.delayMillis()).isEqualTo(100L);
+        then(options.percentile()).isEqualTo(0.0d);
+        then(options.maxHedges()).isEqualTo(1);
+        then(options.budget()).isNotNull();
+        then(options.budget().ratio()).isEqualTo(0.1d);
+    }
+
+    @Test
+    void testCustom() {
+        final RetryBudget budget = RetryBudget.of(0.2d, 5);
+        final HedgingOptions options = HedgingOptions.options().delayMillis(10L)
+                .percentile(0.95d).maxHedges(2).budget(budget).build();
+        then(options.delayMillis()).isEqualTo(10L);
+        then(options.percentile()).isEqualTo(0.95d);
+        then(options.maxHedges()).isEqualTo(2);
+        then(options.budget()).isSameAs(budget);
+
+        then(HedgingOptions.options().budget(null).build().budget()).isNull();
+
+        assertThrows(IllegalArgumentException.class, () -> HedgingOptions.options().delayMillis(0L).build());
+        assertThrows(IllegalArgumentException.class, () -> HedgingOptions.options().percentile(1.0d).build());
+        assertThrows(IllegalArgumentException.class, () -> HedgingOptions.options().maxHedges(0).build());
+    }
+
+    @Test
+    void testCopy() {
+        final HedgingOptions options = HedgingOptions.options().delayMillis(10L)
+                .percentile(0.95d).maxHedges(2).build();
+        final HedgingOptions copied = options.copy();
+        then(copied.delayMillis()).isEqualTo(10L);
+        then(copied.percentile()).isEqualTo(0.95d);
+        then(copied.maxHedges()).isEqualTo(2);
+        then(copied.budget()).isNotSameAs(options.budget());
+        then(copied.budget().ratio()).isEqualTo(options.budget().ratio());
+    }
+
+}
@@ -18,6 +18,7 @@ package esa.httpclient.core.config;
 import esa.httpclient.core.Context;
 import esa.httpclient.core.HttpRequest;
 import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.exec.RetryBudget;
 import esa.httpclient.core.exec.RetryPredicate;
 import esa.httpclient.core.exec.RetryPredicateImpl;
 import org.junit.jupiter.api.Test;
@@ -60,6 +61,16 @@ class RetryOptionsTest {
         then(options.maxRetries()).isEqualTo(3);
         then(options.predicate()).isSameAs(RetryPredicateImpl.DEFAULT);
         then(options.intervalMillis()).isNull();
+        then(options.budget()).isNull();
+
+        final RetryBudget budget = RetryBudget.of(0.1d, 10);
+        final RetryOptions options1 = RetryOptions.options().budget(budget).build();
+        then(options1.budget()).isSameAs(budget);
+        final RetryOptions copied = options1.copy();
+        then(copied.budget()).isNotSameAs(budget);
+        then(copied.budget().ratio()).isEqualTo(0.1d);
+        then(copied.budget().minRetriesPerSecond()).isEqualTo(10);
+        then(copied.budget().windowMillis()).isEqualTo(budget.windowMillis());
     }
 
 }
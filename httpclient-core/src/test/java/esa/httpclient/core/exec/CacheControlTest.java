@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.http.HttpHeaders;
+import esa.commons.netty.http.Http1HeadersImpl;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class CacheControlTest {
+
+    @Test
+    void testParse() {
+        final HttpHeaders headers = new Http1HeadersImpl();
+        headers.add("Cache-Control", "Public, max-age=60, s-maxage=\"120\"");
+        headers.add("Cache-Control", "stale-while-revalidate=30,proxy-revalidate, foo=bar");
+        final CacheControl cc = CacheControl.parse(headers);
+        then(cc.isPublic).isTrue();
+        then(cc.isPrivate).isFalse();
+        then(cc.noStore).isFalse();
+        then(cc.noCache).isFalse();
+        then(cc.mustRevalidate).isTrue();
+        then(cc.maxAge).isEqualTo(60L);
+        then(cc.sMaxAge).isEqualTo(120L);
+        then(cc.staleWhileRevalidate).isEqualTo(30L);
+
+        headers.set("Cache-Control", "no-store, no-cache=\"Set-Cookie\", private");
+        final CacheControl cc1 = CacheControl.parse(headers);
+        then(cc1.noStore).isTrue();
+        then(cc1.noCache).isTrue();
+        then(cc1.isPrivate).isTrue();
+        then(cc1.maxAge).isEqualTo(-1L);
+    }
+
+    @Test
+    void testInvalidSeconds() {
+        final HttpHeaders headers = new Http1HeadersImpl();
+        headers.set("Cache-Control", "max-age=abc, s-maxage, stale-while-revalidate=99999999999999999999");
+        final CacheControl cc = CacheControl.parse(headers);
+        then(cc.maxAge).isEqualTo(0L);
+        then(cc.sMaxAge).isEqualTo(0L);
+        then(cc.staleWhileRevalidate).isEqualTo(Integer.MAX_VALUE);
+    }
+
+    @Test
+    void testPragma() {
+        final HttpHeaders headers = new Http1HeadersImpl();
+        then(CacheControl.parse(headers).noCache).isFalse();
+
+        headers.set("Pragma", "no-cache");
+        then(CacheControl.parse(headers).noCache).isTrue();
+
+        // Pragma is ignored if Cache-Control is present.
+        headers.set("Cache-Control", "max-age=10");
+        then(CacheControl.parse(headers).noCache).isFalse();
+    }
+}
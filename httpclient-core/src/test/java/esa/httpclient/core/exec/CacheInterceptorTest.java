@@ -0,0 +1,403 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.netty.core.Buffer;
+import esa.commons.netty.core.Buffers;
+import esa.httpclient.core.Context;
+import esa.httpclient.core.HttpClient;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.metrics.HttpCacheMetric;
+import esa.httpclient.core.mock.MockContext;
+import esa.httpclient.core.mock.MockHttpResponse;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCountUtil;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static esa.httpclient.core.exec.RequestExecutorImpl.CUSTOM_HANDLE_KEY;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class CacheInterceptorTest {
+
+    private static final String URI = "http://127.0.0.1:8080/abc";
+
+    private final HttpClient client = HttpClient.ofDefault();
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+    private final HttpCache cache = new HttpCache(1024 * 1024, 1024, false, false, clock::get);
+    private final CacheInterceptor interceptor = new CacheInterceptor(cache);
+    private final List<HttpRequest> requests = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<HttpResponse>> exchanges = new CopyOnWriteArrayList<>();
+    private final MockContext ctx = new MockContext();
+    private final List<Context> boundCtxs = new CopyOnWriteArrayList<>();
+    private final ExecChain chain = chain();
+
+    @Test
+    void testFresh() {
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "max-age=60"));
+        then(response1.getNow(null).body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+
+        clock.addAndGet(10_000L);
+        final HttpResponse response2 = interceptor.proceed(client.get(URI), chain).getNow(null);
+        then(exchanges.size()).isEqualTo(1);
+        then(response2.status()).isEqualTo(200);
+        then(response2.aggregated()).isTrue();
+        then(response2.headers().get("Age")).isEqualTo("10");
+        then(response2.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+
+        // Every response has its own copy of the stored body.
+        response2.body().readBytes(new byte[5]);
+        then(interceptor.proceed(client.get(URI), chain).getNow(null).body()
+                .string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+
+        // Stale without validators
+        clock.addAndGet(60_000L);
+        interceptor.proceed(client.get(URI), chain);
+        then(exchanges.size()).isEqualTo(2);
+        then(requests.get(1).getHeader("If-None-Match")).isNull();
+
+        final HttpCacheMetric metric = cache.metric();
+        then(metric.hits()).isEqualTo(2L);
+        then(metric.misses()).isEqualTo(2L);
+        then(metric.entries()).isEqualTo(1L);
+        then(metric.weightedSize()).isGreaterThan(5L);
+    }
+
+    @Test
+    void testRequestDirectives() {
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "max-age=60"));
+        clock.addAndGet(10_000L);
+
+        interceptor.proceed(client.get(URI).addHeader("Cache-Control", "max-age=5"), chain);
+        then(exchanges.size()).isEqualTo(2);
+        interceptor.proceed(client.get(URI).addHeader("Cache-Control", "no-cache"), chain);
+        then(exchanges.size()).isEqualTo(3);
+        interceptor.proceed(client.get(URI).addHeader("Pragma", "no-cache"), chain);
+        then(exchanges.size()).isEqualTo(4);
+        interceptor.proceed(client.get(URI).addHeader("Cache-Control", "no-store"), chain);
+        then(exchanges.size()).isEqualTo(5);
+        interceptor.proceed(client.get(URI).addHeader("Range", "bytes=0-1"), chain);
+        then(exchanges.size()).isEqualTo(6);
+        interceptor.proceed(client.get(URI), chain);
+        then(exchanges.size()).isEqualTo(6);
+
+        ctx.setAttr(CUSTOM_HANDLE_KEY, true);
+        interceptor.proceed(client.get(URI), chain);
+        then(exchanges.size()).isEqualTo(7);
+    }
+
+    @Test
+    void testUnstorable() {
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "no-store, max-age=60"));
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(1).complete(response(500, "Hello", "Cache-Control", "max-age=60"));
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(2).complete(response(200, "Hello"));
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(3).complete(response(200, "Hello", "Cache-Control", "max-age=60", "Vary", "*"));
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(4).complete(response(200, "Hello-Hello", "Cache-Control", "max-age=60"));
+        then(cache.metric().entries()).isEqualTo(1L);
+
+        // Larger than the maximum entry size.
+        final StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2048; i++) {
+            sb.append('a');
+        }
+        interceptor.proceed(client.get(URI + "/large"), chain);
+        exchanges.get(5).complete(response(200, sb.toString(), "Cache-Control", "max-age=60"));
+        then(cache.metric().entries()).isEqualTo(1L);
+    }
+
+    @Test
+    void testShared() {
+        final HttpCache sharedCache = new HttpCache(1024 * 1024, 1024, true, false, clock::get);
+        final CacheInterceptor shared = new CacheInterceptor(sharedCache);
+
+        shared.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "private, max-age=60"));
+        shared.proceed(client.get(URI).addHeader("Authorization", "xyz"), chain);
+        exchanges.get(1).complete(response(200, "Hello", "Cache-Control", "max-age=60"));
+        then(sharedCache.metric().entries()).isEqualTo(0L);
+
+        // s-maxage is preferred by shared cache.
+        shared.proceed(client.get(URI).addHeader("Authorization", "xyz"), chain);
+        exchanges.get(2).complete(response(200, "Hello", "Cache-Control", "max-age=60, s-maxage=5"));
+        then(sharedCache.metric().entries()).isEqualTo(1L);
+        clock.addAndGet(10_000L);
+        shared.proceed(client.get(URI), chain);
+        then(exchanges.size()).isEqualTo(4);
+    }
+
+    @Test
+    void testVary() {
+        interceptor.proceed(client.get(URI).addHeader("Accept", "text/plain"), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "max-age=60",
+                "Vary", "Accept"));
+
+        interceptor.proceed(client.get(URI).addHeader("Accept", "text/plain"), chain);
+        then(exchanges.size()).isEqualTo(1);
+        interceptor.proceed(client.get(URI).addHeader("Accept", "text/html"), chain);
+        then(exchanges.size()).isEqualTo(2);
+        interceptor.proceed(client.get(URI), chain);
+        then(exchanges.size()).isEqualTo(3);
+    }
+
+    @Test
+    void testRevalidate() {
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "max-age=10", "ETag", "\"v1\"",
+                "Last-Modified", "Wed, 21 Oct 2015 07:28:00 GMT"));
+
+        // Not modified
+        clock.addAndGet(20_000L);
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client.get(URI), chain);
+        then(requests.get(1).getHeader("If-None-Match")).isEqualTo("\"v1\"");
+        then(requests.get(1).getHeader("If-Modified-Since")).isEqualTo("Wed, 21 Oct 2015 07:28:00 GMT");
+        exchanges.get(1).complete(response(304, "", "Cache-Control", "max-age=30", "ETag", "\"v1\""));
+        then(response1.getNow(null).status()).isEqualTo(200);
+        then(response1.getNow(null).headers().get("Cache-Control")).isEqualTo("max-age=30");
+        then(response1.getNow(null).body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+
+        // Refreshed
+        clock.addAndGet(20_000L);
+        interceptor.proceed(client.get(URI), chain);
+        then(exchanges.size()).isEqualTo(2);
+
+        // Modified
+        clock.addAndGet(20_000L);
+        final CompletableFuture<HttpResponse> response2 = interceptor.proceed(client.get(URI), chain);
+        exchanges.get(2).complete(response(200, "World", "Cache-Control", "max-age=10", "ETag", "\"v2\""));
+        then(response2.getNow(null).body().string(StandardCharsets.UTF_8)).isEqualTo("World");
+        then(interceptor.proceed(client.get(URI), chain).getNow(null).body()
+                .string(StandardCharsets.UTF_8)).isEqualTo("World");
+        then(exchanges.size()).isEqualTo(3);
+
+        final HttpCacheMetric metric = cache.metric();
+        then(metric.revalidations()).isEqualTo(2L);
+        then(metric.revalidated()).isEqualTo(1L);
+        then(metric.hits()).isEqualTo(2L);
+        then(metric.misses()).isEqualTo(1L);
+    }
+
+    @Test
+    void testStaleWhileRevalidate() {
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control",
+                "max-age=1, stale-while-revalidate=60", "ETag", "\"v1\""));
+
+        clock.addAndGet(5_000L);
+        ctx.deadline(System.currentTimeMillis() + 1_000L);
+        final HttpResponse response1 = interceptor.proceed(client.get(URI), chain).getNow(null);
+        then(response1.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        then(exchanges.size()).isEqualTo(2);
+        then(requests.get(1).getHeader("If-None-Match")).isEqualTo("\"v1\"");
+        // The background revalidation isn't bound to the deadline of the request which triggers it.
+        then(boundCtxs.size()).isEqualTo(1);
+        then(boundCtxs.get(0).deadline()).isEqualTo(0L);
+        then(ctx.deadline()).isNotEqualTo(0L);
+
+        // Only one revalidation is in flight.
+        then(interceptor.proceed(client.get(URI), chain).getNow(null)).isNotNull();
+        then(exchanges.size()).isEqualTo(2);
+
+        exchanges.get(1).complete(response(304, "", "Cache-Control", "max-age=60"));
+        then(interceptor.proceed(client.get(URI), chain).getNow(null)).isNotNull();
+        then(exchanges.size()).isEqualTo(2);
+        then(cache.metric().hits()).isEqualTo(3L);
+
+        // Beyond stale-while-revalidate
+        clock.addAndGet(200_000L);
+        then(interceptor.proceed(client.get(URI), chain).isDone()).isFalse();
+        then(exchanges.size()).isEqualTo(3);
+    }
+
+    @Test
+    void testInvalidate() {
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "max-age=60"));
+
+        interceptor.proceed(client.post(URI), chain);
+        exchanges.get(1).complete(response(500, ""));
+        then(cache.metric().entries()).isEqualTo(1L);
+
+        interceptor.proceed(client.delete(URI), chain);
+        exchanges.get(2).complete(response(204, ""));
+        then(cache.metric().entries()).isEqualTo(0L);
+    }
+
+    @Test
+    void testReleasedWhileRevalidating() {
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "max-age=10", "ETag", "\"v1\""));
+
+        clock.addAndGet(20_000L);
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client.get(URI), chain);
+        cache.clear();
+        exchanges.get(1).complete(response(304, "", "Cache-Control", "max-age=30", "ETag", "\"v1\""));
+
+        // The request is re-issued unconditionally instead of passing the 304 up.
+        then(response.isDone()).isFalse();
+        then(requests.get(2).getHeader("If-None-Match")).isNull();
+        exchanges.get(2).complete(response(200, "World", "Cache-Control", "max-age=10", "ETag", "\"v2\""));
+        then(response.getNow(null).status()).isEqualTo(200);
+        then(response.getNow(null).body().string(StandardCharsets.UTF_8)).isEqualTo("World");
+        then(cache.get(URI)).isNotNull();
+        then(cache.metric().misses()).isEqualTo(2L);
+
+        // Cancellation reaches the re-issued exchange.
+        clock.addAndGet(20_000L);
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client.get(URI), chain);
+        cache.clear();
+        exchanges.get(3).complete(response(304, "", "ETag", "\"v2\""));
+        response1.cancel(false);
+        then(exchanges.get(4).isCancelled()).isTrue();
+    }
+
+    @Test
+    void testCancel() {
+        // Cancellation reaches the underlying exchange, so that it can be cancelled on the wire.
+        interceptor.proceed(client.get(URI), chain).cancel(false);
+        then(exchanges.get(0).isCancelled()).isTrue();
+
+        interceptor.proceed(client.delete(URI), chain).cancel(false);
+        then(exchanges.get(1).isCancelled()).isTrue();
+        then(cache.metric().entries()).isEqualTo(0L);
+    }
+
+    @Test
+    void testEviction() {
+        final HttpCache small = new HttpCache(1024, 512, false, false, clock::get);
+        final CacheInterceptor interceptor0 = new CacheInterceptor(small);
+        for (int i = 0; i < 10; i++) {
+            interceptor0.proceed(client.get(URI + i), chain);
+            exchanges.get(i).complete(response(200, "Hello", "Cache-Control", "max-age=60"));
+        }
+        then(small.metric().entries()).isLessThan(10L);
+        then(small.metric().evictions()).isGreaterThan(0L);
+        then(small.metric().weightedSize()).isLessThanOrEqualTo(1024L);
+    }
+
+    @Test
+    void testRetainOnRead() {
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "max-age=60"));
+        final CacheEntry entry = cache.get(URI);
+        then(entry.body.refCnt()).isEqualTo(1);
+
+        // The served body is a slice of the stored one, which is retained until the response is released.
+        final HttpResponse response = interceptor.proceed(client.get(URI), chain).getNow(null);
+        then(response.body().getByteBuf().unwrap()).isSameAs(entry.body);
+        then(entry.body.refCnt()).isEqualTo(2);
+        cache.clear();
+        then(entry.body.refCnt()).isEqualTo(1);
+        then(response.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        then(ReferenceCountUtil.release(response)).isTrue();
+        then(entry.body.refCnt()).isEqualTo(0);
+
+        // Releasing the served response more than once won't affect the stored one.
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(1).complete(response(200, "World", "Cache-Control", "max-age=60"));
+        final HttpResponse response1 = interceptor.proceed(client.get(URI), chain).getNow(null);
+        ReferenceCountUtil.release(response1);
+        assertThrows(IllegalReferenceCountException.class, () -> ReferenceCountUtil.release(response1));
+        then(cache.get(URI).body.refCnt()).isEqualTo(1);
+
+        // Released entry is regarded as a miss.
+        then(cache.serve(entry, 0L)).isNull();
+    }
+
+    @Test
+    void testCopyOnRead() {
+        final HttpCache copying = new HttpCache(1024 * 1024, 1024, false, true, clock::get);
+        final CacheInterceptor interceptor0 = new CacheInterceptor(copying);
+        interceptor0.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "max-age=60"));
+        final CacheEntry entry = copying.get(URI);
+
+        final HttpResponse response = interceptor0.proceed(client.get(URI), chain).getNow(null);
+        then(response.body().getByteBuf().unwrap()).isNotSameAs(entry.body);
+        then(entry.body.refCnt()).isEqualTo(1);
+
+        // The served body is still readable after the stored one has been freed.
+        copying.clear();
+        then(entry.body.refCnt()).isEqualTo(0);
+        then(response.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        then(copying.serve(entry, 0L)).isNull();
+    }
+
+    @Test
+    void testReleaseUnconsumed() {
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control",
+                "max-age=1, stale-while-revalidate=60", "ETag", "\"v1\""));
+
+        clock.addAndGet(5_000L);
+        ReferenceCountUtil.release(interceptor.proceed(client.get(URI), chain).getNow(null));
+        exchanges.get(1).complete(response(304, "", "Cache-Control", "max-age=60"));
+
+        // The response which is served by the background revalidation has been released.
+        then(cache.get(URI).body.refCnt()).isEqualTo(1);
+    }
+
+    private static HttpResponse response(int status, String body, String... headers) {
+        final Buffer buffer = Buffers.buffer(body.getBytes(StandardCharsets.UTF_8));
+        final MockHttpResponse response = new MockHttpResponse(status) {
+            @Override
+            public Buffer body() {
+                return buffer;
+            }
+
+            @Override
+            public boolean aggregated() {
+                return true;
+            }
+        };
+        for (int i = 0; i < headers.length; i += 2) {
+            response.headers().add(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+
+    private ExecChain chain() {
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.ctx()).thenReturn(ctx);
+        when(chain.withCtx(any())).thenAnswer(invocation -> {
+            boundCtxs.add(invocation.getArgument(0));
+            return chain;
+        });
+        when(chain.proceed(any())).thenAnswer(invocation -> {
+            requests.add(invocation.getArgument(0));
+            final CompletableFuture<HttpResponse> exchange = new CompletableFuture<>();
+            exchanges.add(exchange);
+            return exchange;
+        });
+        return chain;
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.HttpClient;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.exception.CircuitBreakerOpenException;
+import esa.httpclient.core.exception.DeadlineExceededException;
+import esa.httpclient.core.metrics.CircuitBreakerMetric;
+import esa.httpclient.core.metrics.CircuitBreakerMetric.State;
+import esa.httpclient.core.mock.MockContext;
+import esa.httpclient.core.mock.MockHttpResponse;
+import esa.httpclient.core.util.Futures;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CircuitBreakerInterceptorTest {
+
+    private final HttpClient client = HttpClient.ofDefault();
+
+    @Test
+    void testProceed() {
+        final CircuitBreaker breaker = CircuitBreaker.builder().minimumCalls(4).build();
+        final CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(breaker);
+        final HttpRequest request = client.get("http://127.0.0.1:8080/abc");
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.ctx()).thenReturn(new MockContext());
+
+        // Success
+        when(chain.proceed(any())).thenReturn(Futures.completed(new MockHttpResponse(200)));
+        then(interceptor.proceed(request, chain).isCompletedExceptionally()).isFalse();
+        then(interceptor.proceed(request, chain).isCompletedExceptionally()).isFalse();
+        final CircuitBreakerMetric metric = breaker.metrics().get("127.0.0.1:8080");
+        then(metric.calls()).isEqualTo(2L);
+        then(metric.failureRate()).isEqualTo(0.0d);
+
+        // 5xx and exceptions are failures.
+        when(chain.proceed(any())).thenReturn(Futures.completed(new MockHttpResponse(503)));
+        interceptor.proceed(request, chain);
+        when(chain.proceed(any())).thenReturn(Futures.completed(new ConnectException()));
+        interceptor.proceed(request, chain);
+        then(metric.state()).isSameAs(State.OPEN);
+        verify(chain, times(4)).proceed(any());
+
+        // Fail fast without proceeding
+        final CompletableFuture<HttpResponse> rejected = interceptor.proceed(request, chain);
+        then(Futures.getCause(rejected)).isInstanceOf(CircuitBreakerOpenException.class);
+        then(Futures.getCause(rejected).getStackTrace()).isEmpty();
+        verify(chain, times(4)).proceed(any());
+        then(metric.rejected()).isEqualTo(1L);
+    }
+
+    @Test
+    void testCancelled() {
+        final CircuitBreaker breaker = CircuitBreaker.builder().minimumCalls(1).build();
+        final CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(breaker);
+        final ExecChain chain = mock(ExecChain.class);
+        final CompletableFuture<HttpResponse> proceeding = new CompletableFuture<>();
+        when(chain.ctx()).thenReturn(new MockContext());
+        when(chain.proceed(any())).thenReturn(proceeding);
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc"), chain);
+        then(response).isSameAs(proceeding);
+        response.cancel(false);
+
+        // The cancelled call is not a failure.
+        final CircuitBreakerMetric metric = breaker.metrics().get("127.0.0.1:8080");
+        then(metric.calls()).isEqualTo(0L);
+        then(metric.state()).isSameAs(State.CLOSED);
+    }
+
+    @Test
+    void testDeadlineExceeded() throws Exception {
+        final CircuitBreaker breaker = CircuitBreaker.builder().minimumCalls(1).slowCallDurationMillis(1000L).build();
+        final CircuitBreakerInterceptor interceptor = new CircuitBreakerInterceptor(breaker);
+        final MockContext ctx = new MockContext();
+
+        // The upstream never responds.
+        final ExecChain upstream = mock(ExecChain.class);
+        when(upstream.ctx()).thenReturn(ctx);
+        when(upstream.proceed(any())).thenReturn(new CompletableFuture<>());
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.ctx()).thenReturn(ctx);
+        when(chain.proceed(any())).thenAnswer(invocation -> interceptor.proceed(invocation.getArgument(0),
+                upstream));
+
+        ctx.deadline(System.currentTimeMillis() + 50L);
+        final CompletableFuture<HttpResponse> response = new DeadlineInterceptor()
+                .proceed(client.get("http://127.0.0.1:8080/abc"), chain);
+        then(response.handle((r, t) -> Futures.unwrapped(t)).get(3L, TimeUnit.SECONDS))
+                .isInstanceOf(DeadlineExceededException.class);
+
+        // The call cut off by the deadline is both failed and slow.
+        final CircuitBreakerMetric metric = breaker.metrics().get("127.0.0.1:8080");
+        final long waitUntil = System.currentTimeMillis() + 3000L;
+        while (metric.calls() == 0L && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10L);
+        }
+        then(metric.calls()).isEqualTo(1L);
+        then(metric.failureRate()).isEqualTo(1.0d);
+        then(metric.slowCallRate()).isEqualTo(1.0d);
+        then(metric.state()).isSameAs(State.OPEN);
+    }
+
+}
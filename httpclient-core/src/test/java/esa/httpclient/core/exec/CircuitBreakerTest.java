@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.metrics.CircuitBreakerMetric;
+import esa.httpclient.core.metrics.CircuitBreakerMetric.State;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class CircuitBreakerTest {
+
+    private static final String ADDRESS = "127.0.0.1:8080";
+
+    @Test
+    void testConstruct() {
+        final CircuitBreaker breaker = CircuitBreaker.ofDefault();
+        then(breaker.failureRateThreshold()).isEqualTo(0.5d);
+        then(breaker.slowCallRateThreshold()).isEqualTo(1.0d);
+        then(breaker.slowCallDurationMillis()).isEqualTo(0L);
+        then(breaker.minimumCalls()).isEqualTo(20);
+        then(breaker.windowMillis()).isEqualTo(10_000L);
+        then(breaker.openDurationMillis()).isEqualTo(5_000L);
+        then(breaker.halfOpenCalls()).isEqualTo(3);
+
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder()
+                .failureRateThreshold(0.0d).build());
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder()
+                .slowCallRateThreshold(1.1d).build());
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder()
+                .slowCallDurationMillis(-1L).build());
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder()
+                .minimumCalls(0).build());
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder()
+                .windowMillis(1L).build());
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder()
+                .openDurationMillis(0L).build());
+        assertThrows(IllegalArgumentException.class, () -> CircuitBreaker.builder()
+                .halfOpenCalls(0).build());
+    }
+
+    @Test
+    void testOpenByFailureRate() {
+        final AtomicLong clock = new AtomicLong();
+        final CircuitBreaker breaker = breaker(clock, 0L);
+
+        for (int i = 0; i < 5; i++) {
+            then(breaker.tryAcquire(ADDRESS)).isSameAs(State.CLOSED);
+            breaker.onResult(ADDRESS, State.CLOSED, false, 0L);
+        }
+        for (int i = 0; i < 4; i++) {
+            then(breaker.tryAcquire(ADDRESS)).isSameAs(State.CLOSED);
+            breaker.onResult(ADDRESS, State.CLOSED, true, 0L);
+        }
+        final CircuitBreakerMetric metric = breaker.metrics().get(ADDRESS);
+        then(metric.state()).isSameAs(State.CLOSED);
+        then(metric.calls()).isEqualTo(9L);
+
+        breaker.onResult(ADDRESS, State.CLOSED, true, 0L);
+        then(metric.state()).isSameAs(State.OPEN);
+        then(metric.failureRate()).isEqualTo(0.5d);
+
+        // Reject fast while open
+        then(breaker.tryAcquire(ADDRESS)).isNull();
+        then(breaker.tryAcquire(ADDRESS)).isNull();
+        then(metric.rejected()).isEqualTo(2L);
+
+        // Other addresses are not affected.
+        then(breaker.tryAcquire("127.0.0.1:9090")).isSameAs(State.CLOSED);
+    }
+
+    @Test
+    void testOpenBySlowCallRate() {
+        final AtomicLong clock = new AtomicLong();
+        final CircuitBreaker breaker = breaker(clock, 100L);
+
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(ADDRESS, State.CLOSED, false, TimeUnit.MILLISECONDS.toNanos(200L));
+        }
+        final CircuitBreakerMetric metric = breaker.metrics().get(ADDRESS);
+        then(metric.slowCallRate()).isEqualTo(1.0d);
+        then(metric.state()).isSameAs(State.OPEN);
+    }
+
+    @Test
+    void testWindowSlides() {
+        final AtomicLong clock = new AtomicLong();
+        final CircuitBreaker breaker = breaker(clock, 0L);
+
+        for (int i = 0; i < 9; i++) {
+            breaker.onResult(ADDRESS, State.CLOSED, true, 0L);
+        }
+        // The failures expire after the window.
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(11L));
+        breaker.onResult(ADDRESS, State.CLOSED, true, 0L);
+        final CircuitBreakerMetric metric = breaker.metrics().get(ADDRESS);
+        then(metric.calls()).isEqualTo(1L);
+        then(metric.state()).isSameAs(State.CLOSED);
+    }
+
+    @Test
+    void testHalfOpen() {
+        final AtomicLong clock = new AtomicLong();
+        final CircuitBreaker breaker = breaker(clock, 0L);
+        open(breaker);
+        final CircuitBreakerMetric metric = breaker.metrics().get(ADDRESS);
+
+        // Permits limited probes after the open duration.
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5L));
+        then(breaker.tryAcquire(ADDRESS)).isSameAs(State.HALF_OPEN);
+        then(metric.state()).isSameAs(State.HALF_OPEN);
+        then(breaker.tryAcquire(ADDRESS)).isSameAs(State.HALF_OPEN);
+        then(breaker.tryAcquire(ADDRESS)).isNull();
+
+        // A cancelled probe releases its permission.
+        breaker.onCancelled(ADDRESS, State.HALF_OPEN);
+        then(breaker.tryAcquire(ADDRESS)).isSameAs(State.HALF_OPEN);
+
+        // Closes once all the probes succeed.
+        breaker.onResult(ADDRESS, State.HALF_OPEN, false, 0L);
+        then(metric.state()).isSameAs(State.HALF_OPEN);
+        breaker.onResult(ADDRESS, State.HALF_OPEN, false, 0L);
+        then(metric.state()).isSameAs(State.CLOSED);
+        then(metric.calls()).isEqualTo(0L);
+        then(breaker.tryAcquire(ADDRESS)).isSameAs(State.CLOSED);
+
+        // Opens again once a probe fails.
+        open(breaker);
+        clock.addAndGet(TimeUnit.SECONDS.toNanos(5L));
+        then(breaker.tryAcquire(ADDRESS)).isSameAs(State.HALF_OPEN);
+        breaker.onResult(ADDRESS, State.HALF_OPEN, true, 0L);
+        then(metric.state()).isSameAs(State.OPEN);
+        then(breaker.tryAcquire(ADDRESS)).isNull();
+    }
+
+    @Test
+    void testCopy() {
+        final CircuitBreaker breaker = CircuitBreaker.builder().minimumCalls(1).build();
+        breaker.onResult(ADDRESS, State.CLOSED, true, 0L);
+        final CircuitBreaker copied = breaker.copy();
+        then(copied.minimumCalls()).isEqualTo(1);
+        then(copied.metrics()).isEmpty();
+        then(breaker.metrics().get(ADDRESS).state()).isSameAs(State.OPEN);
+    }
+
+    private static void open(CircuitBreaker breaker) {
+        for (int i = 0; i < 10; i++) {
+            breaker.onResult(ADDRESS, State.CLOSED, true, 0L);
+        }
+        then(breaker.metrics().get(ADDRESS).state()).isSameAs(State.OPEN);
+    }
+
+    private static CircuitBreaker breaker(AtomicLong clock, long slowCallDurationMillis) {
+        return new CircuitBreaker(0.5d, 1.0d, slowCallDurationMillis, 10, 10_000L, 5_000L,
+                2, clock::get);
+    }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.http.HttpVersion;
+import esa.commons.netty.core.Buffer;
+import esa.commons.netty.core.Buffers;
+import esa.commons.netty.http.Http1HeadersImpl;
+import esa.httpclient.core.Context;
+import esa.httpclient.core.HttpClient;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.mock.MockContext;
+import esa.httpclient.core.mock.MockHttpResponse;
+import esa.httpclient.core.util.Futures;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.ConnectException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static esa.httpclient.core.exec.RequestExecutorImpl.CUSTOM_HANDLE_KEY;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CoalescingInterceptorTest {
+
+    private final HttpClient client = HttpClient.ofDefault();
+
+    @Test
+    void testCoalesce() {
+        final List<CompletableFuture<HttpResponse>> exchanges = new CopyOnWriteArrayList<>();
+        final ExecChain chain = chain(new MockContext(), exchanges);
+        final CoalescingInterceptor interceptor = new CoalescingInterceptor();
+
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc").addParam("a", "b"), chain);
+        final CompletableFuture<HttpResponse> response2 = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc").addParam("a", "b"), chain);
+        then(exchanges.size()).isEqualTo(1);
+        then(interceptor.inFlights()).isEqualTo(1);
+
+        // Different params, headers or methods are not coalesced.
+        interceptor.proceed(client.get("http://127.0.0.1:8080/abc").addParam("a", "c"), chain);
+        interceptor.proceed(client.get("http://127.0.0.1:8080/abc").addParam("a", "b")
+                .addHeader("Authorization", "xyz"), chain);
+        interceptor.proceed(client.head("http://127.0.0.1:8080/abc").addParam("a", "b"), chain);
+        then(exchanges.size()).isEqualTo(4);
+
+        final Buffer body = Buffers.buffer("Hello".getBytes(StandardCharsets.UTF_8));
+        final MockHttpResponse rsp = new MockHttpResponse(200) {
+            @Override
+            public Buffer body() {
+                return body;
+            }
+        };
+        rsp.headers().set("a", "b");
+        exchanges.get(0).complete(rsp);
+        then(interceptor.inFlights()).isEqualTo(3);
+
+        // Every request has its own view of the body and headers.
+        final HttpResponse view1 = response1.getNow(null);
+        final HttpResponse view2 = response2.getNow(null);
+        then(view1).isNotSameAs(view2);
+        then(view1.status()).isEqualTo(200);
+        then(view1.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        view1.body().readBytes(new byte[5]);
+        then(view1.body().readableBytes()).isEqualTo(0);
+        then(view2.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        then(view2.body().readableBytes()).isEqualTo(5);
+        view1.headers().set("a", "c");
+        then(view2.headers().get("a")).isEqualTo("b");
+
+        // A new exchange is started once the previous one has completed.
+        interceptor.proceed(client.get("http://127.0.0.1:8080/abc").addParam("a", "b"), chain);
+        then(exchanges.size()).isEqualTo(5);
+    }
+
+    @Test
+    void testFailure() {
+        final List<CompletableFuture<HttpResponse>> exchanges = new CopyOnWriteArrayList<>();
+        final ExecChain chain = chain(new MockContext(), exchanges);
+        final CoalescingInterceptor interceptor = new CoalescingInterceptor();
+
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc"), chain);
+        final CompletableFuture<HttpResponse> response2 = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc"), chain);
+
+        // Cancelling a waiter only detaches it from the shared exchange.
+        response2.cancel(false);
+        then(exchanges.get(0).isCancelled()).isFalse();
+
+        final ConnectException ex = new ConnectException();
+        exchanges.get(0).completeExceptionally(ex);
+        then(Futures.getCause(response1)).isSameAs(ex);
+        then(interceptor.inFlights()).isEqualTo(0);
+    }
+
+    @Test
+    void testDetach() {
+        final List<CompletableFuture<HttpResponse>> exchanges = new CopyOnWriteArrayList<>();
+        final ExecChain chain = chain(new MockContext(), exchanges);
+        final CoalescingInterceptor interceptor = new CoalescingInterceptor();
+
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc"), chain);
+        final CompletableFuture<HttpResponse> response2 = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc"), chain);
+        then(exchanges.size()).isEqualTo(1);
+
+        // The one which starts the exchange detaches, and the shared exchange is kept for the other one.
+        response1.cancel(false);
+        then(exchanges.get(0).isCancelled()).isFalse();
+        then(interceptor.inFlights()).isEqualTo(1);
+
+        // Cancelled once all the waiters have detached.
+        response2.cancel(false);
+        then(exchanges.get(0).isCancelled()).isTrue();
+        then(interceptor.inFlights()).isEqualTo(0);
+
+        // A new exchange is started for the subsequent request.
+        final CompletableFuture<HttpResponse> response3 = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc"), chain);
+        then(exchanges.size()).isEqualTo(2);
+        exchanges.get(1).complete(new MockHttpResponse(200));
+        then(response3.getNow(null).status()).isEqualTo(200);
+    }
+
+    @Test
+    void testDeadlineAndPriority() {
+        final List<CompletableFuture<HttpResponse>> exchanges = new CopyOnWriteArrayList<>();
+        final MockContext ctx = new MockContext();
+        final long deadline = System.currentTimeMillis() + 1000L;
+        ctx.deadline(deadline);
+        final ExecChain chain = chain(ctx, exchanges);
+        final CoalescingInterceptor interceptor = new CoalescingInterceptor();
+
+        // The shared exchange is sent without the deadline of the request which starts it.
+        interceptor.proceed(client.get("http://127.0.0.1:8080/abc"), chain);
+        final ArgumentCaptor<Context> shared = ArgumentCaptor.forClass(Context.class);
+        verify(chain).withCtx(shared.capture());
+        then(shared.getValue()).isNotSameAs(ctx);
+        then(shared.getValue().deadline()).isEqualTo(0L);
+        then(ctx.deadline()).isEqualTo(deadline);
+
+        // Requests with different priorities are not coalesced.
+        ctx.priority(1);
+        interceptor.proceed(client.get("http://127.0.0.1:8080/abc"), chain);
+        then(exchanges.size()).isEqualTo(2);
+        interceptor.proceed(client.get("http://127.0.0.1:8080/abc"), chain);
+        then(exchanges.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testReferenceCounted() {
+        final List<CompletableFuture<HttpResponse>> exchanges = new CopyOnWriteArrayList<>();
+        final ExecChain chain = chain(new MockContext(), exchanges);
+        final CoalescingInterceptor interceptor = new CoalescingInterceptor();
+
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc"), chain);
+        final CompletableFuture<HttpResponse> response2 = interceptor.proceed(client
+                .get("http://127.0.0.1:8080/abc"), chain);
+        interceptor.proceed(client.get("http://127.0.0.1:8080/abc"), chain).cancel(false);
+        then(exchanges.size()).isEqualTo(1);
+
+        // A response served by the cache, whose body is a retained slice of the stored one.
+        final ByteBuf stored = PooledByteBufAllocator.DEFAULT.directBuffer();
+        stored.writeBytes("Hello".getBytes(StandardCharsets.UTF_8));
+        final CacheEntry entry = new CacheEntry(200, HttpVersion.HTTP_1_1, new Http1HeadersImpl(), new String[0],
+                stored, 0L, 0L, false);
+        exchanges.get(0).complete(entry.toResponse(stored.retainedSlice(), 0L));
+
+        // Every view retains the shared response, which is released by the interceptor and the cancelled view,
+        // so that the stored body is held until all the views are released.
+        final HttpResponse view1 = response1.getNow(null);
+        final HttpResponse view2 = response2.getNow(null);
+        then(view1).isInstanceOf(ReferenceCounted.class);
+        then(stored.refCnt()).isEqualTo(2);
+        then(view1.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        then(ReferenceCountUtil.release(view1)).isTrue();
+        then(view2.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        then(ReferenceCountUtil.release(view2)).isTrue();
+        then(stored.refCnt()).isEqualTo(1);
+        entry.release();
+        then(stored.refCnt()).isEqualTo(0);
+
+        // A response which is completed at once is also viewed by the request which starts the exchange.
+        final ExecChain completing = chain(new MockContext(), exchanges);
+        when(completing.proceed(any())).thenReturn(CompletableFuture.completedFuture(
+                new MockHttpResponse(200)));
+        then(interceptor.proceed(client.get("http://127.0.0.1:8080/abc"), completing).getNow(null).status())
+                .isEqualTo(200);
+        then(interceptor.inFlights()).isEqualTo(0);
+    }
+
+    @Test
+    void testUncoalescable() {
+        final List<CompletableFuture<HttpResponse>> exchanges = new CopyOnWriteArrayList<>();
+        final MockContext ctx = new MockContext();
+        final ExecChain chain = chain(ctx, exchanges);
+        final CoalescingInterceptor interceptor = new CoalescingInterceptor();
+
+        then(interceptor.proceed(client.post("http://127.0.0.1:8080/abc"), chain))
+                .isSameAs(exchanges.get(0));
+        then(interceptor.proceed(client.post("http://127.0.0.1:8080/abc"), chain))
+                .isSameAs(exchanges.get(1));
+        then(interceptor.proceed(client.get("http://127.0.0.1:8080/abc").segment(), chain))
+                .isSameAs(exchanges.get(2));
+
+        ctx.setAttr(CUSTOM_HANDLE_KEY, true);
+        then(interceptor.proceed(client.get("http://127.0.0.1:8080/abc"), chain))
+                .isSameAs(exchanges.get(3));
+        then(interceptor.inFlights()).isEqualTo(0);
+    }
+
+    private static ExecChain chain(MockContext ctx, List<CompletableFuture<HttpResponse>> exchanges) {
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.ctx()).thenReturn(ctx);
+        when(chain.withCtx(any())).thenReturn(chain);
+        when(chain.proceed(any())).thenAnswer(invocation -> {
+            final CompletableFuture<HttpResponse> exchange = new CompletableFuture<>();
+            exchanges.add(exchange);
+            return exchange;
+        });
+        return chain;
+    }
+}
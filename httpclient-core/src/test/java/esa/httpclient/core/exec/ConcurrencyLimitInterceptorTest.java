@@ -0,0 +1,189 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.HttpClient;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.exception.ConcurrencyLimitExceededException;
+import esa.httpclient.core.exception.DeadlineExceededException;
+import esa.httpclient.core.metrics.ConcurrencyLimitMetric;
+import esa.httpclient.core.mock.MockContext;
+import esa.httpclient.core.mock.MockHttpResponse;
+import esa.httpclient.core.util.Futures;
+import org.junit.jupiter.api.Test;
+
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConcurrencyLimitInterceptorTest {
+
+    private static final String ADDRESS = "127.0.0.1:8080";
+
+    private final HttpClient client = HttpClient.ofDefault();
+
+    @Test
+    void testConstruct() {
+        assertThrows(NullPointerException.class, () -> new ConcurrencyLimitInterceptor(null));
+        then(new ConcurrencyLimitInterceptor(ConcurrencyLimiter.ofDefault()).getOrder()).isEqualTo(-500);
+    }
+
+    @Test
+    void testReject() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(1).build();
+        final ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(limiter);
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.ctx()).thenReturn(new MockContext());
+        final CompletableFuture<HttpResponse> proceeding = new CompletableFuture<>();
+        when(chain.proceed(any())).thenReturn(proceeding);
+
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(request(), chain);
+        then(response1).isSameAs(proceeding);
+        final ConcurrencyLimitMetric metric = limiter.metrics().get(ADDRESS);
+        then(metric.inflight()).isEqualTo(1);
+
+        final CompletableFuture<HttpResponse> response2 = interceptor.proceed(request(), chain);
+        then(Futures.getCause(response2)).isInstanceOf(ConcurrencyLimitExceededException.class);
+        then(Futures.getCause(response2).getStackTrace()).isEmpty();
+        verify(chain, times(1)).proceed(any());
+        then(metric.rejected()).isEqualTo(1L);
+
+        proceeding.complete(new MockHttpResponse(200));
+        then(metric.inflight()).isEqualTo(0);
+    }
+
+    @Test
+    void testQueued() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(1).maxQueued(1).build();
+        final ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(limiter);
+        final ExecChain chain = mock(ExecChain.class);
+        final CompletableFuture<HttpResponse> proceeding1 = new CompletableFuture<>();
+        final CompletableFuture<HttpResponse> proceeding2 = new CompletableFuture<>();
+        when(chain.proceed(any())).thenReturn(proceeding1, proceeding2);
+
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(request(), chain);
+        final CompletableFuture<HttpResponse> response2 = interceptor.proceed(request(), chain);
+        then(response2.isDone()).isFalse();
+        final ConcurrencyLimitMetric metric = limiter.metrics().get(ADDRESS);
+        then(metric.queued()).isEqualTo(1);
+        verify(chain, times(1)).proceed(any());
+
+        // The queued request proceeds once the permit is released.
+        response1.complete(new MockHttpResponse(200));
+        verify(chain, times(2)).proceed(any());
+        then(metric.queued()).isEqualTo(0);
+        then(metric.inflight()).isEqualTo(1);
+
+        final MockHttpResponse rsp = new MockHttpResponse(200);
+        proceeding2.complete(rsp);
+        then(response2.getNow(null)).isSameAs(rsp);
+        then(metric.inflight()).isEqualTo(0);
+    }
+
+    @Test
+    void testCancelled() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(1).maxQueued(1).build();
+        final ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(limiter);
+        final ExecChain chain = mock(ExecChain.class);
+        final CompletableFuture<HttpResponse> proceeding1 = new CompletableFuture<>();
+        final CompletableFuture<HttpResponse> proceeding2 = new CompletableFuture<>();
+        final CompletableFuture<HttpResponse> proceeding3 = new CompletableFuture<>();
+        when(chain.ctx()).thenReturn(new MockContext());
+        when(chain.proceed(any())).thenReturn(proceeding1, proceeding2, proceeding3);
+
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(request(), chain);
+        final CompletableFuture<HttpResponse> response2 = interceptor.proceed(request(), chain);
+        final ConcurrencyLimitMetric metric = limiter.metrics().get(ADDRESS);
+
+        // Give up waiting
+        response2.cancel(false);
+        then(metric.queued()).isEqualTo(0);
+        response1.complete(new MockHttpResponse(200));
+        verify(chain, times(1)).proceed(any());
+        then(metric.inflight()).isEqualTo(0);
+
+        // Cancelling the response cancels the proceeding request.
+        final CompletableFuture<HttpResponse> response3 = interceptor.proceed(request(), chain);
+        final CompletableFuture<HttpResponse> response4 = interceptor.proceed(request(), chain);
+        then(response3).isSameAs(proceeding2);
+        response3.complete(new MockHttpResponse(200));
+        verify(chain, times(3)).proceed(any());
+        response4.cancel(false);
+        then(proceeding3.isCancelled()).isTrue();
+        then(metric.inflight()).isEqualTo(0);
+    }
+
+    @Test
+    void testDropped() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(10).build();
+        final ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(limiter);
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.proceed(any())).thenReturn(Futures.completed(new SocketTimeoutException()));
+
+        interceptor.proceed(request(), chain);
+        then(limiter.metrics().get(ADDRESS).limit()).isEqualTo(9);
+    }
+
+    @Test
+    void testCutOffByDeadline() throws Exception {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(10).build();
+        final ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor(limiter);
+        final MockContext ctx = new MockContext();
+
+        // The upstream never responds.
+        final ExecChain upstream = mock(ExecChain.class);
+        when(upstream.ctx()).thenReturn(ctx);
+        when(upstream.proceed(any())).thenReturn(new CompletableFuture<>());
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.ctx()).thenReturn(ctx);
+        when(chain.proceed(any())).thenAnswer(invocation -> interceptor.proceed(invocation.getArgument(0),
+                upstream));
+
+        ctx.deadline(System.currentTimeMillis() + 50L);
+        final CompletableFuture<HttpResponse> response = new DeadlineInterceptor().proceed(request(), chain);
+        then(response.handle((r, t) -> Futures.unwrapped(t)).get(3L, TimeUnit.SECONDS))
+                .isInstanceOf(DeadlineExceededException.class);
+
+        // The request cut off by the deadline is dropped, which shrinks the limit.
+        final ConcurrencyLimitMetric metric = limiter.metrics().get(ADDRESS);
+        final long waitUntil = System.currentTimeMillis() + 3000L;
+        while (metric.inflight() > 0 && System.currentTimeMillis() < waitUntil) {
+            Thread.sleep(10L);
+        }
+        then(metric.inflight()).isEqualTo(0);
+        then(metric.limit()).isEqualTo(9);
+
+        // The cancellations made by the caller are not dropped.
+        final MockContext noDeadline = new MockContext();
+        when(upstream.ctx()).thenReturn(noDeadline);
+        when(upstream.proceed(any())).thenReturn(new CompletableFuture<>());
+        interceptor.proceed(request(), upstream).cancel(false);
+        then(metric.limit()).isEqualTo(9);
+    }
+
+    private HttpRequest request() {
+        return client.get("http://" + ADDRESS + "/abc");
+    }
+}
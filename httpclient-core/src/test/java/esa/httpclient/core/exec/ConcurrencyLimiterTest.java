@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.exec.ConcurrencyLimiter.Permit;
+import esa.httpclient.core.metrics.ConcurrencyLimitMetric;
+import esa.httpclient.core.mock.MockContext;
+import esa.httpclient.core.mock.MockHttpResponse;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+
+class ConcurrencyLimiterTest {
+
+    private static final String ADDRESS = "127.0.0.1:8080";
+
+    @Test
+    void testConstruct() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.ofDefault();
+        then(limiter.initialLimit()).isEqualTo(20);
+        then(limiter.minLimit()).isEqualTo(1);
+        then(limiter.maxLimit()).isEqualTo(200);
+        then(limiter.smoothing()).isEqualTo(0.2d);
+        then(limiter.rttTolerance()).isEqualTo(1.5d);
+        then(limiter.longWindow()).isEqualTo(600);
+        then(limiter.maxQueued()).isEqualTo(0);
+
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimiter.builder().minLimit(0).build());
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimiter.builder()
+                .minLimit(10).maxLimit(5).build());
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimiter.builder()
+                .initialLimit(300).build());
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimiter.builder().smoothing(0.0d).build());
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimiter.builder()
+                .rttTolerance(0.9d).build());
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimiter.builder().longWindow(0).build());
+        assertThrows(IllegalArgumentException.class, () -> ConcurrencyLimiter.builder().maxQueued(-1).build());
+    }
+
+    @Test
+    void testAcquireAndReject() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(2).build();
+        final Permit permit1 = limiter.acquire(ADDRESS).getNow(null);
+        final Permit permit2 = limiter.acquire(ADDRESS).getNow(null);
+        then(permit1).isNotNull();
+        then(permit2).isNotNull();
+        then(limiter.acquire(ADDRESS)).isNull();
+
+        final ConcurrencyLimitMetric metric = limiter.metrics().get(ADDRESS);
+        then(metric.limit()).isEqualTo(2);
+        then(metric.inflight()).isEqualTo(2);
+        then(metric.rejected()).isEqualTo(1L);
+
+        // Releasing a permit without RTT doesn't change the limit.
+        limiter.release(mock(HttpRequest.class), permit1, false);
+        then(metric.inflight()).isEqualTo(1);
+        then(metric.limit()).isEqualTo(2);
+        then(limiter.acquire(ADDRESS).getNow(null)).isNotNull();
+
+        // Addresses are limited separately.
+        then(limiter.acquire("127.0.0.1:9090").getNow(null)).isNotNull();
+    }
+
+    @Test
+    void testQueued() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder()
+                .initialLimit(1).maxQueued(2).build();
+        final Permit permit = limiter.acquire(ADDRESS).getNow(null);
+        final CompletableFuture<Permit> waiter1 = limiter.acquire(ADDRESS);
+        final CompletableFuture<Permit> waiter2 = limiter.acquire(ADDRESS);
+        then(waiter1.isDone()).isFalse();
+        then(waiter2.isDone()).isFalse();
+        then(limiter.acquire(ADDRESS)).isNull();
+
+        final ConcurrencyLimitMetric metric = limiter.metrics().get(ADDRESS);
+        then(metric.queued()).isEqualTo(2);
+        then(metric.rejected()).isEqualTo(1L);
+
+        // Cancelled waiter leaves the queue.
+        waiter1.cancel(false);
+        then(metric.queued()).isEqualTo(1);
+
+        limiter.release(mock(HttpRequest.class), permit, false);
+        then(waiter2.getNow(null)).isNotNull();
+        then(metric.queued()).isEqualTo(0);
+        then(metric.inflight()).isEqualTo(1);
+    }
+
+    @Test
+    void testGrowAndShrink() {
+        final AtomicLong clock = new AtomicLong(1L);
+        final ConcurrencyLimiter limiter = new ConcurrencyLimiter(100, 1, 200, 1.0d, 1.5d, 600, 0, clock::get);
+        final List<Permit> permits = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            permits.add(limiter.acquire(ADDRESS).getNow(null));
+        }
+        final ConcurrencyLimitMetric metric = limiter.metrics().get(ADDRESS);
+
+        // RTT stays around the baseline
+        sample(limiter, clock, permits.remove(permits.size() - 1), 10L);
+        then(metric.limit()).isEqualTo(110);
+        then(metric.rttMillis()).isEqualTo(10.0d);
+
+        // RTT rises far above the baseline
+        sample(limiter, clock, permits.remove(permits.size() - 1), 1000L);
+        then(metric.limit()).isLessThan(100);
+
+        // Requests which are not limited don't change the limit
+        final int limit = metric.limit();
+        sample(limiter, clock, permits.remove(0), 10_000L);
+        then(metric.limit()).isEqualTo(limit);
+    }
+
+    @Test
+    void testDropped() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(10).build();
+        final Permit permit = limiter.acquire(ADDRESS).getNow(null);
+        limiter.release(mock(HttpRequest.class), permit, true);
+        then(limiter.metrics().get(ADDRESS).limit()).isEqualTo(9);
+
+        final ConcurrencyLimiter limiter1 = ConcurrencyLimiter.builder().initialLimit(1).build();
+        limiter1.release(mock(HttpRequest.class), limiter1.acquire(ADDRESS).getNow(null), true);
+        then(limiter1.metrics().get(ADDRESS).limit()).isEqualTo(1);
+    }
+
+    @Test
+    void testCopy() {
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.builder().initialLimit(5).maxQueued(3).build();
+        limiter.acquire(ADDRESS);
+        final ConcurrencyLimiter copied = limiter.copy();
+        then(copied).isNotSameAs(limiter);
+        then(copied.initialLimit()).isEqualTo(5);
+        then(copied.maxQueued()).isEqualTo(3);
+        then(copied.metrics()).isEmpty();
+        then(copied.listener()).isNotSameAs(limiter.listener());
+    }
+
+    private static void sample(ConcurrencyLimiter limiter, AtomicLong clock, Permit permit, long rttMillis) {
+        final HttpRequest request = mock(HttpRequest.class);
+        limiter.onStart(request, permit);
+        limiter.listener().onWriteAttempt(request, new MockContext());
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(rttMillis));
+        limiter.listener().onCompleted(request, new MockContext(), new MockHttpResponse(200));
+        limiter.release(request, permit, false);
+    }
+}
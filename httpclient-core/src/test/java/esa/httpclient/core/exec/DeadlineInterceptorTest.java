@@ -0,0 +1,138 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.HttpClient;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.exception.DeadlineExceededException;
+import esa.httpclient.core.mock.MockContext;
+import esa.httpclient.core.mock.MockHttpResponse;
+import esa.httpclient.core.util.Futures;
+import org.junit.jupiter.api.Test;
+
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DeadlineInterceptorTest {
+
+    private final HttpClient client = HttpClient.ofDefault();
+
+    @Test
+    void testNoDeadline() {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final ExecChain chain = chain(new MockContext(), attempts);
+        final DeadlineInterceptor interceptor = new DeadlineInterceptor();
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        then(response).isSameAs(attempts.get(0));
+    }
+
+    @Test
+    void testDeadlineExceededBeforeProceeding() {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final MockContext ctx = new MockContext();
+        ctx.deadline(System.currentTimeMillis() - 1L);
+        final ExecChain chain = chain(ctx, attempts);
+        final DeadlineInterceptor interceptor = new DeadlineInterceptor();
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        then(Futures.getCause(response)).isInstanceOf(DeadlineExceededException.class);
+        then(attempts).isEmpty();
+    }
+
+    @Test
+    void testCompletedInTime() {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final MockContext ctx = new MockContext();
+        ctx.deadline(System.currentTimeMillis() + 10_000L);
+        final ExecChain chain = chain(ctx, attempts);
+        final DeadlineInterceptor interceptor = new DeadlineInterceptor();
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        then(response.isDone()).isFalse();
+        final HttpResponse rsp = new MockHttpResponse(200);
+        attempts.get(0).complete(rsp);
+        then(response.getNow(null)).isSameAs(rsp);
+
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        final ConnectException ex = new ConnectException();
+        attempts.get(1).completeExceptionally(ex);
+        then(Futures.getCause(response1)).isSameAs(ex);
+    }
+
+    @Test
+    void testDeadlineExceeded() {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final MockContext ctx = new MockContext();
+        ctx.deadline(System.currentTimeMillis() + 50L);
+        final ExecChain chain = chain(ctx, attempts);
+        final DeadlineInterceptor interceptor = new DeadlineInterceptor();
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        final ExecutionException ex = assertThrows(ExecutionException.class,
+                () -> response.get(3L, TimeUnit.SECONDS));
+        then(ex.getCause()).isInstanceOf(DeadlineExceededException.class);
+
+        // The attempt in flight is cancelled
+        then(attempts.get(0).isCancelled()).isTrue();
+    }
+
+    @Test
+    void testCancel() {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final MockContext ctx = new MockContext();
+        ctx.deadline(System.currentTimeMillis() + 10_000L);
+        final ExecChain chain = chain(ctx, attempts);
+        final DeadlineInterceptor interceptor = new DeadlineInterceptor();
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        response.cancel(false);
+        then(attempts.get(0).isCancelled()).isTrue();
+    }
+
+    @Test
+    void testGetOrder() {
+        then(new DeadlineInterceptor().getOrder()).isEqualTo(-7000);
+        then(new DeadlineInterceptor().getOrder()).isLessThan(new CoalescingInterceptor().getOrder());
+    }
+
+    private static ExecChain chain(MockContext ctx, List<CompletableFuture<HttpResponse>> attempts) {
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.ctx()).thenReturn(ctx);
+        when(chain.proceed(any())).thenAnswer(invocation -> {
+            final CompletableFuture<HttpResponse> attempt = new CompletableFuture<>();
+            attempts.add(attempt);
+            return attempt;
+        });
+        return chain;
+    }
+}
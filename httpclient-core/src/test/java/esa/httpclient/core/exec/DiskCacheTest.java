@@ -0,0 +1,254 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.commons.netty.core.Buffer;
+import esa.commons.netty.core.Buffers;
+import esa.httpclient.core.HttpClient;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.mock.MockContext;
+import esa.httpclient.core.mock.MockHttpResponse;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class DiskCacheTest {
+
+    private static final String URI = "http://127.0.0.1:8080/abc";
+
+    private final HttpClient client = HttpClient.ofDefault();
+    private final AtomicLong clock = new AtomicLong(1_000_000L);
+
+    @Test
+    void testIllegalArgs(@TempDir Path dir) {
+        assertThrows(IllegalArgumentException.class, () -> open(dir, 8, 1024, 4, 0.5d));
+        assertThrows(IllegalArgumentException.class, () -> open(dir, 1024, 1024, 512, 0.5d));
+        assertThrows(IllegalArgumentException.class, () -> open(dir, 1024, 4096, 1024, 0.5d));
+        assertThrows(IllegalArgumentException.class, () -> open(dir, 1024, 4096, 512, 1.0d));
+    }
+
+    @Test
+    void testPutAndRecover(@TempDir Path dir) throws IOException {
+        final DiskCache cache = open(dir, 4096, 64 * 1024, 1024, 0.5d);
+        final HttpRequest request = client.get(URI).addHeader("Accept", "text/plain");
+        then(cache.put(URI, request, response(200, "Hello", "Cache-Control", "max-age=60", "Vary", "Accept",
+                "ETag", "\"v1\""), 999_000L, clock.get())).isTrue();
+        cache.flush();
+        final CacheEntry stored = cache.get(URI);
+        then(stored.body.isDirect()).isTrue();
+        then(cache.metric().entries()).isEqualTo(1L);
+        then(cache.metric().weightedSize()).isGreaterThan(5L);
+
+        // Every response has its own view of the mapped region.
+        final HttpResponse response = cache.serve(stored, 1_000L);
+        then(response.headers().get("Age")).isEqualTo("1");
+        then(response.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        response.body().readBytes(new byte[5]);
+        response.body().getByteBuf().release();
+        then(cache.serve(stored, 0L).body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+
+        // Too large
+        then(cache.put(URI + "/large", request, response(200, new String(new byte[2048])), 0L, 0L)).isFalse();
+        cache.close();
+        then(cache.put(URI + "/closed", request, response(200, "Hello"), 0L, 0L)).isFalse();
+
+        final DiskCache recovered = open(dir, 4096, 64 * 1024, 1024, 0.5d);
+        final CacheEntry entry = recovered.get(URI);
+        then(entry.status).isEqualTo(200);
+        then(entry.requestTime).isEqualTo(999_000L);
+        then(entry.responseTime).isEqualTo(clock.get());
+        then(entry.headers.get("ETag")).isEqualTo("\"v1\"");
+        then(entry.matches(request)).isTrue();
+        then(entry.matches(client.get(URI).addHeader("Accept", "text/html"))).isFalse();
+        then(entry.freshnessLifetimeMillis()).isEqualTo(60_000L);
+        then(recovered.serve(entry, 0L).body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        recovered.close();
+    }
+
+    @Test
+    void testInvalidate(@TempDir Path dir) throws IOException {
+        final DiskCache cache = open(dir, 4096, 64 * 1024, 1024, 0.5d);
+        cache.put(URI, client.get(URI), response(200, "Hello", "Cache-Control", "max-age=60"), 0L, 0L);
+        cache.put(URI + "/1", client.get(URI), response(200, "World", "Cache-Control", "max-age=60"), 0L, 0L);
+        cache.invalidate(URI);
+        cache.invalidate(URI + "/absent");
+        then(cache.get(URI)).isNull();
+        cache.flush();
+        then(cache.get(URI)).isNull();
+        then(cache.get(URI + "/1")).isNotNull();
+        cache.close();
+
+        final DiskCache recovered = open(dir, 4096, 64 * 1024, 1024, 0.5d);
+        then(recovered.get(URI)).isNull();
+        then(recovered.get(URI + "/1")).isNotNull();
+        then(recovered.metric().entries()).isEqualTo(1L);
+        recovered.close();
+    }
+
+    @Test
+    void testTornRecord(@TempDir Path dir) throws IOException {
+        final DiskCache cache = open(dir, 4096, 64 * 1024, 1024, 0.5d);
+        cache.put(URI, client.get(URI), response(200, "Hello", "Cache-Control", "max-age=60"), 0L, 0L);
+        cache.put(URI + "/1", client.get(URI), response(200, "World", "Cache-Control", "max-age=60"), 0L, 0L);
+        cache.close();
+
+        // Corrupt the body of the last record.
+        final File segment = segmentFiles(dir)[0];
+        try (RandomAccessFile file = new RandomAccessFile(segment, "rw")) {
+            long end = 0L;
+            final byte[] bytes = new byte[4096];
+            file.readFully(bytes);
+            for (int i = 0; i < bytes.length - 5; i++) {
+                if (bytes[i] == 'W' && bytes[i + 1] == 'o') {
+                    end = i;
+                }
+            }
+            file.seek(end);
+            file.write('w');
+        }
+
+        final DiskCache recovered = open(dir, 4096, 64 * 1024, 1024, 0.5d);
+        then(recovered.get(URI)).isNotNull();
+        then(recovered.get(URI + "/1")).isNull();
+
+        // The torn record is overwritten.
+        recovered.put(URI + "/2", client.get(URI), response(200, "Hi", "Cache-Control", "max-age=60"), 0L, 0L);
+        recovered.close();
+        final DiskCache recovered1 = open(dir, 4096, 64 * 1024, 1024, 0.5d);
+        then(recovered1.get(URI)).isNotNull();
+        then(recovered1.get(URI + "/2")).isNotNull();
+        then(recovered1.metric().entries()).isEqualTo(2L);
+        recovered1.close();
+    }
+
+    @Test
+    void testCompact(@TempDir Path dir) throws IOException {
+        final DiskCache cache = open(dir, 4096, 1024 * 1024, 1024, 0.5d);
+        cache.put(URI + "/keep", client.get(URI), response(200, "Keep", "Cache-Control", "max-age=60"), 0L, 0L);
+        final String body = new String(new char[500]).replace('\0', 'a');
+        for (int i = 0; i < 64; i++) {
+            cache.put(URI, client.get(URI), response(200, body + i, "Cache-Control", "max-age=60"), 0L, 0L);
+        }
+        cache.flush();
+        cache.compact();
+        then(cache.segments()).isLessThanOrEqualTo(2);
+        then(segmentFiles(dir).length).isEqualTo(cache.segments());
+        then(cache.metric().entries()).isEqualTo(2L);
+        then(cache.serve(cache.get(URI + "/keep"), 0L).body().string(StandardCharsets.UTF_8))
+                .isEqualTo("Keep");
+        then(cache.serve(cache.get(URI), 0L).body().string(StandardCharsets.UTF_8)).isEqualTo(body + 63);
+        cache.close();
+
+        final DiskCache recovered = open(dir, 4096, 1024 * 1024, 1024, 0.5d);
+        then(recovered.metric().entries()).isEqualTo(2L);
+        then(recovered.serve(recovered.get(URI + "/keep"), 0L).body().string(StandardCharsets.UTF_8))
+                .isEqualTo("Keep");
+        then(recovered.serve(recovered.get(URI), 0L).body().string(StandardCharsets.UTF_8))
+                .isEqualTo(body + 63);
+        recovered.close();
+    }
+
+    @Test
+    void testEviction(@TempDir Path dir) throws IOException {
+        final DiskCache cache = open(dir, 4096, 8192, 1024, 0.0d);
+        final String body = new String(new char[500]).replace('\0', 'a');
+        for (int i = 0; i < 64; i++) {
+            cache.put(URI + i, client.get(URI), response(200, body, "Cache-Control", "max-age=60"), 0L, 0L);
+        }
+        cache.flush();
+        then(cache.segments()).isEqualTo(2);
+        then(segmentFiles(dir).length).isEqualTo(2);
+        then(cache.metric().evictions()).isGreaterThan(0L);
+        then(cache.metric().entries() + cache.metric().evictions()).isEqualTo(64L);
+        then(cache.get(URI + 0)).isNull();
+        then(cache.get(URI + 63)).isNotNull();
+        cache.close();
+    }
+
+    @Test
+    void testInterceptor(@TempDir Path dir) throws IOException {
+        final DiskCache cache = open(dir, 4096, 64 * 1024, 1024, 0.5d);
+        final DiskCacheInterceptor interceptor = new DiskCacheInterceptor(cache);
+        then(interceptor.getOrder()).isGreaterThan(new CacheInterceptor(HttpCache.ofDefault()).getOrder());
+
+        final List<CompletableFuture<HttpResponse>> exchanges = new CopyOnWriteArrayList<>();
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.ctx()).thenReturn(new MockContext());
+        when(chain.proceed(any())).thenAnswer(invocation -> {
+            final CompletableFuture<HttpResponse> exchange = new CompletableFuture<>();
+            exchanges.add(exchange);
+            return exchange;
+        });
+
+        interceptor.proceed(client.get(URI), chain);
+        exchanges.get(0).complete(response(200, "Hello", "Cache-Control", "max-age=60"));
+        cache.flush();
+        clock.addAndGet(5_000L);
+        final HttpResponse response = interceptor.proceed(client.get(URI), chain).getNow(null);
+        then(exchanges.size()).isEqualTo(1);
+        then(response.headers().get("Age")).isEqualTo("5");
+        then(response.body().getByteBuf().isDirect()).isTrue();
+        then(response.body().string(StandardCharsets.UTF_8)).isEqualTo("Hello");
+        then(cache.metric().hits()).isEqualTo(1L);
+        then(cache.metric().misses()).isEqualTo(1L);
+        cache.close();
+    }
+
+    private DiskCache open(Path dir, int segmentSize, long maximumSize, int maximumEntrySize,
+                           double compactionThreshold) throws IOException {
+        return new DiskCache(dir.toFile(), segmentSize, maximumSize, maximumEntrySize, compactionThreshold,
+                false, clock::get);
+    }
+
+    private static File[] segmentFiles(Path dir) {
+        return dir.toFile().listFiles((d, name) -> name.endsWith(DiskCache.SUFFIX));
+    }
+
+    private static HttpResponse response(int status, String body, String... headers) {
+        final Buffer buffer = Buffers.buffer(body.getBytes(StandardCharsets.UTF_8));
+        final MockHttpResponse response = new MockHttpResponse(status) {
+            @Override
+            public Buffer body() {
+                return buffer;
+            }
+
+            @Override
+            public boolean aggregated() {
+                return true;
+            }
+        };
+        for (int i = 0; i < headers.length; i += 2) {
+            response.headers().add(headers[i], headers[i + 1]);
+        }
+        return response;
+    }
+}
@@ -77,4 +77,26 @@ class FilteringExecTest {
         then(response44.isDone()).isTrue();
         then(response44.isCompletedExceptionally()).isTrue();
     }
+
+    @Test
+    void testPropagateCancellation() {
+        final HttpRequest request = client.get("http://127.0.0.1:9999/abc/def");
+        final CompletableFuture<HttpResponse> proceeding = new CompletableFuture<>();
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.proceed(request)).thenReturn(proceeding);
+        when(chain.ctx()).thenReturn(new Context());
+
+        final CompletableFuture<HttpResponse> response = new FilteringExec(null).proceed(request, chain);
+        then(response.isDone()).isFalse();
+        response.cancel(false);
+        then(proceeding.isCancelled()).isTrue();
+
+        // Exception is passed without wrapping
+        final CompletableFuture<HttpResponse> proceeding1 = new CompletableFuture<>();
+        when(chain.proceed(request)).thenReturn(proceeding1);
+        final CompletableFuture<HttpResponse> response1 = new FilteringExec(null).proceed(request, chain);
+        final IllegalStateException ex = new IllegalStateException();
+        proceeding1.completeExceptionally(ex);
+        then(Futures.getCause(response1)).isSameAs(ex);
+    }
 }
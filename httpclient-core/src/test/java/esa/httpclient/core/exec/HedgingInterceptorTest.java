@@ -0,0 +1,230 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.Context;
+import esa.httpclient.core.HttpClient;
+import esa.httpclient.core.HttpRequest;
+import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.config.HedgingOptions;
+import esa.httpclient.core.mock.MockContext;
+import esa.httpclient.core.mock.MockHttpResponse;
+import esa.httpclient.core.util.Futures;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.net.ConnectException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static esa.httpclient.core.exec.RequestExecutorImpl.CUSTOM_HANDLE_KEY;
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class HedgingInterceptorTest {
+
+    private final HttpClient client = HttpClient.ofDefault();
+
+    @Test
+    void testUnhedgeable() {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final MockContext ctx = new MockContext();
+        final ExecChain chain = chain(ctx, attempts);
+        final HedgingInterceptor interceptor = new HedgingInterceptor(HedgingOptions.options()
+                .delayMillis(1L).build());
+
+        // Non-idempotent request
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .post("http://127.0.0.1:9999/abc"), chain);
+        then(response).isSameAs(attempts.get(0));
+
+        // Segment request
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc").segment(), chain);
+        then(response1).isSameAs(attempts.get(1));
+
+        // Custom handle
+        ctx.setAttr(CUSTOM_HANDLE_KEY, true);
+        final CompletableFuture<HttpResponse> response2 = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        then(response2).isSameAs(attempts.get(2));
+    }
+
+    @Test
+    void testNoHedgeIfRespondedInTime() throws Exception {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final ExecChain chain = chain(new MockContext(), attempts);
+        final HedgingInterceptor interceptor = new HedgingInterceptor(HedgingOptions.options()
+                .delayMillis(50L).build());
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        then(attempts.size()).isEqualTo(1);
+        final HttpResponse rsp = new MockHttpResponse(200);
+        attempts.get(0).complete(rsp);
+        then(response.getNow(null)).isSameAs(rsp);
+
+        Thread.sleep(150L);
+        then(attempts.size()).isEqualTo(1);
+    }
+
+    @Test
+    void testHedge() throws Exception {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final MockContext ctx = new MockContext();
+        ctx.setAttr("name", "value");
+        final ExecChain chain = chain(ctx, attempts);
+        final List<Long> latencies = new CopyOnWriteArrayList<>();
+        final HedgingInterceptor interceptor = new HedgingInterceptor(HedgingOptions.options()
+                .delayMillis(10L).budget(null).build()) {
+            @Override
+            void onLatency(String host, long latencyMillis) {
+                latencies.add(latencyMillis);
+            }
+        };
+
+        final HttpRequest request = client.get("http://127.0.0.1:9999/abc");
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(request, chain);
+        awaitAttempts(attempts, 2);
+        then(attempts.size()).isEqualTo(2);
+
+        // The hedged request wins and the original one is cancelled.
+        final HttpResponse rsp = new MockHttpResponse(200);
+        attempts.get(1).complete(rsp);
+        then(response.getNow(null)).isSameAs(rsp);
+        then(attempts.get(0).isCancelled()).isTrue();
+
+        // The hedged request proceeds with its own copy of the context.
+        final ArgumentCaptor<Context> captor = ArgumentCaptor.forClass(Context.class);
+        verify(chain).withCtx(captor.capture());
+        then(captor.getValue()).isNotSameAs(ctx);
+        then((String) captor.getValue().getAttr("name")).isEqualTo("value");
+
+        // The latency of the beaten original request is sampled.
+        then(latencies.size()).isEqualTo(1);
+        then(latencies.get(0)).isGreaterThanOrEqualTo(10L);
+
+        // No more hedged request is sent because of maxHedges
+        Thread.sleep(100L);
+        then(attempts.size()).isEqualTo(2);
+    }
+
+    @Test
+    void testFailure() throws Exception {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final ExecChain chain = chain(new MockContext(), attempts);
+        final HedgingInterceptor interceptor = new HedgingInterceptor(HedgingOptions.options()
+                .delayMillis(10L).budget(null).build());
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        awaitAttempts(attempts, 2);
+
+        // Failure of an attempt is ignored while there is other attempt in flight
+        attempts.get(0).completeExceptionally(new ConnectException());
+        then(response.isDone()).isFalse();
+
+        final ConnectException ex = new ConnectException();
+        attempts.get(1).completeExceptionally(ex);
+        then(Futures.getCause(response)).isSameAs(ex);
+
+        // Fails immediately if there is no other attempt in flight
+        final CompletableFuture<HttpResponse> response1 = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        attempts.get(2).completeExceptionally(ex);
+        then(Futures.getCause(response1)).isSameAs(ex);
+        Thread.sleep(50L);
+        then(attempts.size()).isEqualTo(3);
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final ExecChain chain = chain(new MockContext(), attempts);
+        final HedgingInterceptor interceptor = new HedgingInterceptor(HedgingOptions.options()
+                .delayMillis(20L).budget(null).build());
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        response.cancel(false);
+        then(attempts.get(0).isCancelled()).isTrue();
+
+        // The pending hedge is cancelled too
+        Thread.sleep(100L);
+        then(attempts.size()).isEqualTo(1);
+    }
+
+    @Test
+    void testBudget() throws Exception {
+        final List<CompletableFuture<HttpResponse>> attempts = new CopyOnWriteArrayList<>();
+        final ExecChain chain = chain(new MockContext(), attempts);
+        final RetryBudget budget = RetryBudget.of(0.0d, 0);
+        final HedgingInterceptor interceptor = new HedgingInterceptor(HedgingOptions.options()
+                .delayMillis(10L).budget(budget).build());
+
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(client
+                .get("http://127.0.0.1:9999/abc"), chain);
+        Thread.sleep(100L);
+        then(attempts.size()).isEqualTo(1);
+        then(response.isDone()).isFalse();
+        then(budget.metrics().get("127.0.0.1:9999").requests()).isEqualTo(1L);
+        then(budget.metrics().get("127.0.0.1:9999").exhausted()).isEqualTo(1L);
+    }
+
+    @Test
+    void testPercentileDelay() {
+        final HedgingInterceptor fixed = new HedgingInterceptor(HedgingOptions.options()
+                .delayMillis(100L).build());
+        fixed.onLatency("127.0.0.1:9999", 10L);
+        then(fixed.delayMillis("127.0.0.1:9999")).isEqualTo(100L);
+
+        final HedgingInterceptor interceptor = new HedgingInterceptor(HedgingOptions.options()
+                .delayMillis(100L).percentile(0.95d).build());
+        // Use the fixed delay before enough latencies have been observed
+        then(interceptor.delayMillis("127.0.0.1:9999")).isEqualTo(100L);
+        for (int i = 1; i <= 100; i++) {
+            interceptor.onLatency("127.0.0.1:9999", i);
+        }
+        // p95 of the first 96 samples
+        then(interceptor.delayMillis("127.0.0.1:9999")).isEqualTo(92L);
+        then(interceptor.delayMillis("127.0.0.1:8888")).isEqualTo(100L);
+    }
+
+    private static ExecChain chain(MockContext ctx, List<CompletableFuture<HttpResponse>> attempts) {
+        final ExecChain chain = mock(ExecChain.class);
+        when(chain.ctx()).thenReturn(ctx);
+        when(chain.proceed(any())).thenAnswer(invocation -> {
+            final CompletableFuture<HttpResponse> attempt = new CompletableFuture<>();
+            attempts.add(attempt);
+            return attempt;
+        });
+        when(chain.withCtx(any())).thenReturn(chain);
+        return chain;
+    }
+
+    private static void awaitAttempts(List<CompletableFuture<HttpResponse>> attempts, int count)
+            throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(3L);
+        while (attempts.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5L);
+        }
+    }
+}
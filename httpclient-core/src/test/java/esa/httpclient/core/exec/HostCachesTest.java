@@ -0,0 +1,32 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.HttpClient;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class HostCachesTest {
+
+    @Test
+    void testKeyOf() {
+        final HttpClient client = HttpClient.ofDefault();
+        then(HostCaches.keyOf(client.get("http://127.0.0.1:8080/abc"))).isEqualTo("127.0.0.1:8080");
+        then(HostCaches.keyOf(client.get("http://127.0.0.1/abc"))).isEqualTo("127.0.0.1:80");
+        then(HostCaches.keyOf(client.get("https://127.0.0.1/abc"))).isEqualTo("127.0.0.1:443");
+    }
+}
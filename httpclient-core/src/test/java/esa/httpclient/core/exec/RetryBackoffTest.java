@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RetryBackoffTest {
+
+    @Test
+    void testExponential() {
+        final RetryBackoff backoff = RetryBackoff.exponential(100L, 1000L);
+        then(backoff.applyAsLong(1)).isEqualTo(100L);
+        then(backoff.applyAsLong(2)).isEqualTo(200L);
+        then(backoff.applyAsLong(3)).isEqualTo(400L);
+        then(backoff.applyAsLong(4)).isEqualTo(800L);
+        then(backoff.applyAsLong(5)).isEqualTo(1000L);
+        then(backoff.applyAsLong(100)).isEqualTo(1000L);
+
+        then(RetryBackoff.exponential(1L, Long.MAX_VALUE).applyAsLong(64)).isEqualTo(Long.MAX_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> RetryBackoff.exponential(0L, 1000L));
+        assertThrows(IllegalArgumentException.class, () -> RetryBackoff.exponential(100L, 10L));
+    }
+
+    @Test
+    void testFullJitter() {
+        final RetryBackoff backoff = RetryBackoff.fullJitter(100L, 1000L);
+        for (int i = 0; i < 100; i++) {
+            then(backoff.applyAsLong(1)).isBetween(0L, 100L);
+            then(backoff.applyAsLong(3)).isBetween(0L, 400L);
+            then(backoff.applyAsLong(10)).isBetween(0L, 1000L);
+        }
+    }
+
+    @Test
+    void testDecorrelatedJitter() {
+        final RetryBackoff backoff = RetryBackoff.decorrelatedJitter(100L, 1000L);
+        then(backoff.intervalMillis(1, 0L)).isEqualTo(100L);
+        long previous = 0L;
+        for (int i = 1; i < 100; i++) {
+            final long interval = backoff.intervalMillis(i, previous);
+            then(interval).isBetween(100L, Math.min(1000L, Math.max(100L, previous * 3L)));
+            previous = interval;
+        }
+        then(backoff.intervalMillis(1, Long.MAX_VALUE)).isBetween(100L, 1000L);
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.metrics.RetryBudgetMetric;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class RetryBudgetTest {
+
+    @Test
+    void testIllegalArgs() {
+        assertThrows(IllegalArgumentException.class, () -> RetryBudget.of(-0.1d, 10));
+        assertThrows(IllegalArgumentException.class, () -> RetryBudget.of(0.1d, -1));
+        assertThrows(IllegalArgumentException.class, () -> RetryBudget.of(0.1d, 10, 1L));
+    }
+
+    @Test
+    void testRatioOfRequests() {
+        final RetryBudget budget = new RetryBudget(0.1d, 0, 10_000L, () -> 0L);
+        then(budget.tryRetry("a")).isFalse();
+
+        for (int i = 0; i < 100; i++) {
+            budget.onRequest("a");
+        }
+        for (int i = 0; i < 10; i++) {
+            then(budget.tryRetry("a")).isTrue();
+        }
+        then(budget.tryRetry("a")).isFalse();
+
+        // Budgets of hosts are isolated.
+        budget.onRequest("b");
+        then(budget.metrics().get("b").requests()).isEqualTo(1L);
+        then(budget.metrics().get("b").available()).isEqualTo(0L);
+
+        final RetryBudgetMetric metric = budget.metrics().get("a");
+        then(metric.requests()).isEqualTo(100L);
+        then(metric.retries()).isEqualTo(10L);
+        then(metric.available()).isEqualTo(0L);
+        then(metric.exhausted()).isEqualTo(2L);
+    }
+
+    @Test
+    void testMinRetriesPerSecond() {
+        final RetryBudget budget = new RetryBudget(0.0d, 2, 2000L, () -> 0L);
+        for (int i = 0; i < 4; i++) {
+            then(budget.tryRetry("a")).isTrue();
+        }
+        then(budget.tryRetry("a")).isFalse();
+    }
+
+    @Test
+    void testConcurrentRetries() throws InterruptedException {
+        final RetryBudget budget = new RetryBudget(0.0d, 10, 10_000L, () -> 0L);
+        final AtomicInteger allowed = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+        final Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                for (int j = 0; j < 1000; j++) {
+                    if (budget.tryRetry("a")) {
+                        allowed.incrementAndGet();
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Never overspent
+        then(allowed.get()).isEqualTo(100);
+        then(budget.metrics().get("a").retries()).isEqualTo(100L);
+    }
+
+    @Test
+    void testSlidingWindow() {
+        final AtomicLong now = new AtomicLong();
+        final RetryBudget budget = new RetryBudget(0.5d, 0, 1000L, now::get);
+        for (int i = 0; i < 10; i++) {
+            budget.onRequest("a");
+        }
+        for (int i = 0; i < 5; i++) {
+            then(budget.tryRetry("a")).isTrue();
+        }
+        then(budget.tryRetry("a")).isFalse();
+
+        // Half of the window has elapsed, the requests and retries are still counted.
+        now.set(TimeUnit.MILLISECONDS.toNanos(500L));
+        budget.onRequest("a");
+        then(budget.metrics().get("a").requests()).isEqualTo(11L);
+        then(budget.tryRetry("a")).isFalse();
+
+        // The first slot has slid out of the window.
+        now.set(TimeUnit.MILLISECONDS.toNanos(1000L));
+        then(budget.metrics().get("a").requests()).isEqualTo(1L);
+        then(budget.metrics().get("a").retries()).isEqualTo(0L);
+        then(budget.metrics().get("a").available()).isEqualTo(0L);
+
+        // All the slots have slid out of the window.
+        now.set(TimeUnit.MILLISECONDS.toNanos(5000L));
+        then(budget.metrics().get("a").requests()).isEqualTo(0L);
+        for (int i = 0; i < 4; i++) {
+            budget.onRequest("a");
+        }
+        then(budget.tryRetry("a")).isTrue();
+        then(budget.tryRetry("a")).isTrue();
+        then(budget.tryRetry("a")).isFalse();
+    }
+}
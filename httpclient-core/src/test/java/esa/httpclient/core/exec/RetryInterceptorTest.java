@@ -19,7 +19,9 @@ import esa.httpclient.core.Context;
 import esa.httpclient.core.HttpClient;
 import esa.httpclient.core.HttpRequest;
 import esa.httpclient.core.HttpResponse;
+import esa.httpclient.core.exception.RetryException;
 import esa.httpclient.core.mock.MockContext;
+import esa.httpclient.core.metrics.RetryBudgetMetric;
 import esa.httpclient.core.mock.MockHttpResponse;
 import esa.httpclient.core.util.Futures;
 import org.junit.jupiter.api.Test;
@@ -28,13 +30,17 @@ import java.net.ConnectException;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.IntToLongFunction;
 
 import static esa.httpclient.core.exec.RetryInterceptor.HAS_RETRIED_COUNT;
 import static org.assertj.core.api.BDDAssertions.then;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class RetryInterceptorTest {
@@ -153,8 +159,12 @@ class RetryInterceptorTest {
 
         final RetryInterceptor interceptor = new RetryInterceptor(RetryPredicateImpl.DEFAULT, intervalMs) {
             @Override
-            protected void backOff(HttpRequest request, int retryCount, IntToLongFunction intervalMs) {
-                backOffs.add(intervalMs.applyAsLong(retryCount));
+            protected CompletableFuture<Void> backOff(HttpRequest request,
+                                                      Context ctx,
+                                                      int retryCount,
+                                                      long intervalMillis) {
+                backOffs.add(intervalMillis);
+                return CompletableFuture.completedFuture(null);
             }
         };
 
@@ -167,6 +177,151 @@ class RetryInterceptorTest {
         }
     }
 
+    @Test
+    @SuppressWarnings("deprecation")
+    void testLegacyBackOff() {
+        final HttpRequest request = client.get("http://127.0.0.1:9999/abc/def");
+        final ExecChain chain = mock(ExecChain.class);
+        final Context ctx = new Context();
+        when(chain.proceed(request)).thenReturn(Futures.completed(new ConnectException()));
+        when(chain.ctx()).thenReturn(ctx);
+
+        // The overridden legacy method is still called, even if the interval is 0.
+        final List<Integer> backOffs = new ArrayList<>(3);
+        final RetryInterceptor interceptor = new RetryInterceptor(RetryPredicateImpl.DEFAULT, count -> 0L) {
+            @Override
+            protected void backOff(HttpRequest request, int retryCount, IntToLongFunction intervalMs) {
+                backOffs.add(retryCount);
+            }
+        };
+        final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        interceptor.doRetry(response, request, chain, 3);
+        then(response.isCompletedExceptionally()).isTrue();
+        then(backOffs).containsExactly(1, 2, 3);
+
+        // Interrupted while backing off.
+        ctx.removeAttr(HAS_RETRIED_COUNT);
+        final RetryInterceptor interrupted = new RetryInterceptor(RetryPredicateImpl.DEFAULT, count -> 10L) {
+            @Override
+            protected void backOff(HttpRequest request, int retryCount, IntToLongFunction intervalMs)
+                    throws InterruptedException {
+                throw new InterruptedException();
+            }
+        };
+        final CompletableFuture<HttpResponse> response1 = new CompletableFuture<>();
+        interrupted.doRetry(response1, request, chain, 3);
+        then(Futures.getCause(response1)).isInstanceOf(RetryException.class);
+        then(Futures.getCause(response1).getCause()).isInstanceOf(InterruptedException.class);
+    }
+
+    @Test
+    void testBackOffWithoutBlocking() throws Exception {
+        final HttpRequest request = client.get("http://127.0.0.1:9999/abc/def");
+        final ExecChain chain = mock(ExecChain.class);
+        final Context ctx = new Context();
+        final HttpResponse succeed = new MockHttpResponse(200);
+        when(chain.proceed(request)).thenReturn(Futures.completed(new ConnectException()))
+                .thenReturn(Futures.completed(succeed));
+        when(chain.ctx()).thenReturn(ctx);
+
+        final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        final RetryInterceptor interceptor = new RetryInterceptor(RetryPredicateImpl.DEFAULT, count -> 200L);
+        final long start = System.nanoTime();
+        interceptor.doRetry(response, request, chain, 2);
+
+        // The current thread is not blocked by the interval.
+        then(response.isDone()).isFalse();
+        then(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isLessThan(200L);
+        then(response.get(3L, TimeUnit.SECONDS)).isSameAs(succeed);
+        then(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)).isGreaterThanOrEqualTo(200L);
+        verify(chain, times(2)).proceed(request);
+    }
+
+    @Test
+    void testCancelBackOff() throws InterruptedException {
+        final HttpRequest request = client.get("http://127.0.0.1:9999/abc/def");
+        final ExecChain chain = mock(ExecChain.class);
+        final Context ctx = new Context();
+        when(chain.proceed(request)).thenReturn(Futures.completed(new ConnectException()));
+        when(chain.ctx()).thenReturn(ctx);
+
+        final AtomicReference<CompletableFuture<Void>> backOff = new AtomicReference<>();
+        final RetryInterceptor interceptor = new RetryInterceptor(RetryPredicateImpl.DEFAULT, count -> 100L) {
+            @Override
+            protected CompletableFuture<Void> backOff(HttpRequest request,
+                                                      Context ctx,
+                                                      int retryCount,
+                                                      long intervalMillis) {
+                backOff.set(super.backOff(request, ctx, retryCount, intervalMillis));
+                return backOff.get();
+            }
+        };
+
+        final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        interceptor.doRetry(response, request, chain, 2);
+        then(backOff.get()).isNotNull();
+        then(response.cancel(true)).isTrue();
+        then(backOff.get().isCancelled()).isTrue();
+
+        // The request is never retried after cancelled.
+        Thread.sleep(200L);
+        verify(chain, times(1)).proceed(request);
+    }
+
+    @Test
+    void testRetryBackoff() {
+        final HttpRequest request = client.get("http://127.0.0.1:9999/abc/def");
+        final ExecChain chain = mock(ExecChain.class);
+        final Context ctx = new Context();
+        when(chain.proceed(request)).thenReturn(Futures.completed(new ConnectException()));
+        when(chain.ctx()).thenReturn(ctx);
+
+        // The interval before previous retry is passed to the backoff.
+        final List<Long> previous = new ArrayList<>();
+        final RetryBackoff backoff = (retryCount, previousInterval) -> {
+            previous.add(previousInterval);
+            return retryCount * 10L;
+        };
+        final RetryInterceptor interceptor = new RetryInterceptor(RetryPredicateImpl.DEFAULT, backoff) {
+            @Override
+            protected CompletableFuture<Void> backOff(HttpRequest request,
+                                                      Context ctx,
+                                                      int retryCount,
+                                                      long intervalMillis) {
+                return CompletableFuture.completedFuture(null);
+            }
+        };
+
+        final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        interceptor.doRetry(response, request, chain, 3);
+        then(response.isCompletedExceptionally()).isTrue();
+        then(previous).containsExactly(0L, 10L, 20L);
+    }
+
+    @Test
+    void testRetryBudgetExhausted() {
+        final HttpRequest request = client.get("http://127.0.0.1:9999/abc/def");
+        final ExecChain chain = mock(ExecChain.class);
+        final MockContext ctx = new MockContext();
+        when(chain.proceed(request)).thenReturn(Futures.completed(new ConnectException()));
+        when(chain.ctx()).thenReturn(ctx);
+        ctx.maxRetries(10);
+
+        // Only 2 retries are allowed in the window.
+        final RetryBudget budget = new RetryBudget(0.0d, 1, 2000L, () -> 0L);
+        final RetryInterceptor interceptor = new RetryInterceptor(RetryPredicateImpl.DEFAULT, null, budget);
+        final CompletableFuture<HttpResponse> response = interceptor.proceed(request, chain);
+        then(response.isCompletedExceptionally()).isTrue();
+        then((Integer) ctx.getAttr(HAS_RETRIED_COUNT)).isEqualTo(2);
+        verify(chain, times(3)).proceed(request);
+
+        final RetryBudgetMetric metric = budget.metrics().get("127.0.0.1:9999");
+        then(metric.requests()).isEqualTo(1L);
+        then(metric.retries()).isEqualTo(2L);
+        then(metric.available()).isEqualTo(0L);
+        then(metric.exhausted()).isEqualTo(1L);
+    }
+
     private static final class AuxiliaryRetryInterceptor extends RetryInterceptor {
 
         private static final HttpResponse RESPONSE = new MockHttpResponse(200);
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class SlidingWindowTest {
+
+    @Test
+    void testSlide() {
+        final AtomicLong clock = new AtomicLong();
+        // Every slot covers 1ms.
+        final SlidingWindow<CountingSlot> window = new SlidingWindow<>(10L, clock::get, CountingSlot::new);
+        then(window.sum(window.epoch(), s -> s.count.sum())).isEqualTo(0L);
+
+        for (int i = 0; i < SlidingWindow.SLOTS; i++) {
+            window.current(window.epoch()).count.increment();
+            clock.addAndGet(1_000_000L);
+        }
+        // The first slot has slid out of the window.
+        then(window.sum(window.epoch(), s -> s.count.sum())).isEqualTo(9L);
+
+        // A stale slot is replaced.
+        final CountingSlot slot = window.current(window.epoch());
+        then(slot.epoch).isEqualTo(window.epoch());
+        slot.count.add(5L);
+        then(window.current(window.epoch())).isSameAs(slot);
+        then(window.sum(window.epoch(), s -> s.count.sum())).isEqualTo(14L);
+
+        window.clear();
+        then(window.sum(window.epoch(), s -> s.count.sum())).isEqualTo(0L);
+    }
+
+    private static final class CountingSlot extends SlidingWindow.Slot {
+
+        private final LongAdder count = new LongAdder();
+
+        private CountingSlot(long epoch) {
+            super(epoch);
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.exec;
+
+import esa.httpclient.core.Context;
+import esa.httpclient.core.ContextNames;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.EventExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class TimersTest {
+
+    @Test
+    void testDelayOnIoThreads() throws Exception {
+        final EventLoopGroup ioThreads = new DefaultEventLoopGroup(1);
+        try {
+            final Context ctx = new Context();
+            ctx.setAttr(ContextNames.IO_THREADS, ioThreads);
+            final EventExecutor ioThread = ioThreads.next();
+
+            // Scheduled on the I/O threads given by the ctx. The I/O thread is blocked until the callback has been
+            // attached, so that the delay can't be completed before that.
+            CountDownLatch attached = block(ioThread);
+            final CompletableFuture<Boolean> inIoThread = Timers.delay(null, ctx, 10L, TimeUnit.MILLISECONDS)
+                    .thenApply(v -> ioThread.inEventLoop());
+            attached.countDown();
+            then(inIoThread.get(3L, TimeUnit.SECONDS)).isTrue();
+
+            // Scheduled on current event loop
+            final CompletableFuture<Boolean> inCurrent = new CompletableFuture<>();
+            ioThread.execute(() -> Timers.delay(null, new Context(), 10L, TimeUnit.MILLISECONDS)
+                    .thenApply(v -> ioThread.inEventLoop())
+                    .whenComplete((r, t) -> inCurrent.complete(r)));
+            then(inCurrent.get(3L, TimeUnit.SECONDS)).isTrue();
+
+            // Completed back on the I/O thread even if a custom timer is given
+            final Timer timer = new HashedWheelTimer();
+            try {
+                attached = block(ioThread);
+                final CompletableFuture<Boolean> byTimer = Timers.delay(timer, ctx, 10L, TimeUnit.MILLISECONDS)
+                        .thenApply(v -> ioThread.inEventLoop());
+                attached.countDown();
+                then(byTimer.get(3L, TimeUnit.SECONDS)).isTrue();
+            } finally {
+                timer.stop();
+            }
+        } finally {
+            ioThreads.shutdownGracefully(0L, 0L, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Test
+    void testDelayWithoutIoThreads() throws Exception {
+        final CompletableFuture<Void> delay = Timers.delay(null, new Context(), 10L, TimeUnit.MILLISECONDS);
+        delay.get(3L, TimeUnit.SECONDS);
+        then(delay.isDone()).isTrue();
+    }
+
+    @Test
+    void testCancel() throws Exception {
+        final AtomicBoolean fired = new AtomicBoolean();
+        final CompletableFuture<Void> delay = Timers.delay(null, new Context(), 100L, TimeUnit.MILLISECONDS);
+        delay.thenRun(() -> fired.set(true));
+        then(delay.cancel(false)).isTrue();
+
+        Thread.sleep(200L);
+        then(fired.get()).isFalse();
+    }
+
+    private static CountDownLatch block(EventExecutor executor) {
+        final CountDownLatch latch = new CountDownLatch(1);
+        executor.execute(() -> {
+            try {
+                latch.await(3L, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        return latch;
+    }
+}
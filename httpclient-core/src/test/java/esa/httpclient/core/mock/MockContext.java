@@ -34,11 +34,23 @@ public class MockContext extends Context {
         this.useExpectContinue = useExpectContinue;
     }
 
+    @Override
+    public void priority(int priority) {
+        this.priority = priority;
+    }
+
+    @Override
+    public void deadline(long deadline) {
+        this.deadline = deadline;
+    }
+
     public void clear() {
         super.attributes.clear();
         useExpectContinue = true;
         maxRedirects = 0;
         maxRetries = 0;
+        priority = 0;
+        deadline = 0L;
     }
 }
 
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class AdaptivePoolSizerTest {
+
+    @Test
+    void testIllegalArguments() {
+        final ResizableChannelPool pool = mock(ResizableChannelPool.class);
+        assertThrows(NullPointerException.class, () -> new AdaptivePoolSizer(null, 1, 2));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptivePoolSizer(pool, 0, 2));
+        assertThrows(IllegalArgumentException.class, () -> new AdaptivePoolSizer(pool, 3, 2));
+    }
+
+    @Test
+    void testGrowOnPendingAcquires() {
+        final ResizableChannelPool pool = newPool(4);
+        final AdaptivePoolSizer sizer = new AdaptivePoolSizer(pool, 2, 10, 10L, 2);
+
+        when(pool.pendingAcquireCount()).thenReturn(1);
+        then(sizer.adjust()).isEqualTo(6);
+        verify(pool).resize(6);
+
+        // Grows by the count of pending acquisitions at least, but never exceeds the max size.
+        when(pool.maxConnections()).thenReturn(6);
+        when(pool.pendingAcquireCount()).thenReturn(20);
+        then(sizer.adjust()).isEqualTo(10);
+        verify(pool).resize(10);
+
+        when(pool.maxConnections()).thenReturn(10);
+        then(sizer.adjust()).isEqualTo(10);
+    }
+
+    @Test
+    void testGrowOnAcquireTime() {
+        final ResizableChannelPool pool = newPool(4);
+        final ExponentialHistogram acquireTime = (ExponentialHistogram) pool.stats().acquireTime();
+        final AdaptivePoolSizer sizer = new AdaptivePoolSizer(pool, 2, 10, 10L, 2);
+
+        acquireTime.record(TimeUnit.MILLISECONDS.toNanos(1L));
+        then(sizer.adjust()).isEqualTo(4);
+
+        acquireTime.record(TimeUnit.MILLISECONDS.toNanos(50L));
+        then(sizer.adjust()).isEqualTo(6);
+
+        // Slow acquisitions don't grow the pool while there are idle connections.
+        when(pool.maxConnections()).thenReturn(6);
+        when(pool.idleCount()).thenReturn(1);
+        acquireTime.record(TimeUnit.MILLISECONDS.toNanos(50L));
+        then(sizer.adjust()).isEqualTo(6);
+    }
+
+    @Test
+    void testShrinkOnIdle() {
+        final ResizableChannelPool pool = newPool(8);
+        final AdaptivePoolSizer sizer = new AdaptivePoolSizer(pool, 6, 10, 10L, 2);
+
+        when(pool.idleCount()).thenReturn(6);
+        then(sizer.adjust()).isEqualTo(8);
+        when(pool.idleCount()).thenReturn(4);
+        then(sizer.adjust()).isEqualTo(6);
+        verify(pool).resize(6);
+
+        // Idle connections must be observed in consecutive intervals.
+        when(pool.maxConnections()).thenReturn(6);
+        when(pool.idleCount()).thenReturn(2);
+        then(sizer.adjust()).isEqualTo(6);
+        when(pool.idleCount()).thenReturn(0);
+        then(sizer.adjust()).isEqualTo(6);
+        when(pool.idleCount()).thenReturn(2);
+        then(sizer.adjust()).isEqualTo(6);
+        // Never shrinks below the min size.
+        then(sizer.adjust()).isEqualTo(6);
+        verify(pool, never()).resize(5);
+    }
+
+    @Test
+    void testStopAfterClosed() {
+        final ResizableChannelPool pool = newPool(4);
+        when(pool.isClosed()).thenReturn(true);
+        when(pool.pendingAcquireCount()).thenReturn(1);
+        new AdaptivePoolSizer(pool, 2, 10).run();
+        verify(pool, never()).resize(6);
+    }
+
+    private static ResizableChannelPool newPool(int maxConnections) {
+        final ResizableChannelPool pool = mock(ResizableChannelPool.class);
+        final ChannelPoolStats stats = new ChannelPoolStats();
+        when(pool.stats()).thenReturn(stats);
+        when(pool.maxConnections()).thenReturn(maxConnections);
+        return pool;
+    }
+}
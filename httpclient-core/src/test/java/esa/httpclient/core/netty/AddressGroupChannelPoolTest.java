@@ -0,0 +1,239 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.httpclient.core.resolver.AddressBalancer;
+import esa.httpclient.core.resolver.HostResolver;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class AddressGroupChannelPoolTest {
+
+    private static final InetSocketAddress ADDRESS = InetSocketAddress.createUnresolved("example.com", 8080);
+
+    private static EventLoopGroup group;
+    private static ExecutorService resolveExecutor;
+    private static List<Channel> servers;
+    private static InetAddress ip1;
+    private static InetAddress ip2;
+
+    @BeforeAll
+    static void setUp() throws UnknownHostException {
+        ip1 = InetAddress.getByName("127.0.0.1");
+        ip2 = InetAddress.getByName("127.0.0.2");
+        group = new DefaultEventLoopGroup(2);
+        resolveExecutor = Executors.newSingleThreadExecutor(
+                new ThreadFactoryImpl("AddressGroupChannelPoolTest-Resolver", true));
+        servers = new ArrayList<>();
+        for (InetAddress ip : Arrays.asList(ip1, ip2)) {
+            servers.add(new ServerBootstrap()
+                    .group(group)
+                    .channel(LocalServerChannel.class)
+                    .childHandler(new io.netty.channel.ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+                        }
+                    })
+                    .bind(localAddressOf(ip))
+                    .syncUninterruptibly()
+                    .channel());
+        }
+    }
+
+    @AfterAll
+    static void tearDown() {
+        servers.forEach(server -> server.close().syncUninterruptibly());
+        group.shutdownGracefully();
+        resolveExecutor.shutdownNow();
+    }
+
+    @Test
+    void testBalanceAcrossAddresses() {
+        final TestResolver resolver = new TestResolver(ip1, ip2);
+        final AddressGroupChannelPool pool = newPool(resolver);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        then(pool.activeAddresses()).containsExactly(new InetSocketAddress(ip1, 8080),
+                new InetSocketAddress(ip2, 8080));
+        then(ch1.remoteAddress()).isEqualTo(localAddressOf(ip1));
+        then(ch2.remoteAddress()).isEqualTo(localAddressOf(ip2));
+        then(pool.acquiredCount()).isEqualTo(2);
+        then(pool.maxConnections()).isEqualTo(4);
+        then(pool.stats().created()).isEqualTo(2L);
+
+        pool.release(ch1).syncUninterruptibly();
+        pool.release(ch2).syncUninterruptibly();
+        then(pool.acquiredCount()).isEqualTo(0);
+        then(pool.idleCount()).isEqualTo(2);
+        pool.closeAsync().syncUninterruptibly();
+    }
+
+    @Test
+    void testDrainRemovedAddress() {
+        final TestResolver resolver = new TestResolver(ip1, ip2);
+        final AddressGroupChannelPool pool = newPool(resolver);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+
+        resolver.addresses = Collections.singletonList(ip1);
+        pool.refresh().join();
+        then(pool.activeAddresses()).containsExactly(new InetSocketAddress(ip1, 8080));
+        then(pool.drainingAddresses()).containsExactly(new InetSocketAddress(ip2, 8080));
+
+        // The in-flight channel of the removed address is still alive until it's released.
+        then(ch2.isActive()).isTrue();
+        then(pool.acquiredCount()).isEqualTo(2);
+        then(pool.acquire().syncUninterruptibly().getNow().remoteAddress()).isEqualTo(localAddressOf(ip1));
+
+        then(pool.release(ch2).syncUninterruptibly().isSuccess()).isTrue();
+        ch2.closeFuture().awaitUninterruptibly();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.drainingAddresses().isEmpty());
+
+        // A failed resolution keeps the previous addresses.
+        resolver.addresses = Collections.emptyList();
+        pool.refresh().join();
+        then(pool.activeAddresses()).containsExactly(new InetSocketAddress(ip1, 8080));
+
+        pool.release(ch1).syncUninterruptibly();
+        pool.closeAsync().syncUninterruptibly();
+    }
+
+    @Test
+    void testResolveNothing() {
+        final AddressGroupChannelPool pool = newPool(new TestResolver());
+
+        final Future<Channel> future = pool.acquire().awaitUninterruptibly();
+        then(future.isSuccess()).isFalse();
+        then(future.cause()).isInstanceOf(UnknownHostException.class);
+        pool.close();
+    }
+
+    @Test
+    void testResolveInGivenExecutor() {
+        final TestResolver resolver = new TestResolver(ip1);
+        final AtomicBoolean rejecting = new AtomicBoolean();
+        final AddressGroupChannelPool pool = newPool(resolver, command -> {
+            if (rejecting.get()) {
+                throw new RejectedExecutionException();
+            }
+            resolveExecutor.execute(command);
+        });
+
+        pool.refresh().join();
+        then(resolver.thread.getName()).startsWith("AddressGroupChannelPoolTest-Resolver");
+        then(pool.activeAddresses()).containsExactly(new InetSocketAddress(ip1, 8080));
+
+        // A rejected resolution keeps the previous addresses.
+        rejecting.set(true);
+        resolver.addresses = Collections.singletonList(ip2);
+        pool.refresh().join();
+        then(pool.activeAddresses()).containsExactly(new InetSocketAddress(ip1, 8080));
+        pool.close();
+    }
+
+    @Test
+    void testCloseAndReleaseIllegalChannel() {
+        final AddressGroupChannelPool pool = newPool(new TestResolver(ip1));
+
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        final Future<Void> future = pool.release(channel).awaitUninterruptibly();
+        then(future.isSuccess()).isFalse();
+        then(future.cause()).isInstanceOf(IllegalArgumentException.class);
+
+        pool.closeAsync().syncUninterruptibly();
+        final Future<Channel> afterClosed = pool.acquire().awaitUninterruptibly();
+        then(afterClosed.isSuccess()).isFalse();
+        then(afterClosed.cause()).isInstanceOf(IllegalStateException.class);
+    }
+
+    private static AddressGroupChannelPool newPool(HostResolver resolver) {
+        return newPool(resolver, resolveExecutor);
+    }
+
+    private static AddressGroupChannelPool newPool(HostResolver resolver, Executor resolveExecutor) {
+        final ChannelPoolStats stats = new ChannelPoolStats();
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class);
+        return new AddressGroupChannelPool(ADDRESS, resolver, resolveExecutor, AddressBalancer.roundRobin(), stats,
+                address -> new LockFreeChannelPool(
+                        bootstrap.clone().remoteAddress(localAddressOf(address.getAddress())),
+                        new AbstractChannelPoolHandler() {
+                            @Override
+                            public void channelCreated(Channel ch) {
+                            }
+                        },
+                        null, 3000L, 2, 8, 0, ConnectionLifetime.UNLIMITED, stats),
+                60_000L);
+    }
+
+    private static LocalAddress localAddressOf(InetAddress ip) {
+        return new LocalAddress("AddressGroupChannelPoolTest-" + ip.getHostAddress());
+    }
+
+    private static final class TestResolver implements HostResolver {
+
+        private volatile List<InetAddress> addresses;
+        private volatile Thread thread;
+
+        private TestResolver(InetAddress... addresses) {
+            this.addresses = Arrays.asList(addresses);
+        }
+
+        @Override
+        public CompletableFuture<InetAddress> resolve(String inetHost) {
+            return CompletableFuture.completedFuture(addresses.isEmpty() ? null : addresses.get(0));
+        }
+
+        @Override
+        public CompletableFuture<List<InetAddress>> resolveAll(String inetHost) {
+            thread = Thread.currentThread();
+            return CompletableFuture.completedFuture(addresses);
+        }
+    }
+}
@@ -16,27 +16,31 @@
 package esa.httpclient.core.netty;
 
 import esa.commons.function.ThrowingSupplier;
+import esa.commons.http.HttpVersion;
 import esa.httpclient.core.HttpClient;
 import esa.httpclient.core.HttpClientBuilder;
 import esa.httpclient.core.config.ChannelPoolOptions;
+import esa.httpclient.core.resolver.AddressBalancer;
 import esa.httpclient.core.config.NetOptions;
 import esa.httpclient.core.resolver.SystemDefaultResolver;
 import esa.httpclient.core.spi.ChannelPoolOptionsProvider;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.pool.FixedChannelPool;
-import io.netty.channel.pool.SimpleChannelPool;
 import io.netty.handler.ssl.SslHandler;
 import org.junit.jupiter.api.Test;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.List;
 import java.util.concurrent.ThreadLocalRandom;
 
 import static org.assertj.core.api.Java6BDDAssertions.then;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
 
 class ChannelPoolFactoryTest {
 
@@ -141,7 +145,7 @@ class ChannelPoolFactoryTest {
 
     @Test
     void testCreate() {
-        final ChannelPoolFactory factory = new ChannelPoolFactory();
+        final ChannelPoolFactory factory = new ChannelPoolFactory(Runnable::run);
 
         final SocketAddress address = InetSocketAddress.createUnresolved("127.0.0.1", 8080);
         final ThrowingSupplier<SslHandler> sslHandler = () -> null;
@@ -150,14 +154,58 @@ class ChannelPoolFactoryTest {
                 mock(EventLoopGroup.class), HttpClient.create(), sslHandler);
         then(channelPool0.ssl).isFalse();
         then(channelPool0.sslHandler).isSameAs(sslHandler);
-        then(channelPool0.underlying).isInstanceOf(FixedChannelPool.class);
+        then(channelPool0.underlying).isInstanceOf(LockFreeChannelPool.class);
 
         final ChannelPool channelPool1 = factory.create(false, false, address,
                 mock(EventLoopGroup.class), HttpClient.create(), sslHandler);
         then(channelPool1.ssl).isFalse();
         then(channelPool1.sslHandler).isSameAs(sslHandler);
-        then(channelPool1.underlying).isInstanceOf(SimpleChannelPool.class);
-        then(channelPool1.underlying).isNotInstanceOf(FixedChannelPool.class);
+        then(channelPool1.underlying).isInstanceOf(DirectConnectAndCloseChannelPool.class);
+
+        final EventLoopGroup group = mock(EventLoopGroup.class);
+        when(group.next()).thenReturn(mock(EventLoop.class));
+        final ChannelPool channelPool2 = factory.create(false, true, address,
+                group, HttpClient.create().version(HttpVersion.HTTP_2), sslHandler);
+        then(channelPool2.underlying).isInstanceOf(Http2ChannelPool.class);
+        then(((Http2ChannelPool) channelPool2.underlying).maxConnections()).isEqualTo(DEFAULT_POOL_SIZE);
+        then(((Http2ChannelPool) channelPool2.underlying).maxPendingAcquires()).isEqualTo(DEFAULT_QUEUE_SIZE);
+
+        final EventLoopGroup ioThreads = new DefaultEventLoopGroup(2);
+        try {
+            final ChannelPool channelPool3 = factory.create(false, true, address,
+                    ioThreads, HttpClient.create().stripedConnectionPool(true), sslHandler);
+            then(channelPool3.underlying).isInstanceOf(StripedChannelPool.class);
+            final List<io.netty.channel.pool.ChannelPool> stripes =
+                    ((StripedChannelPool) channelPool3.underlying).stripes();
+            then(stripes.size()).isEqualTo(2);
+            then(stripes.get(0)).isInstanceOf(LockFreeChannelPool.class);
+
+            // Non-keepAlive connections are not pooled, so that there is no need to stripe.
+            final ChannelPool channelPool4 = factory.create(false, false, address,
+                    ioThreads, HttpClient.create().stripedConnectionPool(true), sslHandler);
+            then(channelPool4.underlying).isNotInstanceOf(StripedChannelPool.class);
+
+            // The adaptive pool starts from its min size.
+            final ChannelPool channelPool5 = factory.create(false, true, address,
+                    ioThreads, HttpClient.create().connectionPoolMinSize(4), sslHandler);
+            then(((LockFreeChannelPool) channelPool5.underlying).maxConnections()).isEqualTo(4);
+            ChannelPools.close(address, channelPool5, false);
+
+            final ChannelPool channelPool6 = factory.create(false, true, address,
+                    ioThreads, HttpClient.create().addressBalancer(AddressBalancer.roundRobin()), sslHandler);
+            then(channelPool6.underlying).isInstanceOf(AddressGroupChannelPool.class);
+            ChannelPools.close(address, channelPool6, false);
+        } finally {
+            ioThreads.shutdownGracefully();
+        }
+    }
+
+    @Test
+    void testStripedSize() {
+        then(ChannelPoolFactory.stripedSize(512, 1)).isEqualTo(512);
+        then(ChannelPoolFactory.stripedSize(512, 16)).isEqualTo(32);
+        then(ChannelPoolFactory.stripedSize(10, 3)).isEqualTo(4);
+        then(ChannelPoolFactory.stripedSize(1, 16)).isEqualTo(1);
     }
 
 }
@@ -20,21 +20,28 @@ import esa.httpclient.core.HttpClientBuilder;
 import esa.httpclient.core.config.CacheOptions;
 import esa.httpclient.core.config.ChannelPoolOptions;
 import esa.httpclient.core.metrics.ConnectionPoolMetric;
+import esa.httpclient.core.metrics.Histogram;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.pool.FixedChannelPool;
+import io.netty.util.concurrent.DefaultPromise;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import org.junit.jupiter.api.Test;
 
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.util.Collections;
+import java.util.Map;
 
 import static org.assertj.core.api.BDDAssertions.then;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
 
 class ChannelPoolsTest {
 
@@ -80,12 +87,20 @@ class ChannelPoolsTest {
                 HttpClient.create(), () -> null);
         then(pool11).isSameAs(pool12);
 
-        // Connection which keepAlive is false won't be cached.
+        // Connector of the connection which keepAlive is false will be cached separately.
+        then(pools2.getConnectorIfPresent(address1)).isNull();
         final ChannelPool pool21 = pools2.getOrCreate(false, false, address1, mock(EventLoopGroup.class),
                 HttpClient.create(), () -> null);
         final ChannelPool pool22 = pools2.getOrCreate(false, false, address1, mock(EventLoopGroup.class),
                 HttpClient.create(), () -> null);
-        then(pool21).isNotSameAs(pool22);
+        then(pool21).isSameAs(pool22);
+        then(pool21).isNotSameAs(pool11);
+        then(pool21.underlying).isInstanceOf(DirectConnectAndCloseChannelPool.class);
+        then(pools2.getConnectorIfPresent(address1)).isSameAs(pool21);
+        then(pools2.getIfPresent(address1)).isSameAs(pool11);
+        then(pools2.connectors().size()).isEqualTo(1);
+        then(pools2.connectors().get(address1).created()).isEqualTo(0L);
+        then(pools2.all().size()).isEqualTo(2);
 
         pools2.close();
     }
@@ -123,10 +138,68 @@ class ChannelPoolsTest {
 
         then(metric.maxSize()).isEqualTo(options.poolSize());
         then(metric.options()).isEqualTo(options);
+        then(metric.idle()).isEqualTo(0);
+        then(metric.created()).isEqualTo(0L);
+        then(metric.closed()).isEqualTo(0L);
+        then(metric.acquireFailures()).isEqualTo(0L);
+        then(metric.acquireTime().count()).isEqualTo(0L);
+
+        final Map<SocketAddress, ConnectionPoolMetric> all = pools.all();
+        then(all.size()).isEqualTo(1);
+        then(all.get(address)).isSameAs(metric);
+        assertThrows(UnsupportedOperationException.class, () -> all.remove(address));
+
+        // The metric of a pool which doesn't maintain its own statistics.
+        final SocketAddress address1 = InetSocketAddress.createUnresolved("127.0.0.1", 8081);
+        pools.put(address1, new ChannelPool(mock(io.netty.channel.pool.ChannelPool.class),
+                options, false, () -> null));
+        then(all.size()).isEqualTo(2);
+        then(all.get(address1).maxSize()).isEqualTo(0);
+        then(all.get(address1).acquireTime()).isSameAs(Histogram.EMPTY);
 
+        pools.close();
+        then(all).isEmpty();
+    }
+
+    @Test
+    void testDrainReplacedPool() {
+        final SocketAddress address = InetSocketAddress.createUnresolved("127.0.0.1", 8080);
+        final DefaultPromise<Void> drained = new DefaultPromise<>(GlobalEventExecutor.INSTANCE);
+        final DrainableChannelPool underlying = mock(DrainableChannelPool.class,
+                withSettings().extraInterfaces(io.netty.channel.pool.ChannelPool.class));
+        when(underlying.drain()).thenReturn(drained);
+        when(underlying.acquiredCount()).thenReturn(1);
+
+        final ChannelPools pools = new ChannelPools(CacheOptions.ofDefault());
+        pools.put(address, new ChannelPool((io.netty.channel.pool.ChannelPool) underlying,
+                ChannelPoolOptions.ofDefault(), false, () -> null));
+        then(pools.draining()).isEmpty();
+
+        // The replaced pool is drained rather than closed, and it's observable until drained.
+        pools.put(address, new ChannelPool(mock(io.netty.channel.pool.ChannelPool.class),
+                ChannelPoolOptions.ofDefault(), false, () -> null));
+        verify(underlying, timeout(3000L)).drain();
+        LockFreeChannelPoolTest.awaitUntil(() -> pools.draining().containsKey(address));
+        verify((io.netty.channel.pool.ChannelPool) underlying, never()).close();
+        then(pools.draining().get(address).active()).isEqualTo(1);
         then(pools.all().size()).isEqualTo(1);
-        then(pools.all().get(address)).isNotNull();
+
+        drained.setSuccess(null);
+        LockFreeChannelPoolTest.awaitUntil(() -> pools.draining().isEmpty());
+
+        // Pools which are still being drained are closed directly when closing.
+        final DefaultPromise<Void> neverDrained = new DefaultPromise<>(GlobalEventExecutor.INSTANCE);
+        final DrainableChannelPool underlying1 = mock(DrainableChannelPool.class,
+                withSettings().extraInterfaces(io.netty.channel.pool.ChannelPool.class));
+        when(underlying1.drain()).thenReturn(neverDrained);
+        pools.put(address, new ChannelPool((io.netty.channel.pool.ChannelPool) underlying1,
+                ChannelPoolOptions.ofDefault(), false, () -> null));
+        pools.put(address, new ChannelPool(mock(io.netty.channel.pool.ChannelPool.class),
+                ChannelPoolOptions.ofDefault(), false, () -> null));
+        verify(underlying1, timeout(3000L)).drain();
         pools.close();
+        verify((io.netty.channel.pool.ChannelPool) underlying1).close();
+        then(pools.draining()).isEmpty();
     }
 
     @Test
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import io.netty.channel.DefaultEventLoop;
+import io.netty.channel.EventLoop;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.Mockito.atLeast;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ConnectionHealthCheckerTest {
+
+    @Test
+    void testIllegalArguments() {
+        assertThrows(NullPointerException.class, () -> new ConnectionHealthChecker(null));
+        final ConnectionHealthChecker checker = new ConnectionHealthChecker(mock(HealthCheckedChannelPool.class));
+        assertThrows(IllegalArgumentException.class, () -> checker.start(mock(EventLoop.class), 0L));
+    }
+
+    @Test
+    void testStale() {
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        then(ConnectionHealthChecker.isStale(channel)).isFalse();
+        then(ConnectionHealthChecker.isHealthy(channel)).isTrue();
+
+        ConnectionHealthChecker.markStale(channel);
+        then(ConnectionHealthChecker.isStale(channel)).isTrue();
+        then(ConnectionHealthChecker.isHealthy(channel)).isFalse();
+
+        final EmbeddedChannel inactive = new EmbeddedChannel();
+        inactive.close();
+        then(ConnectionHealthChecker.isHealthy(inactive)).isFalse();
+    }
+
+    @Test
+    void testCheckPeriodically() {
+        final HealthCheckedChannelPool pool = mock(HealthCheckedChannelPool.class);
+        final EventLoop executor = new DefaultEventLoop();
+        try {
+            new ConnectionHealthChecker(pool).start(executor, 10L);
+            LockFreeChannelPoolTest.awaitUntil(() -> mockingDetails(pool).getInvocations().stream()
+                    .filter(invocation -> invocation.getMethod().getName().equals("checkHealth"))
+                    .count() >= 2L);
+            verify(pool, atLeast(2)).checkHealth();
+        } finally {
+            executor.shutdownGracefully();
+        }
+    }
+
+    @Test
+    void testStopAfterClosed() {
+        final HealthCheckedChannelPool pool = mock(HealthCheckedChannelPool.class);
+        when(pool.isClosed()).thenReturn(true);
+        new ConnectionHealthChecker(pool).run();
+        verify(pool, never()).checkHealth();
+    }
+
+    @Test
+    void testIgnoreException() {
+        final HealthCheckedChannelPool pool = mock(HealthCheckedChannelPool.class);
+        doThrow(new IllegalStateException()).when(pool).checkHealth();
+        new ConnectionHealthChecker(pool).run();
+        verify(pool).checkHealth();
+    }
+}
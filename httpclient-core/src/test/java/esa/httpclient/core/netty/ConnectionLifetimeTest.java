@@ -0,0 +1,74 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ConnectionLifetimeTest {
+
+    @Test
+    void testOf() {
+        then(ConnectionLifetime.of(0L, 0)).isSameAs(ConnectionLifetime.UNLIMITED);
+        then(ConnectionLifetime.of(1L, 0).isUnlimited()).isFalse();
+        then(ConnectionLifetime.of(0L, 1).isUnlimited()).isFalse();
+        assertThrows(IllegalArgumentException.class, () -> ConnectionLifetime.of(-1L, 0));
+        assertThrows(IllegalArgumentException.class, () -> ConnectionLifetime.of(0L, -1));
+    }
+
+    @Test
+    void testUnlimited() {
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        ConnectionLifetime.UNLIMITED.onCreated(channel);
+        for (int i = 0; i < 100; i++) {
+            ConnectionLifetime.UNLIMITED.onAcquired(channel);
+        }
+        then(ConnectionLifetime.UNLIMITED.isExpired(channel)).isFalse();
+    }
+
+    @Test
+    void testMaxRequests() {
+        final ConnectionLifetime lifetime = ConnectionLifetime.of(0L, 2);
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        lifetime.onCreated(channel);
+        then(lifetime.isExpired(channel)).isFalse();
+
+        lifetime.onAcquired(channel);
+        then(lifetime.isExpired(channel)).isFalse();
+        lifetime.onAcquired(channel);
+        then(lifetime.isExpired(channel)).isTrue();
+
+        // Untracked channel never expires.
+        then(lifetime.isExpired(new EmbeddedChannel())).isFalse();
+    }
+
+    @Test
+    void testMaxLifetime() throws InterruptedException {
+        final ConnectionLifetime longLifetime = ConnectionLifetime.of(60_000L, 0);
+        final EmbeddedChannel channel1 = new EmbeddedChannel();
+        longLifetime.onCreated(channel1);
+        then(longLifetime.isExpired(channel1)).isFalse();
+
+        final ConnectionLifetime shortLifetime = ConnectionLifetime.of(10L, 0);
+        final EmbeddedChannel channel2 = new EmbeddedChannel();
+        shortLifetime.onCreated(channel2);
+        Thread.sleep(20L);
+        then(shortLifetime.isExpired(channel2)).isTrue();
+    }
+}
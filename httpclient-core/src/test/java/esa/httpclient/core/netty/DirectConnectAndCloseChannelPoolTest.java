@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static esa.httpclient.core.netty.LockFreeChannelPoolTest.awaitUntil;
+import static org.assertj.core.api.BDDAssertions.then;
+
+class DirectConnectAndCloseChannelPoolTest {
+
+    private static final LocalAddress ADDRESS = new LocalAddress("DirectConnectAndCloseChannelPoolTest");
+
+    private static EventLoopGroup group;
+    private static Channel server;
+
+    @BeforeAll
+    static void setUp() {
+        group = new DefaultEventLoopGroup(1);
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(LocalServerChannel.class)
+                .childHandler(new io.netty.channel.ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+                    }
+                })
+                .bind(ADDRESS)
+                .syncUninterruptibly()
+                .channel();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close().syncUninterruptibly();
+        group.shutdownGracefully();
+    }
+
+    @Test
+    void testAcquireAndRelease() {
+        final AtomicInteger created = new AtomicInteger();
+        final AtomicInteger released = new AtomicInteger();
+        final ChannelPoolStats stats = new ChannelPoolStats();
+        final DirectConnectAndCloseChannelPool pool = newPool(ADDRESS, created, released, stats);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch1).isNotSameAs(ch2);
+        then(ch1.isActive()).isTrue();
+        then(created.get()).isEqualTo(2);
+        then(pool.acquiredCount()).isEqualTo(2);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+        then(pool.idleCount()).isEqualTo(0);
+        then(pool.maxConnections()).isEqualTo(0);
+        then(pool.maxPendingAcquires()).isEqualTo(0);
+
+        // Released channel is closed rather than reused.
+        then(pool.release(ch1).syncUninterruptibly().isSuccess()).isTrue();
+        then(released.get()).isEqualTo(1);
+        then(pool.acquiredCount()).isEqualTo(1);
+        ch1.closeFuture().syncUninterruptibly();
+
+        final Channel ch3 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch3).isNotSameAs(ch1);
+        then(created.get()).isEqualTo(3);
+
+        // Can not release the channel twice.
+        then(pool.release(ch1).awaitUninterruptibly().isSuccess()).isFalse();
+        then(released.get()).isEqualTo(1);
+
+        pool.release(ch2).syncUninterruptibly();
+        pool.release(ch3).syncUninterruptibly();
+        then(pool.acquiredCount()).isEqualTo(0);
+
+        then(stats.created()).isEqualTo(3L);
+        awaitUntil(() -> stats.connectTime().count() == 3L && stats.acquireTime().count() == 3L);
+        then(stats.connectFailures()).isEqualTo(0L);
+        awaitUntil(() -> stats.closed() == 3L);
+
+        pool.close();
+    }
+
+    @Test
+    void testConnectFailure() {
+        final ChannelPoolStats stats = new ChannelPoolStats();
+        final DirectConnectAndCloseChannelPool pool = newPool(new LocalAddress("Absent"),
+                new AtomicInteger(), new AtomicInteger(), stats);
+
+        final Future<Channel> future = pool.acquire().awaitUninterruptibly();
+        then(future.isSuccess()).isFalse();
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+        then(pool.acquiredCount()).isEqualTo(0);
+        // Statistics are recorded by listeners which may be notified after the acquisition completes.
+        awaitUntil(() -> stats.connectFailures() == 1L && stats.acquireFailures() == 1L);
+        then(stats.connectTime().count()).isEqualTo(0L);
+    }
+
+    @Test
+    void testReleaseForeignChannel() {
+        final DirectConnectAndCloseChannelPool pool = newPool(ADDRESS,
+                new AtomicInteger(), new AtomicInteger(), new ChannelPoolStats());
+        final EmbeddedChannel channel = new EmbeddedChannel();
+
+        then(pool.release(channel).isSuccess()).isFalse();
+        then(channel.isOpen()).isFalse();
+    }
+
+    private static DirectConnectAndCloseChannelPool newPool(LocalAddress address,
+                                                            AtomicInteger created,
+                                                            AtomicInteger released,
+                                                            ChannelPoolStats stats) {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .remoteAddress(address);
+
+        return new DirectConnectAndCloseChannelPool(bootstrap,
+                new AbstractChannelPoolHandler() {
+                    @Override
+                    public void channelCreated(Channel ch) {
+                        created.incrementAndGet();
+                    }
+
+                    @Override
+                    public void channelReleased(Channel ch) {
+                        released.incrementAndGet();
+                    }
+                },
+                null,
+                stats);
+    }
+}
@@ -0,0 +1,64 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.httpclient.core.metrics.Histogram;
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class ExponentialHistogramTest {
+
+    @Test
+    void testEmpty() {
+        final ExponentialHistogram histogram = new ExponentialHistogram();
+        then(histogram.count()).isEqualTo(0L);
+        then(histogram.mean()).isEqualTo(0.0d);
+        then(histogram.percentile(0.99d)).isEqualTo(0L);
+        then(Histogram.EMPTY.percentile(0.5d)).isEqualTo(0L);
+    }
+
+    @Test
+    void testRecord() {
+        final ExponentialHistogram histogram = new ExponentialHistogram();
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-1L);
+
+        then(histogram.count()).isEqualTo(101L);
+        then(histogram.sum()).isEqualTo(5050L);
+        then(histogram.max()).isEqualTo(100L);
+        then(histogram.percentile(0.0d)).isEqualTo(0L);
+        // 50 falls into the bucket [32, 64).
+        then(histogram.percentile(0.5d)).isEqualTo(63L);
+        // Never exceeds the max recorded value.
+        then(histogram.percentile(0.99d)).isEqualTo(100L);
+        then(histogram.percentile(1.0d)).isEqualTo(100L);
+    }
+
+    @Test
+    void testBuckets() {
+        then(ExponentialHistogram.indexOf(0L)).isEqualTo(0);
+        then(ExponentialHistogram.indexOf(1L)).isEqualTo(1);
+        then(ExponentialHistogram.indexOf(2L)).isEqualTo(2);
+        then(ExponentialHistogram.indexOf(3L)).isEqualTo(2);
+        then(ExponentialHistogram.indexOf(Long.MAX_VALUE)).isEqualTo(63);
+        then(ExponentialHistogram.upperBoundOf(0)).isEqualTo(0L);
+        then(ExponentialHistogram.upperBoundOf(2)).isEqualTo(3L);
+        then(ExponentialHistogram.upperBoundOf(63)).isEqualTo(Long.MAX_VALUE);
+    }
+}
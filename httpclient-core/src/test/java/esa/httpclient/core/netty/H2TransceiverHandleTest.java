@@ -37,6 +37,7 @@ import java.util.concurrent.CompletableFuture;
 import static org.assertj.core.api.BDDAssertions.then;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -69,6 +70,34 @@ class H2TransceiverHandleTest {
         verify(delegate).onError(any(), any(), any());
     }
 
+    @Test
+    void testReleaseOnCompleted() {
+        final H2TransceiverHandle handle = new H2TransceiverHandle();
+        final Listener delegate = mock(Listener.class);
+
+        final io.netty.channel.pool.ChannelPool channelPool = mock(ChannelPool.class);
+        final Channel channel = mock(Channel.class);
+
+        when(channelPool.release(any(Channel.class))).thenAnswer(answer -> mock(ChannelFuture.class));
+
+        final ListenerProxy proxy = handle.buildTimeoutHandle(channel, channelPool,
+                delegate, HttpVersion.HTTP_2);
+
+        final HttpRequest request = mock(HttpRequest.class);
+        final Context ctx = mock(Context.class);
+        final HttpResponse response = mock(HttpResponse.class);
+
+        // The stream is still in use after writing
+        proxy.onWriteDone(request, ctx);
+        verify(channelPool, never()).release(any());
+        verify(delegate).onWriteDone(any(), any());
+
+        proxy.onCompleted(request, ctx, response);
+        proxy.onError(request, ctx, mock(Throwable.class));
+        verify(channelPool).release(any());
+        verify(delegate).onCompleted(any(), any(), any());
+    }
+
     @Test
     void testAddRspHandle() {
         final H2TransceiverHandle handle = new H2TransceiverHandle();
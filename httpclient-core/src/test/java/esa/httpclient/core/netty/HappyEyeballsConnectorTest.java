@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.httpclient.core.resolver.HostResolver;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class HappyEyeballsConnectorTest {
+
+    private static EventLoopGroup group;
+    private static ServerSocket server;
+
+    @BeforeAll
+    static void setUp() throws IOException {
+        group = new NioEventLoopGroup(1);
+        server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+    }
+
+    @AfterAll
+    static void tearDown() throws IOException {
+        server.close();
+        group.shutdownGracefully();
+    }
+
+    @Test
+    void testRaceToReachableAddress() throws IOException {
+        // The blackhole address(TEST-NET-1) is tried first, and the IPv6 loopback is refused since the server
+        // only listens on the IPv4 loopback.
+        final Bootstrap bootstrap = newBootstrap(server.getLocalPort(),
+                InetAddress.getByName("192.0.2.1"),
+                InetAddress.getByName("127.0.0.1"),
+                InetAddress.getByName("::1"));
+
+        final long start = System.currentTimeMillis();
+        final Future<Channel> future = HappyEyeballsConnector.connect(bootstrap, null, true, 100L)
+                .awaitUninterruptibly();
+        then(future.isSuccess()).isTrue();
+        then(System.currentTimeMillis() - start).isLessThan(2000L);
+
+        final InetSocketAddress remote = (InetSocketAddress) future.getNow().remoteAddress();
+        then(remote.getAddress().getHostAddress()).isEqualTo("127.0.0.1");
+        then(remote.getPort()).isEqualTo(server.getLocalPort());
+        future.getNow().close().syncUninterruptibly();
+    }
+
+    @Test
+    void testSingleAddress() throws IOException {
+        final Bootstrap bootstrap = newBootstrap(server.getLocalPort(), InetAddress.getByName("127.0.0.1"));
+        final Future<Channel> future = HappyEyeballsConnector.connect(bootstrap, null).awaitUninterruptibly();
+        then(future.isSuccess()).isTrue();
+        future.getNow().close().syncUninterruptibly();
+
+        // Connect to the resolved address directly.
+        bootstrap.remoteAddress(new InetSocketAddress("127.0.0.1", server.getLocalPort()));
+        final Future<Channel> future1 = HappyEyeballsConnector.connect(bootstrap, null).awaitUninterruptibly();
+        then(future1.isSuccess()).isTrue();
+        future1.getNow().close().syncUninterruptibly();
+    }
+
+    @Test
+    void testAllAttemptsFailed() throws IOException {
+        final int port;
+        try (ServerSocket closed = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"))) {
+            port = closed.getLocalPort();
+        }
+
+        final Bootstrap bootstrap = newBootstrap(port,
+                InetAddress.getByName("127.0.0.1"),
+                InetAddress.getByName("::1"));
+        final Future<Channel> future = HappyEyeballsConnector.connect(bootstrap, null, true, 1000L)
+                .awaitUninterruptibly();
+        then(future.isSuccess()).isFalse();
+        then(future.cause()).isNotNull();
+        then(future.cause().getSuppressed()).hasSize(1);
+    }
+
+    @Test
+    void testResolveFailed() {
+        final Bootstrap bootstrap = newBootstrap(server.getLocalPort());
+        final Future<Channel> future = HappyEyeballsConnector.connect(bootstrap, null).awaitUninterruptibly();
+        then(future.isSuccess()).isFalse();
+    }
+
+    @Test
+    void testInterleave() throws IOException {
+        final SocketAddress v4a = new InetSocketAddress(InetAddress.getByName("10.0.0.1"), 80);
+        final SocketAddress v4b = new InetSocketAddress(InetAddress.getByName("10.0.0.2"), 80);
+        final SocketAddress v4c = new InetSocketAddress(InetAddress.getByName("10.0.0.3"), 80);
+        final SocketAddress v6a = new InetSocketAddress(InetAddress.getByName("fd00::1"), 80);
+        final SocketAddress v6b = new InetSocketAddress(InetAddress.getByName("fd00::2"), 80);
+
+        then(HappyEyeballsConnector.interleave(Arrays.asList(v6a, v6b, v4a, v4b, v4c)))
+                .containsExactly(v6a, v4a, v6b, v4b, v4c);
+        then(HappyEyeballsConnector.interleave(Arrays.asList(v4a, v4b, v4c, v6a)))
+                .containsExactly(v4a, v6a, v4b, v4c);
+        then(HappyEyeballsConnector.interleave(Arrays.asList(v4a, v4b)))
+                .containsExactly(v4a, v4b);
+    }
+
+    private static Bootstrap newBootstrap(int port, InetAddress... addresses) {
+        final List<InetAddress> resolved = Arrays.asList(addresses);
+        final HostResolver resolver = inetHost -> CompletableFuture.completedFuture(
+                resolved.isEmpty() ? null : resolved.get(0));
+        final HostResolver allResolver = new HostResolver() {
+            @Override
+            public CompletableFuture<InetAddress> resolve(String inetHost) {
+                return resolver.resolve(inetHost);
+            }
+
+            @Override
+            public CompletableFuture<List<InetAddress>> resolveAll(String inetHost) {
+                return CompletableFuture.completedFuture(resolved);
+            }
+        };
+
+        return new Bootstrap()
+                .group(group)
+                .channel(NioSocketChannel.class)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                    }
+                })
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, 3000)
+                .resolver(ResolverGroupImpl.mappingTo(allResolver))
+                .remoteAddress(InetSocketAddress.createUnresolved("happy-eyeballs.test", port));
+    }
+}
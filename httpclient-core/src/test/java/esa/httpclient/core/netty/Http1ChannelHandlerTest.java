@@ -201,6 +201,10 @@ class Http1ChannelHandlerTest {
         channel.checkException();
         then(channel.isActive()).isTrue();
 
+        // The connection which has received unexpected response must not be reused.
+        then(ConnectionHealthChecker.isStale(channel)).isTrue();
+        then(ConnectionHealthChecker.isHealthy(channel)).isFalse();
+
         channel.finishAndReleaseAll();
     }
 
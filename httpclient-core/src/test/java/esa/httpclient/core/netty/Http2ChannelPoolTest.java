@@ -0,0 +1,435 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.commons.http.HttpVersion;
+import esa.httpclient.core.HttpClient;
+import esa.httpclient.core.exception.DeadlineExceededException;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class Http2ChannelPoolTest {
+
+    private static final LocalAddress ADDRESS = new LocalAddress("Http2ChannelPoolTest");
+
+    private static EventLoopGroup group;
+    private static Channel server;
+
+    @BeforeAll
+    static void setUp() {
+        group = new DefaultEventLoopGroup(2);
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(LocalServerChannel.class)
+                .childHandler(new io.netty.channel.ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+                            @Override
+                            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                                ReferenceCountUtil.release(msg);
+                            }
+                        });
+                    }
+                })
+                .bind(ADDRESS)
+                .syncUninterruptibly()
+                .channel();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close().syncUninterruptibly();
+        group.shutdownGracefully();
+    }
+
+    @Test
+    void testMultiplexStreamsOnSharedConnection() {
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_2, 1000L, 1, 8);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch3 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch1.pipeline().get(Http2ConnectionHandler.class)).isNotNull();
+        then(ch2).isSameAs(ch1);
+        then(ch3).isSameAs(ch1);
+        then(pool.acquiredCount()).isEqualTo(3);
+        then(pool.connectionCount()).isEqualTo(1);
+        then(pool.idleCount()).isEqualTo(0);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+        then(pool.stats().created()).isEqualTo(1L);
+
+        pool.release(ch1).syncUninterruptibly();
+        pool.release(ch2).syncUninterruptibly();
+        pool.release(ch3).syncUninterruptibly();
+        then(pool.acquiredCount()).isEqualTo(0);
+        then(pool.idleCount()).isEqualTo(1);
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.stats().acquireTime().count() == 3L);
+        then(ch1.isActive()).isTrue();
+
+        pool.closeAsync().syncUninterruptibly();
+        ch1.closeFuture().awaitUninterruptibly();
+        then(ch1.isActive()).isFalse();
+    }
+
+    @Test
+    void testQueueAcquiresUntilSlotReleased() {
+        // The connection falls back to HTTP/1.1 and has only one slot.
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_1_1, 3000L, 2, 1);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch1).isNotSameAs(ch2);
+        then(pool.connectionCount()).isEqualTo(2);
+
+        final Future<Channel> pending = pool.acquire();
+        final Future<Channel> rejected = pool.acquire().awaitUninterruptibly();
+        then(rejected.isSuccess()).isFalse();
+        then(rejected.cause()).isInstanceOf(IllegalStateException.class);
+        then(pending.isDone()).isFalse();
+        then(pool.pendingAcquireCount()).isEqualTo(1);
+
+        pool.release(ch1).syncUninterruptibly();
+        then(pending.syncUninterruptibly().getNow()).isSameAs(ch1);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+        then(pool.acquiredCount()).isEqualTo(2);
+
+        pool.close();
+    }
+
+    @Test
+    void testResize() {
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_1_1, 3000L, 1, 2);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> pending = pool.acquire();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.pendingAcquireCount() == 1);
+
+        pool.resize(2);
+        final Channel ch2 = pending.syncUninterruptibly().getNow();
+        then(ch2).isNotSameAs(ch1);
+        then(pool.maxConnections()).isEqualTo(2);
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.connectionCount() == 2);
+
+        pool.release(ch2).syncUninterruptibly();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.idleCount() == 1);
+
+        // Only the surplus connection which has no active stream is closed.
+        pool.resize(1);
+        ch2.closeFuture().awaitUninterruptibly();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.connectionCount() == 1);
+        then(ch1.isActive()).isTrue();
+
+        pool.release(ch1).syncUninterruptibly();
+        pool.close();
+    }
+
+    @Test
+    void testAcquireTimeout() {
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_1_1, 50L, 1, 1);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> timeout = pool.acquire().awaitUninterruptibly();
+        then(timeout.isSuccess()).isFalse();
+        then(timeout.cause()).isInstanceOf(TimeoutException.class);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+
+        pool.release(ch).syncUninterruptibly();
+        pool.close();
+    }
+
+    @Test
+    void testCancelPendingAcquire() {
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_1_1, 3000L, 1, 1);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> cancelled = pool.acquire();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.pendingAcquireCount() == 1);
+
+        // The waiting slot is freed as soon as the acquisition has been cancelled.
+        then(cancelled.cancel(false)).isTrue();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.pendingAcquireCount() == 0);
+        final Future<Channel> pending = pool.acquire();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.pendingAcquireCount() == 1);
+
+        pool.release(ch).syncUninterruptibly();
+        then(pending.syncUninterruptibly().getNow()).isSameAs(ch);
+
+        pool.release(ch).syncUninterruptibly();
+        pool.close();
+    }
+
+    @Test
+    void testServePendingAcquiresByPriorityAndDeadline() {
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_1_1, 3000L, 1, 4);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> normal = pool.acquire();
+        final Future<Channel> urgent = pool.acquire(0, System.currentTimeMillis() + 60_000L);
+        final Future<Channel> important = pool.acquire(1, 0L);
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.pendingAcquireCount() == 3);
+
+        pool.release(ch).syncUninterruptibly();
+        then(important.syncUninterruptibly().getNow()).isSameAs(ch);
+        pool.release(ch).syncUninterruptibly();
+        then(urgent.syncUninterruptibly().getNow()).isSameAs(ch);
+        then(normal.isDone()).isFalse();
+        pool.release(ch).syncUninterruptibly();
+        then(normal.syncUninterruptibly().getNow()).isSameAs(ch);
+
+        pool.release(ch).syncUninterruptibly();
+        pool.close();
+    }
+
+    @Test
+    void testDeadlineExceeded() {
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_1_1, 3000L, 1, 1);
+
+        final Future<Channel> expired = pool.acquire(0, System.currentTimeMillis() - 1L).awaitUninterruptibly();
+        then(expired.cause()).isInstanceOf(DeadlineExceededException.class);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> pending = pool.acquire(0, System.currentTimeMillis() + 50L).awaitUninterruptibly();
+        then(pending.cause()).isInstanceOf(DeadlineExceededException.class);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+
+        pool.release(ch).syncUninterruptibly();
+        pool.close();
+    }
+
+    @Test
+    void testConnectFailed() {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .remoteAddress(new LocalAddress("Http2ChannelPoolTest-Absent"));
+        final Http2ChannelPool pool = new Http2ChannelPool(bootstrap,
+                new AbstractChannelPoolHandler() {
+                    @Override
+                    public void channelCreated(Channel ch) {
+                    }
+                },
+                null, 1000L, 1, 8);
+
+        final Future<Channel> future = pool.acquire().awaitUninterruptibly();
+        then(future.isSuccess()).isFalse();
+        then(pool.connectionCount()).isEqualTo(0);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+        pool.close();
+    }
+
+    @Test
+    void testCloseAndReleaseIllegalChannel() {
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_1_1, 3000L, 1, 1);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> pending = pool.acquire();
+
+        final Future<Void> illegal = pool.release(new EmbeddedChannel()).awaitUninterruptibly();
+        then(illegal.isSuccess()).isFalse();
+        then(illegal.cause()).isInstanceOf(IllegalArgumentException.class);
+
+        pool.closeAsync().syncUninterruptibly();
+        then(pending.awaitUninterruptibly().isSuccess()).isFalse();
+        ch.closeFuture().awaitUninterruptibly();
+
+        final Future<Channel> afterClosed = pool.acquire().awaitUninterruptibly();
+        then(afterClosed.isSuccess()).isFalse();
+        then(afterClosed.cause()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testWarmUpAndKeepMinConnections() {
+        final AtomicInteger created = new AtomicInteger();
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_1_1, 3000L, 3, 1, 2, created);
+
+        then(pool.warmUp(2).syncUninterruptibly().isSuccess()).isTrue();
+        then(pool.connectionCount()).isEqualTo(2);
+        then(created.get()).isEqualTo(2);
+        then(pool.acquiredCount()).isEqualTo(0);
+
+        // The warmed up connections are used without opening new ones.
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch1).isNotSameAs(ch2);
+        then(created.get()).isEqualTo(2);
+
+        // Closed connections are replenished in the background.
+        ch1.close().syncUninterruptibly();
+        LockFreeChannelPoolTest.awaitUntil(() -> created.get() == 3 && pool.connectionCount() == 2);
+        pool.release(ch2).syncUninterruptibly();
+
+        pool.closeAsync().syncUninterruptibly();
+        then(pool.warmUp(2).syncUninterruptibly().isSuccess()).isTrue();
+        then(created.get()).isEqualTo(3);
+    }
+
+    @Test
+    void testRetireExpiredConnection() {
+        final AtomicInteger created = new AtomicInteger();
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_2, 3000L, 1, 8, 0, created,
+                ConnectionLifetime.of(0L, 2));
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch2).isSameAs(ch1);
+
+        // The connection has served 2 streams, so that it's retired once a slot is released.
+        pool.release(ch1).syncUninterruptibly();
+        then(pool.connectionCount()).isEqualTo(0);
+        then(pool.acquiredCount()).isEqualTo(1);
+        LockFreeChannelPoolTest.awaitUntil(() -> ch1.pipeline().get(Http2ConnectionHandler.class)
+                .connection().goAwaySent());
+        then(ch1.isActive()).isTrue();
+
+        // New streams are assigned to a new connection.
+        final Channel ch3 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch3).isNotSameAs(ch1);
+        then(created.get()).isEqualTo(2);
+
+        // The retired connection is closed after all its streams are released.
+        pool.release(ch2).syncUninterruptibly();
+        ch1.closeFuture().awaitUninterruptibly();
+        pool.release(ch3).syncUninterruptibly();
+        then(pool.acquiredCount()).isEqualTo(0);
+        then(pool.connectionCount()).isEqualTo(1);
+
+        pool.close();
+    }
+
+    @Test
+    void testCheckHealth() {
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_2, 3000L, 2, 8);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Http2ConnectionHandler h2Handler = ch1.pipeline().get(Http2ConnectionHandler.class);
+        pool.release(ch1).syncUninterruptibly();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.idleCount() == 1);
+
+        // A PING is sent on the idle connection, but the server never acknowledges it.
+        pool.checkHealth();
+        LockFreeChannelPoolTest.awaitUntil(h2Handler::isPingOutstanding);
+        then(pool.connectionCount()).isEqualTo(1);
+
+        pool.checkHealth();
+        ch1.closeFuture().awaitUninterruptibly();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.connectionCount() == 0);
+        then(pool.stats().unhealthyEvictions()).isEqualTo(1L);
+
+        // The connection which is in use is left untouched.
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        pool.checkHealth();
+        pool.checkHealth();
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.connectionCount() == 1);
+        then(ch2.isActive()).isTrue();
+        then(ch2.pipeline().get(Http2ConnectionHandler.class).isPingOutstanding()).isFalse();
+
+        pool.release(ch2).syncUninterruptibly();
+        pool.close();
+    }
+
+    @Test
+    void testDrain() {
+        final Http2ChannelPool pool = newPool(HttpVersion.HTTP_2, 3000L, 2, 8, 2, new AtomicInteger());
+        pool.warmUp(2).syncUninterruptibly();
+        then(pool.connectionCount()).isEqualTo(2);
+
+        final Channel busy = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Void> drained = pool.drain();
+
+        // The idle connection is closed immediately, and the busy one is asked to go away but kept open until
+        // its in-flight stream is released.
+        LockFreeChannelPoolTest.awaitUntil(() -> pool.connectionCount() == 0);
+        LockFreeChannelPoolTest.awaitUntil(() -> busy.pipeline().get(Http2ConnectionHandler.class)
+                .connection().goAwaySent());
+        then(busy.isActive()).isTrue();
+        then(drained.isDone()).isFalse();
+        then(pool.acquire().awaitUninterruptibly().isSuccess()).isFalse();
+
+        pool.release(busy).syncUninterruptibly();
+        busy.closeFuture().awaitUninterruptibly();
+        then(drained.awaitUninterruptibly().isSuccess()).isTrue();
+        then(pool.acquiredCount()).isEqualTo(0);
+    }
+
+    private static Http2ChannelPool newPool(HttpVersion version,
+                                            long acquireTimeoutMillis,
+                                            int maxConnections,
+                                            int maxPendingAcquires) {
+        return newPool(version, acquireTimeoutMillis, maxConnections, maxPendingAcquires, 0, new AtomicInteger());
+    }
+
+    private static Http2ChannelPool newPool(HttpVersion version,
+                                            long acquireTimeoutMillis,
+                                            int maxConnections,
+                                            int maxPendingAcquires,
+                                            int minConnections,
+                                            AtomicInteger created) {
+        return newPool(version, acquireTimeoutMillis, maxConnections, maxPendingAcquires, minConnections, created,
+                ConnectionLifetime.UNLIMITED);
+    }
+
+    private static Http2ChannelPool newPool(HttpVersion version,
+                                            long acquireTimeoutMillis,
+                                            int maxConnections,
+                                            int maxPendingAcquires,
+                                            int minConnections,
+                                            AtomicInteger created,
+                                            ConnectionLifetime lifetime) {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .remoteAddress(ADDRESS);
+        final ChannelInitializer initializer = new ChannelInitializer(HttpClient.create()
+                .version(version)
+                .h2ClearTextUpgrade(false), () -> null, false);
+
+        return new Http2ChannelPool(bootstrap,
+                new AbstractChannelPoolHandler() {
+                    @Override
+                    public void channelCreated(Channel ch) {
+                        created.incrementAndGet();
+                    }
+                },
+                initializer,
+                acquireTimeoutMillis,
+                maxConnections,
+                maxPendingAcquires,
+                minConnections,
+                lifetime,
+                new ChannelPoolStats());
+    }
+}
@@ -33,7 +33,9 @@ import io.netty.handler.codec.http2.Http2Error;
 import io.netty.handler.codec.http2.Http2Headers;
 import io.netty.handler.stream.ChunkedFile;
 import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.concurrent.Future;
 import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
 
 import java.io.File;
 import java.io.FileOutputStream;
@@ -49,6 +51,9 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
 
 class Http2ConnectionHandlerTest extends Http2ConnectionHelper {
 
@@ -259,6 +264,30 @@ class Http2ConnectionHandlerTest extends Http2ConnectionHelper {
         then(handler.getRegistry()).isSameAs(registry);
     }
 
+    @Test
+    void testWritePing() throws Exception {
+        setUp();
+
+        final Http2ConnectionHandler handler = channel.pipeline().get(Http2ConnectionHandler.class);
+        then(handler.isPingOutstanding()).isFalse();
+
+        final Future<Long> rtt = handler.writePing();
+        then(handler.isPingOutstanding()).isTrue();
+        final ArgumentCaptor<Long> payload = ArgumentCaptor.forClass(Long.class);
+        verify(encoder).writePing(any(), eq(false), payload.capture(), any());
+
+        // Acknowledgement of another PING is ignored.
+        handler.onPingAck(payload.getValue() + 1L);
+        then(handler.isPingOutstanding()).isTrue();
+
+        handler.onPingAck(payload.getValue());
+        then(handler.isPingOutstanding()).isFalse();
+        then(rtt.isSuccess()).isTrue();
+        then(rtt.getNow()).isGreaterThanOrEqualTo(0L);
+
+        channel.finishAndReleaseAll();
+    }
+
     @Test
     void testWriteGoAwayOnExhaustion() throws Exception {
         final HandleRegistry registry = new HandleRegistry(2, 1);
@@ -56,7 +56,7 @@ class Http2ConnectionHelper {
     private Http2ConnectionDecoder decoder;
 
     @Mock
-    private Http2ConnectionEncoder encoder;
+    Http2ConnectionEncoder encoder;
 
     @Mock
     private Http2FrameWriter frameWriter;
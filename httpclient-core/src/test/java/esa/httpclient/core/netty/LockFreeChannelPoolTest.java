@@ -0,0 +1,520 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.httpclient.core.exception.DeadlineExceededException;
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class LockFreeChannelPoolTest {
+
+    private static final LocalAddress ADDRESS = new LocalAddress("LockFreeChannelPoolTest");
+
+    private static EventLoopGroup group;
+    private static Channel server;
+
+    @BeforeAll
+    static void setUp() {
+        group = new DefaultEventLoopGroup(2);
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(LocalServerChannel.class)
+                .childHandler(new io.netty.channel.ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+                    }
+                })
+                .bind(ADDRESS)
+                .syncUninterruptibly()
+                .channel();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close().syncUninterruptibly();
+        group.shutdownGracefully();
+    }
+
+    @Test
+    void testAcquireAndRelease() {
+        final AtomicInteger created = new AtomicInteger();
+        final LockFreeChannelPool pool = newPool(created, 3000L, 2, 1);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch1).isNotSameAs(ch2);
+        then(created.get()).isEqualTo(2);
+        then(pool.acquiredCount()).isEqualTo(2);
+
+        final Future<Channel> pending = pool.acquire();
+        final Future<Channel> rejected = pool.acquire().awaitUninterruptibly();
+        then(rejected.isSuccess()).isFalse();
+        then(rejected.cause()).isInstanceOf(IllegalStateException.class);
+        then(pending.isDone()).isFalse();
+        then(pool.pendingAcquireCount()).isEqualTo(1);
+
+        // Released channel is handed over to the pending acquisition directly.
+        then(pool.release(ch2).syncUninterruptibly().isSuccess()).isTrue();
+        then(pending.syncUninterruptibly().getNow()).isSameAs(ch2);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+        then(pool.acquiredCount()).isEqualTo(2);
+
+        // The most recently released channel is preferred.
+        pool.release(ch1).syncUninterruptibly();
+        pool.release(ch2).syncUninterruptibly();
+        then(pool.acquiredCount()).isEqualTo(0);
+        then(pool.acquire().syncUninterruptibly().getNow()).isSameAs(ch2);
+        then(created.get()).isEqualTo(2);
+
+        pool.close();
+    }
+
+    @Test
+    void testDiscardInactiveChannel() {
+        final AtomicInteger created = new AtomicInteger();
+        final LockFreeChannelPool pool = newPool(created, 3000L, 1, 1);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        pool.release(ch1).syncUninterruptibly();
+        ch1.close().syncUninterruptibly();
+
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch2).isNotSameAs(ch1);
+        then(created.get()).isEqualTo(2);
+        pool.release(ch2).syncUninterruptibly();
+
+        pool.close();
+    }
+
+    @Test
+    void testAcquireTimeout() {
+        final LockFreeChannelPool pool = newPool(new AtomicInteger(), 50L, 1, 1);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> timeout = pool.acquire().awaitUninterruptibly();
+        then(timeout.isSuccess()).isFalse();
+        then(timeout.cause()).isInstanceOf(TimeoutException.class);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+
+        // The timed out acquisition must not hold the released channel.
+        pool.release(ch).syncUninterruptibly();
+        then(pool.acquiredCount()).isEqualTo(0);
+        then(pool.acquire().syncUninterruptibly().getNow()).isSameAs(ch);
+
+        pool.close();
+    }
+
+    @Test
+    void testCancelPendingAcquire() {
+        final LockFreeChannelPool pool = newPool(new AtomicInteger(), 3000L, 1, 1);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> cancelled = pool.acquire();
+        then(pool.pendingAcquireCount()).isEqualTo(1);
+
+        // The waiting slot is freed as soon as the acquisition has been cancelled.
+        then(cancelled.cancel(false)).isTrue();
+        awaitUntil(() -> pool.pendingAcquireCount() == 0);
+        final Future<Channel> pending = pool.acquire();
+        then(pending.isDone()).isFalse();
+
+        pool.release(ch).syncUninterruptibly();
+        then(pending.syncUninterruptibly().getNow()).isSameAs(ch);
+        then(pool.acquiredCount()).isEqualTo(1);
+
+        pool.release(ch).syncUninterruptibly();
+        then(pool.acquiredCount()).isEqualTo(0);
+        pool.close();
+    }
+
+    @Test
+    void testServePendingAcquiresByPriorityAndDeadline() {
+        final LockFreeChannelPool pool = newPool(new AtomicInteger(), 3000L, 1, 4);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> normal = pool.acquire();
+        final Future<Channel> urgent = pool.acquire(0, System.currentTimeMillis() + 60_000L);
+        final Future<Channel> important = pool.acquire(1, 0L);
+        then(pool.pendingAcquireCount()).isEqualTo(3);
+
+        pool.release(ch).syncUninterruptibly();
+        then(important.syncUninterruptibly().getNow()).isSameAs(ch);
+        then(urgent.isDone()).isFalse();
+        then(normal.isDone()).isFalse();
+
+        pool.release(ch).syncUninterruptibly();
+        then(urgent.syncUninterruptibly().getNow()).isSameAs(ch);
+        then(normal.isDone()).isFalse();
+
+        pool.release(ch).syncUninterruptibly();
+        then(normal.syncUninterruptibly().getNow()).isSameAs(ch);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+
+        pool.release(ch).syncUninterruptibly();
+        pool.close();
+    }
+
+    @Test
+    void testDeadlineExceeded() {
+        final LockFreeChannelPool pool = newPool(new AtomicInteger(), 3000L, 1, 1);
+
+        // Fail immediately if the deadline has passed.
+        final Future<Channel> expired = pool.acquire(0, System.currentTimeMillis() - 1L);
+        then(expired.cause()).isInstanceOf(DeadlineExceededException.class);
+        then(pool.acquiredCount()).isEqualTo(0);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> pending = pool.acquire(0, System.currentTimeMillis() + 50L).awaitUninterruptibly();
+        then(pending.cause()).isInstanceOf(DeadlineExceededException.class);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+
+        pool.release(ch).syncUninterruptibly();
+        then(pool.acquiredCount()).isEqualTo(0);
+        pool.close();
+    }
+
+    @Test
+    void testStats() {
+        final LockFreeChannelPool pool = newPool(new AtomicInteger(), 50L, 1, 1);
+        final ChannelPoolStats stats = pool.stats();
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        then(pool.acquire().awaitUninterruptibly().isSuccess()).isFalse();
+        awaitUntil(() -> stats.acquireTime().count() == 2L);
+        then(stats.created()).isEqualTo(1L);
+        then(stats.acquireFailures()).isEqualTo(1L);
+        // The failed acquisition has waited for the acquire timeout.
+        then(stats.acquireTime().max()).isGreaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(50L));
+        then(pool.idleCount()).isEqualTo(0);
+
+        pool.release(ch).syncUninterruptibly();
+        then(pool.idleCount()).isEqualTo(1);
+
+        ch.close().syncUninterruptibly();
+        awaitUntil(() -> stats.closed() == 1L);
+        pool.close();
+    }
+
+    @Test
+    void testCheckHealth() {
+        final LockFreeChannelPool pool = newPool(new AtomicInteger(), 3000L, 3, 1);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        final Channel ch3 = pool.acquire().syncUninterruptibly().getNow();
+        pool.release(ch1).syncUninterruptibly();
+        pool.release(ch2).syncUninterruptibly();
+        then(pool.idleCount()).isEqualTo(2);
+
+        // The stale and the closed idle channels are evicted, but the acquired one is left untouched.
+        ConnectionHealthChecker.markStale(ch1);
+        ch2.close().syncUninterruptibly();
+        ConnectionHealthChecker.markStale(ch3);
+        pool.checkHealth();
+        then(pool.idleCount()).isEqualTo(0);
+        then(pool.stats().unhealthyEvictions()).isEqualTo(2L);
+        ch1.closeFuture().syncUninterruptibly();
+        then(ch3.isActive()).isTrue();
+
+        // The stale channel is never reused.
+        pool.release(ch3).syncUninterruptibly();
+        then(pool.idleCount()).isEqualTo(0);
+        then(ch3.closeFuture().syncUninterruptibly().isDone()).isTrue();
+
+        pool.close();
+    }
+
+    @Test
+    void testResize() {
+        final AtomicInteger created = new AtomicInteger();
+        final LockFreeChannelPool pool = newPool(created, 3000L, 1, 2);
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> pending = pool.acquire();
+        then(pool.pendingAcquireCount()).isEqualTo(1);
+
+        // The pending acquisition is served as soon as the pool grows.
+        pool.resize(3);
+        then(pool.maxConnections()).isEqualTo(3);
+        final Channel ch2 = pending.syncUninterruptibly().getNow();
+        then(ch2).isNotSameAs(ch1);
+        final Channel ch3 = pool.acquire().syncUninterruptibly().getNow();
+        then(created.get()).isEqualTo(3);
+
+        pool.release(ch3).syncUninterruptibly();
+        then(pool.idleCount()).isEqualTo(1);
+
+        // The surplus idle channel is closed at once, and the surplus acquired one is closed once released.
+        pool.resize(1);
+        then(pool.idleCount()).isEqualTo(0);
+        ch3.closeFuture().awaitUninterruptibly();
+        pool.release(ch2).syncUninterruptibly();
+        ch2.closeFuture().awaitUninterruptibly();
+        then(pool.acquire().awaitUninterruptibly(100L)).isFalse();
+
+        pool.release(ch1).syncUninterruptibly();
+        then(ch1.isActive()).isTrue();
+        then(pool.idleCount()).isEqualTo(0);
+        pool.close();
+    }
+
+    @Test
+    void testConnectFailed() {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .remoteAddress(new LocalAddress("LockFreeChannelPoolTest-Absent"));
+        final LockFreeChannelPool pool = new LockFreeChannelPool(bootstrap,
+                new AbstractChannelPoolHandler() {
+                    @Override
+                    public void channelCreated(Channel ch) {
+                    }
+                },
+                null, 1000L, 1, 8);
+
+        final Future<Channel> future = pool.acquire().awaitUninterruptibly();
+        then(future.isSuccess()).isFalse();
+        then(pool.acquiredCount()).isEqualTo(0);
+        pool.close();
+    }
+
+    @Test
+    void testCloseAndReleaseIllegalChannel() {
+        final LockFreeChannelPool pool = newPool(new AtomicInteger(), 3000L, 1, 1);
+
+        final Channel ch = pool.acquire().syncUninterruptibly().getNow();
+        final Future<Channel> pending = pool.acquire();
+
+        final Future<Void> illegal = pool.release(new EmbeddedChannel()).awaitUninterruptibly();
+        then(illegal.isSuccess()).isFalse();
+        then(illegal.cause()).isInstanceOf(IllegalArgumentException.class);
+
+        pool.closeAsync().syncUninterruptibly();
+        then(pending.awaitUninterruptibly().isSuccess()).isFalse();
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+
+        // Channels released after closing will be closed.
+        pool.release(ch).syncUninterruptibly();
+        ch.closeFuture().awaitUninterruptibly();
+        then(pool.acquiredCount()).isEqualTo(0);
+
+        final Future<Channel> afterClosed = pool.acquire().awaitUninterruptibly();
+        then(afterClosed.isSuccess()).isFalse();
+        then(afterClosed.cause()).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    void testConcurrentAcquireAndRelease() throws InterruptedException {
+        final int maxConnections = 4;
+        final int threads = 16;
+        final int loops = 200;
+        final AtomicInteger created = new AtomicInteger();
+        final LockFreeChannelPool pool = newPool(created, 10_000L, maxConnections, threads);
+
+        final AtomicInteger holding = new AtomicInteger();
+        final AtomicInteger maxHolding = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final CountDownLatch latch = new CountDownLatch(threads);
+        final List<Thread> workers = new ArrayList<>(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.add(new Thread(() -> {
+                try {
+                    for (int j = 0; j < loops; j++) {
+                        final Future<Channel> future = pool.acquire().awaitUninterruptibly();
+                        if (!future.isSuccess()) {
+                            failures.incrementAndGet();
+                            continue;
+                        }
+                        maxHolding.accumulateAndGet(holding.incrementAndGet(), Math::max);
+                        holding.decrementAndGet();
+                        pool.release(future.getNow()).syncUninterruptibly();
+                    }
+                } finally {
+                    latch.countDown();
+                }
+            }));
+        }
+        workers.forEach(Thread::start);
+        latch.await();
+
+        then(failures.get()).isEqualTo(0);
+        then(maxHolding.get()).isLessThanOrEqualTo(maxConnections);
+        then(created.get()).isLessThanOrEqualTo(maxConnections);
+        then(pool.acquiredCount()).isEqualTo(0);
+        then(pool.pendingAcquireCount()).isEqualTo(0);
+
+        pool.close();
+    }
+
+    @Test
+    void testWarmUpAndKeepMinIdle() {
+        final AtomicInteger created = new AtomicInteger();
+        final LockFreeChannelPool pool = newPool(created, 3000L, 3, 1, 2);
+
+        then(pool.warmUp(2).syncUninterruptibly().isSuccess()).isTrue();
+        then(pool.idleCount()).isEqualTo(2);
+        then(created.get()).isEqualTo(2);
+        then(pool.acquiredCount()).isEqualTo(0);
+
+        // Acquiring an idle channel replenishes the idle channels in the background.
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        pool.warmUp(2).syncUninterruptibly();
+        then(pool.idleCount()).isEqualTo(2);
+        then(created.get()).isEqualTo(3);
+
+        // The total count of channels is still limited by maxConnections.
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        pool.warmUp(2).syncUninterruptibly();
+        then(pool.idleCount()).isEqualTo(1);
+        then(created.get()).isEqualTo(3);
+
+        pool.release(ch1).syncUninterruptibly();
+        pool.release(ch2).syncUninterruptibly();
+        then(pool.idleCount()).isEqualTo(3);
+
+        // Closed idle channels are replenished as well.
+        ch2.close().syncUninterruptibly();
+        ch1.close().syncUninterruptibly();
+        awaitUntil(() -> created.get() == 4 && pool.idleCount() == 2);
+
+        pool.closeAsync().syncUninterruptibly();
+        then(pool.idleCount()).isEqualTo(0);
+        then(pool.warmUp(2).syncUninterruptibly().isSuccess()).isTrue();
+        then(created.get()).isEqualTo(4);
+    }
+
+    @Test
+    void testRetireExpiredChannel() {
+        final AtomicInteger created = new AtomicInteger();
+        final LockFreeChannelPool pool = newPool(created, 3000L, 1, 1, 0, ConnectionLifetime.of(0L, 2));
+
+        final Channel ch1 = pool.acquire().syncUninterruptibly().getNow();
+        pool.release(ch1).syncUninterruptibly();
+        then(ch1.isActive()).isTrue();
+        then(pool.acquire().syncUninterruptibly().getNow()).isSameAs(ch1);
+
+        // The channel has served 2 requests, so that it will be closed on release.
+        pool.release(ch1).syncUninterruptibly();
+        ch1.closeFuture().awaitUninterruptibly();
+        then(pool.idleCount()).isEqualTo(0);
+        then(pool.acquiredCount()).isEqualTo(0);
+
+        final Channel ch2 = pool.acquire().syncUninterruptibly().getNow();
+        then(ch2).isNotSameAs(ch1);
+        then(created.get()).isEqualTo(2);
+        pool.release(ch2).syncUninterruptibly();
+
+        pool.close();
+    }
+
+    @Test
+    void testDrain() {
+        final LockFreeChannelPool pool = newPool(new AtomicInteger(), 3000L, 2, 1);
+
+        final Channel busy = pool.acquire().syncUninterruptibly().getNow();
+        final Channel idle = pool.acquire().syncUninterruptibly().getNow();
+        pool.release(idle).syncUninterruptibly();
+
+        // Idle channels are closed immediately, and the busy one is left untouched until it's released.
+        final Future<Void> drained = pool.drain();
+        idle.closeFuture().awaitUninterruptibly();
+        then(busy.isActive()).isTrue();
+        then(drained.isDone()).isFalse();
+        then(pool.acquire().awaitUninterruptibly().cause()).isInstanceOf(IllegalStateException.class);
+
+        pool.release(busy).syncUninterruptibly();
+        busy.closeFuture().awaitUninterruptibly();
+        then(drained.awaitUninterruptibly().isSuccess()).isTrue();
+        then(pool.acquiredCount()).isEqualTo(0);
+        then(pool.drain()).isSameAs(drained);
+    }
+
+    static void awaitUntil(BooleanSupplier condition) {
+        final long deadline = System.currentTimeMillis() + 3000L;
+        while (!condition.getAsBoolean()) {
+            then(System.currentTimeMillis()).isLessThan(deadline);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10L));
+        }
+    }
+
+    private static LockFreeChannelPool newPool(AtomicInteger created,
+                                               long acquireTimeoutMillis,
+                                               int maxConnections,
+                                               int maxPendingAcquires) {
+        return newPool(created, acquireTimeoutMillis, maxConnections, maxPendingAcquires, 0);
+    }
+
+    private static LockFreeChannelPool newPool(AtomicInteger created,
+                                               long acquireTimeoutMillis,
+                                               int maxConnections,
+                                               int maxPendingAcquires,
+                                               int minIdle) {
+        return newPool(created, acquireTimeoutMillis, maxConnections, maxPendingAcquires, minIdle,
+                ConnectionLifetime.UNLIMITED);
+    }
+
+    private static LockFreeChannelPool newPool(AtomicInteger created,
+                                               long acquireTimeoutMillis,
+                                               int maxConnections,
+                                               int maxPendingAcquires,
+                                               int minIdle,
+                                               ConnectionLifetime lifetime) {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .remoteAddress(ADDRESS);
+
+        return new LockFreeChannelPool(bootstrap,
+                new AbstractChannelPoolHandler() {
+                    @Override
+                    public void channelCreated(Channel ch) {
+                        created.incrementAndGet();
+                    }
+                },
+                null,
+                acquireTimeoutMillis,
+                maxConnections,
+                maxPendingAcquires,
+                minIdle,
+                lifetime,
+                new ChannelPoolStats());
+    }
+}
@@ -24,19 +24,29 @@ import esa.httpclient.core.HttpClientBuilder;
 import esa.httpclient.core.HttpRequest;
 import esa.httpclient.core.HttpResponse;
 import esa.httpclient.core.Listener;
+import esa.httpclient.core.ListenerProxy;
 import esa.httpclient.core.config.CacheOptions;
 import esa.httpclient.core.config.CallbackThreadPoolOptions;
 import esa.httpclient.core.config.ChannelPoolOptions;
 import esa.httpclient.core.config.Decompression;
+import esa.httpclient.core.config.RetryOptions;
 import esa.httpclient.core.config.SslOptions;
+import esa.httpclient.core.exec.CircuitBreaker;
+import esa.httpclient.core.exec.ConcurrencyLimiter;
+import esa.httpclient.core.exec.HttpCache;
 import esa.httpclient.core.exec.RequestExecutor;
+import esa.httpclient.core.exec.RetryBudget;
 import esa.httpclient.core.metrics.CallbackExecutorMetric;
 import esa.httpclient.core.metrics.IoThreadGroupMetric;
 import esa.httpclient.core.metrics.IoThreadMetric;
 import esa.httpclient.core.spi.SslEngineFactory;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.channel.pool.FixedChannelPool;
 import io.netty.channel.pool.SimpleChannelPool;
 import org.junit.jupiter.api.BeforeAll;
@@ -148,6 +158,28 @@ class NettyHttpClientTest {
         then(request.buffer().getByteBuf().refCnt()).isEqualTo(3);
     }
 
+    @Test
+    void testCancelExecution() {
+        final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        final NettyHttpClientImpl client = new NettyHttpClientImpl(HttpClient.create());
+
+        when(EXECUTOR.execute(any(HttpRequest.class),
+                any(Context.class),
+                any(Listener.class),
+                any(),
+                any()))
+                .thenAnswer(answer -> response);
+
+        final HttpRequest request = client.post("http://127.0.0.1:8080").body("Hello World!".getBytes());
+        final CompletableFuture<HttpResponse> rsp = client.execute(request, new Context(), null, null);
+        then(rsp).isNotSameAs(response);
+
+        // The cancellation reaches the underlying execution.
+        rsp.cancel(false);
+        then(response.isCancelled()).isTrue();
+        then(request.buffer().getByteBuf().refCnt()).isEqualTo(0);
+    }
+
     @Test
     void testConnectionPoolMetric() {
         final HttpClientBuilder builder = HttpClient.create();
@@ -157,6 +189,40 @@ class NettyHttpClientTest {
         then(client.connectionPoolMetric()).isSameAs(channelPools);
     }
 
+    @Test
+    void testWarmUp() throws Exception {
+        final NioEventLoopGroup group = new NioEventLoopGroup(1);
+        final Channel server = new ServerBootstrap()
+                .group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new io.netty.channel.ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+                    }
+                })
+                .bind("127.0.0.1", 0)
+                .syncUninterruptibly()
+                .channel();
+        final int port = ((InetSocketAddress) server.localAddress()).getPort();
+        final SocketAddress address = InetSocketAddress.createUnresolved("127.0.0.1", port);
+
+        try (HttpClient client = HttpClient.create().connectionPoolMinIdle(2).build()) {
+            then(client.warmUp("http://127.0.0.1:" + port).get()).isNull();
+            then(client.connectionPoolMetric().get(address)).isNotNull();
+            then(client.connectionPoolMetric().get(address).options().minIdle()).isEqualTo(2);
+            then(client.connectionPoolMetric().get(address).active()).isEqualTo(0);
+        }
+
+        try (HttpClient client = HttpClient.create().keepAlive(false).build()) {
+            then(client.warmUp("http://127.0.0.1:" + port).get()).isNull();
+            then(client.connectionPoolMetric().get(address)).isNull();
+        }
+
+        server.close().syncUninterruptibly();
+        group.shutdownGracefully();
+    }
+
     @Test
     void testIoThreadsMetric() {
         final String id = "IO-Threads-Pool-1";
@@ -180,6 +246,55 @@ class NettyHttpClientTest {
         then(childMetric.state()).isEqualTo("RUNNABLE");
     }
 
+    @Test
+    void testRetryBudgetMetric() {
+        final NettyHttpClient client0 = new NettyHttpClient(HttpClient.create(), mock(ChannelPools.class));
+        then(client0.retryBudgetMetric()).isEmpty();
+
+        final RetryBudget budget = RetryBudget.of(0.1d, 10);
+        final NettyHttpClient client1 = new NettyHttpClient(HttpClient.create()
+                .retryOptions(RetryOptions.options().budget(budget).build()), mock(ChannelPools.class));
+        then(client1.retryBudgetMetric()).isSameAs(budget.metrics());
+    }
+
+    @Test
+    void testCircuitBreakerMetric() {
+        final NettyHttpClient client0 = new NettyHttpClient(HttpClient.create(), mock(ChannelPools.class));
+        then(client0.circuitBreakerMetric()).isEmpty();
+
+        final CircuitBreaker breaker = CircuitBreaker.ofDefault();
+        final NettyHttpClient client1 = new NettyHttpClient(HttpClient.create().circuitBreaker(breaker),
+                mock(ChannelPools.class));
+        then(client1.circuitBreakerMetric()).isSameAs(breaker.metrics());
+    }
+
+    @Test
+    void testConcurrencyLimitMetric() {
+        final NettyHttpClient client0 = new NettyHttpClient(HttpClient.create(), mock(ChannelPools.class));
+        then(client0.concurrencyLimitMetric()).isEmpty();
+        then(client0.listenerOf(null)).isSameAs(ListenerProxy.DEFAULT);
+
+        final ConcurrencyLimiter limiter = ConcurrencyLimiter.ofDefault();
+        final NettyHttpClient client1 = new NettyHttpClient(HttpClient.create().concurrencyLimiter(limiter),
+                mock(ChannelPools.class));
+        then(client1.concurrencyLimitMetric()).isSameAs(limiter.metrics());
+        final Listener listener = client1.listenerOf(limiter);
+        then(listener).isInstanceOf(ListenerProxy.class);
+        then(client1.listenerOf(limiter)).isSameAs(listener);
+        then(client1.listenerOf(ConcurrencyLimiter.ofDefault())).isNotSameAs(listener);
+    }
+
+    @Test
+    void testHttpCacheMetric() {
+        final NettyHttpClient client0 = new NettyHttpClient(HttpClient.create(), mock(ChannelPools.class));
+        then(client0.httpCacheMetric()).isNull();
+
+        final HttpCache cache = HttpCache.ofDefault();
+        final NettyHttpClient client1 = new NettyHttpClient(HttpClient.create().httpCache(cache),
+                mock(ChannelPools.class));
+        then(client1.httpCacheMetric()).isSameAs(cache.metric());
+    }
+
     @Test
     void testCallbackExecutorMetric() {
         final String id = "abc";
@@ -28,6 +28,7 @@ import esa.httpclient.core.Scheme;
 import esa.httpclient.core.SegmentRequest;
 import esa.httpclient.core.config.ChannelPoolOptions;
 import esa.httpclient.core.config.SslOptions;
+import esa.httpclient.core.mock.MockContext;
 import esa.httpclient.core.spi.SslEngineFactory;
 import esa.httpclient.core.util.Futures;
 import io.netty.channel.Channel;
@@ -38,6 +39,8 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.embedded.EmbeddedChannel;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
@@ -45,7 +48,10 @@ import java.io.IOException;
 import java.net.ConnectException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -54,6 +60,7 @@ import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -282,6 +289,7 @@ class NettyTransceiverTest {
         channel.pipeline().addLast(new Http1ChannelHandler(registry, -1L));
 
         final ChannelFuture future = mock(ChannelFuture.class);
+        when(future.channel()).thenReturn(channel);
         final SegmentWriter writer = mock(SegmentWriter.class);
         when(writer.writeAndFlush(any(SegmentRequest.class),
                 any(Channel.class),
@@ -320,6 +328,115 @@ class NettyTransceiverTest {
         then(segmentWriterPromise2.get()).isSameAs(writer);
     }
 
+    @Test
+    void testCancelOnWire() throws Exception {
+        final NettyTransceiver transceiver = new NettyTransceiver(mock(EventLoopGroup.class),
+                mock(ChannelPools.class),
+                HttpClient.create(),
+                mock(SslEngineFactory.class));
+
+        final HttpRequest request = client.get("http://127.0.0.1:8080/abc");
+        final Context ctx = new Context();
+        final TimeoutHandle h = mock(TimeoutHandle.class);
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        final HandleRegistry registry = new HandleRegistry(1, 0);
+        channel.pipeline().addLast(new Http1ChannelHandler(registry, -1L));
+
+        final ChannelFuture future = mock(ChannelFuture.class);
+        when(future.isDone()).thenReturn(true);
+        when(future.isSuccess()).thenReturn(true);
+        when(future.channel()).thenReturn(channel);
+        final RequestWriter writer = mock(RequestWriter.class);
+        when(writer.writeAndFlush(any(HttpRequest.class),
+                any(Channel.class),
+                any(Context.class),
+                any(ChannelPromise.class),
+                anyBoolean(),
+                any(io.netty.handler.codec.http.HttpVersion.class),
+                anyBoolean())).thenReturn(future);
+
+        final CompletableFuture<HttpResponse> response = new CompletableFuture<>();
+        transceiver.doWrite0(request, ctx, channel, (l, rsp) -> null, h,
+                false, HttpVersion.HTTP_1_1, response, writer, null);
+        then(registry.get(1)).isNotNull();
+
+        // The connection of HTTP/1.1 is closed once the response has been cancelled.
+        response.cancel(false);
+        channel.runPendingTasks();
+        then(registry.get(1)).isNull();
+        then(channel.isActive()).isFalse();
+        verify(h).onError(any(), any(), any(CancellationException.class));
+    }
+
+    @Test
+    void testReadTimeoutOnEventLoop() throws Exception {
+        final NettyTransceiver transceiver = new NettyTransceiver(mock(EventLoopGroup.class),
+                mock(ChannelPools.class),
+                HttpClient.create(),
+                mock(SslEngineFactory.class));
+
+        final HttpRequest request = client.get("http://127.0.0.1:8080/abc").readTimeout(1);
+        final Context ctx = new Context();
+        final TimeoutHandle h = mock(TimeoutHandle.class);
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        final HandleRegistry registry = new HandleRegistry(1, 0);
+        channel.pipeline().addLast(new Http1ChannelHandler(registry, -1L));
+
+        final ChannelFuture future = mock(ChannelFuture.class);
+        when(future.isDone()).thenReturn(true);
+        when(future.isSuccess()).thenReturn(true);
+        when(future.channel()).thenReturn(channel);
+        final RequestWriter writer = mock(RequestWriter.class);
+        when(writer.writeAndFlush(any(HttpRequest.class),
+                any(Channel.class),
+                any(Context.class),
+                any(ChannelPromise.class),
+                anyBoolean(),
+                any(io.netty.handler.codec.http.HttpVersion.class),
+                anyBoolean())).thenReturn(future);
+
+        transceiver.doWrite0(request, ctx, channel, (l, rsp) -> null, h,
+                false, HttpVersion.HTTP_1_1, new CompletableFuture<>(), writer, null);
+        then(registry.get(1)).isNotNull();
+        verify(h).addCancelTask(any());
+
+        // The timeout is fired by the event loop of the connection.
+        Thread.sleep(10L);
+        channel.runScheduledPendingTasks();
+        then(registry.get(1)).isNull();
+        then(channel.isActive()).isFalse();
+        verify(h).onError(any(), any(), any(SocketTimeoutException.class));
+    }
+
+    @Test
+    void testCancelWhileAcquiring() {
+        final ChannelPools channelPools = mock(ChannelPools.class);
+        final NettyTransceiver transceiver = new NettyTransceiver(mock(EventLoopGroup.class),
+                channelPools,
+                HttpClient.create(),
+                mock(SslEngineFactory.class));
+
+        final io.netty.channel.pool.ChannelPool underlying = mock(io.netty.channel.pool.ChannelPool.class);
+        final esa.httpclient.core.netty.ChannelPool channelPool = new esa.httpclient.core.netty.ChannelPool(underlying,
+                ChannelPoolOptions.ofDefault(), false, () -> null);
+        when(channelPools.getIfPresent(any(SocketAddress.class))).thenReturn(channelPool);
+        final Promise<Channel> acquisition = ImmediateEventExecutor.INSTANCE.newPromise();
+        when(underlying.acquire()).thenReturn(acquisition);
+
+        final HttpRequest request = client.get("http://127.0.0.1:8080/abc").segment();
+        final NettyContext ctx = new NettyContext();
+        final Listener listener = mock(Listener.class);
+        final CompletableFuture<HttpResponse> response = transceiver.handle(request, ctx, null, listener);
+        then(response.isDone()).isFalse();
+
+        // The pending acquisition is given up once the response has been cancelled.
+        response.cancel(false);
+        then(acquisition.isCancelled()).isTrue();
+        final CompletableFuture<SegmentWriter> segmentWriterPromise = ctx.getWriter().orElse(Futures.completed());
+        then(Futures.getCause(segmentWriterPromise)).isInstanceOf(CancellationException.class);
+        verify(listener, never()).onAcquireConnectionFailed(any(), any(), any(), any());
+    }
+
     @SuppressWarnings("unchecked")
     @Test
     void testGetChannelPool() throws Throwable {
@@ -406,6 +523,25 @@ class NettyTransceiverTest {
         then(sslHandler2.getHandshakeTimeoutMillis()).isEqualTo(sslOptions.handshakeTimeoutMillis());
     }
 
+    @Test
+    void testReadTimeoutNanos() {
+        final HttpRequest request = client.get("/abc").readTimeout(1000);
+        final MockContext ctx = new MockContext();
+        then(NettyTransceiver.readTimeoutNanos(request, ctx)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1000L));
+
+        // Shrinks to the remaining time before the deadline
+        ctx.deadline(System.currentTimeMillis() + 200L);
+        then(NettyTransceiver.readTimeoutNanos(request, ctx))
+                .isLessThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(200L))
+                .isGreaterThan(0L);
+
+        ctx.deadline(System.currentTimeMillis() + 10_000L);
+        then(NettyTransceiver.readTimeoutNanos(request, ctx)).isEqualTo(TimeUnit.MILLISECONDS.toNanos(1000L));
+
+        ctx.deadline(System.currentTimeMillis() - 10L);
+        then(NettyTransceiver.readTimeoutNanos(request, ctx)).isEqualTo(1L);
+    }
+
     @Test
     void testDetectWriter() {
         final HttpRequest request1 = client.get("/abc");
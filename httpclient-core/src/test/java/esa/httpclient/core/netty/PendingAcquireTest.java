@@ -0,0 +1,94 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import esa.httpclient.core.exception.DeadlineExceededException;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class PendingAcquireTest {
+
+    @Test
+    void testOrder() {
+        final long now = System.currentTimeMillis();
+        final PendingAcquire first = newPending(1, 0L, 5L);
+        final PendingAcquire second = newPending(0, now + 1000L, 4L);
+        final PendingAcquire third = newPending(0, now + 2000L, 3L);
+        final PendingAcquire fourth = newPending(0, 0L, 1L);
+        final PendingAcquire fifth = newPending(0, 0L, 2L);
+        final PendingAcquire last = newPending(-1, now + 10L, 0L);
+
+        final PriorityQueue<PendingAcquire> queue = new PriorityQueue<>();
+        queue.offer(last);
+        queue.offer(fifth);
+        queue.offer(third);
+        queue.offer(first);
+        queue.offer(fourth);
+        queue.offer(second);
+
+        final List<PendingAcquire> ordered = new ArrayList<>();
+        PendingAcquire pending;
+        while ((pending = queue.poll()) != null) {
+            ordered.add(pending);
+        }
+        then(ordered).containsExactly(first, second, third, fourth, fifth, last);
+    }
+
+    @Test
+    void testTimeout() {
+        final long acquireTimeoutNanos = TimeUnit.SECONDS.toNanos(1L);
+        final PendingAcquire noDeadline = newPending(0, 0L, 0L);
+        then(noDeadline.timeoutNanos(acquireTimeoutNanos)).isEqualTo(acquireTimeoutNanos);
+        then(noDeadline.timeoutCause()).isInstanceOf(TimeoutException.class);
+
+        final PendingAcquire farDeadline = newPending(0, System.currentTimeMillis() + 60_000L, 0L);
+        then(farDeadline.timeoutNanos(acquireTimeoutNanos)).isEqualTo(acquireTimeoutNanos);
+        then(farDeadline.timeoutCause()).isInstanceOf(TimeoutException.class);
+
+        final PendingAcquire nearDeadline = newPending(0, System.currentTimeMillis() + 100L, 0L);
+        then(nearDeadline.timeoutNanos(acquireTimeoutNanos)).isBetween(0L, TimeUnit.MILLISECONDS.toNanos(100L));
+        then(nearDeadline.timeoutCause()).isInstanceOf(DeadlineExceededException.class);
+
+        final PendingAcquire expired = newPending(0, System.currentTimeMillis() - 1L, 0L);
+        then(expired.timeoutNanos(acquireTimeoutNanos)).isEqualTo(0L);
+        then(expired.isExpired()).isTrue();
+        then(noDeadline.isExpired()).isFalse();
+        then(farDeadline.isExpired()).isFalse();
+        then(PendingAcquire.isExpired(System.currentTimeMillis() - 1L)).isTrue();
+        then(PendingAcquire.isExpired(0L)).isFalse();
+    }
+
+    @Test
+    void testComplete() {
+        final PendingAcquire pending = newPending(0, 0L, 0L);
+        then(pending.isDone()).isFalse();
+        then(pending.tryComplete()).isTrue();
+        then(pending.isDone()).isTrue();
+        then(pending.tryComplete()).isFalse();
+    }
+
+    private static PendingAcquire newPending(int priority, long deadline, long sequence) {
+        return new PendingAcquire(ImmediateEventExecutor.INSTANCE.newPromise(), priority, deadline, sequence);
+    }
+}
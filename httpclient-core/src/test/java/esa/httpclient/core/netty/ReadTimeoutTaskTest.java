@@ -24,10 +24,14 @@ import io.netty.channel.AbstractChannel;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelConfig;
 import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelMetadata;
 import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.channel.ChannelPromise;
 import io.netty.channel.EventLoop;
 import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http2.Http2Error;
+import io.netty.handler.codec.http2.Http2FrameWriter;
 import org.junit.jupiter.api.Test;
 
 import java.net.SocketAddress;
@@ -37,7 +41,12 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.assertj.core.api.BDDAssertions.then;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class ReadTimeoutTaskTest {
@@ -65,11 +74,12 @@ class ReadTimeoutTaskTest {
         final ReadTimeoutTask task1 = new ReadTimeoutTask(requestId1,
                 "",
                 channel,
+                false,
                 registry);
 
         final CountDownLatch latch = new CountDownLatch(1);
         channel.closeFuture().addListener(future -> latch.countDown());
-        task1.run(null);
+        task1.run();
 
         // Fire task
         embeddedChannel.runPendingTasks();
@@ -81,6 +91,47 @@ class ReadTimeoutTaskTest {
         then(error.intValue()).isEqualTo(1);
     }
 
+    @SuppressWarnings("unchecked")
+    @Test
+    void testRunHttp2() throws Exception {
+        final AtomicInteger error = new AtomicInteger(0);
+        final HandleRegistry registry = mock(HandleRegistry.class);
+        final Http2ConnectionHelper helper = new Http2ConnectionHelper();
+        helper.setUp(registry);
+        final Http2FrameWriter frameWriter = helper.encoder.frameWriter();
+        when(frameWriter.writeRstStream(any(ChannelHandlerContext.class), anyInt(), anyLong(),
+                any(ChannelPromise.class))).thenAnswer(invocation -> {
+                    ChannelPromise p = invocation.getArgument(3);
+                    return p.setSuccess();
+                });
+
+        final Handler0 adapter0 = new Handler0(mock(HttpRequest.class),
+                mock(Context.class),
+                mock(Listener.class),
+                mock(CompletableFuture.class),
+                error);
+        when(registry.remove(Http2ConnectionHelper.STREAM_ID)).thenReturn(adapter0, (NettyHandle) null);
+
+        final ReadTimeoutTask task = new ReadTimeoutTask(Http2ConnectionHelper.STREAM_ID,
+                "",
+                helper.channel,
+                true,
+                registry);
+        task.run();
+        helper.channel.runPendingTasks();
+
+        // Only the timed out stream is reset and the connection is kept.
+        verify(frameWriter).writeRstStream(any(ChannelHandlerContext.class), anyInt(),
+                eq(Http2Error.CANCEL.code()), any(ChannelPromise.class));
+        then(helper.channel.isActive()).isTrue();
+        then(error.intValue()).isEqualTo(1);
+
+        // Has ended already
+        task.run();
+        helper.channel.runPendingTasks();
+        then(error.intValue()).isEqualTo(1);
+    }
+
     private static final class Handler0 extends NettyHandle {
 
         private final AtomicInteger error;
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.netty;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.util.concurrent.Future;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class StripedChannelPoolTest {
+
+    private static final LocalAddress ADDRESS = new LocalAddress("StripedChannelPoolTest");
+
+    private static EventLoopGroup group;
+    private static Channel server;
+
+    @BeforeAll
+    static void setUp() {
+        group = new DefaultEventLoopGroup(2);
+        server = new ServerBootstrap()
+                .group(group)
+                .channel(LocalServerChannel.class)
+                .childHandler(new io.netty.channel.ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        ch.pipeline().addLast(new ChannelInboundHandlerAdapter());
+                    }
+                })
+                .bind(ADDRESS)
+                .syncUninterruptibly()
+                .channel();
+    }
+
+    @AfterAll
+    static void tearDown() {
+        server.close().syncUninterruptibly();
+        group.shutdownGracefully();
+    }
+
+    @Test
+    void testAcquireFromCurrentEventLoop() {
+        final StripedChannelPool pool = newPool();
+        then(pool.stripes().size()).isEqualTo(2);
+
+        for (io.netty.util.concurrent.EventExecutor executor : group) {
+            final EventLoop loop = (EventLoop) executor;
+            final AtomicReference<Future<Channel>> acquired = new AtomicReference<>();
+            loop.submit(() -> acquired.set(pool.acquire())).syncUninterruptibly();
+
+            final Channel channel = acquired.get().syncUninterruptibly().getNow();
+            then(channel.eventLoop()).isSameAs(loop);
+
+            // Released to the stripe of its own event loop, and reused by the next acquisition.
+            then(pool.release(channel).syncUninterruptibly().isSuccess()).isTrue();
+            loop.submit(() -> acquired.set(pool.acquire())).syncUninterruptibly();
+            then(acquired.get().syncUninterruptibly().getNow()).isSameAs(channel);
+            pool.release(channel).syncUninterruptibly();
+        }
+
+        pool.closeAsync().syncUninterruptibly();
+    }
+
+    @Test
+    void testAcquireFromOtherThread() {
+        final StripedChannelPool pool = newPool();
+
+        final Channel channel = pool.acquire().syncUninterruptibly().getNow();
+        then(channel.eventLoop().parent()).isSameAs(group);
+        then(pool.release(channel).syncUninterruptibly().isSuccess()).isTrue();
+
+        pool.close();
+    }
+
+    @Test
+    void testReleaseIllegalChannel() {
+        final StripedChannelPool pool = newPool();
+
+        final EmbeddedChannel channel = new EmbeddedChannel();
+        final Future<Void> future = pool.release(channel).awaitUninterruptibly();
+        then(future.isSuccess()).isFalse();
+        then(future.cause()).isInstanceOf(IllegalArgumentException.class);
+        then(channel.isOpen()).isFalse();
+
+        pool.close();
+    }
+
+    @Test
+    void testResizeToLessThanStripes() {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .remoteAddress(ADDRESS);
+        final StripedChannelPool pool = new StripedChannelPool(group,
+                loop -> new LockFreeChannelPool(bootstrap.clone(loop),
+                        new AbstractChannelPoolHandler() {
+                            @Override
+                            public void channelCreated(Channel ch) {
+                            }
+                        },
+                        null, 1000L, 2, 8));
+        then(pool.maxConnections()).isEqualTo(4);
+
+        pool.resize(1);
+        then(pool.maxConnections()).isEqualTo(1);
+
+        // Every acquisition is served by the only serving stripe, even if it's started from another event loop.
+        final Channel channel = pool.acquire().syncUninterruptibly().getNow();
+        for (io.netty.util.concurrent.EventExecutor executor : group) {
+            final AtomicReference<Future<Channel>> acquired = new AtomicReference<>();
+            executor.submit(() -> acquired.set(pool.acquire())).syncUninterruptibly();
+            then(acquired.get().awaitUninterruptibly().isSuccess()).isFalse();
+        }
+        then(pool.acquiredCount()).isEqualTo(1);
+        pool.release(channel).syncUninterruptibly();
+
+        pool.resize(3);
+        then(pool.maxConnections()).isEqualTo(3);
+        for (io.netty.util.concurrent.EventExecutor executor : group) {
+            final AtomicReference<Future<Channel>> acquired = new AtomicReference<>();
+            executor.submit(() -> acquired.set(pool.acquire())).syncUninterruptibly();
+            final Channel ch = acquired.get().syncUninterruptibly().getNow();
+            then(ch.eventLoop()).isSameAs(executor);
+            pool.release(ch).syncUninterruptibly();
+        }
+
+        pool.closeAsync().syncUninterruptibly();
+    }
+
+    private static StripedChannelPool newPool() {
+        final Bootstrap bootstrap = new Bootstrap()
+                .group(group)
+                .channel(LocalChannel.class)
+                .remoteAddress(ADDRESS);
+
+        return new StripedChannelPool(group, loop -> new FixedChannelPool(bootstrap.clone(loop),
+                new AbstractChannelPoolHandler() {
+                    @Override
+                    public void channelCreated(Channel ch) {
+                    }
+                }, 1));
+    }
+}
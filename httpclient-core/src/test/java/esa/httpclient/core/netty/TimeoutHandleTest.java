@@ -16,9 +16,10 @@
 package esa.httpclient.core.netty;
 
 import esa.httpclient.core.Listener;
-import io.netty.util.Timeout;
+import io.netty.util.concurrent.ScheduledFuture;
 import org.junit.jupiter.api.Test;
 
+import static org.mockito.ArgumentMatchers.anyBoolean;
 import static org.mockito.Mockito.clearInvocations;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
@@ -34,15 +35,15 @@ class TimeoutHandleTest {
         verify(listener).onCompleted(null, null, null);
 
         clearInvocations(listener);
-        final Timeout timeout = mock(Timeout.class);
+        final ScheduledFuture<?> timeout = mock(ScheduledFuture.class);
         handle.addCancelTask(timeout);
         handle.onCompleted(null, null, null);
-        verify(timeout).cancel();
+        verify(timeout).cancel(false);
         verify(listener).onCompleted(null, null, null);
 
         clearInvocations(timeout);
         handle.onError(null, null, null);
-        verify(timeout, never()).cancel();
+        verify(timeout, never()).cancel(anyBoolean());
     }
 
     @Test
@@ -53,14 +54,14 @@ class TimeoutHandleTest {
         verify(listener).onError(null, null, null);
 
         clearInvocations(listener);
-        final Timeout timeout = mock(Timeout.class);
+        final ScheduledFuture<?> timeout = mock(ScheduledFuture.class);
         handle.addCancelTask(timeout);
         handle.onError(null, null, null);
-        verify(timeout).cancel();
+        verify(timeout).cancel(false);
         verify(listener).onError(null, null, null);
 
         clearInvocations(timeout);
         handle.onCompleted(null, null, null);
-        verify(timeout, never()).cancel();
+        verify(timeout, never()).cancel(anyBoolean());
     }
 }
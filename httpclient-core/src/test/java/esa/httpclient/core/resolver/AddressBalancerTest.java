@@ -0,0 +1,86 @@
+/*
+ * Copyright 2020 OPPO ESA Stack Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package esa.httpclient.core.resolver;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.BDDAssertions.then;
+
+class AddressBalancerTest {
+
+    @Test
+    void testRoundRobin() {
+        final List<TestEndpoint> endpoints = Arrays.asList(new TestEndpoint(1, 0), new TestEndpoint(2, 0));
+        final AddressBalancer balancer = AddressBalancer.roundRobin();
+        then(balancer.select(endpoints)).isSameAs(endpoints.get(0));
+        then(balancer.select(endpoints)).isSameAs(endpoints.get(1));
+        then(balancer.select(endpoints)).isSameAs(endpoints.get(0));
+    }
+
+    @Test
+    void testLeastOutstanding() {
+        final TestEndpoint endpoint1 = new TestEndpoint(1, 3);
+        final TestEndpoint endpoint2 = new TestEndpoint(2, 1);
+        final TestEndpoint endpoint3 = new TestEndpoint(3, 1);
+        final List<TestEndpoint> endpoints = Arrays.asList(endpoint1, endpoint2, endpoint3);
+        final AddressBalancer balancer = AddressBalancer.leastOutstanding();
+
+        // Ties are broken in turn.
+        then(balancer.select(endpoints)).isSameAs(endpoint2);
+        then(balancer.select(endpoints)).isSameAs(endpoint2);
+        then(balancer.select(endpoints)).isSameAs(endpoint3);
+
+        endpoint1.outstanding = 0;
+        then(balancer.select(endpoints)).isSameAs(endpoint1);
+    }
+
+    @Test
+    void testDefaultResolveAll() throws Exception {
+        final InetAddress address = InetAddress.getByName("127.0.0.1");
+        final HostResolver resolver = inetHost -> "localhost".equals(inetHost)
+                ? CompletableFuture.completedFuture(address)
+                : CompletableFuture.completedFuture(null);
+        then(resolver.resolveAll("localhost").get()).containsExactly(address);
+        then(resolver.resolveAll("absent").get()).isEmpty();
+    }
+
+    private static final class TestEndpoint implements AddressBalancer.Endpoint {
+
+        private final InetSocketAddress address;
+        private int outstanding;
+
+        private TestEndpoint(int port, int outstanding) {
+            this.address = InetSocketAddress.createUnresolved("127.0.0.1", port);
+            this.outstanding = outstanding;
+        }
+
+        @Override
+        public InetSocketAddress address() {
+            return address;
+        }
+
+        @Override
+        public int outstanding() {
+            return outstanding;
+        }
+    }
+}
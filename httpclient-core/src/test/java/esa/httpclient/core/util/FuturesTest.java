@@ -57,6 +57,26 @@ class FuturesTest {
         then(future2.get()).isEqualTo("A");
     }
 
+    @Test
+    void testPropagateCancellation() {
+        final CompletableFuture<String> source = new CompletableFuture<>();
+        final CompletableFuture<String> derived = Futures.propagateCancellation(source,
+                source.thenApply(s -> s + "B"));
+        derived.cancel(false);
+        then(source.isCancelled()).isTrue();
+
+        // Completion of the derived future in other way has no effect on the source
+        final CompletableFuture<String> source1 = new CompletableFuture<>();
+        final CompletableFuture<String> derived1 = Futures.propagateCancellation(source1,
+                source1.thenApply(s -> s + "B"));
+        derived1.completeExceptionally(new IOException());
+        then(source1.isDone()).isFalse();
+        source1.complete("A");
+        then(source1.getNow(null)).isEqualTo("A");
+
+        then(Futures.propagateCancellation(source1, source1)).isSameAs(source1);
+    }
+
     @Test
     void testUnwrapped() {
         then(Futures.unwrapped(null)).isNull();